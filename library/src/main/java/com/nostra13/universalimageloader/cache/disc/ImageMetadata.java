@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+/**
+ * Metadata of cached image: size, mime type and EXIF orientation. Allows to prepare image decoding without reading of
+ * image header and EXIF tags from cached file.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see ImageMetadataStore
+ * @since 1.9.5
+ */
+public final class ImageMetadata {
+
+	private final int width;
+	private final int height;
+	private final String mimeType;
+	private final int rotation;
+	private final boolean flipHorizontal;
+	private final boolean exifDefined;
+	private final long length;
+	private final long lastAccess;
+
+	/**
+	 * @param width          Image width
+	 * @param height         Image height
+	 * @param mimeType       null-ok; Image mime type
+	 * @param rotation       Rotation (in degrees) from EXIF tags
+	 * @param flipHorizontal Whether image should be flipped horizontally according EXIF tags
+	 * @param exifDefined    <b>true</b> - if EXIF tags were read (or image can't contain them); <b>false</b> - if EXIF
+	 *                       tags weren't read so <b>rotation</b> and <b>flipHorizontal</b> are undefined
+	 */
+	public ImageMetadata(int width, int height, String mimeType, int rotation, boolean flipHorizontal,
+			boolean exifDefined) {
+		this(width, height, mimeType, rotation, flipHorizontal, exifDefined, 0, 0);
+	}
+
+	/**
+	 * @param length     Byte length of cached image file
+	 * @param lastAccess Time (in milliseconds) of last access to cached image file, <b>0</b> if unknown
+	 * @see #ImageMetadata(int, int, String, int, boolean, boolean)
+	 */
+	public ImageMetadata(int width, int height, String mimeType, int rotation, boolean flipHorizontal,
+			boolean exifDefined, long length, long lastAccess) {
+		this.width = width;
+		this.height = height;
+		this.mimeType = mimeType;
+		this.rotation = rotation;
+		this.flipHorizontal = flipHorizontal;
+		this.exifDefined = exifDefined;
+		this.length = length;
+		this.lastAccess = lastAccess;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/** @return Image mime type or <b>null</b> if it's unknown */
+	public String getMimeType() {
+		return mimeType;
+	}
+
+	/** @return Rotation (in degrees) from EXIF tags. Makes sense only if {@link #isExifDefined()} */
+	public int getRotation() {
+		return rotation;
+	}
+
+	/** @return Whether image should be flipped horizontally. Makes sense only if {@link #isExifDefined()} */
+	public boolean isFlipHorizontal() {
+		return flipHorizontal;
+	}
+
+	/** @return <b>true</b> - if EXIF orientation is known; <b>false</b> - if EXIF tags weren't read yet */
+	public boolean isExifDefined() {
+		return exifDefined;
+	}
+
+	/** @return Byte length of cached image file, <b>0</b> if it's unknown */
+	public long getLength() {
+		return length;
+	}
+
+	/** @return Time (in milliseconds) of last access to cached image file, <b>0</b> if it's unknown */
+	public long getLastAccess() {
+		return lastAccess;
+	}
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+/**
+ * Partially downloaded image which is kept by {@link ResumableDiskCache} after interrupted download. Its download can
+ * be resumed if image wasn't modified according to its {@linkplain ResponseValidators validators}.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public final class PartialImage {
+
+	private final long length;
+	private final ResponseValidators validators;
+
+	/**
+	 * @param length     Number of downloaded bytes
+	 * @param validators Validators of image from response
+	 */
+	public PartialImage(long length, ResponseValidators validators) {
+		this.length = length;
+		this.validators = validators;
+	}
+
+	/** @return Number of downloaded bytes */
+	public long getLength() {
+		return length;
+	}
+
+	/** @return Validators of image from response */
+	public ResponseValidators getValidators() {
+		return validators;
+	}
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+/**
+ * HTTP validators (ETag, Last-Modified) and freshness lifetime of cached image. Stale image which has validators can
+ * be revalidated by conditional request instead of downloading it again.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see ResponseValidatorsStore
+ * @since 1.9.5
+ */
+public final class ResponseValidators {
+
+	private final String eTag;
+	private final String lastModified;
+	private final long expires;
+
+	/**
+	 * @param eTag         null-ok; Value of "ETag" response header
+	 * @param lastModified null-ok; Value of "Last-Modified" response header
+	 * @param expires      Time (in milliseconds) when cached image becomes stale, <b>0</b> if it's unknown (image is
+	 *                     considered fresh)
+	 */
+	public ResponseValidators(String eTag, String lastModified, long expires) {
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+		this.expires = expires;
+	}
+
+	/** @return Value of "ETag" response header or <b>null</b> if it's unknown */
+	public String getETag() {
+		return eTag;
+	}
+
+	/** @return Value of "Last-Modified" response header or <b>null</b> if it's unknown */
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	/** @return Time (in milliseconds) when cached image becomes stale, <b>0</b> if it's unknown */
+	public long getExpires() {
+		return expires;
+	}
+
+	/** @return <b>true</b> - if conditional request can be made for cached image */
+	public boolean canRevalidate() {
+		return eTag != null || lastModified != null;
+	}
+
+	/** @return <b>true</b> - if cached image is stale at incoming time (in milliseconds) */
+	public boolean isStale(long time) {
+		return expires > 0 && time >= expires;
+	}
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+/**
+ * Store of {@linkplain ResponseValidators HTTP validators} of cached images. Can be implemented by {@link DiskCache} to
+ * let ImageLoader revalidate stale images by conditional requests.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public interface ResponseValidatorsStore {
+	/**
+	 * Returns validators of cached image
+	 *
+	 * @param imageUri Original image URI
+	 * @return Validators of cached image or <b>null</b> if image isn't cached or its validators weren't stored
+	 */
+	ResponseValidators getValidators(String imageUri);
+
+	/**
+	 * Stores validators of cached image. Validators are dropped when cached image is removed or overwritten.
+	 *
+	 * @param imageUri   Original image URI
+	 * @param validators Validators of cached image
+	 */
+	void putValidators(String imageUri, ResponseValidators validators);
+}
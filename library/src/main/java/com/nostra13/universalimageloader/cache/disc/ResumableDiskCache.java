@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc;
+
+import com.nostra13.universalimageloader.utils.IoUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Can be implemented by {@link DiskCache} to keep {@linkplain PartialImage partially downloaded images} after
+ * interrupted downloads, so their downloads can be resumed instead of started from zero.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public interface ResumableDiskCache {
+	/**
+	 * Returns partially downloaded image
+	 *
+	 * @param imageUri Original image URI
+	 * @return Partial image or <b>null</b> if there is no partial image for incoming URI
+	 */
+	PartialImage getPartialImage(String imageUri);
+
+	/**
+	 * Saves image stream in disk cache. If saving is interrupted (by I/O error or by listener) then saved part of image
+	 * is kept as {@linkplain PartialImage partial image} if it can be revalidated by incoming validators.<br />
+	 * Incoming image stream shouldn't be closed in this method.
+	 *
+	 * @param imageUri    Original image URI
+	 * @param imageStream Input stream of image (shouldn't be closed in this method)
+	 * @param offset      <b>0</b> - if stream contains whole image; number of bytes of partial image - if stream
+	 *                    contains the rest of partial image
+	 * @param validators  null-ok; Validators of image from response
+	 * @param listener    Listener for saving progress
+	 * @return <b>true</b> - if image was saved successfully; <b>false</b> - if image wasn't saved in disk cache (e.g.
+	 * partial image of incoming length doesn't exist anymore)
+	 * @throws IOException
+	 */
+	boolean save(String imageUri, InputStream imageStream, long offset, ResponseValidators validators,
+			IoUtils.CopyListener listener) throws IOException;
+}
@@ -17,25 +17,38 @@ package com.nostra13.universalimageloader.cache.disc.impl;
 
 import android.graphics.Bitmap;
 import com.nostra13.universalimageloader.cache.disc.DiskCache;
+import com.nostra13.universalimageloader.cache.disc.PartialImage;
+import com.nostra13.universalimageloader.cache.disc.ResponseValidators;
+import com.nostra13.universalimageloader.cache.disc.ResponseValidatorsStore;
+import com.nostra13.universalimageloader.cache.disc.ResumableDiskCache;
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
 import com.nostra13.universalimageloader.utils.IoUtils;
+import com.nostra13.universalimageloader.utils.L;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
- * Base disk cache.
+ * Base disk cache. Keeps {@linkplain ResponseValidators validators} of cached images in small files next to them.
+ * Interrupted downloads which can be resumed are kept in temporary files with their validators, up to 16 latest ones.
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see FileNameGenerator
  * @since 1.0.0
  */
-public abstract class BaseDiskCache implements DiskCache {
+public abstract class BaseDiskCache implements DiskCache, ResponseValidatorsStore, ResumableDiskCache {
 	/** {@value} */
 	public static final int DEFAULT_BUFFER_SIZE = 32 * 1024; // 32 Kb
 	/** {@value} */
@@ -45,6 +58,10 @@ public abstract class BaseDiskCache implements DiskCache {
 
 	private static final String ERROR_ARG_NULL = " argument must be not null";
 	private static final String TEMP_IMAGE_POSTFIX = ".tmp";
+	private static final String VALIDATORS_POSTFIX = ".validators";
+	private static final int VALIDATORS_VERSION = 1;
+	/** Max number of kept partial images, the oldest ones are deleted */
+	private static final int MAX_PARTIAL_IMAGES = 16;
 
 	protected final File cacheDir;
 	protected final File reserveCacheDir;
@@ -100,13 +117,27 @@ public abstract class BaseDiskCache implements DiskCache {
 
 	@Override
 	public boolean save(String imageUri, InputStream imageStream, IoUtils.CopyListener listener) throws IOException {
+		return save(imageUri, imageStream, 0, null, listener);
+	}
+
+	@Override
+	public boolean save(String imageUri, InputStream imageStream, long offset, ResponseValidators validators,
+			IoUtils.CopyListener listener) throws IOException {
 		File imageFile = getFile(imageUri);
 		File tmpFile = new File(imageFile.getAbsolutePath() + TEMP_IMAGE_POSTFIX);
+		if (offset > 0 && tmpFile.length() != offset) {
+			return false; // Partial image was changed or deleted
+		}
+		File partialValidatorsFile = getValidatorsFile(tmpFile);
+		partialValidatorsFile.delete();
+
+		boolean resumable = validators != null && validators.canRevalidate();
 		boolean loaded = false;
 		try {
-			OutputStream os = new BufferedOutputStream(new FileOutputStream(tmpFile), bufferSize);
+			OutputStream os = new BufferedOutputStream(new FileOutputStream(tmpFile, offset > 0), bufferSize);
 			try {
-				loaded = IoUtils.copyStream(imageStream, os, listener, bufferSize);
+				loaded = IoUtils.copyStream(imageStream, os, listener, bufferSize,
+						resumable ? Integer.MAX_VALUE : IoUtils.CONTINUE_LOADING_PERCENTAGE);
 			} finally {
 				IoUtils.closeSilently(os);
 			}
@@ -114,17 +145,34 @@ public abstract class BaseDiskCache implements DiskCache {
 			if (loaded && !tmpFile.renameTo(imageFile)) {
 				loaded = false;
 			}
-			if (!loaded) {
+			if (loaded) {
+				getValidatorsFile(imageFile).delete(); // Validators describe previous image
+			} else if (resumable && tmpFile.length() > 0) {
+				writeValidators(partialValidatorsFile, validators); // Download can be resumed later
+				trimPartialImages(tmpFile.getParentFile());
+			} else {
 				tmpFile.delete();
 			}
 		}
 		return loaded;
 	}
 
+	@Override
+	public PartialImage getPartialImage(String imageUri) {
+		File tmpFile = new File(getFile(imageUri).getAbsolutePath() + TEMP_IMAGE_POSTFIX);
+		File partialValidatorsFile = getValidatorsFile(tmpFile);
+		if (!partialValidatorsFile.exists() || tmpFile.length() == 0) {
+			return null;
+		}
+		ResponseValidators validators = readValidators(partialValidatorsFile);
+		return validators == null ? null : new PartialImage(tmpFile.length(), validators);
+	}
+
 	@Override
 	public boolean save(String imageUri, Bitmap bitmap) throws IOException {
 		File imageFile = getFile(imageUri);
 		File tmpFile = new File(imageFile.getAbsolutePath() + TEMP_IMAGE_POSTFIX);
+		getValidatorsFile(tmpFile).delete(); // Partial image is overwritten
 		OutputStream os = new BufferedOutputStream(new FileOutputStream(tmpFile), bufferSize);
 		boolean savedSuccessfully = false;
 		try {
@@ -136,6 +184,8 @@ public abstract class BaseDiskCache implements DiskCache {
 			}
 			if (!savedSuccessfully) {
 				tmpFile.delete();
+			} else {
+				getValidatorsFile(imageFile).delete(); // Validators describe previous image
 			}
 		}
 		bitmap.recycle();
@@ -144,7 +194,23 @@ public abstract class BaseDiskCache implements DiskCache {
 
 	@Override
 	public boolean remove(String imageUri) {
-		return getFile(imageUri).delete();
+		File imageFile = getFile(imageUri);
+		getValidatorsFile(imageFile).delete();
+		return imageFile.delete();
+	}
+
+	@Override
+	public ResponseValidators getValidators(String imageUri) {
+		File validatorsFile = getValidatorsFile(getFile(imageUri));
+		return validatorsFile.exists() ? readValidators(validatorsFile) : null;
+	}
+
+	@Override
+	public void putValidators(String imageUri, ResponseValidators validators) {
+		File imageFile = getFile(imageUri);
+		if (imageFile.exists()) {
+			writeValidators(getValidatorsFile(imageFile), validators);
+		}
 	}
 
 	@Override
@@ -174,6 +240,80 @@ public abstract class BaseDiskCache implements DiskCache {
 		return new File(dir, fileName);
 	}
 
+	private static ResponseValidators readValidators(File validatorsFile) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(validatorsFile)));
+			if (in.readUnsignedByte() != VALIDATORS_VERSION) {
+				return null;
+			}
+			String eTag = in.readUTF();
+			String lastModified = in.readUTF();
+			long expires = in.readLong();
+			return new ResponseValidators(eTag.length() == 0 ? null : eTag,
+					lastModified.length() == 0 ? null : lastModified, expires);
+		} catch (IOException e) {
+			L.e(e);
+			return null;
+		} finally {
+			IoUtils.closeSilently(in);
+		}
+	}
+
+	private static void writeValidators(File validatorsFile, ResponseValidators validators) {
+		File tmpFile = new File(validatorsFile.getAbsolutePath() + TEMP_IMAGE_POSTFIX);
+		boolean saved = false;
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			out.writeByte(VALIDATORS_VERSION);
+			out.writeUTF(validators.getETag() == null ? "" : validators.getETag());
+			out.writeUTF(validators.getLastModified() == null ? "" : validators.getLastModified());
+			out.writeLong(validators.getExpires());
+			out.close();
+			saved = tmpFile.renameTo(validatorsFile);
+		} catch (IOException e) {
+			L.e(e);
+		} finally {
+			IoUtils.closeSilently(out);
+			if (!saved) {
+				tmpFile.delete();
+			}
+		}
+	}
+
+	/** Deletes the oldest partial images (with their validators) if there are too many of them */
+	private static void trimPartialImages(File dir) {
+		final String partialValidatorsPostfix = TEMP_IMAGE_POSTFIX + VALIDATORS_POSTFIX;
+		File[] partialValidatorsFiles = dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(partialValidatorsPostfix);
+			}
+		});
+		if (partialValidatorsFiles == null || partialValidatorsFiles.length <= MAX_PARTIAL_IMAGES) {
+			return;
+		}
+		Arrays.sort(partialValidatorsFiles, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				long lhsModified = lhs.lastModified();
+				long rhsModified = rhs.lastModified();
+				return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < partialValidatorsFiles.length - MAX_PARTIAL_IMAGES; i++) {
+			String path = partialValidatorsFiles[i].getAbsolutePath();
+			new File(path.substring(0, path.length() - VALIDATORS_POSTFIX.length())).delete();
+			partialValidatorsFiles[i].delete();
+		}
+	}
+
+	/** Returns file of validators for incoming image file (or partial image file) */
+	private static File getValidatorsFile(File imageFile) {
+		return new File(imageFile.getAbsolutePath() + VALIDATORS_POSTFIX);
+	}
+
 	public void setBufferSize(int bufferSize) {
 		this.bufferSize = bufferSize;
 	}
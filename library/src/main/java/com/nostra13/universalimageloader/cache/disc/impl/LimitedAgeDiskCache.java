@@ -16,6 +16,7 @@
 package com.nostra13.universalimageloader.cache.disc.impl;
 
 import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.disc.ResponseValidators;
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import com.nostra13.universalimageloader.core.DefaultConfigurationFactory;
 import com.nostra13.universalimageloader.utils.IoUtils;
@@ -28,7 +29,9 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Cache which deletes files which were loaded more than defined time. Cache size is unlimited.
+ * Cache which deletes files which were loaded more than defined time. Cache size is unlimited.<br />
+ * Expired files which have {@linkplain ResponseValidators validators} aren't deleted, they are considered stale and are
+ * revalidated by conditional request. Revalidated file is considered loaded again.
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @since 1.3.1
@@ -83,8 +86,11 @@ public class LimitedAgeDiskCache extends BaseDiskCache {
 			}
 
 			if (System.currentTimeMillis() - loadingDate > maxFileAge) {
-				file.delete();
-				loadingDates.remove(file);
+				ResponseValidators validators = super.getValidators(imageUri);
+				if (validators == null || !validators.canRevalidate()) {
+					super.remove(imageUri);
+					loadingDates.remove(file);
+				}
 			} else if (!cached) {
 				loadingDates.put(file, loadingDate);
 			}
@@ -93,8 +99,9 @@ public class LimitedAgeDiskCache extends BaseDiskCache {
 	}
 
 	@Override
-	public boolean save(String imageUri, InputStream imageStream, IoUtils.CopyListener listener) throws IOException {
-		boolean saved = super.save(imageUri, imageStream, listener);
+	public boolean save(String imageUri, InputStream imageStream, long offset, ResponseValidators validators,
+			IoUtils.CopyListener listener) throws IOException {
+		boolean saved = super.save(imageUri, imageStream, offset, validators, listener);
 		rememberUsage(imageUri);
 		return saved;
 	}
@@ -106,6 +113,28 @@ public class LimitedAgeDiskCache extends BaseDiskCache {
 		return saved;
 	}
 
+	/** @return Validators of cached image. Image is stale if its max age is exceeded. */
+	@Override
+	public ResponseValidators getValidators(String imageUri) {
+		ResponseValidators validators = super.getValidators(imageUri);
+		if (validators != null) {
+			File file = getFile(imageUri);
+			Long loadingDate = loadingDates.get(file);
+			long expires = (loadingDate == null ? file.lastModified() : loadingDate) + maxFileAge;
+			if (validators.getExpires() > 0 && validators.getExpires() < expires) {
+				expires = validators.getExpires();
+			}
+			validators = new ResponseValidators(validators.getETag(), validators.getLastModified(), expires);
+		}
+		return validators;
+	}
+
+	@Override
+	public void putValidators(String imageUri, ResponseValidators validators) {
+		super.putValidators(imageUri, validators);
+		rememberUsage(imageUri);
+	}
+
 	@Override
 	public boolean remove(String imageUri) {
 		loadingDates.remove(getFile(imageUri));
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc.impl.ext;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journal writer which writes records in single background thread. Records are put into queue and written to
+ * delegate {@link JournalWriter} in the order of their arrival, so callers don't wait for disk I/O. By default delegate
+ * is flushed when queue is drained. In {@linkplain #setGroupCommit(long, int) group commit} mode records are flushed
+ * in groups: when defined number of records is written or when the oldest unflushed record is too old. Callers can
+ * request a barrier by {@link #flush()} or {@link #sync()} anytime.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+final class AsyncJournalWriter implements JournalWriter {
+
+	private static final int CLEAN = 1;
+	private static final int DIRTY = 2;
+	private static final int REMOVE = 3;
+	private static final int READ = 4;
+	private static final int FLUSH = 5;
+	private static final int SYNC = 6;
+	private static final int REPLACE = 7;
+	private static final int CLOSE = 8;
+
+	private final BlockingQueue<Record> queue = new LinkedBlockingQueue<Record>();
+	private final Thread thread;
+
+	/** Is accessed from writing thread only */
+	private JournalWriter writer;
+	private volatile boolean hasErrors;
+	private volatile long maxFlushDelay;
+	private volatile int maxUnflushedRecords;
+	/** Is guarded by this writer */
+	private boolean closed;
+
+	AsyncJournalWriter(JournalWriter writer, String threadName) {
+		this.writer = writer;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeRecords();
+			}
+		}, threadName);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void writeClean(String key, long[] lengths) {
+		enqueue(new Record(CLEAN, key, lengths.clone()));
+	}
+
+	@Override
+	public void writeDirty(String key) {
+		enqueue(new Record(DIRTY, key, null));
+	}
+
+	@Override
+	public void writeRemove(String key) {
+		enqueue(new Record(REMOVE, key, null));
+	}
+
+	@Override
+	public void writeRead(String key) {
+		enqueue(new Record(READ, key, null));
+	}
+
+	/** Waits until all previously queued records are written and flushed */
+	@Override
+	public void flush() throws IOException {
+		writeBarrier(FLUSH);
+	}
+
+	/** Waits until all previously queued records are written and forced to storage device */
+	@Override
+	public void sync() throws IOException {
+		writeBarrier(SYNC);
+	}
+
+	private void writeBarrier(int op) throws IOException {
+		Record barrier = new Record(op, null, null);
+		if (enqueue(barrier)) {
+			barrier.await();
+		}
+		if (hasErrors) {
+			throw new IOException("journal writing failed");
+		}
+	}
+
+	/**
+	 * Enables group commit mode: records are flushed when <b>maxUnflushedRecords</b> records are written or when the
+	 * oldest unflushed record waits for <b>maxFlushDelay</b> ms. Pass <b>0</b> delay to flush records as soon as
+	 * queue is drained (default mode).
+	 */
+	void setGroupCommit(long maxFlushDelay, int maxUnflushedRecords) {
+		this.maxFlushDelay = maxFlushDelay;
+		this.maxUnflushedRecords = maxUnflushedRecords;
+	}
+
+	/**
+	 * Replaces delegate writer (e.g. by writer of compacted journal). Replacing is done in writing thread after all
+	 * previously queued records are written, current delegate is closed before <b>newWriter</b> is called.
+	 */
+	void replace(Callable<JournalWriter> newWriter) {
+		Record record = new Record(REPLACE, null, null);
+		record.newWriter = newWriter;
+		enqueue(record);
+	}
+
+	/** @return <b>true</b> - if some records weren't written because of I/O errors, so journal should be rebuilt */
+	boolean hasErrors() {
+		return hasErrors;
+	}
+
+	/** Writes all queued records, closes delegate writer and stops writing thread */
+	@Override
+	public void close() throws IOException {
+		Record record = new Record(CLOSE, null, null);
+		if (enqueue(record)) {
+			record.await();
+		}
+	}
+
+	/** @return <b>true</b> - if record was queued; <b>false</b> - if writer is closed */
+	private synchronized boolean enqueue(Record record) {
+		if (closed) {
+			return false;
+		}
+		queue.add(record);
+		if (record.op == CLOSE) {
+			closed = true;
+		}
+		return true;
+	}
+
+	private void writeRecords() {
+		int unflushedCount = 0;
+		long firstUnflushedTime = 0;
+		while (true) {
+			Record record;
+			try {
+				long flushDelay = maxFlushDelay;
+				if (unflushedCount == 0 || flushDelay <= 0) {
+					record = queue.take();
+				} else {
+					long delay = firstUnflushedTime + flushDelay - System.currentTimeMillis();
+					record = delay > 0 ? queue.poll(delay, TimeUnit.MILLISECONDS) : null;
+				}
+			} catch (InterruptedException e) {
+				continue; // Thread is stopped by CLOSE record only
+			}
+
+			if (record != null) {
+				if (!writeRecord(record)) {
+					return;
+				}
+				if (record.op > READ) {
+					unflushedCount = 0; // Barrier or new writer, nothing is buffered
+					continue;
+				}
+				if (unflushedCount++ == 0) {
+					firstUnflushedTime = System.currentTimeMillis();
+				}
+			}
+
+			if (shouldFlush(record == null, unflushedCount)) {
+				try {
+					writer.flush();
+				} catch (IOException e) {
+					hasErrors = true;
+				}
+				unflushedCount = 0;
+			}
+		}
+	}
+
+	private boolean shouldFlush(boolean flushDelayExpired, int unflushedCount) {
+		if (unflushedCount == 0) {
+			return false;
+		}
+		if (flushDelayExpired) {
+			return true;
+		}
+		if (maxFlushDelay <= 0) {
+			return queue.isEmpty();
+		}
+		return unflushedCount >= maxUnflushedRecords;
+	}
+
+	/** @return <b>false</b> - if writing thread should be stopped */
+	private boolean writeRecord(Record record) {
+		try {
+			switch (record.op) {
+				case CLEAN:
+					writer.writeClean(record.key, record.lengths);
+					break;
+				case DIRTY:
+					writer.writeDirty(record.key);
+					break;
+				case REMOVE:
+					writer.writeRemove(record.key);
+					break;
+				case READ:
+					writer.writeRead(record.key);
+					break;
+				case FLUSH:
+					writer.flush();
+					break;
+				case SYNC:
+					writer.sync();
+					break;
+				case REPLACE:
+					Util.closeQuietly(writer);
+					writer = record.newWriter.call();
+					hasErrors = false;
+					break;
+				case CLOSE:
+					writer.close();
+					return false;
+			}
+		} catch (Exception e) {
+			hasErrors = true;
+			if (record.op == CLOSE) {
+				return false;
+			}
+		} finally {
+			record.done();
+		}
+		return true;
+	}
+
+	private static final class Record {
+		final int op;
+		final String key;
+		final long[] lengths;
+		Callable<JournalWriter> newWriter;
+		private CountDownLatch completion;
+
+		Record(int op, String key, long[] lengths) {
+			this.op = op;
+			this.key = key;
+			this.lengths = lengths;
+			if (op == FLUSH || op == SYNC || op == CLOSE) {
+				completion = new CountDownLatch(1);
+			}
+		}
+
+		void await() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					completion.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		void done() {
+			if (completion != null) {
+				completion.countDown();
+			}
+		}
+	}
+}
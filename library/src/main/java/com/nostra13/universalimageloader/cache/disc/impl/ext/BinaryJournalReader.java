@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc.impl.ext;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Reads {@link DiskLruCache} journal written by {@link BinaryJournalWriter}. Reading stops at the end of journal or at
+ * the first broken record (e.g. partially written during crash).
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+final class BinaryJournalReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 32 * 1024;
+
+	private final InputStream in;
+	private final byte[] record;
+	private final CRC32 crc = new CRC32();
+	private boolean broken;
+
+	/** Op code of last read record */
+	byte op;
+	/** Key of last read record */
+	String key;
+	/** Value lengths of last read record */
+	final long[] lengths;
+
+	BinaryJournalReader(InputStream in, int valueCount) {
+		this.in = new BufferedInputStream(in, BUFFER_SIZE);
+		this.record = new byte[BinaryJournalWriter.recordSize(valueCount)];
+		this.lengths = new long[valueCount];
+	}
+
+	/** @throws IOException if journal header doesn't match incoming parameters */
+	void readHeader(int appVersion, int valueCount) throws IOException {
+		byte[] header = new byte[16];
+		if (read(header) != header.length) {
+			throw new IOException("unexpected journal header: journal is too short");
+		}
+		int magic = BinaryJournalWriter.getInt(header, 0);
+		int version = BinaryJournalWriter.getInt(header, 4);
+		int journalAppVersion = BinaryJournalWriter.getInt(header, 8);
+		int journalValueCount = BinaryJournalWriter.getInt(header, 12);
+		if (magic != BinaryJournalWriter.MAGIC || version != BinaryJournalWriter.VERSION_1
+				|| journalAppVersion != appVersion || journalValueCount != valueCount) {
+			throw new IOException("unexpected journal header: [" + Integer.toHexString(magic) + ", " + version + ", "
+					+ journalAppVersion + ", " + journalValueCount + "]");
+		}
+	}
+
+	/**
+	 * Reads next record into {@link #op}, {@link #key} and {@link #lengths}.
+	 *
+	 * @return <b>true</b> - if record was read; <b>false</b> - if the end of journal or broken record was reached
+	 */
+	boolean readRecord() throws IOException {
+		int read = read(record);
+		if (read == 0) {
+			return false;
+		}
+		int crcOffset = record.length - 4;
+		crc.reset();
+		crc.update(record, 0, crcOffset);
+		int keyLength = record[1];
+		if (read != record.length || (int) crc.getValue() != BinaryJournalWriter.getInt(record, crcOffset)
+				|| keyLength <= 0 || keyLength > BinaryJournalWriter.MAX_KEY_LENGTH) {
+			broken = true;
+			return false;
+		}
+
+		op = record[0];
+		key = new String(record, BinaryJournalWriter.KEY_OFFSET, keyLength, Util.US_ASCII);
+		for (int i = 0; i < lengths.length; i++) {
+			lengths[i] = BinaryJournalWriter.getLong(record, BinaryJournalWriter.LENGTHS_OFFSET + i * 8);
+		}
+		return true;
+	}
+
+	/** @return <b>true</b> - if reading was stopped at broken record so journal tail was lost */
+	boolean isBroken() {
+		return broken;
+	}
+
+	private int read(byte[] buffer) throws IOException {
+		int total = 0;
+		while (total < buffer.length) {
+			int read = in.read(buffer, total, buffer.length - total);
+			if (read == -1) break;
+			total += read;
+		}
+		return total;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc.impl.ext;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Writes {@link DiskLruCache} journal in binary format. Journal starts with header of 4 ints: magic, format version,
+ * app version and value count. Every record has fixed size (which depends on value count only):
+ * <pre>
+ *     byte    op code (CLEAN, DIRTY, REMOVE or READ)
+ *     byte    key length
+ *     byte[]  key (ASCII), padded with zeros up to max key length
+ *     long[]  value lengths (zeros for all records except CLEAN)
+ *     int     CRC32 of all preceding bytes of record
+ * </pre>
+ * So journal is read without any parsing of text and broken or partially written records are detected by CRC.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see BinaryJournalReader
+ * @since 1.9.5
+ */
+final class BinaryJournalWriter implements JournalWriter {
+
+	static final int MAGIC = 0x444c5242; // "DLRB"
+	static final int VERSION_1 = 1;
+
+	static final byte OP_CLEAN = 1;
+	static final byte OP_DIRTY = 2;
+	static final byte OP_REMOVE = 3;
+	static final byte OP_READ = 4;
+
+	static final int MAX_KEY_LENGTH = 64;
+	static final int KEY_OFFSET = 2;
+	static final int LENGTHS_OFFSET = KEY_OFFSET + MAX_KEY_LENGTH;
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	private final FileOutputStream fileStream;
+	private final OutputStream out;
+	private final byte[] record;
+	private final CRC32 crc = new CRC32();
+
+	/**
+	 * @param append <b>true</b> - to append records to existing journal; <b>false</b> - to create new journal with
+	 *               header
+	 */
+	BinaryJournalWriter(File file, boolean append, int appVersion, int valueCount) throws IOException {
+		fileStream = new FileOutputStream(file, append);
+		out = new BufferedOutputStream(fileStream, BUFFER_SIZE);
+		record = new byte[recordSize(valueCount)];
+		if (!append) {
+			byte[] header = new byte[16];
+			putInt(header, 0, MAGIC);
+			putInt(header, 4, VERSION_1);
+			putInt(header, 8, appVersion);
+			putInt(header, 12, valueCount);
+			try {
+				out.write(header);
+			} catch (IOException e) {
+				Util.closeQuietly(out);
+				throw e;
+			}
+		}
+	}
+
+	/** Returns size of journal record for cache with defined value count */
+	static int recordSize(int valueCount) {
+		return LENGTHS_OFFSET + valueCount * 8 + 4;
+	}
+
+	@Override
+	public void writeClean(String key, long[] lengths) throws IOException {
+		write(OP_CLEAN, key, lengths);
+	}
+
+	@Override
+	public void writeDirty(String key) throws IOException {
+		write(OP_DIRTY, key, null);
+	}
+
+	@Override
+	public void writeRemove(String key) throws IOException {
+		write(OP_REMOVE, key, null);
+	}
+
+	@Override
+	public void writeRead(String key) throws IOException {
+		write(OP_READ, key, null);
+	}
+
+	private void write(byte op, String key, long[] lengths) throws IOException {
+		Arrays.fill(record, (byte) 0);
+		record[0] = op;
+		int keyLength = key.length();
+		record[1] = (byte) keyLength;
+		for (int i = 0; i < keyLength; i++) {
+			record[KEY_OFFSET + i] = (byte) key.charAt(i); // keys are validated to be ASCII
+		}
+		if (lengths != null) {
+			for (int i = 0; i < lengths.length; i++) {
+				putLong(record, LENGTHS_OFFSET + i * 8, lengths[i]);
+			}
+		}
+		int crcOffset = record.length - 4;
+		crc.reset();
+		crc.update(record, 0, crcOffset);
+		putInt(record, crcOffset, (int) crc.getValue());
+		out.write(record);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void sync() throws IOException {
+		out.flush();
+		fileStream.getFD().sync();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	static void putInt(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+
+	static void putLong(byte[] buffer, int offset, long value) {
+		putInt(buffer, offset, (int) (value >>> 32));
+		putInt(buffer, offset + 4, (int) value);
+	}
+
+	static int getInt(byte[] buffer, int offset) {
+		return (buffer[offset] & 0xff) << 24 | (buffer[offset + 1] & 0xff) << 16 | (buffer[offset + 2] & 0xff) << 8
+				| (buffer[offset + 3] & 0xff);
+	}
+
+	static long getLong(byte[] buffer, int offset) {
+		return (long) getInt(buffer, offset) << 32 | getInt(buffer, offset + 4) & 0xffffffffL;
+	}
+}
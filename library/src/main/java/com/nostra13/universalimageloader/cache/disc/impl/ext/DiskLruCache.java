@@ -15,8 +15,11 @@
  */
 package com.nostra13.universalimageloader.cache.disc.impl.ext;
 
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -30,13 +33,21 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -83,19 +94,37 @@ import java.util.regex.Pattern;
  * an error occurs while writing a cache value, the edit will fail silently.
  * Callers should handle other problems by catching {@code IOException} and
  * responding appropriately.
+ *
+ * <p>This class is thread-safe without a global lock. Entries are guarded by
+ * locks striped by key hash, reads of published entries take no lock at all,
+ * and journal records are written by a single background thread. LRU order is
+ * kept as an access order number of every entry. Journal records can be
+ * flushed in groups, see {@link #setJournalGroupCommit(long, int)}.
  */
 final class DiskLruCache implements Closeable {
 	static final String JOURNAL_FILE = "journal";
 	static final String JOURNAL_FILE_TEMP = "journal.tmp";
 	static final String JOURNAL_FILE_BACKUP = "journal.bkp";
+	static final String BINARY_JOURNAL_FILE = "journal.bin";
+	static final String BINARY_JOURNAL_FILE_TEMP = "journal.bin.tmp";
+	static final String BINARY_JOURNAL_FILE_BACKUP = "journal.bin.bkp";
+	static final String METADATA_FILE = "journal.meta";
+	static final String METADATA_FILE_TEMP = "journal.meta.tmp";
 	static final String MAGIC = "libcore.io.DiskLruCache";
 	static final String VERSION_1 = "1";
+	static final int METADATA_MAGIC = 0x554d4554; // "UMET"
+	static final int METADATA_VERSION_2 = 2;
+	static final int METADATA_MAX_LENGTH = 0xffff;
 	static final long ANY_SEQUENCE_NUMBER = -1;
 	static final Pattern LEGAL_KEY_PATTERN = Pattern.compile("[a-z0-9_-]{1,64}");
-	private static final String CLEAN = "CLEAN";
-	private static final String DIRTY = "DIRTY";
-	private static final String REMOVE = "REMOVE";
-	private static final String READ = "READ";
+	static final Pattern VALUE_FILE_PATTERN = Pattern.compile("([a-z0-9_-]{1,64})\\.(\\d{1,9})(\\.tmp)?");
+	static final String CLEAN = "CLEAN";
+	static final String DIRTY = "DIRTY";
+	static final String REMOVE = "REMOVE";
+	static final String READ = "READ";
+	private static final int METADATA_CHANGES_TO_WRITE = 64;
+	private static final int STRIPE_COUNT = 16; // Power of two
+	private static final String JOURNAL_THREAD_NAME = "uil-disk-cache-journal";
 
     /*
      * This cache uses a journal file named "journal". A typical journal file
@@ -135,59 +164,113 @@ final class DiskLruCache implements Closeable {
      * occasionally be compacted by dropping redundant lines. A temporary file named
      * "journal.tmp" will be used during compaction; that file should be deleted if
      * it exists when the cache is opened.
+     *
+     * Journal records are queued and written by a background thread, so an
+     * entry's files may be created before its DIRTY record reaches the disk.
+     * Value files which don't belong to any entry are deleted when the cache is
+     * opened.
+     *
+     * Optionally the journal is kept in binary format in "journal.bin" instead
+     * (see BinaryJournalWriter). It has the same records, but every record has
+     * fixed size and is protected by CRC, so it's read without text parsing. If
+     * the journal of the other format exists when the cache is opened, it's read
+     * and converted.
+     *
+     * Entries may also have small opaque metadata which is kept in a binary side
+     * index named "journal.meta":
+     *     int magic, int version, int value count
+     *     records: UTF key, long last access, long total length,
+     *              unsigned short metadata length, metadata bytes
+     * Records of changed entries are appended on close, flush and in the
+     * background after 64 entries are changed. A later record of a key
+     * replaces an earlier one; a removed entry gets a record with length -1.
+     * The index is rewritten with records of all entries when the journal is
+     * rebuilt. The index is only a hint: records of missing entries or entries
+     * whose length differs are dropped on open, and a broken index is ignored.
      */
 
 	private final File directory;
 	private final File journalFile;
 	private final File journalFileTmp;
 	private final File journalFileBackup;
+	private final boolean binaryJournal;
+	private final File metadataFile;
+	private final File metadataFileTmp;
 	private final int appVersion;
-	private long maxSize;
-	private int maxFileCount;
+	private volatile long maxSize;
+	private volatile int maxFileCount;
 	private final int valueCount;
-	private long size = 0;
-	private int fileCount = 0;
-	private Writer journalWriter;
-	private final LinkedHashMap<String, Entry> lruEntries =
-			new LinkedHashMap<String, Entry>(0, 0.75f, true);
-	private int redundantOpCount;
+	private final AtomicLong size = new AtomicLong();
+	private final AtomicInteger fileCount = new AtomicInteger();
+	private volatile AsyncJournalWriter journalWriter;
+	private final ConcurrentHashMap<String, Entry> lruEntries = new ConcurrentHashMap<String, Entry>();
+	private final AtomicInteger redundantOpCount = new AtomicInteger();
+	/** Keys of entries whose metadata was changed since the side index was written. */
+	private final Set<String> changedMetadataKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	/** True if records can be appended to the side index. Guarded by this cache. */
+	private boolean metadataAppendable;
+
+	/** Entry changes are guarded by the lock of the entry's key stripe. */
+	private final Object[] stripes = new Object[STRIPE_COUNT];
+
+	/**
+	 * Each access to an entry gives it the next access order number. Entries
+	 * with the least numbers are evicted first.
+	 */
+	private final AtomicLong accessCounter = new AtomicLong();
 
 	/**
 	 * To differentiate between old and current snapshots, each entry is given
 	 * a sequence number each time an edit is committed. A snapshot is stale if
 	 * its sequence number is not equal to its entry's sequence number.
 	 */
-	private long nextSequenceNumber = 0;
+	private final AtomicLong nextSequenceNumber = new AtomicLong();
 
 	/** This cache uses a single background thread to evict entries. */
 	final ThreadPoolExecutor executorService =
 			new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+	private final AtomicBoolean cleanupScheduled = new AtomicBoolean();
 	private final Callable<Void> cleanupCallable = new Callable<Void>() {
 		public Void call() throws Exception {
+			cleanupScheduled.set(false);
 			synchronized (DiskLruCache.this) {
 				if (journalWriter == null) {
 					return null; // Closed.
 				}
-				trimToSize();
-				trimToFileCount();
-				if (journalRebuildRequired()) {
-					rebuildJournal();
-					redundantOpCount = 0;
+				trimToLimits();
+				if (journalRebuildRequired() || journalWriter.hasErrors()) {
+					redundantOpCount.set(0);
+					journalWriter.replace(new Callable<JournalWriter>() {
+						@Override
+						public JournalWriter call() throws Exception {
+							return rebuildJournal();
+						}
+					});
+					compactMetadata();
+				} else if (changedMetadataKeys.size() >= METADATA_CHANGES_TO_WRITE) {
+					appendMetadata();
 				}
 			}
 			return null;
 		}
 	};
 
-	private DiskLruCache(File directory, int appVersion, int valueCount, long maxSize, int maxFileCount) {
+	private DiskLruCache(File directory, int appVersion, int valueCount, long maxSize, int maxFileCount,
+			boolean binaryJournal) {
 		this.directory = directory;
 		this.appVersion = appVersion;
-		this.journalFile = new File(directory, JOURNAL_FILE);
-		this.journalFileTmp = new File(directory, JOURNAL_FILE_TEMP);
-		this.journalFileBackup = new File(directory, JOURNAL_FILE_BACKUP);
+		this.binaryJournal = binaryJournal;
+		this.journalFile = new File(directory, binaryJournal ? BINARY_JOURNAL_FILE : JOURNAL_FILE);
+		this.journalFileTmp = new File(directory, binaryJournal ? BINARY_JOURNAL_FILE_TEMP : JOURNAL_FILE_TEMP);
+		this.journalFileBackup = new File(directory, binaryJournal ? BINARY_JOURNAL_FILE_BACKUP : JOURNAL_FILE_BACKUP);
+		this.metadataFile = new File(directory, METADATA_FILE);
+		this.metadataFileTmp = new File(directory, METADATA_FILE_TEMP);
 		this.valueCount = valueCount;
 		this.maxSize = maxSize;
 		this.maxFileCount = maxFileCount;
+		for (int i = 0; i < STRIPE_COUNT; i++) {
+			stripes[i] = new Object();
+		}
 	}
 
 	/**
@@ -202,6 +285,23 @@ final class DiskLruCache implements Closeable {
 	 */
 	public static DiskLruCache open(File directory, int appVersion, int valueCount, long maxSize, int maxFileCount)
 			throws IOException {
+		return open(directory, appVersion, valueCount, maxSize, maxFileCount, false);
+	}
+
+	/**
+	 * Opens the cache in {@code directory}, creating a cache if none exists
+	 * there.
+	 *
+	 * @param directory a writable directory
+	 * @param valueCount the number of values per cache entry. Must be positive.
+	 * @param maxSize the maximum number of bytes this cache should use to store
+	 * @param maxFileCount the maximum file count this cache should store
+	 * @param binaryJournal true to keep the journal in binary format, false to
+	 * keep it in text format
+	 * @throws IOException if reading or writing the cache directory fails
+	 */
+	public static DiskLruCache open(File directory, int appVersion, int valueCount, long maxSize, int maxFileCount,
+			boolean binaryJournal) throws IOException {
 		if (maxSize <= 0) {
 			throw new IllegalArgumentException("maxSize <= 0");
 		}
@@ -213,25 +313,35 @@ final class DiskLruCache implements Closeable {
 		}
 
 		// If a bkp file exists, use it instead.
-		File backupFile = new File(directory, JOURNAL_FILE_BACKUP);
-		if (backupFile.exists()) {
-			File journalFile = new File(directory, JOURNAL_FILE);
-			// If journal file also exists just delete backup file.
-			if (journalFile.exists()) {
-				backupFile.delete();
-			} else {
-				renameTo(backupFile, journalFile, false);
-			}
-		}
+		restoreBackup(new File(directory, JOURNAL_FILE_BACKUP), new File(directory, JOURNAL_FILE));
+		restoreBackup(new File(directory, BINARY_JOURNAL_FILE_BACKUP), new File(directory, BINARY_JOURNAL_FILE));
 
 		// Prefer to pick up where we left off.
-		DiskLruCache cache = new DiskLruCache(directory, appVersion, valueCount, maxSize, maxFileCount);
-		if (cache.journalFile.exists()) {
+		DiskLruCache cache = new DiskLruCache(directory, appVersion, valueCount, maxSize, maxFileCount, binaryJournal);
+		File otherJournalFile = new File(directory, binaryJournal ? JOURNAL_FILE : BINARY_JOURNAL_FILE);
+		if (cache.journalFile.exists() || otherJournalFile.exists()) {
 			try {
-				cache.readJournal();
+				boolean rebuildRequired;
+				if (cache.journalFile.exists()) {
+					rebuildRequired = cache.readJournal(cache.journalFile, binaryJournal);
+				} else {
+					// Journal format was changed, convert journal
+					cache.readJournal(otherJournalFile, !binaryJournal);
+					rebuildRequired = true;
+				}
 				cache.processJournal();
-				cache.journalWriter = new BufferedWriter(
-						new OutputStreamWriter(new FileOutputStream(cache.journalFile, true), Util.US_ASCII));
+				cache.deleteOrphanFiles();
+				cache.readMetadata();
+				JournalWriter journalWriter;
+				if (rebuildRequired) {
+					journalWriter = cache.rebuildJournal();
+					cache.redundantOpCount.set(0);
+					cache.compactMetadata();
+				} else {
+					journalWriter = cache.newJournalWriter(cache.journalFile, true);
+				}
+				cache.journalWriter = new AsyncJournalWriter(journalWriter, JOURNAL_THREAD_NAME);
+				deleteIfExists(otherJournalFile);
 				return cache;
 			} catch (IOException journalIsCorrupt) {
 				System.out
@@ -246,12 +356,91 @@ final class DiskLruCache implements Closeable {
 
 		// Create a new empty cache.
 		directory.mkdirs();
-		cache = new DiskLruCache(directory, appVersion, valueCount, maxSize, maxFileCount);
-		cache.rebuildJournal();
+		cache = new DiskLruCache(directory, appVersion, valueCount, maxSize, maxFileCount, binaryJournal);
+		cache.journalWriter = new AsyncJournalWriter(cache.rebuildJournal(), JOURNAL_THREAD_NAME);
 		return cache;
 	}
 
-	private void readJournal() throws IOException {
+	private static void restoreBackup(File backupFile, File journalFile) throws IOException {
+		if (backupFile.exists()) {
+			// If journal file also exists just delete backup file.
+			if (journalFile.exists()) {
+				backupFile.delete();
+			} else {
+				renameTo(backupFile, journalFile, false);
+			}
+		}
+	}
+
+	private JournalWriter newJournalWriter(File file, boolean append) throws IOException {
+		if (binaryJournal) {
+			return new BinaryJournalWriter(file, append, appVersion, valueCount);
+		} else {
+			return new TextJournalWriter(file, append, appVersion, valueCount);
+		}
+	}
+
+	/** @return true if journal tail was broken and journal must be rebuilt */
+	private boolean readJournal(File journalFile, boolean binary) throws IOException {
+		if (binary) {
+			return readBinaryJournal(journalFile);
+		} else {
+			readTextJournal(journalFile);
+			return false;
+		}
+	}
+
+	private boolean readBinaryJournal(File journalFile) throws IOException {
+		BinaryJournalReader reader = new BinaryJournalReader(new FileInputStream(journalFile), valueCount);
+		try {
+			reader.readHeader(appVersion, valueCount);
+
+			int recordCount = 0;
+			while (reader.readRecord()) {
+				readJournalRecord(reader.op, reader.key, reader.lengths);
+				recordCount++;
+			}
+			redundantOpCount.set(recordCount - lruEntries.size());
+			return reader.isBroken();
+		} finally {
+			Util.closeQuietly(reader);
+		}
+	}
+
+	private void readJournalRecord(byte op, String key, long[] lengths) throws IOException {
+		if (op == BinaryJournalWriter.OP_REMOVE) {
+			lruEntries.remove(key);
+			return;
+		}
+
+		Entry entry = lruEntries.get(key);
+		if (entry == null) {
+			if (op == BinaryJournalWriter.OP_READ) {
+				return; // Entry was removed before its access was recorded
+			}
+			entry = new Entry(key);
+			lruEntries.put(key, entry);
+		}
+		entry.accessOrder = accessCounter.incrementAndGet();
+
+		switch (op) {
+			case BinaryJournalWriter.OP_CLEAN:
+				entry.readable = true;
+				entry.currentEditor = null;
+				System.arraycopy(lengths, 0, entry.lengths, 0, valueCount);
+				break;
+			case BinaryJournalWriter.OP_DIRTY:
+				entry.currentEditor = new Editor(entry);
+				break;
+			case BinaryJournalWriter.OP_READ:
+				// This work was already done by updating access order.
+				break;
+			default:
+				throw new IOException("unexpected journal record: " + op + " " + key);
+		}
+	}
+
+	private void readTextJournal(File journalFile) throws IOException {
 		StrictLineReader reader = new StrictLineReader(new FileInputStream(journalFile), Util.US_ASCII);
 		try {
 			String magic = reader.readLine();
@@ -277,7 +466,7 @@ final class DiskLruCache implements Closeable {
 					break;
 				}
 			}
-			redundantOpCount = lineCount - lruEntries.size();
+			redundantOpCount.set(lineCount - lruEntries.size());
 		} finally {
 			Util.closeQuietly(reader);
 		}
@@ -304,9 +493,13 @@ final class DiskLruCache implements Closeable {
 
 		Entry entry = lruEntries.get(key);
 		if (entry == null) {
+			if (secondSpace == -1 && firstSpace == READ.length() && line.startsWith(READ)) {
+				return; // Entry was removed before its access was recorded
+			}
 			entry = new Entry(key);
 			lruEntries.put(key, entry);
 		}
+		entry.accessOrder = accessCounter.incrementAndGet();
 
 		if (secondSpace != -1 && firstSpace == CLEAN.length() && line.startsWith(CLEAN)) {
 			String[] parts = line.substring(secondSpace + 1).split(" ");
@@ -316,7 +509,7 @@ final class DiskLruCache implements Closeable {
 		} else if (secondSpace == -1 && firstSpace == DIRTY.length() && line.startsWith(DIRTY)) {
 			entry.currentEditor = new Editor(entry);
 		} else if (secondSpace == -1 && firstSpace == READ.length() && line.startsWith(READ)) {
-			// This work was already done by calling lruEntries.get().
+			// This work was already done by updating access order.
 		} else {
 			throw new IOException("unexpected journal line: " + line);
 		}
@@ -332,8 +525,8 @@ final class DiskLruCache implements Closeable {
 			Entry entry = i.next();
 			if (entry.currentEditor == null) {
 				for (int t = 0; t < valueCount; t++) {
-					size += entry.lengths[t];
-					fileCount++;
+					size.addAndGet(entry.lengths[t]);
+					fileCount.incrementAndGet();
 				}
 			} else {
 				entry.currentEditor = null;
@@ -347,32 +540,177 @@ final class DiskLruCache implements Closeable {
 	}
 
 	/**
-	 * Creates a new journal that omits redundant information. This replaces the
-	 * current journal if it exists.
+	 * Deletes value files which don't belong to any published entry. They are
+	 * left if the process dies before a DIRTY record of a new entry reaches the
+	 * journal.
+	 */
+	private void deleteOrphanFiles() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			Matcher matcher = VALUE_FILE_PATTERN.matcher(file.getName());
+			if (matcher.matches()) {
+				Entry entry = lruEntries.get(matcher.group(1));
+				boolean dirty = matcher.group(3) != null;
+				if (entry == null || dirty || Integer.parseInt(matcher.group(2)) >= valueCount) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads metadata side index. Metadata is a hint only, so it's dropped silently for missing or changed entries and
+	 * if side index can't be read.
 	 */
-	private synchronized void rebuildJournal() throws IOException {
-		if (journalWriter != null) {
-			journalWriter.close();
+	private void readMetadata() {
+		deleteMetadataFile(metadataFileTmp);
+		if (!metadataFile.exists()) {
+			return;
 		}
 
-		Writer writer = new BufferedWriter(
-				new OutputStreamWriter(new FileOutputStream(journalFileTmp), Util.US_ASCII));
+		Map<String, MetadataRecord> records = new HashMap<String, MetadataRecord>();
+		DataInputStream in = null;
 		try {
-			writer.write(MAGIC);
-			writer.write("\n");
-			writer.write(VERSION_1);
-			writer.write("\n");
-			writer.write(Integer.toString(appVersion));
-			writer.write("\n");
-			writer.write(Integer.toString(valueCount));
-			writer.write("\n");
-			writer.write("\n");
-
-			for (Entry entry : lruEntries.values()) {
-				if (entry.currentEditor != null) {
-					writer.write(DIRTY + ' ' + entry.key + '\n');
-				} else {
-					writer.write(CLEAN + ' ' + entry.key + entry.getLengths() + '\n');
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(metadataFile)));
+			if (in.readInt() != METADATA_MAGIC || in.readInt() != METADATA_VERSION_2 || in.readInt() != valueCount) {
+				return;
+			}
+			metadataAppendable = true;
+			while (in.available() > 0) {
+				String key = in.readUTF();
+				long lastAccess = in.readLong();
+				long length = in.readLong();
+				byte[] data = new byte[in.readUnsignedShort()];
+				in.readFully(data);
+				records.put(key, new MetadataRecord(key, lastAccess, length, data));
+			}
+		} catch (EOFException e) {
+			// The last record wasn't appended completely, the index will be rewritten
+			metadataAppendable = false;
+		} catch (IOException e) {
+			metadataAppendable = false;
+			return; // Side index is broken, start without metadata
+		} finally {
+			Util.closeQuietly(in);
+		}
+
+		for (Entry entry : lruEntries.values()) {
+			MetadataRecord record = records.get(entry.key);
+			if (record != null && entry.readable && record.length == entry.getTotalLength()) {
+				entry.lastAccess = record.lastAccess;
+				entry.metadata = record.data.length > 0 ? record.data : null;
+			}
+		}
+	}
+
+	/**
+	 * Appends records of changed entries to metadata side index or rewrites the index if records can't be appended.
+	 * Fails silently because metadata can be restored by its producer.
+	 */
+	private void appendMetadata() {
+		if (!metadataAppendable) {
+			compactMetadata();
+			return;
+		}
+		List<String> keys = new ArrayList<String>(changedMetadataKeys);
+		changedMetadataKeys.removeAll(keys);
+		List<MetadataRecord> records = new ArrayList<MetadataRecord>(keys.size());
+		for (String key : keys) {
+			records.add(newMetadataRecord(key, lruEntries.get(key)));
+		}
+
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(metadataFile, true)));
+			writeMetadataRecords(out, records);
+			out.close();
+		} catch (IOException e) {
+			Util.closeQuietly(out);
+			metadataAppendable = false;
+			deleteMetadataFile(metadataFile); // Don't leave outdated index
+		}
+	}
+
+	/** Rewrites metadata side index with records of all entries. Fails silently like {@link #appendMetadata()}. */
+	private void compactMetadata() {
+		changedMetadataKeys.clear();
+		List<MetadataRecord> records = new ArrayList<MetadataRecord>(lruEntries.size());
+		for (Entry entry : lruEntries.values()) {
+			MetadataRecord record = newMetadataRecord(entry.key, entry);
+			if (record.length >= 0) {
+				records.add(record);
+			}
+		}
+
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(metadataFileTmp)));
+			out.writeInt(METADATA_MAGIC);
+			out.writeInt(METADATA_VERSION_2);
+			out.writeInt(valueCount);
+			writeMetadataRecords(out, records);
+			out.close();
+			out = null;
+			renameTo(metadataFileTmp, metadataFile, true);
+			metadataAppendable = true;
+		} catch (IOException e) {
+			Util.closeQuietly(out);
+			metadataAppendable = false;
+			deleteMetadataFile(metadataFileTmp);
+			deleteMetadataFile(metadataFile); // Don't leave outdated index
+		}
+	}
+
+	/** Returns record of entry's metadata or record of removed entry if the entry isn't readable. */
+	private MetadataRecord newMetadataRecord(String key, Entry entry) {
+		if (entry != null) {
+			synchronized (stripeFor(key)) {
+				if (entry.readable && lruEntries.get(key) == entry) {
+					byte[] data = entry.metadata != null ? entry.metadata : new byte[0];
+					return new MetadataRecord(key, entry.lastAccess, entry.getTotalLength(), data);
+				}
+			}
+		}
+		return new MetadataRecord(key, 0, -1, new byte[0]);
+	}
+
+	private static void writeMetadataRecords(DataOutputStream out, List<MetadataRecord> records) throws IOException {
+		for (MetadataRecord record : records) {
+			out.writeUTF(record.key);
+			out.writeLong(record.lastAccess);
+			out.writeLong(record.length);
+			out.writeShort(record.data.length);
+			out.write(record.data);
+		}
+	}
+
+	private static void deleteMetadataFile(File file) {
+		if (file.exists()) {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Creates a new journal that omits redundant information. This replaces the
+	 * current journal if it exists. Entries are written in access order, so LRU
+	 * order is restored on replay. Is called on opening or by the journal
+	 * writing thread after the current journal writer is closed.
+	 *
+	 * @return writer which appends to the new journal
+	 */
+	private JournalWriter rebuildJournal() throws IOException {
+		JournalWriter writer = newJournalWriter(journalFileTmp, false);
+		try {
+			for (Entry entry : entriesInAccessOrder()) {
+				synchronized (stripeFor(entry.key)) {
+					if (entry.currentEditor != null) {
+						writer.writeDirty(entry.key);
+					} else if (entry.readable) {
+						writer.writeClean(entry.key, entry.lengths);
+					}
 				}
 			}
 		} finally {
@@ -385,8 +723,33 @@ final class DiskLruCache implements Closeable {
 		renameTo(journalFileTmp, journalFile, false);
 		journalFileBackup.delete();
 
-		journalWriter = new BufferedWriter(
-				new OutputStreamWriter(new FileOutputStream(journalFile, true), Util.US_ASCII));
+		return newJournalWriter(journalFile, true);
+	}
+
+	/** Returns entries sorted from least recently used to most recently used. */
+	private List<Entry> entriesInAccessOrder() {
+		// Access orders are copied because they can be changed during sorting
+		List<AccessRecord> records = new ArrayList<AccessRecord>(lruEntries.size());
+		for (Entry entry : lruEntries.values()) {
+			records.add(new AccessRecord(entry, entry.accessOrder));
+		}
+		Collections.sort(records, new Comparator<AccessRecord>() {
+			@Override
+			public int compare(AccessRecord lhs, AccessRecord rhs) {
+				return lhs.accessOrder < rhs.accessOrder ? -1 : (lhs.accessOrder == rhs.accessOrder ? 0 : 1);
+			}
+		});
+		List<Entry> entries = new ArrayList<Entry>(records.size());
+		for (AccessRecord record : records) {
+			entries.add(record.entry);
+		}
+		return entries;
+	}
+
+	private Object stripeFor(String key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return stripes[hash & (STRIPE_COUNT - 1)];
 	}
 
 	private static void deleteIfExists(File file) throws IOException {
@@ -407,10 +770,11 @@ final class DiskLruCache implements Closeable {
 	/**
 	 * Returns a snapshot of the entry named {@code key}, or null if it doesn't
 	 * exist is not currently readable. If a value is returned, it is moved to
-	 * the head of the LRU queue.
+	 * the head of the LRU queue. Takes no lock unless the entry is being
+	 * published concurrently.
 	 */
-	public synchronized Snapshot get(String key) throws IOException {
-		checkNotClosed();
+	public Snapshot get(String key) throws IOException {
+		AsyncJournalWriter journalWriter = checkNotClosed();
 		validateKey(key);
 		Entry entry = lruEntries.get(key);
 		if (entry == null) {
@@ -423,7 +787,42 @@ final class DiskLruCache implements Closeable {
 
 		// Open all streams eagerly to guarantee that we see a single published
 		// snapshot. If we opened streams lazily then the streams could come
-		// from different edits.
+		// from different edits. If an edit is published while streams are being
+		// opened then they are reopened under the entry's lock.
+		Snapshot snapshot = null;
+		boolean consistent = false;
+		int publishCount = entry.publishCount;
+		if ((publishCount & 1) == 0 && entry.readable) { // Edit isn't being published now, entry isn't removed
+			snapshot = openSnapshot(entry);
+			consistent = entry.publishCount == publishCount;
+			if (!consistent && snapshot != null) {
+				snapshot.close();
+				snapshot = null;
+			}
+		}
+		if (!consistent) {
+			synchronized (stripeFor(key)) {
+				snapshot = entry.readable ? openSnapshot(entry) : null;
+			}
+		}
+		if (snapshot == null) {
+			return null;
+		}
+
+		entry.accessOrder = accessCounter.incrementAndGet();
+		entry.lastAccess = System.currentTimeMillis();
+		redundantOpCount.incrementAndGet();
+		journalWriter.writeRead(key);
+		if (journalRebuildRequired()) {
+			scheduleCleanup();
+		}
+		return snapshot;
+	}
+
+	/** Opens streams of entry's values, returns null if some file is missing. */
+	private Snapshot openSnapshot(Entry entry) {
+		long sequenceNumber = entry.sequenceNumber;
+		long[] lengths = entry.lengths.clone();
 		File[] files = new File[valueCount];
 		InputStream[] ins = new InputStream[valueCount];
 		try {
@@ -444,14 +843,73 @@ final class DiskLruCache implements Closeable {
 			}
 			return null;
 		}
+		return new Snapshot(entry.key, sequenceNumber, files, ins, lengths);
+	}
 
-		redundantOpCount++;
-		journalWriter.append(READ + ' ' + key + '\n');
-		if (journalRebuildRequired()) {
-			executorService.submit(cleanupCallable);
+	/**
+	 * Returns metadata of the entry named {@code key}, or null if the entry
+	 * doesn't exist or is not currently readable. Metadata bytes are null if
+	 * they weren't set. Entry files aren't opened and nothing is written to the
+	 * journal.
+	 */
+	public Metadata getMetadata(String key) {
+		checkNotClosed();
+		validateKey(key);
+		Entry entry = lruEntries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		synchronized (stripeFor(key)) {
+			if (!entry.readable) {
+				return null;
+			}
+			return new Metadata(entry.metadata, entry.lengths.clone(), entry.lastAccess, entry.sequenceNumber);
 		}
+	}
 
-		return new Snapshot(key, entry.sequenceNumber, files, ins, entry.lengths);
+	/**
+	 * Sets metadata of the entry named {@code key}. Metadata is kept until the
+	 * entry is removed or its values are committed again.
+	 *
+	 * @return true if metadata was set, false if the entry doesn't exist or is
+	 * not currently readable.
+	 */
+	public boolean setMetadata(String key, byte[] metadata) {
+		return setMetadata(key, ANY_SEQUENCE_NUMBER, metadata);
+	}
+
+	/**
+	 * Sets metadata of the entry named {@code key} if its values weren't
+	 * committed since {@code expectedSequenceNumber} was got from
+	 * {@link Metadata#getSequenceNumber()}, so metadata of previous values
+	 * isn't attached to newer ones.
+	 *
+	 * @return true if metadata was set, false if the entry doesn't exist, is
+	 * not currently readable or was committed again.
+	 */
+	public boolean setMetadata(String key, long expectedSequenceNumber, byte[] metadata) {
+		checkNotClosed();
+		validateKey(key);
+		if (metadata.length > METADATA_MAX_LENGTH) {
+			throw new IllegalArgumentException("metadata length > " + METADATA_MAX_LENGTH);
+		}
+		Entry entry = lruEntries.get(key);
+		if (entry == null) {
+			return false;
+		}
+		synchronized (stripeFor(key)) {
+			if (!entry.readable || lruEntries.get(key) != entry || (expectedSequenceNumber != ANY_SEQUENCE_NUMBER
+					&& entry.sequenceNumber != expectedSequenceNumber)) {
+				return false;
+			}
+			entry.metadata = metadata.clone();
+		}
+
+		changedMetadataKeys.add(key);
+		if (changedMetadataKeys.size() >= METADATA_CHANGES_TO_WRITE) {
+			scheduleCleanup();
+		}
+		return true;
 	}
 
 	/**
@@ -462,28 +920,31 @@ final class DiskLruCache implements Closeable {
 		return edit(key, ANY_SEQUENCE_NUMBER);
 	}
 
-	private synchronized Editor edit(String key, long expectedSequenceNumber) throws IOException {
-		checkNotClosed();
+	private Editor edit(String key, long expectedSequenceNumber) throws IOException {
+		AsyncJournalWriter journalWriter = checkNotClosed();
 		validateKey(key);
-		Entry entry = lruEntries.get(key);
-		if (expectedSequenceNumber != ANY_SEQUENCE_NUMBER && (entry == null
-				|| entry.sequenceNumber != expectedSequenceNumber)) {
-			return null; // Snapshot is stale.
-		}
-		if (entry == null) {
-			entry = new Entry(key);
-			lruEntries.put(key, entry);
-		} else if (entry.currentEditor != null) {
-			return null; // Another edit is in progress.
-		}
+		synchronized (stripeFor(key)) {
+			Entry entry = lruEntries.get(key);
+			if (expectedSequenceNumber != ANY_SEQUENCE_NUMBER && (entry == null
+					|| entry.sequenceNumber != expectedSequenceNumber)) {
+				return null; // Snapshot is stale.
+			}
+			if (entry == null) {
+				entry = new Entry(key);
+				entry.accessOrder = accessCounter.incrementAndGet();
+				lruEntries.put(key, entry);
+			} else if (entry.currentEditor != null) {
+				return null; // Another edit is in progress.
+			}
 
-		Editor editor = new Editor(entry);
-		entry.currentEditor = editor;
+			Editor editor = new Editor(entry);
+			entry.currentEditor = editor;
 
-		// Flush the journal before creating files to prevent file leaks.
-		journalWriter.write(DIRTY + ' ' + key + '\n');
-		journalWriter.flush();
-		return editor;
+			// The journal isn't flushed here, files which are created before the
+			// record reaches the journal are deleted as orphans on opening.
+			journalWriter.writeDirty(key);
+			return editor;
+		}
 	}
 
 	/** Returns the directory where this cache stores its data. */
@@ -495,12 +956,12 @@ final class DiskLruCache implements Closeable {
 	 * Returns the maximum number of bytes that this cache should use to store
 	 * its data.
 	 */
-	public synchronized long getMaxSize() {
+	public long getMaxSize() {
 		return maxSize;
 	}
 
 	/** Returns the maximum number of files that this cache should store */
-	public synchronized int getMaxFileCount() {
+	public int getMaxFileCount() {
 		return maxFileCount;
 	}
 
@@ -508,9 +969,9 @@ final class DiskLruCache implements Closeable {
 	 * Changes the maximum number of bytes the cache can store and queues a job
 	 * to trim the existing store, if necessary.
 	 */
-	public synchronized void setMaxSize(long maxSize) {
+	public void setMaxSize(long maxSize) {
 		this.maxSize = maxSize;
-		executorService.submit(cleanupCallable);
+		scheduleCleanup();
 	}
 
 	/**
@@ -518,8 +979,8 @@ final class DiskLruCache implements Closeable {
 	 * this cache. This may be greater than the max size if a background
 	 * deletion is pending.
 	 */
-	public synchronized long size() {
-		return size;
+	public long size() {
+		return size.get();
 	}
 
 	/**
@@ -527,63 +988,79 @@ final class DiskLruCache implements Closeable {
 	 * this cache. This may be greater than the max file count if a background
 	 * deletion is pending.
 	 */
-	public synchronized long fileCount() {
-		return fileCount;
+	public long fileCount() {
+		return fileCount.get();
 	}
 
-	private synchronized void completeEdit(Editor editor, boolean success) throws IOException {
+	private void completeEdit(Editor editor, boolean success) throws IOException {
 		Entry entry = editor.entry;
-		if (entry.currentEditor != editor) {
-			throw new IllegalStateException();
-		}
-
-		// If this edit is creating the entry for the first time, every index must have a value.
-		if (success && !entry.readable) {
-			for (int i = 0; i < valueCount; i++) {
-				if (!editor.written[i]) {
-					editor.abort();
-					throw new IllegalStateException("Newly created entry didn't create value for index " + i);
-				}
-				if (!entry.getDirtyFile(i).exists()) {
-					editor.abort();
-					return;
+		synchronized (stripeFor(entry.key)) {
+			if (entry.currentEditor != editor) {
+				throw new IllegalStateException();
+			}
+			// Writer is read once: cache can be closed concurrently, close() doesn't take stripe locks
+			AsyncJournalWriter journalWriter = checkNotClosed();
+
+			// If this edit is creating the entry for the first time, every index must have a value.
+			if (success && !entry.readable) {
+				for (int i = 0; i < valueCount; i++) {
+					if (!editor.written[i]) {
+						editor.abort();
+						throw new IllegalStateException("Newly created entry didn't create value for index " + i);
+					}
+					if (!entry.getDirtyFile(i).exists()) {
+						editor.abort();
+						return;
+					}
 				}
 			}
-		}
 
-		for (int i = 0; i < valueCount; i++) {
-			File dirty = entry.getDirtyFile(i);
-			if (success) {
-				if (dirty.exists()) {
-					File clean = entry.getCleanFile(i);
-					dirty.renameTo(clean);
-					long oldLength = entry.lengths[i];
-					long newLength = clean.length();
-					entry.lengths[i] = newLength;
-					size = size - oldLength + newLength;
-					fileCount++;
+			entry.publishCount++; // Lock-free readers must not open values during publishing
+			try {
+				for (int i = 0; i < valueCount; i++) {
+					File dirty = entry.getDirtyFile(i);
+					if (success) {
+						if (dirty.exists()) {
+							if (entry.metadata != null) {
+								entry.metadata = null; // Metadata describes previous value
+								changedMetadataKeys.add(entry.key);
+							}
+							File clean = entry.getCleanFile(i);
+							dirty.renameTo(clean);
+							long oldLength = entry.lengths[i];
+							long newLength = clean.length();
+							entry.lengths[i] = newLength;
+							size.addAndGet(newLength - oldLength);
+							if (!entry.readable) {
+								fileCount.incrementAndGet();
+							}
+						}
+					} else {
+						deleteIfExists(dirty);
+					}
 				}
-			} else {
-				deleteIfExists(dirty);
-			}
-		}
 
-		redundantOpCount++;
-		entry.currentEditor = null;
-		if (entry.readable | success) {
-			entry.readable = true;
-			journalWriter.write(CLEAN + ' ' + entry.key + entry.getLengths() + '\n');
-			if (success) {
-				entry.sequenceNumber = nextSequenceNumber++;
+				redundantOpCount.incrementAndGet();
+				entry.currentEditor = null;
+				if (entry.readable | success) {
+					if (success) {
+						entry.sequenceNumber = nextSequenceNumber.getAndIncrement();
+						entry.lastAccess = System.currentTimeMillis();
+						entry.accessOrder = accessCounter.incrementAndGet();
+					}
+					entry.readable = true;
+					journalWriter.writeClean(entry.key, entry.lengths);
+				} else {
+					lruEntries.remove(entry.key);
+					journalWriter.writeRemove(entry.key);
+				}
+			} finally {
+				entry.publishCount++;
 			}
-		} else {
-			lruEntries.remove(entry.key);
-			journalWriter.write(REMOVE + ' ' + entry.key + '\n');
 		}
-		journalWriter.flush();
 
-		if (size > maxSize || fileCount > maxFileCount || journalRebuildRequired()) {
-			executorService.submit(cleanupCallable);
+		if (size.get() > maxSize || fileCount.get() > maxFileCount || journalRebuildRequired()) {
+			scheduleCleanup();
 		}
 	}
 
@@ -593,62 +1070,108 @@ final class DiskLruCache implements Closeable {
 	 */
 	private boolean journalRebuildRequired() {
 		final int redundantOpCompactThreshold = 2000;
+		int redundantOpCount = this.redundantOpCount.get();
 		return redundantOpCount >= redundantOpCompactThreshold //
 				&& redundantOpCount >= lruEntries.size();
 	}
 
+	/** Submits cleanup job if it isn't submitted yet. */
+	private void scheduleCleanup() {
+		if (cleanupScheduled.compareAndSet(false, true)) {
+			executorService.submit(cleanupCallable);
+		}
+	}
+
 	/**
 	 * Drops the entry for {@code key} if it exists and can be removed. Entries
 	 * actively being edited cannot be removed.
 	 *
 	 * @return true if an entry was removed.
 	 */
-	public synchronized boolean remove(String key) throws IOException {
-		checkNotClosed();
+	public boolean remove(String key) throws IOException {
+		AsyncJournalWriter journalWriter = checkNotClosed();
 		validateKey(key);
-		Entry entry = lruEntries.get(key);
-		if (entry == null || entry.currentEditor != null) {
-			return false;
-		}
+		synchronized (stripeFor(key)) {
+			Entry entry = lruEntries.get(key);
+			if (entry == null || entry.currentEditor != null) {
+				return false;
+			}
 
-		for (int i = 0; i < valueCount; i++) {
-			File file = entry.getCleanFile(i);
-			if (file.exists() && !file.delete()) {
-				throw new IOException("failed to delete " + file);
+			// Lock-free readers must not open values of removed entry: a new
+			// entry can publish values into the same files right after removal
+			entry.publishCount++;
+			try {
+				entry.readable = false;
+				for (int i = 0; i < valueCount; i++) {
+					File file = entry.getCleanFile(i);
+					if (file.exists() && !file.delete()) {
+						throw new IOException("failed to delete " + file);
+					}
+					size.addAndGet(-entry.lengths[i]);
+					fileCount.decrementAndGet();
+					entry.lengths[i] = 0;
+				}
+
+				redundantOpCount.incrementAndGet();
+				journalWriter.writeRemove(key);
+				lruEntries.remove(key);
+				if (entry.metadata != null) {
+					changedMetadataKeys.add(key); // Index mustn't give metadata to a new entry of the same length
+				}
+			} finally {
+				entry.publishCount++;
 			}
-			size -= entry.lengths[i];
-			fileCount--;
-			entry.lengths[i] = 0;
 		}
 
-		redundantOpCount++;
-		journalWriter.append(REMOVE + ' ' + key + '\n');
-		lruEntries.remove(key);
-
 		if (journalRebuildRequired()) {
-			executorService.submit(cleanupCallable);
+			scheduleCleanup();
 		}
 
 		return true;
 	}
 
 	/** Returns true if this cache has been closed. */
-	public synchronized boolean isClosed() {
+	public boolean isClosed() {
 		return journalWriter == null;
 	}
 
-	private void checkNotClosed() {
+	private AsyncJournalWriter checkNotClosed() {
+		AsyncJournalWriter journalWriter = this.journalWriter;
 		if (journalWriter == null) {
 			throw new IllegalStateException("cache is closed");
 		}
+		return journalWriter;
+	}
+
+	/**
+	 * Enables group commit of journal records: records are flushed to journal
+	 * file in groups of {@code maxUnflushedRecords} or when the oldest unflushed
+	 * record waits for {@code maxFlushDelay} ms. Lost records can't corrupt the
+	 * cache: entries without CLEAN record are dropped on open, their files are
+	 * deleted as orphans. Pass {@code 0} delay to flush records as soon as there
+	 * are no more records to write (default).
+	 */
+	public void setJournalGroupCommit(long maxFlushDelay, int maxUnflushedRecords) {
+		if (maxFlushDelay < 0) {
+			throw new IllegalArgumentException("maxFlushDelay < 0");
+		}
+		if (maxUnflushedRecords <= 0) {
+			throw new IllegalArgumentException("maxUnflushedRecords <= 0");
+		}
+		checkNotClosed().setGroupCommit(maxFlushDelay, maxUnflushedRecords);
 	}
 
-	/** Force buffered operations to the filesystem. */
+	/**
+	 * Force buffered operations to the filesystem. All journal records written
+	 * before this call are forced to the storage device when it returns.
+	 */
 	public synchronized void flush() throws IOException {
-		checkNotClosed();
-		trimToSize();
-		trimToFileCount();
-		journalWriter.flush();
+		AsyncJournalWriter journalWriter = checkNotClosed();
+		trimToLimits();
+		journalWriter.sync();
+		if (!changedMetadataKeys.isEmpty()) {
+			appendMetadata();
+		}
 	}
 
 	/** Closes this cache. Stored values will remain on the filesystem. */
@@ -657,27 +1180,31 @@ final class DiskLruCache implements Closeable {
 			return; // Already closed.
 		}
 		for (Entry entry : new ArrayList<Entry>(lruEntries.values())) {
-			if (entry.currentEditor != null) {
-				entry.currentEditor.abort();
+			Editor editor = entry.currentEditor;
+			if (editor != null) {
+				try {
+					editor.abort();
+				} catch (IllegalStateException ignored) {
+					// Edit was completed concurrently
+				}
 			}
 		}
-		trimToSize();
-		trimToFileCount();
+		trimToLimits();
+		appendMetadata();
 		journalWriter.close();
 		journalWriter = null;
 	}
 
-	private void trimToSize() throws IOException {
-		while (size > maxSize) {
-			Map.Entry<String, Entry> toEvict = lruEntries.entrySet().iterator().next();
-			remove(toEvict.getKey());
+	/** Evicts least recently used entries until size and file count fit limits. */
+	private void trimToLimits() throws IOException {
+		if (size.get() <= maxSize && fileCount.get() <= maxFileCount) {
+			return;
 		}
-	}
-
-	private void trimToFileCount() throws IOException {
-		while (fileCount > maxFileCount) {
-			Map.Entry<String, Entry> toEvict = lruEntries.entrySet().iterator().next();
-			remove(toEvict.getKey());
+		for (Entry entry : entriesInAccessOrder()) {
+			if (size.get() <= maxSize && fileCount.get() <= maxFileCount) {
+				break;
+			}
+			remove(entry.key);
 		}
 	}
 
@@ -754,6 +1281,68 @@ final class DiskLruCache implements Closeable {
 		}
 	}
 
+	/** Metadata of an entry. */
+	public static final class Metadata {
+		private final byte[] data;
+		private final long[] lengths;
+		private final long lastAccess;
+		private final long sequenceNumber;
+
+		private Metadata(byte[] data, long[] lengths, long lastAccess, long sequenceNumber) {
+			this.data = data;
+			this.lengths = lengths;
+			this.lastAccess = lastAccess;
+			this.sequenceNumber = sequenceNumber;
+		}
+
+		/** Returns metadata bytes or null if they weren't set. Returned array must not be modified. */
+		public byte[] getData() {
+			return data;
+		}
+
+		/** Returns the byte length of the value for {@code index}. */
+		public long getLength(int index) {
+			return lengths[index];
+		}
+
+		/** Returns time of the last read or commit of the entry, or 0 if unknown. */
+		public long getLastAccess() {
+			return lastAccess;
+		}
+
+		/**
+		 * Returns sequence number of the entry's values, see
+		 * {@link #setMetadata(String, long, byte[])}.
+		 */
+		public long getSequenceNumber() {
+			return sequenceNumber;
+		}
+	}
+
+	private static final class MetadataRecord {
+		private final String key;
+		private final long lastAccess;
+		private final long length;
+		private final byte[] data;
+
+		private MetadataRecord(String key, long lastAccess, long length, byte[] data) {
+			this.key = key;
+			this.lastAccess = lastAccess;
+			this.length = length;
+			this.data = data;
+		}
+	}
+
+	private static final class AccessRecord {
+		private final Entry entry;
+		private final long accessOrder;
+
+		private AccessRecord(Entry entry, long accessOrder) {
+			this.entry = entry;
+			this.accessOrder = accessOrder;
+		}
+	}
+
 	private static final OutputStream NULL_OUTPUT_STREAM = new OutputStream() {
 		@Override
 		public void write(int b) throws IOException {
@@ -778,7 +1367,7 @@ final class DiskLruCache implements Closeable {
 		 * or null if no value has been committed.
 		 */
 		public InputStream newInputStream(int index) throws IOException {
-			synchronized (DiskLruCache.this) {
+			synchronized (stripeFor(entry.key)) {
 				if (entry.currentEditor != this) {
 					throw new IllegalStateException();
 				}
@@ -810,7 +1399,7 @@ final class DiskLruCache implements Closeable {
 		 * IOExceptions.
 		 */
 		public OutputStream newOutputStream(int index) throws IOException {
-			synchronized (DiskLruCache.this) {
+			synchronized (stripeFor(entry.key)) {
 				if (entry.currentEditor != this) {
 					throw new IllegalStateException();
 				}
@@ -835,6 +1424,50 @@ final class DiskLruCache implements Closeable {
 			}
 		}
 
+		/**
+		 * Returns a new unbuffered output stream to write the value at
+		 * {@code index}. Written data is appended to contents of
+		 * {@code initialValue} file which is moved into this edit, so it must be
+		 * located on the same file system as the cache directory.
+		 *
+		 * @throws IOException if {@code initialValue} can't be moved
+		 */
+		public OutputStream newOutputStream(int index, File initialValue) throws IOException {
+			synchronized (stripeFor(entry.key)) {
+				if (entry.currentEditor != this) {
+					throw new IllegalStateException();
+				}
+				File dirtyFile = entry.getDirtyFile(index);
+				if (!initialValue.renameTo(dirtyFile)) {
+					throw new IOException("Can't move " + initialValue + " to " + dirtyFile);
+				}
+				if (!entry.readable) {
+					written[index] = true;
+				}
+				return new FaultHidingOutputStream(new FileOutputStream(dirtyFile, true));
+			}
+		}
+
+		/**
+		 * Aborts this edit, but keeps the value written at {@code index} by
+		 * moving it to {@code destination} file. Value isn't kept if its writing
+		 * failed.
+		 *
+		 * @return true if value was moved to {@code destination}
+		 */
+		public boolean abortAndMoveValue(int index, File destination) throws IOException {
+			boolean moved;
+			synchronized (stripeFor(entry.key)) {
+				if (entry.currentEditor != this) {
+					throw new IllegalStateException();
+				}
+				File dirtyFile = entry.getDirtyFile(index);
+				moved = !hasErrors && dirtyFile.exists() && dirtyFile.renameTo(destination);
+			}
+			completeEdit(this, false);
+			return moved;
+		}
+
 		/** Sets the value at {@code index} to {@code value}. */
 		public void set(int index, String value) throws IOException {
 			Writer writer = null;
@@ -923,25 +1556,37 @@ final class DiskLruCache implements Closeable {
 		private final long[] lengths;
 
 		/** True if this entry has ever been published. */
-		private boolean readable;
+		private volatile boolean readable;
 
 		/** The ongoing edit or null if this entry is not being edited. */
-		private Editor currentEditor;
+		private volatile Editor currentEditor;
 
 		/** The sequence number of the most recently committed edit to this entry. */
-		private long sequenceNumber;
+		private volatile long sequenceNumber;
+
+		/** Incremented before and after publishing of an edit, so it's odd during publishing. */
+		private volatile int publishCount;
+
+		/** Access order number of this entry, see {@link #accessCounter}. */
+		private volatile long accessOrder;
+
+		/** Opaque metadata of the published values or null if it wasn't set. */
+		private volatile byte[] metadata;
+
+		/** Time of the last read or commit of this entry, 0 if unknown. */
+		private volatile long lastAccess;
 
 		private Entry(String key) {
 			this.key = key;
 			this.lengths = new long[valueCount];
 		}
 
-		public String getLengths() throws IOException {
-			StringBuilder result = new StringBuilder();
+		private long getTotalLength() {
+			long totalLength = 0;
 			for (long size : lengths) {
-				result.append(' ').append(size);
+				totalLength += size;
 			}
-			return result.toString();
+			return totalLength;
 		}
 
 		/** Set lengths using decimal numbers like "10123". */
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc.impl.ext;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Appends records to {@link DiskLruCache} journal. Implementations define journal format.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see TextJournalWriter
+ * @see BinaryJournalWriter
+ * @since 1.9.5
+ */
+interface JournalWriter extends Closeable {
+
+	/** Appends record about published entry with its value lengths */
+	void writeClean(String key, long[] lengths) throws IOException;
+
+	/** Appends record about entry which is being created or updated */
+	void writeDirty(String key) throws IOException;
+
+	/** Appends record about removed entry */
+	void writeRemove(String key) throws IOException;
+
+	/** Appends record about entry access */
+	void writeRead(String key) throws IOException;
+
+	/** Writes buffered records to journal file */
+	void flush() throws IOException;
+
+	/** Writes buffered records to journal file and forces them to storage device */
+	void sync() throws IOException;
+}
@@ -17,38 +17,85 @@ package com.nostra13.universalimageloader.cache.disc.impl.ext;
 
 import android.graphics.Bitmap;
 import com.nostra13.universalimageloader.cache.disc.DiskCache;
+import com.nostra13.universalimageloader.cache.disc.ImageMetadata;
+import com.nostra13.universalimageloader.cache.disc.ImageMetadataStore;
+import com.nostra13.universalimageloader.cache.disc.PartialImage;
+import com.nostra13.universalimageloader.cache.disc.ResponseValidators;
+import com.nostra13.universalimageloader.cache.disc.ResponseValidatorsStore;
+import com.nostra13.universalimageloader.cache.disc.ResumableDiskCache;
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import com.nostra13.universalimageloader.utils.IoUtils;
 import com.nostra13.universalimageloader.utils.L;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Disk cache based on "Least-Recently Used" principle. Adapter pattern, adapts
  * {@link com.nostra13.universalimageloader.cache.disc.impl.ext.DiskLruCache DiskLruCache} to
- * {@link com.nostra13.universalimageloader.cache.disc.DiskCache DiskCache}
+ * {@link com.nostra13.universalimageloader.cache.disc.DiskCache DiskCache}. Keeps {@linkplain ImageMetadata metadata}
+ * and {@linkplain ResponseValidators validators} of cached images in compact binary side index of disk cache. Keeps
+ * several {@linkplain PartialImage partial images} of interrupted downloads in cache directory.
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see FileNameGenerator
  * @since 1.9.2
  */
-public class LruDiskCache implements DiskCache {
+public class LruDiskCache implements DiskCache, ImageMetadataStore, ResponseValidatorsStore, ResumableDiskCache {
 	/** {@value */
 	public static final int DEFAULT_BUFFER_SIZE = 32 * 1024; // 32 Kb
 	/** {@value */
 	public static final Bitmap.CompressFormat DEFAULT_COMPRESS_FORMAT = Bitmap.CompressFormat.PNG;
 	/** {@value */
 	public static final int DEFAULT_COMPRESS_QUALITY = 100;
+	/** {@value} */
+	public static final long DEFAULT_OPEN_TIMEOUT = 500; // 500 ms
 
 	private static final String ERROR_ARG_NULL = " argument must be not null";
 	private static final String ERROR_ARG_NEGATIVE = " argument must be positive number";
+	private static final String WARNING_CACHE_NOT_OPENED = "Disk cache wasn't opened during %d ms. Continue without disk cache...";
+	private static final String OPEN_THREAD_NAME = "uil-disk-cache-open";
 
-	protected DiskLruCache cache;
+	/** Max number of kept partial images, the oldest of them are deleted */
+	private static final int MAX_PARTIAL_IMAGES = 16;
+	private static final String PARTIAL_IMAGE_POSTFIX = ".partial";
+	private static final String PARTIAL_VALIDATORS_POSTFIX = ".partial.validators";
+
+	private static final int METADATA_VERSION = 2;
+	/** Version of metadata which contains image metadata only */
+	private static final int METADATA_VERSION_IMAGE_ONLY = 1;
+	private static final int METADATA_FLAG_FLIP_HORIZONTAL = 1;
+	private static final int METADATA_FLAG_EXIF_DEFINED = 1 << 1;
+	private static final int METADATA_FLAG_IMAGE_DEFINED = 1 << 2;
+	private static final int METADATA_FLAG_VALIDATORS_DEFINED = 1 << 3;
+
+	protected volatile DiskLruCache cache;
+	private final File cacheDir;
 	private File reserveCacheDir;
+	private final long cacheMaxSize;
+	private final int cacheMaxFileCount;
+	private final boolean binaryJournal;
+
+	private final CountDownLatch openLatch = new CountDownLatch(1);
+	/** Guards updates of entry metadata which is shared by image metadata and validators */
+	private final Object metadataLock = new Object();
+	private volatile long openTimeout = DEFAULT_OPEN_TIMEOUT;
+	private volatile long journalFlushDelay;
+	private volatile int journalFlushRecords;
 
 	protected final FileNameGenerator fileNameGenerator;
 
@@ -81,6 +128,45 @@ public class LruDiskCache implements DiskCache {
 	 */
 	public LruDiskCache(File cacheDir, File reserveCacheDir, FileNameGenerator fileNameGenerator, long cacheMaxSize,
 			int cacheMaxFileCount) throws IOException {
+		this(cacheDir, reserveCacheDir, fileNameGenerator, cacheMaxSize, cacheMaxFileCount, false);
+	}
+
+	/**
+	 * @param cacheDir          Directory for file caching
+	 * @param reserveCacheDir   null-ok; Reserve directory for file caching. It's used when the primary directory isn't available.
+	 * @param fileNameGenerator {@linkplain com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator
+	 *                          Name generator} for cached files. Generated names must match the regex
+	 *                          <strong>[a-z0-9_-]{1,64}</strong>
+	 * @param cacheMaxSize      Max cache size in bytes. <b>0</b> means cache size is unlimited.
+	 * @param cacheMaxFileCount Max file count in cache. <b>0</b> means file count is unlimited.
+	 * @param binaryJournal     <b>true</b> - to keep cache journal in binary format with fixed-size records. It's read
+	 *                          faster on cache opening than text journal, so it's recommended for caches with many
+	 *                          files. Existing journal is converted if format is changed.
+	 * @throws IOException if cache can't be initialized (e.g. "No space left on device")
+	 */
+	public LruDiskCache(File cacheDir, File reserveCacheDir, FileNameGenerator fileNameGenerator, long cacheMaxSize,
+			int cacheMaxFileCount, boolean binaryJournal) throws IOException {
+		this(cacheDir, reserveCacheDir, fileNameGenerator, cacheMaxSize, cacheMaxFileCount, binaryJournal, false);
+	}
+
+	/**
+	 * @param cacheDir          Directory for file caching
+	 * @param reserveCacheDir   null-ok; Reserve directory for file caching. It's used when the primary directory isn't available.
+	 * @param fileNameGenerator {@linkplain com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator
+	 *                          Name generator} for cached files. Generated names must match the regex
+	 *                          <strong>[a-z0-9_-]{1,64}</strong>
+	 * @param cacheMaxSize      Max cache size in bytes. <b>0</b> means cache size is unlimited.
+	 * @param cacheMaxFileCount Max file count in cache. <b>0</b> means file count is unlimited.
+	 * @param binaryJournal     <b>true</b> - to keep cache journal in binary format with fixed-size records.
+	 * @param openInBackground  <b>true</b> - to open cache (read its journal) in background thread so constructor
+	 *                          returns immediately. Until cache is opened its methods wait for it not longer than
+	 *                          {@linkplain #setOpenTimeout(long) open timeout} and then act as if image isn't cached.
+	 *                          If cache can't be opened in background then error is logged and cache stays empty.
+	 * @throws IOException if cache can't be initialized (e.g. "No space left on device"). Never thrown if cache is
+	 *                     opened in background.
+	 */
+	public LruDiskCache(File cacheDir, File reserveCacheDir, FileNameGenerator fileNameGenerator, long cacheMaxSize,
+			int cacheMaxFileCount, boolean binaryJournal, boolean openInBackground) throws IOException {
 		if (cacheDir == null) {
 			throw new IllegalArgumentException("cacheDir" + ERROR_ARG_NULL);
 		}
@@ -101,15 +187,41 @@ public class LruDiskCache implements DiskCache {
 			cacheMaxFileCount = Integer.MAX_VALUE;
 		}
 
+		this.cacheDir = cacheDir;
 		this.reserveCacheDir = reserveCacheDir;
+		this.cacheMaxSize = cacheMaxSize;
+		this.cacheMaxFileCount = cacheMaxFileCount;
 		this.fileNameGenerator = fileNameGenerator;
-		initCache(cacheDir, reserveCacheDir, cacheMaxSize, cacheMaxFileCount);
+		this.binaryJournal = binaryJournal;
+		if (openInBackground) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						openCache();
+					} catch (IOException e) {
+						L.e(e);
+					}
+				}
+			}, OPEN_THREAD_NAME).start();
+		} else {
+			openCache();
+		}
+	}
+
+	private void openCache() throws IOException {
+		try {
+			initCache(cacheDir, reserveCacheDir, cacheMaxSize, cacheMaxFileCount);
+		} finally {
+			openLatch.countDown();
+		}
 	}
 
 	private void initCache(File cacheDir, File reserveCacheDir, long cacheMaxSize, int cacheMaxFileCount)
 			throws IOException {
 		try {
-			cache = DiskLruCache.open(cacheDir, 1, 1, cacheMaxSize, cacheMaxFileCount);
+			cache = DiskLruCache.open(cacheDir, 1, 1, cacheMaxSize, cacheMaxFileCount, binaryJournal);
+			applyJournalGroupCommit(cache);
 		} catch (IOException e) {
 			L.e(e);
 			if (reserveCacheDir != null) {
@@ -121,13 +233,40 @@ public class LruDiskCache implements DiskCache {
 		}
 	}
 
+	/**
+	 * Waits for cache opening if it's opened in background.
+	 *
+	 * @param bounded <b>true</b> - to wait not longer than {@linkplain #setOpenTimeout(long) open timeout}
+	 * @return Opened cache or <b>null</b> if cache wasn't opened in time or can't be opened
+	 */
+	private DiskLruCache awaitCache(boolean bounded) {
+		try {
+			if (!bounded) {
+				openLatch.await();
+			} else if (!openLatch.await(openTimeout, TimeUnit.MILLISECONDS)) {
+				L.w(WARNING_CACHE_NOT_OPENED, openTimeout);
+				return null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		return cache;
+	}
+
 	@Override
 	public File getDirectory() {
-		return cache.getDirectory();
+		DiskLruCache cache = this.cache;
+		return cache == null ? cacheDir : cache.getDirectory();
 	}
 
 	@Override
 	public File get(String imageUri) {
+		DiskLruCache cache = awaitCache(true);
+		if (cache == null) {
+			return null;
+		}
+
 		DiskLruCache.Snapshot snapshot = null;
 		try {
 			snapshot = cache.get(getKey(imageUri));
@@ -144,19 +283,53 @@ public class LruDiskCache implements DiskCache {
 
 	@Override
 	public boolean save(String imageUri, InputStream imageStream, IoUtils.CopyListener listener) throws IOException {
-		DiskLruCache.Editor editor = cache.edit(getKey(imageUri));
+		return save(imageUri, imageStream, 0, null, listener);
+	}
+
+	@Override
+	public boolean save(String imageUri, InputStream imageStream, long offset, ResponseValidators validators,
+			IoUtils.CopyListener listener) throws IOException {
+		DiskLruCache cache = awaitCache(true);
+		if (cache == null) {
+			return false;
+		}
+
+		String key = getKey(imageUri);
+		File partialFile = new File(cache.getDirectory(), key + PARTIAL_IMAGE_POSTFIX);
+		File partialValidatorsFile = new File(cache.getDirectory(), key + PARTIAL_VALIDATORS_POSTFIX);
+		if (offset > 0 && partialFile.length() != offset) {
+			return false; // Partial image was changed or deleted
+		}
+		DiskLruCache.Editor editor = cache.edit(key);
 		if (editor == null) {
 			return false;
 		}
+		partialValidatorsFile.delete();
 
-		OutputStream os = new BufferedOutputStream(editor.newOutputStream(0), bufferSize);
+		OutputStream os;
+		try {
+			if (offset > 0) {
+				os = new BufferedOutputStream(editor.newOutputStream(0, partialFile), bufferSize);
+			} else {
+				partialFile.delete();
+				os = new BufferedOutputStream(editor.newOutputStream(0), bufferSize);
+			}
+		} catch (IOException e) {
+			editor.abort();
+			throw e;
+		}
+
+		boolean resumable = validators != null && validators.canRevalidate();
 		boolean copied = false;
 		try {
-			copied = IoUtils.copyStream(imageStream, os, listener, bufferSize);
+			copied = IoUtils.copyStream(imageStream, os, listener, bufferSize,
+					resumable ? Integer.MAX_VALUE : IoUtils.CONTINUE_LOADING_PERCENTAGE);
 		} finally {
 			IoUtils.closeSilently(os);
 			if (copied) {
 				editor.commit();
+			} else if (resumable && editor.abortAndMoveValue(0, partialFile)) {
+				keepPartialImage(cache.getDirectory(), partialValidatorsFile, validators);
 			} else {
 				editor.abort();
 			}
@@ -164,8 +337,86 @@ public class LruDiskCache implements DiskCache {
 		return copied;
 	}
 
+	@Override
+	public PartialImage getPartialImage(String imageUri) {
+		DiskLruCache cache = awaitCache(true);
+		if (cache == null) {
+			return null;
+		}
+
+		String key = getKey(imageUri);
+		File partialFile = new File(cache.getDirectory(), key + PARTIAL_IMAGE_POSTFIX);
+		File partialValidatorsFile = new File(cache.getDirectory(), key + PARTIAL_VALIDATORS_POSTFIX);
+		if (!partialValidatorsFile.exists() || partialFile.length() == 0) {
+			return null;
+		}
+		try {
+			MetadataEntry entry = new MetadataEntry();
+			decodeMetadata(readFile(partialValidatorsFile), 0, 0, entry);
+			return entry.validators == null ? null : new PartialImage(partialFile.length(), entry.validators);
+		} catch (IOException e) {
+			L.e(e);
+			return null;
+		}
+	}
+
+	/** Saves validators of partial image and deletes the oldest partial images if there are too many of them */
+	private void keepPartialImage(File directory, File partialValidatorsFile, ResponseValidators validators) {
+		MetadataEntry entry = new MetadataEntry();
+		entry.validators = validators;
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(partialValidatorsFile);
+			out.write(encodeMetadata(entry));
+		} catch (IOException e) {
+			L.e(e);
+		} finally {
+			IoUtils.closeSilently(out);
+		}
+
+		File[] partialFiles = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(PARTIAL_IMAGE_POSTFIX);
+			}
+		});
+		if (partialFiles != null && partialFiles.length > MAX_PARTIAL_IMAGES) {
+			Arrays.sort(partialFiles, new Comparator<File>() {
+				@Override
+				public int compare(File lhs, File rhs) {
+					long lhsModified = lhs.lastModified();
+					long rhsModified = rhs.lastModified();
+					return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+				}
+			});
+			for (int i = 0; i < partialFiles.length - MAX_PARTIAL_IMAGES; i++) {
+				File partialFile = partialFiles[i];
+				String name = partialFile.getName();
+				String key = name.substring(0, name.length() - PARTIAL_IMAGE_POSTFIX.length());
+				new File(directory, key + PARTIAL_VALIDATORS_POSTFIX).delete();
+				partialFile.delete();
+			}
+		}
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			byte[] data = new byte[(int) file.length()];
+			in.readFully(data);
+			return data;
+		} finally {
+			IoUtils.closeSilently(in);
+		}
+	}
+
 	@Override
 	public boolean save(String imageUri, Bitmap bitmap) throws IOException {
+		DiskLruCache cache = awaitCache(true);
+		if (cache == null) {
+			return false;
+		}
+
 		DiskLruCache.Editor editor = cache.edit(getKey(imageUri));
 		if (editor == null) {
 			return false;
@@ -187,39 +438,205 @@ public class LruDiskCache implements DiskCache {
 	}
 
 	@Override
-	public boolean remove(String imageUri) {
+	public ImageMetadata getMetadata(String imageUri) {
+		return readMetadata(imageUri).image;
+	}
+
+	@Override
+	public void putMetadata(String imageUri, ImageMetadata metadata) {
+		synchronized (metadataLock) {
+			MetadataEntry entry = readMetadata(imageUri);
+			entry.image = metadata;
+			writeMetadata(imageUri, entry);
+		}
+	}
+
+	@Override
+	public ResponseValidators getValidators(String imageUri) {
+		return readMetadata(imageUri).validators;
+	}
+
+	@Override
+	public void putValidators(String imageUri, ResponseValidators validators) {
+		synchronized (metadataLock) {
+			MetadataEntry entry = readMetadata(imageUri);
+			entry.validators = validators;
+			writeMetadata(imageUri, entry);
+		}
+	}
+
+	/** Reads image metadata and validators which share metadata of cache entry */
+	private MetadataEntry readMetadata(String imageUri) {
+		MetadataEntry entry = new MetadataEntry();
+		DiskLruCache cache = this.cache;
+		if (cache == null) {
+			return entry;
+		}
+
 		try {
-			return cache.remove(getKey(imageUri));
+			DiskLruCache.Metadata metadata = cache.getMetadata(getKey(imageUri));
+			if (metadata != null) {
+				entry.sequenceNumber = metadata.getSequenceNumber();
+				if (metadata.getData() != null) {
+					decodeMetadata(metadata.getData(), metadata.getLength(0), metadata.getLastAccess(), entry);
+				}
+			}
 		} catch (IOException e) {
 			L.e(e);
-			return false;
 		}
+		return entry;
 	}
 
-	@Override
-	public void close() {
+	private void writeMetadata(String imageUri, MetadataEntry entry) {
+		DiskLruCache cache = this.cache;
+		if (cache == null) {
+			return;
+		}
+
+		if (entry.sequenceNumber == DiskLruCache.ANY_SEQUENCE_NUMBER) {
+			return; // Image isn't cached
+		}
 		try {
-			cache.close();
+			// Fails if image was overwritten since metadata was read, merged metadata relates to previous image then
+			cache.setMetadata(getKey(imageUri), entry.sequenceNumber, encodeMetadata(entry));
 		} catch (IOException e) {
 			L.e(e);
 		}
-		cache = null;
+	}
+
+	private static byte[] encodeMetadata(MetadataEntry entry) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		ImageMetadata metadata = entry.image;
+		ResponseValidators validators = entry.validators;
+		int flags = 0;
+		if (metadata != null) {
+			flags |= METADATA_FLAG_IMAGE_DEFINED;
+			if (metadata.isFlipHorizontal()) flags |= METADATA_FLAG_FLIP_HORIZONTAL;
+			if (metadata.isExifDefined()) flags |= METADATA_FLAG_EXIF_DEFINED;
+		}
+		if (validators != null) flags |= METADATA_FLAG_VALIDATORS_DEFINED;
+		out.writeByte(METADATA_VERSION);
+		out.writeByte(flags);
+		if (metadata != null) {
+			out.writeShort(metadata.getRotation());
+			out.writeInt(metadata.getWidth());
+			out.writeInt(metadata.getHeight());
+			out.writeUTF(metadata.getMimeType() == null ? "" : metadata.getMimeType());
+		}
+		if (validators != null) {
+			out.writeUTF(validators.getETag() == null ? "" : validators.getETag());
+			out.writeUTF(validators.getLastModified() == null ? "" : validators.getLastModified());
+			out.writeLong(validators.getExpires());
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static void decodeMetadata(byte[] data, long length, long lastAccess, MetadataEntry entry)
+			throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		int version = in.readUnsignedByte();
+		if (version != METADATA_VERSION && version != METADATA_VERSION_IMAGE_ONLY) {
+			return;
+		}
+		int flags = in.readUnsignedByte();
+		if (version == METADATA_VERSION_IMAGE_ONLY) {
+			flags |= METADATA_FLAG_IMAGE_DEFINED;
+		}
+		if ((flags & METADATA_FLAG_IMAGE_DEFINED) != 0) {
+			int rotation = in.readShort();
+			int width = in.readInt();
+			int height = in.readInt();
+			String mimeType = in.readUTF();
+			entry.image = new ImageMetadata(width, height, mimeType.length() == 0 ? null : mimeType, rotation,
+					(flags & METADATA_FLAG_FLIP_HORIZONTAL) != 0, (flags & METADATA_FLAG_EXIF_DEFINED) != 0,
+					length, lastAccess);
+		}
+		if ((flags & METADATA_FLAG_VALIDATORS_DEFINED) != 0) {
+			String eTag = in.readUTF();
+			String lastModified = in.readUTF();
+			long expires = in.readLong();
+			entry.validators = new ResponseValidators(eTag.length() == 0 ? null : eTag,
+					lastModified.length() == 0 ? null : lastModified, expires);
+		}
 	}
 
 	@Override
-	public void clear() {
+	public boolean remove(String imageUri) {
+		DiskLruCache cache = awaitCache(true);
+		if (cache == null) {
+			return false;
+		}
+
 		try {
-			cache.delete();
+			return cache.remove(getKey(imageUri));
 		} catch (IOException e) {
 			L.e(e);
+			return false;
+		}
+	}
+
+	@Override
+	public void close() {
+		DiskLruCache cache = awaitCache(false);
+		if (cache != null) {
+			try {
+				cache.close();
+			} catch (IOException e) {
+				L.e(e);
+			}
+		}
+		this.cache = null;
+	}
+
+	@Override
+	public void clear() {
+		DiskLruCache cache = awaitCache(false);
+		File directory = cacheDir;
+		if (cache != null) {
+			directory = cache.getDirectory();
+			try {
+				cache.delete();
+			} catch (IOException e) {
+				L.e(e);
+			}
+			this.cache = null;
 		}
 		try {
-			initCache(cache.getDirectory(), reserveCacheDir, cache.getMaxSize(), cache.getMaxFileCount());
+			initCache(directory, reserveCacheDir, cacheMaxSize, cacheMaxFileCount);
 		} catch (IOException e) {
 			L.e(e);
 		}
 	}
 
+	/**
+	 * Forces all cache changes made before this call to storage device. It's useful as durability barrier if
+	 * {@linkplain #setJournalGroupCommit(long, int) journal group commit} is enabled.
+	 */
+	public void flush() {
+		DiskLruCache cache = awaitCache(false);
+		if (cache != null) {
+			try {
+				cache.flush();
+			} catch (IOException e) {
+				L.e(e);
+			} catch (IllegalStateException e) {
+				// Cache was closed concurrently
+			}
+		}
+	}
+
+	private void applyJournalGroupCommit(DiskLruCache cache) {
+		if (cache != null && journalFlushDelay > 0) {
+			try {
+				cache.setJournalGroupCommit(journalFlushDelay, journalFlushRecords);
+			} catch (IllegalStateException e) {
+				// Cache was closed concurrently
+			}
+		}
+	}
+
 	private String getKey(String imageUri) {
 		return fileNameGenerator.generate(imageUri);
 	}
@@ -235,4 +652,51 @@ public class LruDiskCache implements DiskCache {
 	public void setCompressQuality(int compressQuality) {
 		this.compressQuality = compressQuality;
 	}
+
+	/**
+	 * Sets max time (in milliseconds) which cache methods wait for cache opening if it's opened in background. Default
+	 * value - {@value #DEFAULT_OPEN_TIMEOUT}.
+	 */
+	public void setOpenTimeout(long openTimeout) {
+		this.openTimeout = openTimeout;
+	}
+
+	/**
+	 * Enables group commit of cache journal. By default every journal record (about saved, removed or read image) is
+	 * flushed to journal file right after it's written. In group commit mode records are flushed together: when
+	 * <b>maxUnflushedRecords</b> records are written or when the oldest unflushed record waits for
+	 * <b>maxFlushDelay</b> ms. It reduces number of small disk writes on bulk image saving. Records which weren't
+	 * flushed before crash are lost but it doesn't corrupt cache: images without complete journal records are just
+	 * removed from cache on next cache opening. Call {@link #flush()} to force cache changes to storage device.
+	 *
+	 * @param maxFlushDelay       Max time (in milliseconds) which journal record can wait for flushing. <b>0</b> -
+	 *                            to disable group commit.
+	 * @param maxUnflushedRecords Max number of journal records which are flushed together
+	 */
+	public void setJournalGroupCommit(long maxFlushDelay, int maxUnflushedRecords) {
+		if (maxFlushDelay < 0) {
+			throw new IllegalArgumentException("maxFlushDelay" + ERROR_ARG_NEGATIVE);
+		}
+		if (maxUnflushedRecords <= 0) {
+			throw new IllegalArgumentException("maxUnflushedRecords" + ERROR_ARG_NEGATIVE);
+		}
+		journalFlushRecords = maxUnflushedRecords;
+		journalFlushDelay = maxFlushDelay;
+		DiskLruCache cache = this.cache;
+		if (cache != null) {
+			try {
+				cache.setJournalGroupCommit(maxFlushDelay, maxUnflushedRecords);
+			} catch (IllegalStateException e) {
+				// Cache was closed concurrently
+			}
+		}
+	}
+
+	/** Image metadata and validators of cache entry */
+	private static final class MetadataEntry {
+		ImageMetadata image;
+		ResponseValidators validators;
+		/** Sequence number of cached image which metadata was read for */
+		long sequenceNumber = DiskLruCache.ANY_SEQUENCE_NUMBER;
+	}
 }
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.disc.impl.ext;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes {@link DiskLruCache} journal in original text format: one space-separated line per record.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+final class TextJournalWriter implements JournalWriter {
+
+	private final FileOutputStream fileStream;
+	private final Writer writer;
+
+	/**
+	 * @param append <b>true</b> - to append records to existing journal; <b>false</b> - to create new journal with
+	 *               header
+	 */
+	TextJournalWriter(File file, boolean append, int appVersion, int valueCount) throws IOException {
+		fileStream = new FileOutputStream(file, append);
+		writer = new BufferedWriter(new OutputStreamWriter(fileStream, Util.US_ASCII));
+		if (!append) {
+			try {
+				writer.write(DiskLruCache.MAGIC);
+				writer.write("\n");
+				writer.write(DiskLruCache.VERSION_1);
+				writer.write("\n");
+				writer.write(Integer.toString(appVersion));
+				writer.write("\n");
+				writer.write(Integer.toString(valueCount));
+				writer.write("\n");
+				writer.write("\n");
+			} catch (IOException e) {
+				Util.closeQuietly(writer);
+				throw e;
+			}
+		}
+	}
+
+	@Override
+	public void writeClean(String key, long[] lengths) throws IOException {
+		StringBuilder line = new StringBuilder(DiskLruCache.CLEAN).append(' ').append(key);
+		for (long length : lengths) {
+			line.append(' ').append(length);
+		}
+		writer.write(line.append('\n').toString());
+	}
+
+	@Override
+	public void writeDirty(String key) throws IOException {
+		writer.write(DiskLruCache.DIRTY + ' ' + key + '\n');
+	}
+
+	@Override
+	public void writeRemove(String key) throws IOException {
+		writer.write(DiskLruCache.REMOVE + ' ' + key + '\n');
+	}
+
+	@Override
+	public void writeRead(String key) throws IOException {
+		writer.write(DiskLruCache.READ + ' ' + key + '\n');
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public void sync() throws IOException {
+		writer.flush();
+		fileStream.getFD().sync();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory;
+
+import android.graphics.Bitmap;
+
+/**
+ * Pool of unused {@link Bitmap bitmaps} which can be reused for decoding of new images (see
+ * {@link android.graphics.BitmapFactory.Options#inBitmap Options.inBitmap}). Implementations have to be thread-safe.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public interface BitmapPool {
+	/**
+	 * Puts bitmap into pool. Bitmap mustn't be used by anyone after that.
+	 *
+	 * @return <b>true</b> - if bitmap was put into pool; <b>false</b> - if bitmap can't be reused (immutable, recycled,
+	 * too large) and wasn't put into pool
+	 */
+	boolean put(Bitmap bitmap);
+
+	/**
+	 * Takes bitmap from pool which can be used as {@link android.graphics.BitmapFactory.Options#inBitmap inBitmap}
+	 * for decoding of image with incoming size and config. Returned bitmap is removed from pool.
+	 *
+	 * @return Reusable bitmap or <b>null</b> if there is no suitable bitmap in pool
+	 */
+	Bitmap get(int width, int height, Bitmap.Config config);
+
+	/** Removes all bitmaps from pool */
+	void clear();
+}
@@ -19,9 +19,8 @@ import android.graphics.Bitmap;
 
 import com.nostra13.universalimageloader.utils.L;
 
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -45,11 +44,11 @@ public abstract class LimitedMemoryCache extends BaseMemoryCache {
 	private final AtomicInteger cacheSize;
 
 	/**
-	 * Contains strong references to stored objects. Each next object is added last. If hard cache size will exceed
-	 * limit then first object is deleted (but it continue exist at {@link #softMap} and can be collected by GC at any
-	 * time)
+	 * Contains strong references to stored objects with number of their occurrences in cache. If hard cache size will
+	 * exceed limit then object defined by {@link #removeNext()} is deleted (but it continue exist at {@link #softMap}
+	 * and can be collected by GC at any time)
 	 */
-	private final List<Bitmap> hardCache = Collections.synchronizedList(new LinkedList<Bitmap>());
+	private final Map<Bitmap, Integer> hardCache = new HashMap<Bitmap, Integer>();
 
 	/** @param sizeLimit Maximum size for cache (in bytes) */
 	public LimitedMemoryCache(int sizeLimit) {
@@ -70,11 +69,11 @@ public abstract class LimitedMemoryCache extends BaseMemoryCache {
 		if (valueSize < sizeLimit) {
 			while (curCacheSize + valueSize > sizeLimit) {
 				Bitmap removedValue = removeNext();
-				if (hardCache.remove(removedValue)) {
+				if (removeFromHardCache(removedValue)) {
 					curCacheSize = cacheSize.addAndGet(-getSize(removedValue));
 				}
 			}
-			hardCache.add(value);
+			addToHardCache(value);
 			cacheSize.addAndGet(valueSize);
 
 			putSuccessfully = true;
@@ -88,7 +87,7 @@ public abstract class LimitedMemoryCache extends BaseMemoryCache {
 	public Bitmap remove(String key) {
 		Bitmap value = super.get(key);
 		if (value != null) {
-			if (hardCache.remove(value)) {
+			if (removeFromHardCache(value)) {
 				cacheSize.addAndGet(-getSize(value));
 			}
 		}
@@ -97,11 +96,35 @@ public abstract class LimitedMemoryCache extends BaseMemoryCache {
 
 	@Override
 	public void clear() {
-		hardCache.clear();
+		synchronized (hardCache) {
+			hardCache.clear();
+		}
 		cacheSize.set(0);
 		super.clear();
 	}
 
+	private void addToHardCache(Bitmap value) {
+		synchronized (hardCache) {
+			Integer occurrences = hardCache.get(value);
+			hardCache.put(value, occurrences == null ? 1 : occurrences + 1);
+		}
+	}
+
+	/** @return <b>true</b> - if value was contained in hard cache; <b>false</b> - otherwise */
+	private boolean removeFromHardCache(Bitmap value) {
+		synchronized (hardCache) {
+			Integer occurrences = hardCache.get(value);
+			if (occurrences == null) return false;
+
+			if (occurrences > 1) {
+				hardCache.put(value, occurrences - 1);
+			} else {
+				hardCache.remove(value);
+			}
+			return true;
+		}
+	}
+
 	protected int getSizeLimit() {
 		return sizeLimit;
 	}
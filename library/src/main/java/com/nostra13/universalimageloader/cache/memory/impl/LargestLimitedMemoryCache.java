@@ -20,11 +20,11 @@ import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
 
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Limited {@link Bitmap bitmap} cache. Provides {@link Bitmap bitmaps} storing. Size of all stored bitmaps will not to
@@ -43,7 +43,9 @@ public class LargestLimitedMemoryCache extends LimitedMemoryCache {
 	 * size will exceed limit then object with the largest size is deleted (but it continue exist at
 	 * {@link #softMap} and can be collected by GC at any time)
 	 */
-	private final Map<Bitmap, Integer> valueSizes = Collections.synchronizedMap(new HashMap<Bitmap, Integer>());
+	private final Map<Bitmap, Integer> valueSizes = new HashMap<Bitmap, Integer>();
+	/** Stored objects grouped by their sizes. Guarded by {@link #valueSizes}. */
+	private final TreeMap<Integer, Set<Bitmap>> valuesBySize = new TreeMap<Integer, Set<Bitmap>>();
 
 	public LargestLimitedMemoryCache(int sizeLimit) {
 		super(sizeLimit);
@@ -52,7 +54,17 @@ public class LargestLimitedMemoryCache extends LimitedMemoryCache {
 	@Override
 	public boolean put(String key, Bitmap value) {
 		if (super.put(key, value)) {
-			valueSizes.put(value, getSize(value));
+			int size = getSize(value);
+			synchronized (valueSizes) {
+				removeValue(value);
+				valueSizes.put(value, size);
+				Set<Bitmap> values = valuesBySize.get(size);
+				if (values == null) {
+					values = new LinkedHashSet<Bitmap>();
+					valuesBySize.put(size, values);
+				}
+				values.add(value);
+			}
 			return true;
 		} else {
 			return false;
@@ -63,14 +75,19 @@ public class LargestLimitedMemoryCache extends LimitedMemoryCache {
 	public Bitmap remove(String key) {
 		Bitmap value = super.get(key);
 		if (value != null) {
-			valueSizes.remove(value);
+			synchronized (valueSizes) {
+				removeValue(value);
+			}
 		}
 		return super.remove(key);
 	}
 
 	@Override
 	public void clear() {
-		valueSizes.clear();
+		synchronized (valueSizes) {
+			valueSizes.clear();
+			valuesBySize.clear();
+		}
 		super.clear();
 	}
 
@@ -81,25 +98,26 @@ public class LargestLimitedMemoryCache extends LimitedMemoryCache {
 
 	@Override
 	protected Bitmap removeNext() {
-		Integer maxSize = null;
-		Bitmap largestValue = null;
-		Set<Entry<Bitmap, Integer>> entries = valueSizes.entrySet();
 		synchronized (valueSizes) {
-			for (Entry<Bitmap, Integer> entry : entries) {
-				if (largestValue == null) {
-					largestValue = entry.getKey();
-					maxSize = entry.getValue();
-				} else {
-					Integer size = entry.getValue();
-					if (size > maxSize) {
-						maxSize = size;
-						largestValue = entry.getKey();
-					}
-				}
+			Map.Entry<Integer, Set<Bitmap>> largestValues = valuesBySize.lastEntry();
+			if (largestValues == null) return null;
+
+			Bitmap largestValue = largestValues.getValue().iterator().next();
+			removeValue(largestValue);
+			return largestValue;
+		}
+	}
+
+	/** Must be called under {@link #valueSizes} lock */
+	private void removeValue(Bitmap value) {
+		Integer size = valueSizes.remove(value);
+		if (size != null) {
+			Set<Bitmap> values = valuesBySize.get(size);
+			values.remove(value);
+			if (values.isEmpty()) {
+				valuesBySize.remove(size);
 			}
 		}
-		valueSizes.remove(largestValue);
-		return largestValue;
 	}
 
 	@Override
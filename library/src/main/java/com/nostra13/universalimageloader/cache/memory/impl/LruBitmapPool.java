@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Limited {@link BitmapPool}. Bitmaps are grouped by their size in bytes. When total size of pooled bitmaps exceeds
+ * limit then the least recently pooled bitmaps are dropped.<br />
+ * <br />
+ * Bitmaps can be reused for decoding since Android 3.0. Before Android 4.4 only bitmap of exactly the same size and
+ * config can be reused, since Android 4.4 any bitmap which isn't smaller than needed one can be reused.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public class LruBitmapPool implements BitmapPool {
+
+	/** Bitmap which is larger than requested size in this number of times isn't reused */
+	private static final int MAX_SIZE_MULTIPLE = 4;
+
+	/** Pooled bitmaps in order of pooling (eldest is first) with their sizes */
+	private final LinkedHashMap<Bitmap, Integer> bitmaps = new LinkedHashMap<Bitmap, Integer>();
+	/** Pooled bitmaps grouped by size in bytes */
+	private final TreeMap<Integer, List<Bitmap>> bitmapsBySize = new TreeMap<Integer, List<Bitmap>>();
+
+	private final int maxSize;
+	/** Size of this pool in bytes */
+	private int size;
+
+	/** @param maxSize Maximum sum of the sizes of the Bitmaps in this pool */
+	public LruBitmapPool(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize <= 0");
+		}
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	public boolean put(Bitmap bitmap) {
+		if (bitmap == null) {
+			throw new NullPointerException("bitmap == null");
+		}
+		if (Build.VERSION.SDK_INT < 11 || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null) {
+			return false;
+		}
+		int bitmapSize = sizeOf(bitmap);
+		if (bitmapSize > maxSize) {
+			return false;
+		}
+
+		synchronized (this) {
+			if (bitmaps.containsKey(bitmap)) return true;
+
+			bitmaps.put(bitmap, bitmapSize);
+			List<Bitmap> group = bitmapsBySize.get(bitmapSize);
+			if (group == null) {
+				group = new ArrayList<Bitmap>();
+				bitmapsBySize.put(bitmapSize, group);
+			}
+			group.add(bitmap);
+			size += bitmapSize;
+
+			trimToSize(maxSize);
+		}
+		return true;
+	}
+
+	@Override
+	public Bitmap get(int width, int height, Bitmap.Config config) {
+		if (config == null) {
+			config = Bitmap.Config.ARGB_8888;
+		}
+		int neededSize = width * height * getBytesPerPixel(config);
+		boolean exactMatchRequired = Build.VERSION.SDK_INT < 19;
+
+		synchronized (this) {
+			Integer groupSize = bitmapsBySize.ceilingKey(neededSize);
+			while (groupSize != null && groupSize <= neededSize * MAX_SIZE_MULTIPLE) {
+				if (exactMatchRequired && groupSize != neededSize) break;
+
+				List<Bitmap> group = bitmapsBySize.get(groupSize);
+				for (int i = group.size() - 1; i >= 0; i--) {
+					Bitmap bitmap = group.get(i);
+					if (!exactMatchRequired || (bitmap.getWidth() == width && bitmap.getHeight() == height
+							&& bitmap.getConfig() == config)) {
+						removeFromPool(bitmap, i, group, groupSize);
+						if (!bitmap.isRecycled()) {
+							return bitmap;
+						}
+					}
+				}
+				groupSize = bitmapsBySize.higherKey(groupSize);
+			}
+		}
+		return null;
+	}
+
+	/** Removes the eldest bitmaps until the total of remaining bitmaps is at or below the requested size. */
+	private void trimToSize(int maxSize) {
+		Iterator<Map.Entry<Bitmap, Integer>> it = bitmaps.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Map.Entry<Bitmap, Integer> eldest = it.next();
+			int bitmapSize = eldest.getValue();
+			it.remove();
+			List<Bitmap> group = bitmapsBySize.get(bitmapSize);
+			group.remove(eldest.getKey());
+			if (group.isEmpty()) {
+				bitmapsBySize.remove(bitmapSize);
+			}
+			size -= bitmapSize;
+		}
+	}
+
+	private void removeFromPool(Bitmap bitmap, int indexInGroup, List<Bitmap> group, int groupSize) {
+		group.remove(indexInGroup);
+		if (group.isEmpty()) {
+			bitmapsBySize.remove(groupSize);
+		}
+		bitmaps.remove(bitmap);
+		size -= groupSize;
+	}
+
+	@Override
+	public synchronized void clear() {
+		bitmaps.clear();
+		bitmapsBySize.clear();
+		size = 0;
+	}
+
+	/** Returns the size of memory which is allocated for {@code Bitmap} in bytes. */
+	private int sizeOf(Bitmap bitmap) {
+		if (Build.VERSION.SDK_INT >= 19) {
+			return getAllocationByteCount(bitmap);
+		}
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	@TargetApi(19)
+	private int getAllocationByteCount(Bitmap bitmap) {
+		return bitmap.getAllocationByteCount();
+	}
+
+	private static int getBytesPerPixel(Bitmap.Config config) {
+		switch (config) {
+			case ALPHA_8:
+				return 1;
+			case RGB_565:
+			case ARGB_4444:
+				return 2;
+			case ARGB_8888:
+			default:
+				return 4;
+		}
+	}
+
+	@Override
+	public synchronized final String toString() {
+		return String.format("LruBitmapPool[maxSize=%d,size=%d]", maxSize, size);
+	}
+}
@@ -2,6 +2,7 @@ package com.nostra13.universalimageloader.cache.memory.impl;
 
 import android.graphics.Bitmap;
 
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.cache.memory.MemoryCache;
 
 import java.util.Collection;
@@ -12,7 +13,8 @@ import java.util.Map;
 /**
  * A cache that holds strong references to a limited number of Bitmaps. Each time a Bitmap is accessed, it is moved to
  * the head of a queue. When a Bitmap is added to a full cache, the Bitmap at the end of that queue is evicted and may
- * become eligible for garbage collection.<br />
+ * become eligible for garbage collection or is put into {@linkplain BitmapPool bitmap pool} (if pool is defined) for
+ * reuse.<br />
  * <br />
  * <b>NOTE:</b> This cache uses only strong references for stored Bitmaps.
  *
@@ -27,13 +29,27 @@ public class LruMemoryCache implements MemoryCache {
 	/** Size of this cache in bytes */
 	private int size;
 
+	private final BitmapPool bitmapPool;
+
 	/** @param maxSize Maximum sum of the sizes of the Bitmaps in this cache */
 	public LruMemoryCache(int maxSize) {
+		this(maxSize, null);
+	}
+
+	/**
+	 * @param maxSize    Maximum sum of the sizes of the Bitmaps in this cache
+	 * @param bitmapPool null-ok; Pool which evicted and replaced Bitmaps are put into. Bitmaps can be still displayed
+	 *                   at the moment of eviction, so pool must be able to recognize them. Use
+	 *                   {@link com.nostra13.universalimageloader.core.ImageLoaderConfiguration.Builder#bitmapPool(BitmapPool)
+	 *                   ImageLoaderConfiguration.bitmapPool(...)} to enable bitmap reuse safely.
+	 */
+	public LruMemoryCache(int maxSize, BitmapPool bitmapPool) {
 		if (maxSize <= 0) {
 			throw new IllegalArgumentException("maxSize <= 0");
 		}
 		this.maxSize = maxSize;
 		this.map = new LinkedHashMap<String, Bitmap>(0, 0.75f, true);
+		this.bitmapPool = bitmapPool;
 	}
 
 	/**
@@ -58,13 +74,17 @@ public class LruMemoryCache implements MemoryCache {
 			throw new NullPointerException("key == null || value == null");
 		}
 
+		Bitmap previous;
 		synchronized (this) {
 			size += sizeOf(key, value);
-			Bitmap previous = map.put(key, value);
+			previous = map.put(key, value);
 			if (previous != null) {
 				size -= sizeOf(key, previous);
 			}
 		}
+		if (previous != null && previous != value) {
+			entryRemoved(previous);
+		}
 
 		trimToSize(maxSize);
 		return true;
@@ -97,6 +117,14 @@ public class LruMemoryCache implements MemoryCache {
 				map.remove(key);
 				size -= sizeOf(key, value);
 			}
+			entryRemoved(value);
+		}
+	}
+
+	/** Called for Bitmaps which were evicted or replaced. Puts Bitmap into pool if pool is defined. */
+	private void entryRemoved(Bitmap value) {
+		if (bitmapPool != null) {
+			bitmapPool.put(value);
 		}
 	}
 
@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
+import com.nostra13.universalimageloader.cache.memory.MemoryCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limited memory cache which is split into independent segments. Every key belongs to one segment, every segment has
+ * its own lock and its own LRU order of Bitmaps. So threads which put Bitmaps into cache contend only if their keys
+ * belong to the same segment.<br />
+ * <br />
+ * Size limit is common for all segments. If cache is overflowed after putting then the eldest Bitmaps of segment of put
+ * key are evicted, then the eldest Bitmaps of other segments. So Bitmap which is larger than average segment size (e.g.
+ * full-screen image) is cached like in {@link LruMemoryCache}.<br />
+ * <br />
+ * Reading of Bitmap from cache doesn't lock the segment. Read keys are recorded in segment's read buffer and LRU order
+ * is updated by buffered reads later (when buffer is full or on next write into segment). If buffer is overflowed
+ * then some reads can be lost for LRU order, it's acceptable for cache.<br />
+ * <br />
+ * <b>NOTE:</b> This cache uses only strong references for stored Bitmaps.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see LruMemoryCache
+ * @since 1.9.5
+ */
+public class SegmentedLruMemoryCache implements MemoryCache {
+
+	/** {@value} */
+	public static final int DEFAULT_CONCURRENCY_LEVEL = 4;
+
+	private final Segment[] segments;
+	private final int segmentMask;
+
+	private final int maxSize;
+	/** Size of cache in bytes */
+	private final AtomicInteger size = new AtomicInteger();
+	private final BitmapPool bitmapPool;
+
+	/** @param maxSize Maximum sum of the sizes of the Bitmaps in this cache */
+	public SegmentedLruMemoryCache(int maxSize) {
+		this(maxSize, DEFAULT_CONCURRENCY_LEVEL, null);
+	}
+
+	/**
+	 * @param maxSize          Maximum sum of the sizes of the Bitmaps in this cache
+	 * @param concurrencyLevel Estimated number of threads which put Bitmaps into cache concurrently. Number of cache
+	 *                         segments is the nearest power of 2 which isn't less than this value.
+	 * @param bitmapPool       null-ok; Pool which evicted and replaced Bitmaps are put into (see
+	 *                         {@link LruMemoryCache#LruMemoryCache(int, BitmapPool)})
+	 */
+	public SegmentedLruMemoryCache(int maxSize, int concurrencyLevel, BitmapPool bitmapPool) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize <= 0");
+		}
+		if (concurrencyLevel <= 0) {
+			throw new IllegalArgumentException("concurrencyLevel <= 0");
+		}
+		int segmentCount = 1;
+		while (segmentCount < concurrencyLevel) {
+			segmentCount <<= 1;
+		}
+		this.maxSize = maxSize;
+		this.bitmapPool = bitmapPool;
+		segmentMask = segmentCount - 1;
+		segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	@Override
+	public final Bitmap get(String key) {
+		if (key == null) {
+			throw new NullPointerException("key == null");
+		}
+		return segments[segmentIndexFor(key)].get(key);
+	}
+
+	@Override
+	public final boolean put(String key, Bitmap value) {
+		if (key == null || value == null) {
+			throw new NullPointerException("key == null || value == null");
+		}
+		List<Bitmap> removedBitmaps = new ArrayList<Bitmap>();
+		int segmentIndex = segmentIndexFor(key);
+		if (sizeOf(value) > maxSize) { // Bitmap is larger than cache
+			Bitmap previous = segments[segmentIndex].remove(key);
+			if (previous != null && previous != value) {
+				removedBitmaps.add(previous);
+			}
+		} else {
+			segments[segmentIndex].put(key, value, removedBitmaps);
+			trimToSize(segmentIndex, key, removedBitmaps);
+		}
+		releaseBitmaps(removedBitmaps);
+		return true;
+	}
+
+	@Override
+	public final Bitmap remove(String key) {
+		if (key == null) {
+			throw new NullPointerException("key == null");
+		}
+		return segments[segmentIndexFor(key)].remove(key);
+	}
+
+	@Override
+	public Collection<String> keys() {
+		Collection<String> keys = new HashSet<String>();
+		for (Segment segment : segments) {
+			keys.addAll(segment.map.keySet());
+		}
+		return keys;
+	}
+
+	@Override
+	public void clear() {
+		List<Bitmap> removedBitmaps = new ArrayList<Bitmap>();
+		for (Segment segment : segments) {
+			segment.clear(removedBitmaps);
+		}
+		releaseBitmaps(removedBitmaps);
+	}
+
+	private int segmentIndexFor(String key) {
+		int h = key.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return h & segmentMask;
+	}
+
+	/**
+	 * Evicts the eldest entries while cache is overflowed. Segment of put key is trimmed first (except put key itself),
+	 * then next segments.
+	 */
+	private void trimToSize(int segmentIndex, String putKey, List<Bitmap> removedBitmaps) {
+		for (int i = 0; size.get() > maxSize && i < segments.length; ) {
+			if (!segments[(segmentIndex + i) & segmentMask].evictEldest(putKey, removedBitmaps)) {
+				i++; // segment has nothing to evict
+			}
+		}
+	}
+
+	/** Puts evicted and replaced Bitmaps into pool if pool is defined */
+	private void releaseBitmaps(List<Bitmap> bitmaps) {
+		if (bitmapPool != null) {
+			for (Bitmap bitmap : bitmaps) {
+				bitmapPool.put(bitmap);
+			}
+		}
+	}
+
+	/**
+	 * Returns the size {@code Bitmap} in bytes.
+	 * <p/>
+	 * An entry's size must not change while it is in the cache.
+	 */
+	private static int sizeOf(Bitmap value) {
+		return value.getRowBytes() * value.getHeight();
+	}
+
+	@Override
+	public final String toString() {
+		return String.format("SegmentedLruCache[maxSize=%d,segments=%d]", maxSize, segments.length);
+	}
+
+	/** Part of cache with own lock and LRU order */
+	private final class Segment {
+
+		private static final int READ_BUFFER_SIZE = 32; // must be power of 2
+		private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+
+		/** Bitmaps of segment. It's read without lock and modified under segment's lock only. */
+		private final Map<String, Bitmap> map = new ConcurrentHashMap<String, Bitmap>();
+		/** Keys of segment in LRU order (eldest is first) with sizes of Bitmaps. Guarded by segment's lock. */
+		private final LinkedHashMap<String, Integer> accessOrder = new LinkedHashMap<String, Integer>(0, 0.75f, true);
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private final AtomicReferenceArray<String> readBuffer = new AtomicReferenceArray<String>(READ_BUFFER_SIZE);
+		private final AtomicInteger readCount = new AtomicInteger();
+		/** Value of {@link #readCount} on last draining of read buffer. Guarded by segment's lock. */
+		private int drainedReadCount;
+
+		Bitmap get(String key) {
+			Bitmap value = map.get(key);
+			if (value != null) {
+				recordRead(key);
+			}
+			return value;
+		}
+
+		/** Adds replaced Bitmap into <b>removedBitmaps</b> */
+		void put(String key, Bitmap value, List<Bitmap> removedBitmaps) {
+			lock.lock();
+			try {
+				drainReadBuffer();
+
+				int valueSize = sizeOf(value);
+				Bitmap previous = map.put(key, value);
+				Integer previousSize = accessOrder.put(key, valueSize);
+				size.addAndGet(previousSize == null ? valueSize : valueSize - previousSize);
+				if (previous != null && previous != value) {
+					removedBitmaps.add(previous);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		Bitmap remove(String key) {
+			lock.lock();
+			try {
+				Bitmap previous = map.remove(key);
+				Integer previousSize = accessOrder.remove(key);
+				if (previousSize != null) {
+					size.addAndGet(-previousSize);
+				}
+				return previous;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/** Adds removed Bitmaps into <b>removedBitmaps</b> */
+		void clear(List<Bitmap> removedBitmaps) {
+			lock.lock();
+			try {
+				while (evictEldest(null, removedBitmaps)) {
+					// evict all entries
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Evicts the eldest entry of segment except entry of <b>exceptKey</b>. Adds evicted Bitmap into
+		 * <b>removedBitmaps</b>.
+		 *
+		 * @return <b>true</b> - if entry was evicted; <b>false</b> - if segment has no entries to evict
+		 */
+		boolean evictEldest(String exceptKey, List<Bitmap> removedBitmaps) {
+			lock.lock();
+			try {
+				drainReadBuffer();
+
+				Iterator<Map.Entry<String, Integer>> it = accessOrder.entrySet().iterator();
+				while (it.hasNext()) {
+					Map.Entry<String, Integer> toEvict = it.next();
+					if (toEvict.getKey().equals(exceptKey)) continue;
+
+					it.remove();
+					size.addAndGet(-toEvict.getValue());
+					Bitmap evicted = map.remove(toEvict.getKey());
+					if (evicted != null) {
+						removedBitmaps.add(evicted);
+					}
+					return true;
+				}
+				return false;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/** Records read key into buffer. Drains buffer when it's full (if segment isn't locked by another thread). */
+		private void recordRead(String key) {
+			int index = readCount.getAndIncrement() & READ_BUFFER_MASK;
+			readBuffer.lazySet(index, key);
+			if (index == READ_BUFFER_MASK && lock.tryLock()) {
+				try {
+					drainReadBuffer();
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+
+		/** Moves read keys to the tail of LRU order. Must be called under segment's lock. */
+		private void drainReadBuffer() {
+			int readCount = this.readCount.get();
+			if (readCount == drainedReadCount) return; // No reads since last draining
+
+			drainedReadCount = readCount;
+			for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+				String key = readBuffer.getAndSet(i, null);
+				if (key != null) {
+					accessOrder.get(key); // access-ordered map moves entry to the tail
+				}
+			}
+		}
+	}
+}
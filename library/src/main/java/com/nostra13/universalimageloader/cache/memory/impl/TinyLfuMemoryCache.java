@@ -0,0 +1,430 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.cache.memory.impl;
+
+import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
+import com.nostra13.universalimageloader.cache.memory.MemoryCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Limited memory cache with W-TinyLFU policy. New Bitmaps get into small LRU <i>admission window</i> (1% of cache
+ * size but not less than a few Bitmaps). Bitmaps evicted from the window compete for the place in <i>main area</i>
+ * with the Bitmaps which would be evicted for them: the one which was requested more often (according to frequency
+ * sketch) stays in cache, the newer one wins a tie. Main area is segmented LRU: Bitmaps get into <i>probation</i>
+ * segment and move into <i>protected</i> segment on repeated request.<br />
+ * <br />
+ * So one pass over long list of images (e.g. fast scrolling) doesn't evict frequently used images from cache.<br />
+ * <br />
+ * <b>NOTE:</b> This cache uses only strong references for stored Bitmaps.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see LruMemoryCache
+ * @since 1.9.5
+ */
+public class TinyLfuMemoryCache implements MemoryCache {
+
+	/** Percentage of cache size for admission window */
+	private static final int WINDOW_PERCENTAGE = 1;
+	/**
+	 * Minimum number of Bitmaps in admission window. Window percentage of cache size is often less than size of one
+	 * Bitmap, so this minimum keeps just decoded Bitmaps from competing with frequently used ones right away.
+	 */
+	private static final int MIN_WINDOW_ENTRY_COUNT = 4;
+	/** Percentage of main area size for protected segment */
+	private static final int PROTECTED_PERCENTAGE = 80;
+	/** Estimated average size of cached Bitmap. Used to define size of frequency sketch. */
+	private static final int ESTIMATED_BITMAP_SIZE = 64 * 1024; // 64 Kb
+
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private final LinkedHashMap<String, Entry> window = new LinkedHashMap<String, Entry>(0, 0.75f, true);
+	private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<String, Entry>(0, 0.75f, true);
+	private final LinkedHashMap<String, Entry> protectedArea = new LinkedHashMap<String, Entry>(0, 0.75f, true);
+
+	private final FrequencySketch sketch;
+
+	private final int maxSize;
+	private final int maxWindowSize;
+	private final int maxProtectedSize;
+	/** Sizes of cache areas in bytes */
+	private int windowSize;
+	private int probationSize;
+	private int protectedSize;
+
+	private final BitmapPool bitmapPool;
+
+	/** @param maxSize Maximum sum of the sizes of the Bitmaps in this cache */
+	public TinyLfuMemoryCache(int maxSize) {
+		this(maxSize, null);
+	}
+
+	/**
+	 * @param maxSize    Maximum sum of the sizes of the Bitmaps in this cache
+	 * @param bitmapPool null-ok; Pool which evicted and replaced Bitmaps are put into (see
+	 *                   {@link LruMemoryCache#LruMemoryCache(int, BitmapPool)})
+	 */
+	public TinyLfuMemoryCache(int maxSize, BitmapPool bitmapPool) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize <= 0");
+		}
+		this.maxSize = maxSize;
+		this.bitmapPool = bitmapPool;
+		maxWindowSize = Math.max(maxSize / 100 * WINDOW_PERCENTAGE, 1);
+		maxProtectedSize = (maxSize - maxWindowSize) / 100 * PROTECTED_PERCENTAGE;
+		sketch = new FrequencySketch(maxSize / ESTIMATED_BITMAP_SIZE);
+	}
+
+	@Override
+	public final Bitmap get(String key) {
+		if (key == null) {
+			throw new NullPointerException("key == null");
+		}
+
+		synchronized (this) {
+			sketch.increment(key);
+			Entry entry = entries.get(key);
+			if (entry == null) return null;
+
+			onAccess(entry);
+			return entry.value;
+		}
+	}
+
+	@Override
+	public final boolean put(String key, Bitmap value) {
+		if (key == null || value == null) {
+			throw new NullPointerException("key == null || value == null");
+		}
+
+		List<Bitmap> removedBitmaps = new ArrayList<Bitmap>();
+		synchronized (this) {
+			sketch.increment(key);
+			int valueSize = sizeOf(key, value);
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				if (entry.value != value) {
+					removedBitmaps.add(entry.value);
+				}
+				addToAreaSize(entry.area, valueSize - entry.size);
+				entry.value = value;
+				entry.size = valueSize;
+				onAccess(entry);
+			} else {
+				entry = new Entry(key, value, valueSize);
+				entries.put(key, entry);
+				window.put(key, entry);
+				windowSize += valueSize;
+			}
+			evictFromWindow(removedBitmaps);
+			evictFromMain(removedBitmaps);
+		}
+		releaseBitmaps(removedBitmaps);
+		return true;
+	}
+
+	@Override
+	public final Bitmap remove(String key) {
+		if (key == null) {
+			throw new NullPointerException("key == null");
+		}
+
+		synchronized (this) {
+			Entry entry = entries.remove(key);
+			if (entry == null) return null;
+
+			areaOf(entry).remove(key);
+			addToAreaSize(entry.area, -entry.size);
+			return entry.value;
+		}
+	}
+
+	@Override
+	public Collection<String> keys() {
+		synchronized (this) {
+			return new HashSet<String>(entries.keySet());
+		}
+	}
+
+	@Override
+	public void clear() {
+		List<Bitmap> removedBitmaps = new ArrayList<Bitmap>();
+		synchronized (this) {
+			for (Entry entry : entries.values()) {
+				removedBitmaps.add(entry.value);
+			}
+			entries.clear();
+			window.clear();
+			probation.clear();
+			protectedArea.clear();
+			windowSize = probationSize = protectedSize = 0;
+		}
+		releaseBitmaps(removedBitmaps);
+	}
+
+	/** Moves entry to the tail of its area. Entry of probation segment is promoted to protected segment. */
+	private void onAccess(Entry entry) {
+		switch (entry.area) {
+			case WINDOW:
+				window.get(entry.key);
+				break;
+			case PROBATION:
+				probation.remove(entry.key);
+				probationSize -= entry.size;
+				entry.area = PROTECTED;
+				protectedArea.put(entry.key, entry);
+				protectedSize += entry.size;
+				demoteFromProtected();
+				break;
+			case PROTECTED:
+				protectedArea.get(entry.key);
+				demoteFromProtected();
+				break;
+		}
+	}
+
+	/** Moves the eldest entries of protected segment into probation segment while protected segment is overflowed */
+	private void demoteFromProtected() {
+		Iterator<Entry> it = protectedArea.values().iterator();
+		while (protectedSize > maxProtectedSize && it.hasNext()) {
+			Entry entry = it.next();
+			it.remove();
+			protectedSize -= entry.size;
+			entry.area = PROBATION;
+			probation.put(entry.key, entry);
+			probationSize += entry.size;
+		}
+	}
+
+	/** Moves the eldest entries of admission window into probation segment while window is overflowed */
+	private void evictFromWindow(List<Bitmap> removedBitmaps) {
+		Iterator<Entry> it = window.values().iterator();
+		while (windowSize > maxWindowSize && window.size() > MIN_WINDOW_ENTRY_COUNT && it.hasNext()) {
+			Entry candidate = it.next();
+			it.remove();
+			windowSize -= candidate.size;
+			if (candidate.size > maxSize - windowSize) {
+				entries.remove(candidate.key); // too large for cache
+				removedBitmaps.add(candidate.value);
+				continue;
+			}
+			candidate.area = PROBATION;
+			probation.put(candidate.key, candidate);
+			probationSize += candidate.size;
+			admit(candidate, removedBitmaps);
+		}
+	}
+
+	/**
+	 * Evicts entries from main area for candidate while cache is overflowed. If candidate was requested less often than
+	 * next victim then candidate is evicted itself.
+	 */
+	private void admit(Entry candidate, List<Bitmap> removedBitmaps) {
+		int candidateFrequency = sketch.frequency(candidate.key);
+		while (windowSize + probationSize + protectedSize > maxSize) {
+			Entry victim = nextVictim(candidate);
+			if (victim == null || sketch.frequency(victim.key) > candidateFrequency) {
+				evict(candidate, removedBitmaps);
+				return;
+			}
+			evict(victim, removedBitmaps);
+		}
+	}
+
+	/**
+	 * Evicts the eldest entries from main area while cache is overflowed (e.g. after Bitmap replacing). If main area is
+	 * empty then the eldest entries of admission window are evicted.
+	 */
+	private void evictFromMain(List<Bitmap> removedBitmaps) {
+		while (windowSize + probationSize + protectedSize > maxSize) {
+			Entry victim = nextVictim(null);
+			if (victim == null) {
+				victim = window.values().iterator().next();
+			}
+			evict(victim, removedBitmaps);
+		}
+	}
+
+	/** @return The eldest entry of probation segment (or protected segment if probation is empty) except incoming one */
+	private Entry nextVictim(Entry except) {
+		for (Entry entry : probation.values()) {
+			if (entry != except) return entry;
+		}
+		for (Entry entry : protectedArea.values()) {
+			return entry;
+		}
+		return null;
+	}
+
+	private void evict(Entry entry, List<Bitmap> removedBitmaps) {
+		entries.remove(entry.key);
+		areaOf(entry).remove(entry.key);
+		addToAreaSize(entry.area, -entry.size);
+		removedBitmaps.add(entry.value);
+	}
+
+	private LinkedHashMap<String, Entry> areaOf(Entry entry) {
+		switch (entry.area) {
+			case WINDOW:
+				return window;
+			case PROBATION:
+				return probation;
+			default:
+				return protectedArea;
+		}
+	}
+
+	private void addToAreaSize(int area, int delta) {
+		switch (area) {
+			case WINDOW:
+				windowSize += delta;
+				break;
+			case PROBATION:
+				probationSize += delta;
+				break;
+			default:
+				protectedSize += delta;
+				break;
+		}
+	}
+
+	/** Puts evicted and replaced Bitmaps into pool if pool is defined */
+	private void releaseBitmaps(List<Bitmap> bitmaps) {
+		if (bitmapPool != null) {
+			for (Bitmap bitmap : bitmaps) {
+				bitmapPool.put(bitmap);
+			}
+		}
+	}
+
+	/**
+	 * Returns the size {@code Bitmap} in bytes.
+	 * <p/>
+	 * An entry's size must not change while it is in the cache.
+	 */
+	private int sizeOf(String key, Bitmap value) {
+		return value.getRowBytes() * value.getHeight();
+	}
+
+	@Override
+	public synchronized final String toString() {
+		return String.format("TinyLfuCache[maxSize=%d]", maxSize);
+	}
+
+	private static final class Entry {
+		final String key;
+		Bitmap value;
+		int size;
+		int area = WINDOW;
+
+		Entry(String key, Bitmap value, int size) {
+			this.key = key;
+			this.value = value;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Count-min sketch which estimates how often keys were requested. Every key has 4 counters (4 bits each) in
+	 * different table rows, frequency is the minimum of them. All counters are halved periodically, so old requests
+	 * stop to matter.
+	 */
+	static final class FrequencySketch {
+
+		private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+				0xcbf29ce484222325L};
+		private static final long RESET_MASK = 0x7777777777777777L;
+		private static final int MAX_FREQUENCY = 15;
+
+		private final long[] table;
+		private final int tableMask;
+		private final int sampleSize;
+		private int additions;
+
+		/** @param expectedKeyCount Estimated number of keys in cache */
+		FrequencySketch(int expectedKeyCount) {
+			int tableSize = 16;
+			while (tableSize < expectedKeyCount) {
+				tableSize <<= 1;
+			}
+			table = new long[tableSize];
+			tableMask = tableSize - 1;
+			sampleSize = 10 * tableSize;
+		}
+
+		void increment(String key) {
+			int hash = spread(key.hashCode());
+			boolean added = false;
+			for (int i = 0; i < SEEDS.length; i++) {
+				int index = indexOf(hash, i);
+				int offset = counterOffset(hash, i);
+				if (((table[index] >>> offset) & MAX_FREQUENCY) < MAX_FREQUENCY) {
+					table[index] += 1L << offset;
+					added = true;
+				}
+			}
+			if (added && ++additions == sampleSize) {
+				reset();
+			}
+		}
+
+		int frequency(String key) {
+			int hash = spread(key.hashCode());
+			int frequency = MAX_FREQUENCY;
+			for (int i = 0; i < SEEDS.length; i++) {
+				int count = (int) ((table[indexOf(hash, i)] >>> counterOffset(hash, i)) & MAX_FREQUENCY);
+				frequency = Math.min(frequency, count);
+			}
+			return frequency;
+		}
+
+		/** Halves all counters */
+		private void reset() {
+			for (int i = 0; i < table.length; i++) {
+				table[i] = (table[i] >>> 1) & RESET_MASK;
+			}
+			additions /= 2;
+		}
+
+		private int indexOf(int hash, int row) {
+			long h = (hash + SEEDS[row]) * SEEDS[row];
+			h += h >>> 32;
+			return (int) h & tableMask;
+		}
+
+		/** @return Offset (in bits) of key's counter inside table element. Every element contains 16 counters. */
+		private int counterOffset(int hash, int row) {
+			return (((hash >>> (row << 3)) & 3) + (row << 2)) << 2;
+		}
+
+		private static int spread(int hash) {
+			hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+			hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+			return (hash >>> 16) ^ hash;
+		}
+	}
+}
@@ -20,10 +20,9 @@ import com.nostra13.universalimageloader.cache.memory.LimitedMemoryCache;
 
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
 /**
@@ -39,11 +38,11 @@ import java.util.Set;
  */
 public class UsingFreqLimitedMemoryCache extends LimitedMemoryCache {
 	/**
-	 * Contains strong references to stored objects (keys) and last object usage date (in milliseconds). If hard cache
-	 * size will exceed limit then object with the least frequently usage is deleted (but it continue exist at
-	 * {@link #softMap} and can be collected by GC at any time)
+	 * Contains strong references to stored objects (keys) grouped by usage counts. If hard cache size will exceed limit
+	 * then object with the least frequently usage is deleted (but it continue exist at {@link #softMap} and can be
+	 * collected by GC at any time)
 	 */
-	private final Map<Bitmap, Integer> usingCounts = Collections.synchronizedMap(new HashMap<Bitmap, Integer>());
+	private final UsageCounts usageCounts = new UsageCounts();
 
 	public UsingFreqLimitedMemoryCache(int sizeLimit) {
 		super(sizeLimit);
@@ -52,7 +51,7 @@ public class UsingFreqLimitedMemoryCache extends LimitedMemoryCache {
 	@Override
 	public boolean put(String key, Bitmap value) {
 		if (super.put(key, value)) {
-			usingCounts.put(value, 0);
+			usageCounts.add(value);
 			return true;
 		} else {
 			return false;
@@ -64,10 +63,7 @@ public class UsingFreqLimitedMemoryCache extends LimitedMemoryCache {
 		Bitmap value = super.get(key);
 		// Increment usage count for value if value is contained in hardCahe
 		if (value != null) {
-			Integer usageCount = usingCounts.get(value);
-			if (usageCount != null) {
-				usingCounts.put(value, usageCount + 1);
-			}
+			usageCounts.increment(value);
 		}
 		return value;
 	}
@@ -76,14 +72,14 @@ public class UsingFreqLimitedMemoryCache extends LimitedMemoryCache {
 	public Bitmap remove(String key) {
 		Bitmap value = super.get(key);
 		if (value != null) {
-			usingCounts.remove(value);
+			usageCounts.remove(value);
 		}
 		return super.remove(key);
 	}
 
 	@Override
 	public void clear() {
-		usingCounts.clear();
+		usageCounts.clear();
 		super.clear();
 	}
 
@@ -94,29 +90,115 @@ public class UsingFreqLimitedMemoryCache extends LimitedMemoryCache {
 
 	@Override
 	protected Bitmap removeNext() {
-		Integer minUsageCount = null;
-		Bitmap leastUsedValue = null;
-		Set<Entry<Bitmap, Integer>> entries = usingCounts.entrySet();
-		synchronized (usingCounts) {
-			for (Entry<Bitmap, Integer> entry : entries) {
-				if (leastUsedValue == null) {
-					leastUsedValue = entry.getKey();
-					minUsageCount = entry.getValue();
-				} else {
-					Integer lastValueUsage = entry.getValue();
-					if (lastValueUsage < minUsageCount) {
-						minUsageCount = lastValueUsage;
-						leastUsedValue = entry.getKey();
-					}
-				}
-			}
-		}
-		usingCounts.remove(leastUsedValue);
-		return leastUsedValue;
+		return usageCounts.removeLeastUsed();
 	}
 
 	@Override
 	protected Reference<Bitmap> createReference(Bitmap value) {
 		return new WeakReference<Bitmap>(value);
 	}
+
+	/**
+	 * Usage counts of values. Values with the same usage count are kept in one bucket, buckets are linked in order of
+	 * usage count increasing. So all operations take constant time.
+	 */
+	private static final class UsageCounts {
+
+		private final Map<Bitmap, Bucket> buckets = new HashMap<Bitmap, Bucket>();
+		/** Bucket with the least usage count */
+		private Bucket head;
+
+		/** Adds value with zero usage count (resets usage count if value was added before) */
+		synchronized void add(Bitmap value) {
+			removeFromBucket(value);
+			Bucket bucket = head;
+			if (bucket == null || bucket.count != 0) {
+				bucket = insertBucket(0, null, head);
+			}
+			bucket.values.add(value);
+			buckets.put(value, bucket);
+		}
+
+		/** Increments usage count of value if value was added */
+		synchronized void increment(Bitmap value) {
+			Bucket bucket = buckets.get(value);
+			if (bucket == null) return;
+
+			Bucket next = bucket.next;
+			if (next == null || next.count != bucket.count + 1) {
+				next = insertBucket(bucket.count + 1, bucket, next);
+			}
+			bucket.values.remove(value);
+			if (bucket.values.isEmpty()) {
+				unlinkBucket(bucket);
+			}
+			next.values.add(value);
+			buckets.put(value, next);
+		}
+
+		synchronized void remove(Bitmap value) {
+			removeFromBucket(value);
+		}
+
+		/** Removes and returns value with the least usage count (the earliest added value among equal ones) */
+		synchronized Bitmap removeLeastUsed() {
+			if (head == null) return null;
+
+			Bitmap value = head.values.iterator().next();
+			removeFromBucket(value);
+			return value;
+		}
+
+		synchronized void clear() {
+			buckets.clear();
+			head = null;
+		}
+
+		private void removeFromBucket(Bitmap value) {
+			Bucket bucket = buckets.remove(value);
+			if (bucket != null) {
+				bucket.values.remove(value);
+				if (bucket.values.isEmpty()) {
+					unlinkBucket(bucket);
+				}
+			}
+		}
+
+		private Bucket insertBucket(int count, Bucket prev, Bucket next) {
+			Bucket bucket = new Bucket(count);
+			bucket.prev = prev;
+			bucket.next = next;
+			if (prev == null) {
+				head = bucket;
+			} else {
+				prev.next = bucket;
+			}
+			if (next != null) {
+				next.prev = bucket;
+			}
+			return bucket;
+		}
+
+		private void unlinkBucket(Bucket bucket) {
+			if (bucket.prev == null) {
+				head = bucket.next;
+			} else {
+				bucket.prev.next = bucket.next;
+			}
+			if (bucket.next != null) {
+				bucket.next.prev = bucket.prev;
+			}
+		}
+
+		private static final class Bucket {
+			final int count;
+			final Set<Bitmap> values = new LinkedHashSet<Bitmap>();
+			Bucket prev;
+			Bucket next;
+
+			Bucket(int count) {
+				this.count = count;
+			}
+		}
+	}
 }
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core;
+
+import com.nostra13.universalimageloader.utils.L;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread pool executor which adapts its pool size to observed load. It measures queue wait time, execution time and
+ * throughput of tasks and resizes pool by AIMD rule:
+ * <ul>
+ * <li>if tasks wait in queue longer than they are executed then pool grows by one thread;</li>
+ * <li>if throughput dropped after pool growth (e.g. network bandwidth or CPU cores are saturated) then pool shrinks
+ * by a quarter;</li>
+ * <li>if throughput didn't grow after pool growth then growth is reverted and pool doesn't grow for a while;</li>
+ * <li>if tasks don't wait in queue and some threads are idle then pool shrinks by one thread.</li>
+ * </ul>
+ * Pool size is kept within given bounds.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+final class AdaptiveThreadPoolExecutor extends ThreadPoolExecutor {
+
+	private static final String LOG_POOL_RESIZED = "Pool size of %s: %d -> %d (%.1f tasks/s, wait %d ms, execution %d ms)";
+
+	/** Pool size is adapted after this number of tasks at least */
+	private static final int MIN_SAMPLE_TASKS = 8;
+	/** Pool size is adapted not often than once per this period */
+	private static final long MIN_SAMPLE_PERIOD = TimeUnit.SECONDS.toNanos(1);
+	/** Throughput drop which isn't considered as degradation (10%) */
+	private static final float THROUGHPUT_TOLERANCE = 0.1f;
+	/** Tasks which wait in queue less than this part of their execution time don't wait really */
+	private static final int NEGLIGIBLE_WAIT_DIVIDER = 10;
+	/** Number of samples during which pool doesn't grow after useless growth */
+	private static final int GROWTH_PAUSE_SAMPLES = 5;
+
+	private final String name;
+	private final int minPoolSize;
+	private final int maxPoolSize;
+
+	/** Submission times of queued tasks (in nanoseconds) */
+	private final ConcurrentHashMap<Runnable, Long> submitTimes = new ConcurrentHashMap<Runnable, Long>();
+	/** Queue wait time and start time of currently executed task of thread */
+	private final ThreadLocal<long[]> taskTimes = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[2];
+		}
+	};
+
+	// Current sample, is guarded by this executor
+	private long sampleStartTime = System.nanoTime();
+	private int sampleTasks;
+	private long sampleWaitTime;
+	private long sampleExecutionTime;
+	// Result of last adaptation, is guarded by this executor
+	private float lastThroughput;
+	private int lastSizeChange;
+	private int growthPauseSamples;
+
+	/**
+	 * @param name        Pool name for logs
+	 * @param poolSize    Initial pool size
+	 * @param minPoolSize Min pool size
+	 * @param maxPoolSize Max pool size
+	 */
+	AdaptiveThreadPoolExecutor(String name, int poolSize, int minPoolSize, int maxPoolSize,
+			BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory) {
+		super(poolSize, maxPoolSize, 0L, TimeUnit.MILLISECONDS, workQueue, threadFactory);
+		this.name = name;
+		this.minPoolSize = minPoolSize;
+		this.maxPoolSize = maxPoolSize;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		submitTimes.put(command, System.nanoTime());
+		try {
+			super.execute(command);
+		} catch (RejectedExecutionException e) {
+			submitTimes.remove(command);
+			throw e;
+		}
+	}
+
+	@Override
+	protected void beforeExecute(Thread t, Runnable r) {
+		long now = System.nanoTime();
+		Long submitTime = submitTimes.remove(r);
+		long[] times = taskTimes.get();
+		times[0] = submitTime == null ? 0 : now - submitTime;
+		times[1] = now;
+	}
+
+	@Override
+	protected void afterExecute(Runnable r, Throwable t) {
+		long[] times = taskTimes.get();
+		onTaskExecuted(times[0], System.nanoTime() - times[1]);
+	}
+
+	private synchronized void onTaskExecuted(long waitTime, long executionTime) {
+		sampleTasks++;
+		sampleWaitTime += waitTime;
+		sampleExecutionTime += executionTime;
+
+		long now = System.nanoTime();
+		long samplePeriod = now - sampleStartTime;
+		if (sampleTasks >= MIN_SAMPLE_TASKS && samplePeriod >= MIN_SAMPLE_PERIOD) {
+			adaptPoolSize(sampleTasks * (float) TimeUnit.SECONDS.toNanos(1) / samplePeriod,
+					sampleWaitTime / sampleTasks, sampleExecutionTime / sampleTasks);
+			sampleStartTime = now;
+			sampleTasks = 0;
+			sampleWaitTime = 0;
+			sampleExecutionTime = 0;
+		}
+	}
+
+	private void adaptPoolSize(float throughput, long meanWaitTime, long meanExecutionTime) {
+		int poolSize = getCorePoolSize();
+		int newPoolSize = poolSize;
+		if (growthPauseSamples > 0) {
+			growthPauseSamples--;
+		}
+		if (lastSizeChange > 0 && throughput < lastThroughput * (1 - THROUGHPUT_TOLERANCE)) {
+			newPoolSize = Math.max(minPoolSize, poolSize - Math.max(1, poolSize / 4));
+			growthPauseSamples = GROWTH_PAUSE_SAMPLES;
+		} else if (lastSizeChange > 0 && throughput < lastThroughput * (1 + THROUGHPUT_TOLERANCE)) {
+			newPoolSize = Math.max(minPoolSize, poolSize - lastSizeChange);
+			growthPauseSamples = GROWTH_PAUSE_SAMPLES;
+		} else if (meanWaitTime > meanExecutionTime && !getQueue().isEmpty() && growthPauseSamples == 0) {
+			newPoolSize = Math.min(maxPoolSize, poolSize + 1);
+		} else if (meanWaitTime < meanExecutionTime / NEGLIGIBLE_WAIT_DIVIDER && getActiveCount() < poolSize) {
+			newPoolSize = Math.max(minPoolSize, poolSize - 1);
+		}
+		lastSizeChange = newPoolSize - poolSize;
+		lastThroughput = throughput;
+
+		if (newPoolSize != poolSize) {
+			L.d(LOG_POOL_RESIZED, name, poolSize, newPoolSize, throughput,
+					TimeUnit.NANOSECONDS.toMillis(meanWaitTime), TimeUnit.NANOSECONDS.toMillis(meanExecutionTime));
+			setCorePoolSize(newPoolSize); // Excess threads stop when they become idle
+		}
+	}
+}
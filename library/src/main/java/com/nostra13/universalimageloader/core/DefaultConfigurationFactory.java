@@ -25,6 +25,7 @@ import com.nostra13.universalimageloader.cache.disc.impl.UnlimitedDiskCache;
 import com.nostra13.universalimageloader.cache.disc.impl.ext.LruDiskCache;
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
 import com.nostra13.universalimageloader.cache.disc.naming.HashCodeFileNameGenerator;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.cache.memory.MemoryCache;
 import com.nostra13.universalimageloader.cache.memory.impl.LruMemoryCache;
 import com.nostra13.universalimageloader.core.assist.QueueProcessingType;
@@ -60,11 +61,64 @@ public class DefaultConfigurationFactory {
 	/** Creates default implementation of task executor */
 	public static Executor createExecutor(int threadPoolSize, int threadPriority,
 			QueueProcessingType tasksProcessingType) {
-		boolean lifo = tasksProcessingType == QueueProcessingType.LIFO;
-		BlockingQueue<Runnable> taskQueue =
-				lifo ? new LIFOLinkedBlockingDeque<Runnable>() : new LinkedBlockingQueue<Runnable>();
-		return new ThreadPoolExecutor(threadPoolSize, threadPoolSize, 0L, TimeUnit.MILLISECONDS, taskQueue,
-				createThreadFactory(threadPriority, "uil-pool-"));
+		return createExecutor(threadPoolSize, threadPriority, tasksProcessingType, "uil-pool-");
+	}
+
+	/** Creates default implementation of executor for disk stage of tasks (lookups of images in disk cache) */
+	public static Executor createDiskStageExecutor(int threadPoolSize, int threadPriority,
+			QueueProcessingType tasksProcessingType) {
+		return createExecutor(threadPoolSize, threadPriority, tasksProcessingType, "uil-pool-disk-");
+	}
+
+	/**
+	 * Creates task executor. If <b>maxThreadPoolSize</b> is positive then executor adapts its pool size to observed
+	 * queue wait time, execution time and throughput of tasks. Pool size changes between <b>1</b> and
+	 * <b>maxThreadPoolSize</b> then.
+	 */
+	public static Executor createExecutor(int threadPoolSize, int maxThreadPoolSize, int threadPriority,
+			QueueProcessingType tasksProcessingType) {
+		return createExecutor(threadPoolSize, 1, maxThreadPoolSize, threadPriority, tasksProcessingType);
+	}
+
+	/**
+	 * Creates task executor. If <b>maxThreadPoolSize</b> is positive then executor adapts its pool size to observed
+	 * queue wait time, execution time and throughput of tasks. Pool size changes between <b>minThreadPoolSize</b> and
+	 * <b>maxThreadPoolSize</b> then.
+	 */
+	public static Executor createExecutor(int threadPoolSize, int minThreadPoolSize, int maxThreadPoolSize,
+			int threadPriority, QueueProcessingType tasksProcessingType) {
+		if (maxThreadPoolSize <= 0) {
+			return createExecutor(threadPoolSize, threadPriority, tasksProcessingType);
+		}
+		minThreadPoolSize = Math.max(1, minThreadPoolSize);
+		threadPoolSize = Math.max(minThreadPoolSize, threadPoolSize);
+		maxThreadPoolSize = Math.max(threadPoolSize, maxThreadPoolSize);
+		DefaultThreadFactory threadFactory = new DefaultThreadFactory(threadPriority, "uil-pool-");
+		return new AdaptiveThreadPoolExecutor(threadFactory.poolName, threadPoolSize, minThreadPoolSize,
+				maxThreadPoolSize, createTaskQueue(tasksProcessingType), threadFactory);
+	}
+
+	private static Executor createExecutor(int threadPoolSize, int threadPriority,
+			QueueProcessingType tasksProcessingType, String threadNamePrefix) {
+		return new ThreadPoolExecutor(threadPoolSize, threadPoolSize, 0L, TimeUnit.MILLISECONDS,
+				createTaskQueue(tasksProcessingType), createThreadFactory(threadPriority, threadNamePrefix));
+	}
+
+	private static BlockingQueue<Runnable> createTaskQueue(QueueProcessingType tasksProcessingType) {
+		BlockingQueue<Runnable> taskQueue;
+		switch (tasksProcessingType) {
+			case LIFO:
+				taskQueue = new LIFOLinkedBlockingDeque<Runnable>();
+				break;
+			case PRIORITY:
+				taskQueue = new PriorityTaskQueue();
+				break;
+			case FIFO:
+			default:
+				taskQueue = new LinkedBlockingQueue<Runnable>();
+				break;
+		}
+		return taskQueue;
 	}
 
 	/** Creates default implementation of task distributor */
@@ -86,8 +140,9 @@ public class DefaultConfigurationFactory {
 		if (diskCacheSize > 0 || diskCacheFileCount > 0) {
 			File individualCacheDir = StorageUtils.getIndividualCacheDirectory(context);
 			try {
+				// Cache is opened in background so configuration building doesn't wait for journal reading
 				return new LruDiskCache(individualCacheDir, reserveCacheDir, diskCacheFileNameGenerator, diskCacheSize,
-						diskCacheFileCount);
+						diskCacheFileCount, false, true);
 			} catch (IOException e) {
 				L.e(e);
 				// continue and create unlimited cache
@@ -112,6 +167,15 @@ public class DefaultConfigurationFactory {
 	 * Default cache size = 1/8 of available app memory.
 	 */
 	public static MemoryCache createMemoryCache(Context context, int memoryCacheSize) {
+		return createMemoryCache(context, memoryCacheSize, null);
+	}
+
+	/**
+	 * Creates default implementation of {@link MemoryCache} - {@link LruMemoryCache} which puts evicted bitmaps into
+	 * incoming {@linkplain BitmapPool bitmap pool}.<br />
+	 * Default cache size = 1/8 of available app memory.
+	 */
+	public static MemoryCache createMemoryCache(Context context, int memoryCacheSize, BitmapPool bitmapPool) {
 		if (memoryCacheSize == 0) {
 			ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
 			int memoryClass = am.getMemoryClass();
@@ -120,7 +184,7 @@ public class DefaultConfigurationFactory {
 			}
 			memoryCacheSize = 1024 * 1024 * memoryClass / 8;
 		}
-		return new LruMemoryCache(memoryCacheSize);
+		return new LruMemoryCache(memoryCacheSize, bitmapPool);
 	}
 
 	private static boolean hasHoneycomb() {
@@ -144,7 +208,12 @@ public class DefaultConfigurationFactory {
 
 	/** Creates default implementation of {@link ImageDecoder} - {@link BaseImageDecoder} */
 	public static ImageDecoder createImageDecoder(boolean loggingEnabled) {
-		return new BaseImageDecoder(loggingEnabled);
+		return createImageDecoder(loggingEnabled, null);
+	}
+
+	/** Creates default implementation of {@link ImageDecoder} - {@link BaseImageDecoder} which reuses pooled bitmaps */
+	public static ImageDecoder createImageDecoder(boolean loggingEnabled, BitmapPool bitmapPool) {
+		return new BaseImageDecoder(loggingEnabled, bitmapPool);
 	}
 
 	/** Creates default implementation of {@link BitmapDisplayer} - {@link SimpleBitmapDisplayer} */
@@ -163,13 +232,15 @@ public class DefaultConfigurationFactory {
 
 		private final ThreadGroup group;
 		private final AtomicInteger threadNumber = new AtomicInteger(1);
+		private final String poolName;
 		private final String namePrefix;
 		private final int threadPriority;
 
 		DefaultThreadFactory(int threadPriority, String threadNamePrefix) {
 			this.threadPriority = threadPriority;
 			group = Thread.currentThread().getThreadGroup();
-			namePrefix = threadNamePrefix + poolNumber.getAndIncrement() + "-thread-";
+			poolName = threadNamePrefix + poolNumber.getAndIncrement();
+			namePrefix = poolName + "-thread-";
 		}
 
 		@Override
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core;
+
+import android.graphics.Bitmap;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
+import com.nostra13.universalimageloader.core.imageaware.ImageAware;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Decorator for {@link BitmapPool}. Counts uses of bitmaps: bitmap is used while it's displayed in
+ * {@link ImageAware} and while it's {@linkplain #acquire(Bitmap) passed} to display (e.g. display task is posted but
+ * isn't run yet). Used bitmap which is put into pool (e.g. it's evicted from memory cache) gets into wrapped pool only
+ * after it's released by all its users, so bitmap can't be reused for decoding of another image while it's on screen
+ * or is about to be displayed.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+final class DisplayAwareBitmapPool implements BitmapPool {
+
+	private final BitmapPool pool;
+
+	// All maps are guarded by this pool. Bitmap doesn't override equals(), so bitmap keys are compared by identity.
+	/** Displayed bitmaps by ImageAware IDs */
+	private final Map<Integer, DisplayedBitmap> displayedBitmaps = new HashMap<Integer, DisplayedBitmap>();
+	private final ReferenceQueue<Bitmap> collectedBitmaps = new ReferenceQueue<Bitmap>();
+	/** Numbers of uses of bitmaps which are used at this moment */
+	private final Map<Bitmap, Integer> useCounts = new WeakHashMap<Bitmap, Integer>();
+	/** Used bitmaps which will be put into wrapped pool when they are released */
+	private final Set<Bitmap> pendingBitmaps = Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
+
+	DisplayAwareBitmapPool(BitmapPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Remembers that bitmap is displayed in ImageAware now (instead of previous one). Previous bitmap is released by
+	 * the ImageAware.
+	 */
+	void onBitmapDisplayed(ImageAware imageAware, Bitmap bitmap) {
+		Bitmap releasedBitmap = null;
+		synchronized (this) {
+			removeCollectedBitmaps();
+			int imageAwareId = imageAware.getId();
+			if (bitmap != null) {
+				useCounts.put(bitmap, getUseCount(bitmap) + 1);
+			}
+			DisplayedBitmap previous = displayedBitmaps.put(imageAwareId,
+					new DisplayedBitmap(imageAwareId, bitmap, collectedBitmaps));
+			Bitmap previousBitmap = previous == null ? null : previous.get();
+			if (previousBitmap != null && decrementUseCount(previousBitmap)) {
+				releasedBitmap = previousBitmap;
+			}
+		}
+		if (releasedBitmap != null) {
+			pool.put(releasedBitmap);
+		}
+	}
+
+	/** Marks bitmap as used until it's {@linkplain #release(Bitmap) released} */
+	void acquire(Bitmap bitmap) {
+		synchronized (this) {
+			useCounts.put(bitmap, getUseCount(bitmap) + 1);
+		}
+	}
+
+	/** Releases bitmap which was {@linkplain #acquire(Bitmap) acquired}. Unused bitmap gets into pool if it was put. */
+	void release(Bitmap bitmap) {
+		boolean released;
+		synchronized (this) {
+			released = decrementUseCount(bitmap);
+		}
+		if (released) {
+			pool.put(bitmap);
+		}
+	}
+
+	/** @return <b>true</b> - if bitmap was put into pool or will be put there when it's released */
+	@Override
+	public boolean put(Bitmap bitmap) {
+		synchronized (this) {
+			if (useCounts.containsKey(bitmap)) {
+				pendingBitmaps.add(bitmap);
+				return true;
+			}
+		}
+		return pool.put(bitmap);
+	}
+
+	@Override
+	public Bitmap get(int width, int height, Bitmap.Config config) {
+		Bitmap bitmap = pool.get(width, height, config);
+		if (bitmap != null) {
+			synchronized (this) {
+				if (useCounts.containsKey(bitmap)) {
+					return null; // bitmap was displayed again after it had got into pool
+				}
+			}
+		}
+		return bitmap;
+	}
+
+	@Override
+	public void clear() {
+		synchronized (this) {
+			pendingBitmaps.clear();
+		}
+		pool.clear();
+	}
+
+	private int getUseCount(Bitmap bitmap) {
+		Integer count = useCounts.get(bitmap);
+		return count == null ? 0 : count;
+	}
+
+	/** @return <b>true</b> - if bitmap isn't used anymore and it should be put into pool; <b>false</b> - otherwise */
+	private boolean decrementUseCount(Bitmap bitmap) {
+		int count = getUseCount(bitmap);
+		if (count > 1) {
+			useCounts.put(bitmap, count - 1);
+			return false;
+		}
+		useCounts.remove(bitmap);
+		return pendingBitmaps.remove(bitmap);
+	}
+
+	/** Forgets ImageAwares which displayed bitmaps collected by GC */
+	private void removeCollectedBitmaps() {
+		DisplayedBitmap collected;
+		while ((collected = (DisplayedBitmap) collectedBitmaps.poll()) != null) {
+			if (displayedBitmaps.get(collected.imageAwareId) == collected) {
+				displayedBitmaps.remove(collected.imageAwareId);
+			}
+		}
+	}
+
+	/** Reference to bitmap which is displayed in ImageAware */
+	private static class DisplayedBitmap extends WeakReference<Bitmap> {
+
+		final int imageAwareId;
+
+		DisplayedBitmap(int imageAwareId, Bitmap bitmap, ReferenceQueue<Bitmap> queue) {
+			super(bitmap, queue);
+			this.imageAwareId = imageAwareId;
+		}
+	}
+}
@@ -24,6 +24,8 @@ import com.nostra13.universalimageloader.utils.L;
 
 /**
  * Displays bitmap in {@link com.nostra13.universalimageloader.core.imageaware.ImageAware}. Must be called on UI thread.
+ * Incoming bitmap must be {@linkplain ImageLoaderEngine#acquireBitmap(Bitmap) acquired}, task releases it when it's
+ * run.
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see ImageLoadingListener
@@ -67,10 +69,12 @@ final class DisplayBitmapTask implements Runnable {
 			listener.onLoadingCancelled(imageUri, imageAware.getWrappedView());
 		} else {
 			L.d(LOG_DISPLAY_IMAGE_IN_IMAGEAWARE, loadedFrom, memoryCacheKey);
+			engine.onBitmapDisplayed(imageAware, bitmap);
 			displayer.display(bitmap, imageAware, loadedFrom);
 			engine.cancelDisplayTaskFor(imageAware);
 			listener.onLoadingComplete(imageUri, imageAware.getWrappedView(), bitmap);
 		}
+		engine.releaseBitmap(bitmap);
 	}
 
 	/** Checks whether memory cache key (image URI) for current ImageAware is actual */
@@ -22,6 +22,7 @@ import android.graphics.drawable.Drawable;
 import android.os.Handler;
 import com.nostra13.universalimageloader.core.listener.ImageLoadingListener;
 import com.nostra13.universalimageloader.core.assist.ImageScaleType;
+import com.nostra13.universalimageloader.core.assist.LoadingPriority;
 import com.nostra13.universalimageloader.core.display.BitmapDisplayer;
 import com.nostra13.universalimageloader.core.display.SimpleBitmapDisplayer;
 import com.nostra13.universalimageloader.core.download.ImageDownloader;
@@ -48,6 +49,7 @@ import com.nostra13.universalimageloader.core.process.BitmapProcessor;
  * <li>pre-processor for image Bitmap (before caching in memory)</li>
  * <li>post-processor for image Bitmap (after caching in memory, before displaying)</li>
  * <li>how decoded {@link Bitmap} will be displayed</li>
+ * <li>priority of image loading</li>
  * </ul>
  * <p/>
  * You can create instance:
@@ -83,6 +85,7 @@ public final class DisplayImageOptions {
 	private final BitmapDisplayer displayer;
 	private final Handler handler;
 	private final boolean isSyncLoading;
+	private final LoadingPriority priority;
 
 	private DisplayImageOptions(Builder builder) {
 		imageResOnLoading = builder.imageResOnLoading;
@@ -104,6 +107,7 @@ public final class DisplayImageOptions {
 		displayer = builder.displayer;
 		handler = builder.handler;
 		isSyncLoading = builder.isSyncLoading;
+		priority = builder.priority;
 	}
 
 	public boolean shouldShowImageOnLoading() {
@@ -194,6 +198,10 @@ public final class DisplayImageOptions {
 		return isSyncLoading;
 	}
 
+	public LoadingPriority getPriority() {
+		return priority;
+	}
+
 	/**
 	 * Builder for {@link DisplayImageOptions}
 	 *
@@ -219,6 +227,7 @@ public final class DisplayImageOptions {
 		private BitmapDisplayer displayer = DefaultConfigurationFactory.createBitmapDisplayer();
 		private Handler handler = null;
 		private boolean isSyncLoading = false;
+		private LoadingPriority priority = LoadingPriority.NORMAL;
 
 		/**
 		 * Stub image will be displayed in {@link com.nostra13.universalimageloader.core.imageaware.ImageAware
@@ -455,6 +464,17 @@ public final class DisplayImageOptions {
 			return this;
 		}
 
+		/**
+		 * Sets priority of image loading. It's considered if tasks are processed in
+		 * {@linkplain com.nostra13.universalimageloader.core.assist.QueueProcessingType#PRIORITY priority order}.
+		 * Default value - {@link LoadingPriority#NORMAL NORMAL}
+		 */
+		public Builder priority(LoadingPriority priority) {
+			if (priority == null) throw new IllegalArgumentException("priority can't be null");
+			this.priority = priority;
+			return this;
+		}
+
 		/** Sets all options equal to incoming options */
 		public Builder cloneFrom(DisplayImageOptions options) {
 			imageResOnLoading = options.imageResOnLoading;
@@ -476,6 +496,7 @@ public final class DisplayImageOptions {
 			displayer = options.displayer;
 			handler = options.handler;
 			isSyncLoading = options.isSyncLoading;
+			priority = options.priority;
 			return this;
 		}
 
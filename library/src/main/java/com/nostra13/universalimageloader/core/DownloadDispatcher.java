@@ -0,0 +1,374 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core;
+
+import com.nostra13.universalimageloader.core.assist.LoadingPriority;
+import com.nostra13.universalimageloader.core.download.ImageDownloader.Scheme;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatches network downloads of ImageLoader. It limits number of downloads from every host which run at the same
+ * time, so slow host can't occupy all network threads. Downloads which exceed the limit wait for free slot of their host
+ * without occupying pool threads and are admitted in order of their {@linkplain LoadingPriority priority}. Optionally
+ * it limits total bandwidth of downloads by token bucket.<br />
+ * Only HTTP(S) downloads are dispatched. Provides live counters of dispatched downloads. Is thread-safe.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see ImageLoaderConfiguration.Builder#downloadDispatcher(DownloadDispatcher)
+ * @since 1.9.5
+ */
+public final class DownloadDispatcher {
+
+	/** {@value} */
+	public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 4;
+
+	private static final int MAX_THROTTLING_DELAY = 1000; // ms
+
+	private final int maxRequestsPerHost;
+	private final Map<String, Integer> hostLimits = new HashMap<String, Integer>();
+	/** Guarded by this */
+	private Map<String, Host> hosts = new HashMap<String, Host>();
+
+	private final long maxBytesPerSecond;
+	/** Guarded by bucketLock */
+	private double tokens;
+	/** Guarded by bucketLock */
+	private long lastRefillTime;
+	private final Object bucketLock = new Object();
+
+	private final AtomicLong waitedRequestCount = new AtomicLong();
+	private final AtomicLong transferredBytes = new AtomicLong();
+	private final AtomicLong throttlingTime = new AtomicLong();
+
+	/** Creates dispatcher with {@value #DEFAULT_MAX_REQUESTS_PER_HOST} requests per host without bandwidth limit */
+	public DownloadDispatcher() {
+		this(DEFAULT_MAX_REQUESTS_PER_HOST, 0);
+	}
+
+	/**
+	 * @param maxRequestsPerHost Max number of downloads from one host which run at the same time
+	 * @param maxBytesPerSecond  Max total bandwidth of downloads, in bytes per second. <b>0</b> - unlimited.
+	 */
+	public DownloadDispatcher(int maxRequestsPerHost, long maxBytesPerSecond) {
+		if (maxRequestsPerHost <= 0) {
+			throw new IllegalArgumentException("maxRequestsPerHost must be a positive number");
+		}
+		if (maxBytesPerSecond < 0) {
+			throw new IllegalArgumentException("maxBytesPerSecond must not be negative");
+		}
+		this.maxRequestsPerHost = maxRequestsPerHost;
+		this.maxBytesPerSecond = maxBytesPerSecond;
+		this.tokens = maxBytesPerSecond;
+		this.lastRefillTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Sets limit of downloads from incoming host which run at the same time. It overrides common limit of requests
+	 * per host.
+	 *
+	 * @param host        Host (and port if it's specified in image URIs), e.g. "uploads.example.com"
+	 * @param maxRequests Max number of downloads from the host which run at the same time
+	 * @return this dispatcher
+	 */
+	public DownloadDispatcher setHostLimit(String host, int maxRequests) {
+		if (maxRequests <= 0) {
+			throw new IllegalArgumentException("maxRequests must be a positive number");
+		}
+		synchronized (this) {
+			hostLimits.put(host.toLowerCase(Locale.US), maxRequests);
+		}
+		return this;
+	}
+
+	/**
+	 * Executes download job by incoming executor if number of running downloads from job's host is under limit.
+	 * Otherwise job waits for free slot and is executed when one of running downloads from the same host is finished.
+	 *
+	 * @throws RejectedExecutionException if executor rejects job
+	 */
+	void execute(String uri, PrioritizedTask job, Executor executor) {
+		String hostName = getHost(uri);
+		if (hostName == null) {
+			executor.execute(job);
+			return;
+		}
+
+		DispatchedJob dispatchedJob;
+		synchronized (this) {
+			Host host = hosts.get(hostName);
+			if (host == null) {
+				Integer limit = hostLimits.get(hostName);
+				host = new Host(hostName, limit == null ? maxRequestsPerHost : limit);
+				hosts.put(hostName, host);
+			}
+			dispatchedJob = new DispatchedJob(job, host, executor);
+			if (host.runningCount >= host.maxRequests) {
+				host.waitingJobs.add(dispatchedJob);
+				waitedRequestCount.incrementAndGet();
+				return;
+			}
+			host.runningCount++;
+		}
+		dispatchedJob.executeAdmitted();
+	}
+
+	/**
+	 * Drops waiting downloads. Slots of running downloads are released when they're finished but aren't passed to
+	 * dropped downloads.
+	 *
+	 * @return Dropped download jobs, they won't be executed, so caller should finish them
+	 */
+	synchronized List<PrioritizedTask> clear() {
+		List<PrioritizedTask> droppedJobs = new ArrayList<PrioritizedTask>();
+		for (Host host : hosts.values()) {
+			for (Runnable waitingJob : host.waitingJobs) {
+				droppedJobs.add(((DispatchedJob) waitingJob).job);
+			}
+			host.waitingJobs.clear();
+		}
+		hosts = new HashMap<String, Host>();
+		return droppedJobs;
+	}
+
+	/**
+	 * Wraps image stream so reading from it is counted in {@linkplain #getTransferredBytes() transferred bytes} and is
+	 * limited by total bandwidth limit of downloads (if it's set).
+	 *
+	 * @return Incoming stream if image isn't downloaded from network
+	 */
+	InputStream limitBandwidth(String uri, InputStream imageStream) {
+		if (imageStream == null || getHost(uri) == null) {
+			return imageStream;
+		}
+		return new BandwidthLimitedInputStream(imageStream);
+	}
+
+	/** @return Hosts which downloads are running or waiting at the moment */
+	public synchronized Set<String> getHosts() {
+		return Collections.unmodifiableSet(new HashSet<String>(hosts.keySet()));
+	}
+
+	/** @return Number of running downloads from incoming host */
+	public synchronized int getRunningCount(String host) {
+		Host h = hosts.get(host.toLowerCase(Locale.US));
+		return h == null ? 0 : h.runningCount;
+	}
+
+	/** @return Number of downloads from incoming host which wait for free slot */
+	public synchronized int getWaitingCount(String host) {
+		Host h = hosts.get(host.toLowerCase(Locale.US));
+		return h == null ? 0 : h.waitingJobs.size();
+	}
+
+	/** @return Number of all running downloads */
+	public synchronized int getRunningCount() {
+		int count = 0;
+		for (Host host : hosts.values()) {
+			count += host.runningCount;
+		}
+		return count;
+	}
+
+	/** @return Number of all downloads which wait for free slot of their hosts */
+	public synchronized int getWaitingCount() {
+		int count = 0;
+		for (Host host : hosts.values()) {
+			count += host.waitingJobs.size();
+		}
+		return count;
+	}
+
+	/** @return Total number of downloads which had to wait for free slot of their hosts */
+	public long getWaitedRequestCount() {
+		return waitedRequestCount.get();
+	}
+
+	/** @return Total number of bytes downloaded through dispatcher */
+	public long getTransferredBytes() {
+		return transferredBytes.get();
+	}
+
+	/** @return Total time which downloads were delayed by bandwidth limit, in milliseconds */
+	public long getThrottlingTime() {
+		return throttlingTime.get();
+	}
+
+	/** Passes slot of finished download to the most prioritized waiting download of the same host */
+	private void onJobFinished(Host host) {
+		DispatchedJob nextJob;
+		synchronized (this) {
+			nextJob = (DispatchedJob) host.waitingJobs.poll();
+			if (nextJob == null) {
+				host.runningCount--;
+				if (host.runningCount == 0 && hosts.get(host.name) == host) {
+					hosts.remove(host.name);
+				}
+				return;
+			}
+		}
+		nextJob.executeAdmitted();
+	}
+
+	/**
+	 * Takes tokens for read bytes from token bucket.
+	 *
+	 * @return Time which reading should be delayed for, in milliseconds
+	 */
+	private long takeTokens(int byteCount) {
+		transferredBytes.addAndGet(byteCount);
+		if (maxBytesPerSecond == 0) return 0;
+
+		synchronized (bucketLock) {
+			long now = System.currentTimeMillis();
+			tokens = Math.min(maxBytesPerSecond, tokens + (now - lastRefillTime) * maxBytesPerSecond / 1000d);
+			lastRefillTime = now;
+			tokens -= byteCount; // Tokens can be borrowed, following reads wait until debt is repaid
+			return tokens >= 0 ? 0 : Math.min((long) (-tokens * 1000 / maxBytesPerSecond), MAX_THROTTLING_DELAY);
+		}
+	}
+
+	/** @return Host (and port) of HTTP(S) URI; <b>null</b> - for other URIs */
+	private static String getHost(String uri) {
+		Scheme scheme = Scheme.ofUri(uri);
+		if (scheme != Scheme.HTTP && scheme != Scheme.HTTPS) {
+			return null;
+		}
+		int start = uri.indexOf("://") + 3;
+		int end = start;
+		while (end < uri.length() && "/?#".indexOf(uri.charAt(end)) < 0) {
+			end++;
+		}
+		return uri.substring(start, end).toLowerCase(Locale.US);
+	}
+
+	private static final class Host {
+		final String name;
+		final int maxRequests;
+		final PriorityTaskQueue waitingJobs = new PriorityTaskQueue();
+		int runningCount;
+
+		Host(String name, int maxRequests) {
+			this.name = name;
+			this.maxRequests = maxRequests;
+		}
+	}
+
+	/** Download job which releases slot of its host when it's finished */
+	private final class DispatchedJob implements PrioritizedTask {
+
+		private final PrioritizedTask job;
+		private final Host host;
+		private final Executor executor;
+
+		DispatchedJob(PrioritizedTask job, Host host, Executor executor) {
+			this.job = job;
+			this.host = host;
+			this.executor = executor;
+		}
+
+		/** Executes job which took slot of its host */
+		void executeAdmitted() {
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				onJobFinished(host);
+				throw e;
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				job.run();
+			} finally {
+				onJobFinished(host);
+			}
+		}
+
+		@Override
+		public LoadingPriority getPriority() {
+			return job.getPriority();
+		}
+
+		@Override
+		public long getSequence() {
+			return job.getSequence();
+		}
+	}
+
+	/** Stream which counts read bytes and delays reading if downloads exceed bandwidth limit */
+	private final class BandwidthLimitedInputStream extends FilterInputStream {
+
+		BandwidthLimitedInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				throttle(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException {
+			int read = super.read(buffer, offset, count);
+			if (read > 0) {
+				throttle(read);
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long byteCount) throws IOException {
+			long skipped = super.skip(byteCount);
+			if (skipped > 0) {
+				throttle((int) Math.min(skipped, Integer.MAX_VALUE));
+			}
+			return skipped;
+		}
+
+		private void throttle(int byteCount) throws IOException {
+			long delay = takeTokens(byteCount);
+			if (delay > 0) {
+				throttlingTime.addAndGet(delay);
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+		}
+	}
+}
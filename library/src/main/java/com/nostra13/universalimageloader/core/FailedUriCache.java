@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core;
+
+import com.nostra13.universalimageloader.core.assist.FailReason.FailType;
+
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Negative cache of image URIs which failed to load. While URI is in the cache ImageLoader doesn't load it again but
+ * displays {@linkplain DisplayImageOptions.Builder#showImageOnFail(int) image for fail} immediately. Time of keeping
+ * URI in the cache depends on {@linkplain FailType fail type} and grows exponentially with every next failure of the
+ * URI, random jitter is added so URIs which failed together don't expire together. Successful loading of URI removes
+ * it from the cache. Fails caused by connectivity problems (unknown host, connection errors, timeouts) aren't cached,
+ * they don't depend on URI.<br />
+ * Size of the cache is limited, the least recently used URIs are evicted. Is thread-safe.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see ImageLoaderConfiguration.Builder#failedUriCache(FailedUriCache)
+ * @since 1.9.5
+ */
+public final class FailedUriCache {
+
+	/** {@value} */
+	public static final int DEFAULT_MAX_SIZE = 256;
+	/** {@value} */
+	public static final long DEFAULT_MAX_TTL = 60 * 60 * 1000; // 1 hour
+
+	private static final float JITTER = 0.2f;
+
+	private final Map<String, Entry> entries;
+	private final Map<FailType, Long> baseTtls = new EnumMap<FailType, Long>(FailType.class);
+	private long maxTtl = DEFAULT_MAX_TTL;
+	private final Random random = new Random();
+
+	/** Creates cache of {@value #DEFAULT_MAX_SIZE} URIs with default TTLs */
+	public FailedUriCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Creates cache with default TTLs: 30 seconds for {@link FailType#IO_ERROR IO_ERROR} and
+	 * {@link FailType#UNKNOWN UNKNOWN} fails, 10 minutes for {@link FailType#DECODING_ERROR DECODING_ERROR} fails.
+	 * {@link FailType#NETWORK_DENIED NETWORK_DENIED} and {@link FailType#OUT_OF_MEMORY OUT_OF_MEMORY} fails aren't
+	 * cached because they don't depend on URI.
+	 *
+	 * @param maxSize Max number of URIs in the cache
+	 */
+	public FailedUriCache(final int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be a positive number");
+		}
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+		baseTtls.put(FailType.IO_ERROR, 30 * 1000L);
+		baseTtls.put(FailType.DECODING_ERROR, 10 * 60 * 1000L);
+		baseTtls.put(FailType.UNKNOWN, 30 * 1000L);
+		baseTtls.put(FailType.NETWORK_DENIED, 0L);
+		baseTtls.put(FailType.OUT_OF_MEMORY, 0L);
+	}
+
+	/**
+	 * Sets time of keeping URI in the cache after the first failure of incoming type. It's doubled for every next
+	 * failure of the URI.
+	 *
+	 * @param failType Type of fail
+	 * @param ttl      Time in milliseconds; <b>0</b> - fails of this type aren't cached
+	 * @return this cache
+	 */
+	public synchronized FailedUriCache setBaseTtl(FailType failType, long ttl) {
+		if (ttl < 0) {
+			throw new IllegalArgumentException("ttl must not be negative");
+		}
+		baseTtls.put(failType, ttl);
+		return this;
+	}
+
+	/**
+	 * Sets max time of keeping URI in the cache after failure.<br />
+	 * Default value - {@value #DEFAULT_MAX_TTL} ms
+	 *
+	 * @param maxTtl Time in milliseconds
+	 * @return this cache
+	 */
+	public synchronized FailedUriCache setMaxTtl(long maxTtl) {
+		if (maxTtl <= 0) {
+			throw new IllegalArgumentException("maxTtl must be a positive number");
+		}
+		this.maxTtl = maxTtl;
+		return this;
+	}
+
+	/**
+	 * @param uri Image URI
+	 * @return Type of the last fail of URI if URI shouldn't be loaded now; <b>null</b> - if URI can be loaded
+	 */
+	public synchronized FailType get(String uri) {
+		Entry entry = entries.get(uri);
+		if (entry == null || entry.expirationTime <= System.currentTimeMillis()) {
+			return null;
+		}
+		return entry.failType;
+	}
+
+	/** Removes URI from the cache, so it will be loaded on next request */
+	public synchronized void invalidate(String uri) {
+		entries.remove(uri);
+	}
+
+	/** Removes all URIs from the cache */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Remembers failure of URI. Entries of expired URIs are kept until successful loading or eviction, so TTL keeps
+	 * growing if URI fails again.
+	 *
+	 * @param failCause null-ok; Cause of failure, failure isn't remembered if it's caused by connectivity problem
+	 */
+	synchronized void put(String uri, FailType failType, Throwable failCause) {
+		Long baseTtl = baseTtls.get(failType);
+		if (baseTtl == null || baseTtl == 0 || isConnectivityFailure(failCause)) return;
+
+		Entry entry = entries.get(uri);
+		if (entry == null) {
+			entry = new Entry();
+			entries.put(uri, entry);
+		}
+		entry.failType = failType;
+		entry.failureCount++;
+
+		long ttl = baseTtl;
+		for (int i = 1; i < entry.failureCount && ttl < maxTtl; i++) {
+			ttl *= 2;
+		}
+		ttl = Math.min(ttl, maxTtl);
+		ttl *= 1 - JITTER + 2 * JITTER * random.nextFloat();
+		entry.expirationTime = System.currentTimeMillis() + ttl;
+	}
+
+	/** @return Time when URI expires in the cache; <b>0</b> - if there is no URI in the cache */
+	synchronized long getExpirationTime(String uri) {
+		Entry entry = entries.get(uri);
+		return entry == null ? 0 : entry.expirationTime;
+	}
+
+	/** @return <b>true</b> - if failure was caused by connectivity problem (interruption and timeouts included) */
+	private static boolean isConnectivityFailure(Throwable failCause) {
+		return failCause instanceof UnknownHostException || failCause instanceof SocketException
+				|| failCause instanceof InterruptedIOException;
+	}
+
+	private static final class Entry {
+		FailType failType;
+		int failureCount;
+		long expirationTime;
+	}
+}
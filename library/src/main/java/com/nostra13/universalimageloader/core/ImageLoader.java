@@ -28,6 +28,8 @@ import com.nostra13.universalimageloader.core.assist.FailReason;
 import com.nostra13.universalimageloader.core.assist.FlushedInputStream;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
 import com.nostra13.universalimageloader.core.assist.LoadedFrom;
+import com.nostra13.universalimageloader.core.assist.LoadingPriority;
+import com.nostra13.universalimageloader.core.assist.PrefetchTarget;
 import com.nostra13.universalimageloader.core.assist.ViewScaleType;
 import com.nostra13.universalimageloader.core.imageaware.ImageAware;
 import com.nostra13.universalimageloader.core.imageaware.ImageViewAware;
@@ -39,6 +41,10 @@ import com.nostra13.universalimageloader.utils.ImageSizeUtils;
 import com.nostra13.universalimageloader.utils.L;
 import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 /**
  * Singletone for image loading and displaying at {@link ImageView ImageViews}<br />
  * <b>NOTE:</b> {@link #init(ImageLoaderConfiguration)} method must be called before any other method.
@@ -53,10 +59,13 @@ public class ImageLoader {
 	static final String LOG_INIT_CONFIG = "Initialize ImageLoader with configuration";
 	static final String LOG_DESTROY = "Destroy ImageLoader";
 	static final String LOG_LOAD_IMAGE_FROM_MEMORY_CACHE = "Load image from memory cache [%s]";
+	private static final String LOG_SKIP_FAILED_URI = "Image failed to load recently (%s). Skip loading. [%s]";
+	private static final String LOG_PREFETCH_CACHED = "Image is cached in memory already. Skip prefetching. [%s]";
 
 	private static final String WARNING_RE_INIT_CONFIG = "Try to initialize ImageLoader which had already been initialized before. " + "To re-init ImageLoader with new configuration call ImageLoader.destroy() at first.";
 	private static final String ERROR_WRONG_ARGUMENTS = "Wrong arguments were passed to displayImage() method (ImageView reference must not be null)";
 	private static final String ERROR_NOT_INIT = "ImageLoader must be init with configuration before using";
+	private static final String ERROR_WRONG_PREFETCH_ARGUMENTS = "Wrong arguments were passed to prefetch() method (URIs and target must not be null)";
 	private static final String ERROR_INIT_CONFIG_WITH_NULL = "ImageLoader configuration can not be initialized with null";
 
 	private ImageLoaderConfiguration configuration;
@@ -270,7 +279,8 @@ public class ImageLoader {
 
 			if (options.shouldPostProcess()) {
 				ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(uri, imageAware, targetSize, memoryCacheKey,
-						options, listener, progressListener, engine.getLockForUri(uri));
+						options, listener, progressListener);
+				engine.acquireBitmap(bmp);
 				ProcessAndDisplayImageTask displayTask = new ProcessAndDisplayImageTask(engine, bmp, imageLoadingInfo,
 						defineHandler(options));
 				if (options.isSyncLoading()) {
@@ -279,10 +289,22 @@ public class ImageLoader {
 					engine.submit(displayTask);
 				}
 			} else {
+				engine.onBitmapDisplayed(imageAware, bmp);
 				options.getDisplayer().display(bmp, imageAware, LoadedFrom.MEMORY_CACHE);
 				listener.onLoadingComplete(uri, imageAware.getWrappedView(), bmp);
 			}
 		} else {
+			FailReason.FailType recentFailType = getRecentFailType(uri);
+			if (recentFailType != null) {
+				L.d(LOG_SKIP_FAILED_URI, recentFailType, memoryCacheKey);
+				engine.cancelDisplayTaskFor(imageAware);
+				if (options.shouldShowImageOnFail()) {
+					imageAware.setImageDrawable(options.getImageOnFail(configuration.resources));
+				}
+				listener.onLoadingFailed(uri, imageAware.getWrappedView(), new FailReason(recentFailType, null));
+				return;
+			}
+
 			if (options.shouldShowImageOnLoading()) {
 				imageAware.setImageDrawable(options.getImageOnLoading(configuration.resources));
 			} else if (options.isResetViewBeforeLoading()) {
@@ -290,7 +312,7 @@ public class ImageLoader {
 			}
 
 			ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(uri, imageAware, targetSize, memoryCacheKey,
-					options, listener, progressListener, engine.getLockForUri(uri));
+					options, listener, progressListener);
 			LoadAndDisplayImageTask displayTask = new LoadAndDisplayImageTask(engine, imageLoadingInfo,
 					defineHandler(options));
 			if (options.isSyncLoading()) {
@@ -603,6 +625,79 @@ public class ImageLoader {
 		return listener.getLoadedBitmap();
 	}
 
+	/**
+	 * Prefetches images into disk cache. Same as {@link #prefetch(Collection, ImageSize, PrefetchTarget)
+	 * prefetch(uris, null, PrefetchTarget.DISK)}
+	 *
+	 * @throws IllegalStateException if {@link #init(ImageLoaderConfiguration)} method wasn't called before
+	 */
+	public PrefetchHandle prefetch(Collection<String> uris) {
+		return prefetch(uris, null, PrefetchTarget.DISK);
+	}
+
+	/**
+	 * Adds prefetch tasks to execution pool. Images are loaded into target cache with
+	 * {@linkplain LoadingPriority#LOW low priority}, no listeners are notified and no images are displayed. Images
+	 * which are already cached or are loaded by another task at this moment aren't loaded again.<br />
+	 * Prefetching is held while ImageLoader is {@linkplain #pause() paused}.
+	 * <br />
+	 * <b>NOTE:</b> {@link #init(ImageLoaderConfiguration)} method must be called before this method call
+	 *
+	 * @param uris       Image URIs (i.e. "http://site.com/image.png", "file:///mnt/sdcard/image.png")
+	 * @param targetSize Size which images will be decoded for. It's considered only for
+	 *                   {@link PrefetchTarget#MEMORY} and should be the size of the views which will display the
+	 *                   images, so the images will be found in memory cache. If <b>null</b> - max image size for
+	 *                   memory cache {@linkplain ImageLoaderConfiguration.Builder#memoryCacheExtraOptions(int, int)
+	 *                   from configuration} will be used.
+	 * @param target     Cache which should be filled. Images are decoded with default display image options
+	 *                   {@linkplain ImageLoaderConfiguration.Builder#defaultDisplayImageOptions(DisplayImageOptions)
+	 *                   from configuration}.
+	 * @return Handle which provides progress of prefetching and allows to cancel it
+	 * @throws IllegalStateException if {@link #init(ImageLoaderConfiguration)} method wasn't called before
+	 */
+	public PrefetchHandle prefetch(Collection<String> uris, ImageSize targetSize, PrefetchTarget target) {
+		checkConfiguration();
+		if (uris == null || target == null) {
+			throw new IllegalArgumentException(ERROR_WRONG_PREFETCH_ARGUMENTS);
+		}
+		if (targetSize == null) {
+			targetSize = configuration.getMaxImageSize();
+		}
+
+		Set<String> uniqueUris = new LinkedHashSet<String>();
+		for (String uri : uris) {
+			if (!TextUtils.isEmpty(uri)) {
+				uniqueUris.add(uri);
+			}
+		}
+		// Prefetch tasks don't display images, so only caching options are considered
+		DisplayImageOptions options = new DisplayImageOptions.Builder()
+				.cloneFrom(configuration.defaultDisplayImageOptions).cacheInMemory(true).cacheOnDisk(true)
+				.delayBeforeLoading(0).postProcessor(null).syncLoading(false).priority(LoadingPriority.LOW).build();
+		ImageLoadingListener listener = new SimpleImageLoadingListener();
+
+		PrefetchHandle handle = new PrefetchHandle(uniqueUris.size());
+		for (String uri : uniqueUris) {
+			String memoryCacheKey = MemoryCacheUtils.generateKey(uri, targetSize);
+			Bitmap bmp = target == PrefetchTarget.MEMORY ? configuration.memoryCache.get(memoryCacheKey) : null;
+			FailReason.FailType recentFailType = getRecentFailType(uri);
+			if (recentFailType != null) {
+				L.d(LOG_SKIP_FAILED_URI, recentFailType, uri);
+				handle.onFailed();
+			} else if (bmp != null && !bmp.isRecycled()) {
+				L.d(LOG_PREFETCH_CACHED, memoryCacheKey);
+				handle.onCompleted();
+			} else {
+				// Image is loaded by the same task which loads it for displaying (if there is such task at this moment)
+				ImageAware imageAware = new NonViewAware(targetSize, ViewScaleType.CROP);
+				ImageLoadingInfo imageLoadingInfo = new ImageLoadingInfo(uri, imageAware, targetSize, memoryCacheKey,
+						options, listener, null);
+				engine.submit(new LoadAndDisplayImageTask(engine, imageLoadingInfo, handle, target));
+			}
+		}
+		return handle;
+	}
+
 	/**
 	 * Checks if ImageLoader's configuration was initialized
 	 *
@@ -614,6 +709,14 @@ public class ImageLoader {
 		}
 	}
 
+	/**
+	 * @return Type of recent fail of URI if URI is in {@linkplain ImageLoaderConfiguration.Builder#failedUriCache(
+	 * FailedUriCache) negative cache}; <b>null</b> - if URI can be loaded
+	 */
+	private FailReason.FailType getRecentFailType(String uri) {
+		return configuration.failedUriCache == null ? null : configuration.failedUriCache.get(uri);
+	}
+
 	/** Sets a default loading listener for all display and loading tasks. */
 	public void setDefaultLoadingListener(ImageLoadingListener listener) {
 		defaultListener = listener == null ? new SimpleImageLoadingListener() : listener;
@@ -746,7 +849,9 @@ public class ImageLoader {
 	/**
 	 * Pause ImageLoader. All new "load&display" tasks won't be executed until ImageLoader is {@link #resume() resumed}.
 	 * <br />
-	 * Already running tasks are not paused.
+	 * Already running tasks are not paused. Which tasks wait for resume is defined by
+	 * {@linkplain ImageLoaderConfiguration.Builder#pausePolicy(com.nostra13.universalimageloader.core.assist.PausePolicy)
+	 * pause policy}.
 	 */
 	public void pause() {
 		if (isInited()) {
@@ -20,13 +20,16 @@ import android.content.res.Resources;
 import android.util.DisplayMetrics;
 import com.nostra13.universalimageloader.cache.disc.DiskCache;
 import com.nostra13.universalimageloader.cache.disc.naming.FileNameGenerator;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.cache.memory.MemoryCache;
 import com.nostra13.universalimageloader.cache.memory.impl.FuzzyKeyMemoryCache;
 import com.nostra13.universalimageloader.core.assist.FlushedInputStream;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.assist.PausePolicy;
 import com.nostra13.universalimageloader.core.assist.QueueProcessingType;
 import com.nostra13.universalimageloader.core.decode.ImageDecoder;
 import com.nostra13.universalimageloader.core.download.ImageDownloader;
+import com.nostra13.universalimageloader.core.download.UriResolver;
 import com.nostra13.universalimageloader.core.process.BitmapProcessor;
 import com.nostra13.universalimageloader.utils.L;
 import com.nostra13.universalimageloader.utils.MemoryCacheUtils;
@@ -63,13 +66,25 @@ public final class ImageLoaderConfiguration {
 	final boolean customExecutorForCachedImages;
 
 	final int threadPoolSize;
+	final int decodingThreadPoolSize;
+	final int diskThreadPoolSize;
+	final int decodingHandOffCapacity;
+	final int minThreadPoolSize;
+	final int maxThreadPoolSize;
+	final int minDecodingThreadPoolSize;
+	final int maxDecodingThreadPoolSize;
 	final int threadPriority;
 	final QueueProcessingType tasksProcessingType;
+	final PausePolicy pausePolicy;
 
 	final MemoryCache memoryCache;
+	final DisplayAwareBitmapPool bitmapPool;
 	final DiskCache diskCache;
 	final ImageDownloader downloader;
 	final ImageDecoder decoder;
+	final UriResolver uriResolver;
+	final DownloadDispatcher downloadDispatcher;
+	final FailedUriCache failedUriCache;
 	final DisplayImageOptions defaultDisplayImageOptions;
 
 	final ImageDownloader networkDeniedDownloader;
@@ -85,13 +100,25 @@ public final class ImageLoaderConfiguration {
 		taskExecutor = builder.taskExecutor;
 		taskExecutorForCachedImages = builder.taskExecutorForCachedImages;
 		threadPoolSize = builder.threadPoolSize;
+		decodingThreadPoolSize = builder.decodingThreadPoolSize;
+		diskThreadPoolSize = builder.diskThreadPoolSize;
+		decodingHandOffCapacity = builder.decodingHandOffCapacity;
+		minThreadPoolSize = builder.minThreadPoolSize;
+		maxThreadPoolSize = builder.maxThreadPoolSize;
+		minDecodingThreadPoolSize = builder.minDecodingThreadPoolSize;
+		maxDecodingThreadPoolSize = builder.maxDecodingThreadPoolSize;
 		threadPriority = builder.threadPriority;
 		tasksProcessingType = builder.tasksProcessingType;
+		pausePolicy = builder.pausePolicy;
 		diskCache = builder.diskCache;
 		memoryCache = builder.memoryCache;
+		bitmapPool = builder.displayAwareBitmapPool;
 		defaultDisplayImageOptions = builder.defaultDisplayImageOptions;
 		downloader = builder.downloader;
 		decoder = builder.decoder;
+		uriResolver = builder.uriResolver;
+		downloadDispatcher = builder.downloadDispatcher;
+		failedUriCache = builder.failedUriCache;
 
 		customExecutor = builder.customExecutor;
 		customExecutorForCachedImages = builder.customExecutorForCachedImages;
@@ -111,6 +138,10 @@ public final class ImageLoaderConfiguration {
 	 * <li>maxImageWidthForDikcCache = unlimited</li>
 	 * <li>maxImageHeightForDiskCache = unlimited</li>
 	 * <li>threadPoolSize = {@link Builder#DEFAULT_THREAD_POOL_SIZE this}</li>
+	 * <li>decodingThreadPoolSize = number of CPU cores, but not more than
+	 * {@link Builder#MAX_DEFAULT_DECODING_THREAD_POOL_SIZE this}</li>
+	 * <li>diskThreadPoolSize = {@link Builder#DEFAULT_DISK_THREAD_POOL_SIZE this}</li>
+	 * <li>decodingHandOffCapacity = {@link Builder#DEFAULT_DECODING_HAND_OFF_CAPACITY this}</li>
 	 * <li>threadPriority = {@link Builder#DEFAULT_THREAD_PRIORITY this}</li>
 	 * <li>allow to cache different sizes of image in memory</li>
 	 * <li>memoryCache = {@link DefaultConfigurationFactory#createMemoryCache(android.content.Context, int)}</li>
@@ -120,6 +151,7 @@ public final class ImageLoaderConfiguration {
 	 * <li>diskCacheFileNameGenerator = {@link DefaultConfigurationFactory#createFileNameGenerator()}</li>
 	 * <li>defaultDisplayImageOptions = {@link DisplayImageOptions#createSimple() Simple options}</li>
 	 * <li>tasksProcessingOrder = {@link QueueProcessingType#FIFO}</li>
+	 * <li>pausePolicy = {@link PausePolicy#HOLD_ALL_TASKS}</li>
 	 * <li>detailed logging disabled</li>
 	 * </ul>
 	 */
@@ -151,15 +183,25 @@ public final class ImageLoaderConfiguration {
 		private static final String WARNING_OVERLAP_DISK_CACHE_PARAMS = "diskCache(), diskCacheSize() and diskCacheFileCount calls overlap each other";
 		private static final String WARNING_OVERLAP_DISK_CACHE_NAME_GENERATOR = "diskCache() and diskCacheFileNameGenerator() calls overlap each other";
 		private static final String WARNING_OVERLAP_MEMORY_CACHE = "memoryCache() and memoryCacheSize() calls overlap each other";
+		private static final String WARNING_OVERLAP_BITMAP_POOL = "bitmapPool() is considered only by default memory cache "
+				+ "and default image decoder, so it can be overlapped by memoryCache() and imageDecoder() calls";
 		private static final String WARNING_OVERLAP_EXECUTOR = "threadPoolSize(), threadPriority() and tasksProcessingOrder() calls "
 				+ "can overlap taskExecutor() and taskExecutorForCachedImages() calls.";
 
 		/** {@value} */
 		public static final int DEFAULT_THREAD_POOL_SIZE = 3;
 		/** {@value} */
+		public static final int MAX_DEFAULT_DECODING_THREAD_POOL_SIZE = 4;
+		/** {@value} */
+		public static final int DEFAULT_DISK_THREAD_POOL_SIZE = 2;
+		/** {@value} */
+		public static final int DEFAULT_DECODING_HAND_OFF_CAPACITY = 8;
+		/** {@value} */
 		public static final int DEFAULT_THREAD_PRIORITY = Thread.NORM_PRIORITY - 2;
 		/** {@value} */
 		public static final QueueProcessingType DEFAULT_TASK_PROCESSING_TYPE = QueueProcessingType.FIFO;
+		/** {@link PausePolicy#HOLD_ALL_TASKS}: all tasks are held while engine is paused */
+		public static final PausePolicy DEFAULT_PAUSE_POLICY = PausePolicy.HOLD_ALL_TASKS;
 
 		private Context context;
 
@@ -175,19 +217,32 @@ public final class ImageLoaderConfiguration {
 		private boolean customExecutorForCachedImages = false;
 
 		private int threadPoolSize = DEFAULT_THREAD_POOL_SIZE;
+		private int decodingThreadPoolSize = 0;
+		private int diskThreadPoolSize = DEFAULT_DISK_THREAD_POOL_SIZE;
+		private int decodingHandOffCapacity = DEFAULT_DECODING_HAND_OFF_CAPACITY;
+		private int minThreadPoolSize = 1;
+		private int maxThreadPoolSize = 0;
+		private int minDecodingThreadPoolSize = 1;
+		private int maxDecodingThreadPoolSize = 0;
 		private int threadPriority = DEFAULT_THREAD_PRIORITY;
 		private boolean denyCacheImageMultipleSizesInMemory = false;
 		private QueueProcessingType tasksProcessingType = DEFAULT_TASK_PROCESSING_TYPE;
+		private PausePolicy pausePolicy = DEFAULT_PAUSE_POLICY;
 
 		private int memoryCacheSize = 0;
 		private long diskCacheSize = 0;
 		private int diskCacheFileCount = 0;
 
 		private MemoryCache memoryCache = null;
+		private BitmapPool bitmapPool = null;
+		private DisplayAwareBitmapPool displayAwareBitmapPool = null;
 		private DiskCache diskCache = null;
 		private FileNameGenerator diskCacheFileNameGenerator = null;
 		private ImageDownloader downloader = null;
 		private ImageDecoder decoder;
+		private UriResolver uriResolver = null;
+		private DownloadDispatcher downloadDispatcher = null;
+		private FailedUriCache failedUriCache = null;
 		private DisplayImageOptions defaultDisplayImageOptions = null;
 
 		private boolean writeLogs = false;
@@ -261,7 +316,8 @@ public final class ImageLoaderConfiguration {
 
 		/**
 		 * Sets custom {@linkplain Executor executor} for tasks of displaying <b>cached on disk</b> images (these tasks
-		 * are executed quickly so UIL prefer to use separate executor for them).<br />
+		 * are executed quickly so UIL prefer to use separate executor for them). Images downloaded by
+		 * {@linkplain #taskExecutor(Executor) general tasks} are decoded by this executor too.<br />
 		 * <br />
 		 * If you set the same executor for {@linkplain #taskExecutor(Executor) general tasks} and
 		 * tasks about cached images (this method) then these tasks will be in the
@@ -270,7 +326,7 @@ public final class ImageLoaderConfiguration {
 		 * <b>NOTE:</b> If you set custom executor then following configuration options will not be considered for this
 		 * executor:
 		 * <ul>
-		 * <li>{@link #threadPoolSize(int)}</li>
+		 * <li>{@link #decodingThreadPoolSize(int)}</li>
 		 * <li>{@link #threadPriority(int)}</li>
 		 * <li>{@link #tasksProcessingOrder(QueueProcessingType)}</li>
 		 * </ul>
@@ -287,7 +343,9 @@ public final class ImageLoaderConfiguration {
 		}
 
 		/**
-		 * Sets thread pool size for image display tasks.<br />
+		 * Sets thread pool size for network stage of image display tasks. Threads of this pool download images (and
+		 * save them on disk), downloaded images are decoded by threads of {@linkplain #decodingThreadPoolSize(int)
+		 * decoding stage}.<br />
 		 * Default value - {@link #DEFAULT_THREAD_POOL_SIZE this}
 		 */
 		public Builder threadPoolSize(int threadPoolSize) {
@@ -299,6 +357,91 @@ public final class ImageLoaderConfiguration {
 			return this;
 		}
 
+		/**
+		 * Sets thread pool size for decoding stage of image display tasks. Threads of this pool decode and process
+		 * images cached on disk and images downloaded at network stage.<br />
+		 * Default value - number of CPU cores, but not more than {@link #MAX_DEFAULT_DECODING_THREAD_POOL_SIZE this}
+		 */
+		public Builder decodingThreadPoolSize(int decodingThreadPoolSize) {
+			if (taskExecutorForCachedImages != null) {
+				L.w(WARNING_OVERLAP_EXECUTOR);
+			}
+
+			this.decodingThreadPoolSize = decodingThreadPoolSize;
+			return this;
+		}
+
+		/**
+		 * Enables adaptive sizing of thread pools of network and decoding stages. Pools start with
+		 * {@linkplain #threadPoolSize(int) threadPoolSize} and {@linkplain #decodingThreadPoolSize(int)
+		 * decodingThreadPoolSize} threads and then grow while tasks wait in queue longer than they are executed and
+		 * throughput grows, and shrink if throughput drops or threads are idle. E.g. network pool grows on fast network
+		 * and decoding pool stays small on slow CPU.<br />
+		 * By default pool sizes are fixed. Pools shrink down to one thread.
+		 *
+		 * @param maxThreadPoolSize         Max thread pool size of network stage
+		 * @param maxDecodingThreadPoolSize Max thread pool size of decoding stage
+		 */
+		public Builder adaptiveThreadPoolSize(int maxThreadPoolSize, int maxDecodingThreadPoolSize) {
+			return adaptiveThreadPoolSize(1, maxThreadPoolSize, 1, maxDecodingThreadPoolSize);
+		}
+
+		/**
+		 * Enables adaptive sizing of thread pools of network and decoding stages like
+		 * {@link #adaptiveThreadPoolSize(int, int)} does, but pools don't shrink below given min sizes. E.g. min size
+		 * of network pool keeps enough parallel downloads on high-latency network.
+		 *
+		 * @param minThreadPoolSize         Min thread pool size of network stage
+		 * @param maxThreadPoolSize         Max thread pool size of network stage
+		 * @param minDecodingThreadPoolSize Min thread pool size of decoding stage
+		 * @param maxDecodingThreadPoolSize Max thread pool size of decoding stage
+		 */
+		public Builder adaptiveThreadPoolSize(int minThreadPoolSize, int maxThreadPoolSize,
+				int minDecodingThreadPoolSize, int maxDecodingThreadPoolSize) {
+			if (taskExecutor != null || taskExecutorForCachedImages != null) {
+				L.w(WARNING_OVERLAP_EXECUTOR);
+			}
+			if (minThreadPoolSize <= 0 || minDecodingThreadPoolSize <= 0) {
+				throw new IllegalArgumentException("min thread pool sizes must be positive numbers");
+			}
+			if (maxThreadPoolSize < minThreadPoolSize || maxDecodingThreadPoolSize < minDecodingThreadPoolSize) {
+				throw new IllegalArgumentException("max thread pool sizes must not be less than min sizes");
+			}
+
+			this.minThreadPoolSize = minThreadPoolSize;
+			this.maxThreadPoolSize = maxThreadPoolSize;
+			this.minDecodingThreadPoolSize = minDecodingThreadPoolSize;
+			this.maxDecodingThreadPoolSize = maxDecodingThreadPoolSize;
+			return this;
+		}
+
+		/**
+		 * Sets thread pool size for disk stage of image display tasks. Threads of this pool look for images in disk
+		 * cache and pass tasks to network or decoding stage.<br />
+		 * Default value - {@link #DEFAULT_DISK_THREAD_POOL_SIZE this}
+		 */
+		public Builder diskThreadPoolSize(int diskThreadPoolSize) {
+			if (diskThreadPoolSize <= 0) throw new IllegalArgumentException("diskThreadPoolSize must be a positive number");
+
+			this.diskThreadPoolSize = diskThreadPoolSize;
+			return this;
+		}
+
+		/**
+		 * Sets max number of downloaded images which wait for decoding stage. If it's reached then network stage
+		 * threads wait until decoding stage catches up. Every waiting image keeps its downloaded bytes (up to 4 Mb) to
+		 * be decoded without reading from disk cache.<br />
+		 * Default value - {@link #DEFAULT_DECODING_HAND_OFF_CAPACITY this}
+		 */
+		public Builder decodingHandOffCapacity(int decodingHandOffCapacity) {
+			if (decodingHandOffCapacity <= 0) {
+				throw new IllegalArgumentException("decodingHandOffCapacity must be a positive number");
+			}
+
+			this.decodingHandOffCapacity = decodingHandOffCapacity;
+			return this;
+		}
+
 		/**
 		 * Sets the priority for image loading threads. Should be <b>NOT</b> greater than {@link Thread#MAX_PRIORITY} or
 		 * less than {@link Thread#MIN_PRIORITY}<br />
@@ -347,6 +490,16 @@ public final class ImageLoaderConfiguration {
 			return this;
 		}
 
+		/**
+		 * Sets which tasks wait while ImageLoader is {@linkplain ImageLoader#pause() paused}. Waiting tasks don't occupy
+		 * pool threads.<br />
+		 * Default value - {@link PausePolicy#HOLD_ALL_TASKS}
+		 */
+		public Builder pausePolicy(PausePolicy pausePolicy) {
+			this.pausePolicy = pausePolicy;
+			return this;
+		}
+
 		/**
 		 * Sets maximum memory cache size for {@link android.graphics.Bitmap bitmaps} (in bytes).<br />
 		 * Default value - 1/8 of available app memory.<br />
@@ -408,6 +561,27 @@ public final class ImageLoaderConfiguration {
 			return this;
 		}
 
+		/**
+		 * Sets pool of {@link android.graphics.Bitmap bitmaps} which are reused for image decoding. Bitmaps evicted
+		 * from memory cache are put into this pool if they aren't displayed at this moment, and decoder takes them
+		 * from the pool instead of allocating new bitmaps. It decreases memory allocations and GC pauses during fast
+		 * scrolling of image lists.<br />
+		 * Default value - <b>null</b> (bitmaps aren't reused). You can use
+		 * {@link com.nostra13.universalimageloader.cache.memory.impl.LruBitmapPool LruBitmapPool}.<br />
+		 * <br />
+		 * <b>NOTE:</b> Pool is considered only by default memory cache and default image decoder.<br />
+		 * <b>NOTE:</b> Bitmaps which you get in {@link com.nostra13.universalimageloader.core.listener.ImageLoadingListener#onLoadingComplete(String,
+		 * android.view.View, android.graphics.Bitmap) onLoadingComplete()} callback of
+		 * {@link ImageLoader#loadImage(String, com.nostra13.universalimageloader.core.listener.ImageLoadingListener)
+		 * loadImage()} and from
+		 * {@link ImageLoader#loadImageSync(String) loadImageSync()} can be reused after eviction from memory cache.
+		 * Don't keep them or copy them if you use bitmap pool.
+		 */
+		public Builder bitmapPool(BitmapPool bitmapPool) {
+			this.bitmapPool = bitmapPool;
+			return this;
+		}
+
 		/** @deprecated Use {@link #diskCacheSize(int)} instead */
 		@Deprecated
 		public Builder discCacheSize(int maxCacheSize) {
@@ -533,6 +707,41 @@ public final class ImageLoaderConfiguration {
 			return this;
 		}
 
+		/**
+		 * Sets resolver of image URIs. It resolves URI of image variant which should be loaded for target size (e.g.
+		 * URI of image resized by CDN), so smaller images are downloaded for small views.<br />
+		 * Default value - <b>null</b> (original image URIs are loaded)
+		 *
+		 * @see com.nostra13.universalimageloader.core.download.SizeBucketUriResolver
+		 */
+		public Builder uriResolver(UriResolver uriResolver) {
+			this.uriResolver = uriResolver;
+			return this;
+		}
+
+		/**
+		 * Sets dispatcher of network downloads. It limits number of simultaneous downloads from every host (so slow host
+		 * doesn't starve others), admits waiting downloads in order of their priority and can limit total bandwidth.
+		 * Keep reference to dispatcher to read its live counters.<br />
+		 * Default value - <b>null</b> (downloads aren't limited)
+		 */
+		public Builder downloadDispatcher(DownloadDispatcher downloadDispatcher) {
+			this.downloadDispatcher = downloadDispatcher;
+			return this;
+		}
+
+		/**
+		 * Sets negative cache of image URIs which failed to load. URIs from the cache aren't loaded again until their
+		 * TTL expires, {@linkplain DisplayImageOptions.Builder#showImageOnFail(int) image for fail} is displayed
+		 * immediately instead. Keep reference to the cache to {@linkplain FailedUriCache#invalidate(String) invalidate}
+		 * its entries.<br />
+		 * Default value - <b>null</b> (failed URIs are loaded again on every request)
+		 */
+		public Builder failedUriCache(FailedUriCache failedUriCache) {
+			this.failedUriCache = failedUriCache;
+			return this;
+		}
+
 		/**
 		 * Sets default {@linkplain DisplayImageOptions display image options} for image displaying. These options will
 		 * be used for every {@linkplain ImageLoader#displayImage(String, android.widget.ImageView) image display call}
@@ -562,14 +771,18 @@ public final class ImageLoaderConfiguration {
 
 		private void initEmptyFieldsWithDefaultValues() {
 			if (taskExecutor == null) {
-				taskExecutor = DefaultConfigurationFactory
-						.createExecutor(threadPoolSize, threadPriority, tasksProcessingType);
+				taskExecutor = DefaultConfigurationFactory.createExecutor(threadPoolSize, minThreadPoolSize,
+						maxThreadPoolSize, threadPriority, tasksProcessingType);
 			} else {
 				customExecutor = true;
 			}
+			if (decodingThreadPoolSize <= 0) {
+				int cpuCores = Runtime.getRuntime().availableProcessors();
+				decodingThreadPoolSize = Math.max(1, Math.min(cpuCores, MAX_DEFAULT_DECODING_THREAD_POOL_SIZE));
+			}
 			if (taskExecutorForCachedImages == null) {
-				taskExecutorForCachedImages = DefaultConfigurationFactory
-						.createExecutor(threadPoolSize, threadPriority, tasksProcessingType);
+				taskExecutorForCachedImages = DefaultConfigurationFactory.createExecutor(decodingThreadPoolSize,
+						minDecodingThreadPoolSize, maxDecodingThreadPoolSize, threadPriority, tasksProcessingType);
 			} else {
 				customExecutorForCachedImages = true;
 			}
@@ -580,8 +793,15 @@ public final class ImageLoaderConfiguration {
 				diskCache = DefaultConfigurationFactory
 						.createDiskCache(context, diskCacheFileNameGenerator, diskCacheSize, diskCacheFileCount);
 			}
+			if (bitmapPool != null) {
+				if (memoryCache != null || decoder != null) {
+					L.w(WARNING_OVERLAP_BITMAP_POOL);
+				}
+				displayAwareBitmapPool = new DisplayAwareBitmapPool(bitmapPool);
+			}
 			if (memoryCache == null) {
-				memoryCache = DefaultConfigurationFactory.createMemoryCache(context, memoryCacheSize);
+				memoryCache = DefaultConfigurationFactory
+						.createMemoryCache(context, memoryCacheSize, displayAwareBitmapPool);
 			}
 			if (denyCacheImageMultipleSizesInMemory) {
 				memoryCache = new FuzzyKeyMemoryCache(memoryCache, MemoryCacheUtils.createFuzzyKeyComparator());
@@ -590,7 +810,7 @@ public final class ImageLoaderConfiguration {
 				downloader = DefaultConfigurationFactory.createImageDownloader(context);
 			}
 			if (decoder == null) {
-				decoder = DefaultConfigurationFactory.createImageDecoder(writeLogs);
+				decoder = DefaultConfigurationFactory.createImageDecoder(writeLogs, displayAwareBitmapPool);
 			}
 			if (defaultDisplayImageOptions == null) {
 				defaultDisplayImageOptions = DisplayImageOptions.createSimple();
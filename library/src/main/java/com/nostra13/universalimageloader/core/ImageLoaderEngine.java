@@ -15,21 +15,34 @@
  *******************************************************************************/
 package com.nostra13.universalimageloader.core;
 
+import android.graphics.Bitmap;
 import android.view.View;
+import com.nostra13.universalimageloader.cache.disc.ResponseValidators;
+import com.nostra13.universalimageloader.cache.disc.ResponseValidatorsStore;
 import com.nostra13.universalimageloader.core.assist.FailReason;
 import com.nostra13.universalimageloader.core.assist.FlushedInputStream;
+import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.assist.LoadingPriority;
+import com.nostra13.universalimageloader.core.assist.NetworkClass;
+import com.nostra13.universalimageloader.core.assist.PausePolicy;
+import com.nostra13.universalimageloader.core.assist.ViewScaleType;
+import com.nostra13.universalimageloader.core.download.ConditionalImageDownloader;
 import com.nostra13.universalimageloader.core.imageaware.ImageAware;
 import com.nostra13.universalimageloader.core.listener.ImageLoadingListener;
+import com.nostra13.universalimageloader.utils.L;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
 
 import static com.nostra13.universalimageloader.core.download.ImageDownloader.*;
 
@@ -41,21 +54,40 @@ import static com.nostra13.universalimageloader.core.download.ImageDownloader.*;
  */
 class ImageLoaderEngine {
 
+	private static final String LOG_WAITING_FOR_IMAGE_LOADED = "Image already is loading. Waiting... [%s]";
+	private static final String LOG_CANCEL_TASK = "Image isn't needed anymore. Cancel task... [%s]";
+
 	final ImageLoaderConfiguration configuration;
 
+	/** Network stage: downloading of images */
 	private Executor taskExecutor;
+	/** Decoding stage: decoding of images cached on disk or downloaded at network stage */
 	private Executor taskExecutorForCachedImages;
+	/** Disk stage: lookups of images in disk cache */
+	private Executor diskExecutor;
 	private Executor taskDistributor;
+	/** Limits number of downloaded images which wait for decoding stage */
+	private volatile Semaphore decodingHandOffPermits;
 
 	private final Map<Integer, String> cacheKeysForImageAwares = Collections
 			.synchronizedMap(new HashMap<Integer, String>());
-	private final Map<String, ReentrantLock> uriLocks = new WeakHashMap<String, ReentrantLock>();
+	/** Last submitted tasks by ImageAware IDs. They are cancelled if ImageAware doesn't need their images anymore. */
+	private final ConcurrentHashMap<Integer, LoadAndDisplayImageTask> tasksForImageAwares =
+			new ConcurrentHashMap<Integer, LoadAndDisplayImageTask>();
+	/**
+	 * Tasks which load images at this moment, by {@linkplain LoadAndDisplayImageTask#getCoalescingKey() coalescing key}
+	 * (image URI or memory cache key). First task of every list is loading the image, other tasks are attached to it
+	 * and wait for its result.
+	 */
+	private final Map<String, List<LoadAndDisplayImageTask>> loadingTasks = new HashMap<String, List<LoadAndDisplayImageTask>>();
 
 	private final AtomicBoolean paused = new AtomicBoolean(false);
 	private final AtomicBoolean networkDenied = new AtomicBoolean(false);
 	private final AtomicBoolean slowNetwork = new AtomicBoolean(false);
 
 	private final Object pauseLock = new Object();
+	/** Tasks which wait for resume, they are ordered by priority. Is guarded by itself. */
+	private final PriorityTaskQueue heldTasks = new PriorityTaskQueue();
 
 	ImageLoaderEngine(ImageLoaderConfiguration configuration) {
 		this.configuration = configuration;
@@ -63,51 +95,268 @@ class ImageLoaderEngine {
 		taskExecutor = configuration.taskExecutor;
 		taskExecutorForCachedImages = configuration.taskExecutorForCachedImages;
 
+		diskExecutor = createDiskExecutor();
 		taskDistributor = DefaultConfigurationFactory.createTaskDistributor();
+		decodingHandOffPermits = new Semaphore(configuration.decodingHandOffCapacity);
 	}
 
-	/** Submits task to execution pool */
+	/**
+	 * Submits task to execution pool. If image for task's URI is loading at this moment then task is attached to the
+	 * loading task and won't be executed by itself.
+	 */
 	void submit(final LoadAndDisplayImageTask task) {
-		taskDistributor.execute(new Runnable() {
+		int imageAwareId = task.imageAware.getId();
+		if (task.memoryCacheKey.equals(cacheKeysForImageAwares.get(imageAwareId))) {
+			tasksForImageAwares.put(imageAwareId, task);
+		}
+		if (attachToLoadingTask(task)) return;
+
+		initExecutorsIfNeed();
+		diskExecutor.execute(new StageJob(task) {
 			@Override
 			public void run() {
-				File image = configuration.diskCache.get(task.getLoadingUri());
-				boolean isImageCachedOnDisk = image != null && image.exists()
-						|| isLocalUri(task.getLoadingUri());
-				initExecutorsIfNeed();
-				if (isImageCachedOnDisk) {
-					taskExecutorForCachedImages.execute(task);
-				} else {
-					taskExecutor.execute(task);
+				String loadingUri = task.getLoadingUri();
+				boolean isImageCachedOnDisk;
+				try {
+					File image = configuration.diskCache.get(loadingUri);
+					if (image != null && image.exists()) {
+						isImageCachedOnDisk = !task.options.isCacheOnDisk() || getStaleValidators(loadingUri) == null;
+					} else {
+						isImageCachedOnDisk = task.findCachedVariant() != null; // larger variant can be used
+					}
+				} catch (RuntimeException e) {
+					// Task looks up disk cache again at its stage, reports failure and releases attached tasks
+					L.e(e);
+					isImageCachedOnDisk = false;
 				}
+				submitToStage(task, !isImageCachedOnDisk && !isLocalUri(loadingUri));
 			}
 		});
 	}
 
+	/** Submits task to network stage or to decoding stage */
+	private void submitToStage(final LoadAndDisplayImageTask task, boolean networkStage) {
+		initExecutorsIfNeed();
+		if (networkStage) {
+			executeAtNetworkStage(task.getLoadingUri(), new StageJob(task) {
+				@Override
+				public void run() {
+					task.runAtNetworkStage();
+				}
+			});
+		} else {
+			taskExecutorForCachedImages.execute(task);
+		}
+	}
+
+	/**
+	 * Executes job at network stage. If {@linkplain DownloadDispatcher download dispatcher} is set then job waits for
+	 * free slot of image's host without occupying pool thread.
+	 */
+	private void executeAtNetworkStage(String uri, PrioritizedTask job) {
+		initExecutorsIfNeed();
+		if (configuration.downloadDispatcher == null) {
+			taskExecutor.execute(job);
+		} else {
+			configuration.downloadDispatcher.execute(uri, job, taskExecutor);
+		}
+	}
+
+	/**
+	 * Holds task which is about to start while engine is paused. Held task doesn't occupy pool thread, it's
+	 * resubmitted to its stage on {@linkplain #resume() resume}. Prefetch task is held regardless of
+	 * {@linkplain PausePolicy pause policy}.
+	 *
+	 * @return <b>true</b> - if task was held, so it must not be continued now; <b>false</b> - if task can be continued
+	 */
+	boolean holdIfPaused(final LoadAndDisplayImageTask task, final boolean networkStage) {
+		if (!paused.get() || !networkStage && !task.isPrefetch()
+				&& configuration.pausePolicy == PausePolicy.HOLD_NETWORK_TASKS) {
+			return false;
+		}
+		synchronized (heldTasks) {
+			if (!paused.get()) return false;
+
+			heldTasks.add(new StageJob(task) {
+				@Override
+				public void run() {
+					submitToStage(task, networkStage);
+				}
+			});
+		}
+		return true;
+	}
+
+	/**
+	 * Hands off decoding of image downloaded at network stage to decoding stage. Waits if too many downloaded images
+	 * wait for decoding already.
+	 *
+	 * @return <b>true</b> - if task will be continued at decoding stage; <b>false</b> - if decoding can't be handed off,
+	 * so current thread should decode image
+	 */
+	boolean handOffDecoding(final LoadAndDisplayImageTask task) {
+		if (taskExecutor == taskExecutorForCachedImages) {
+			return false; // Waiting for decoding stage could block all threads of shared executor
+		}
+		final Semaphore permits = decodingHandOffPermits;
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		initExecutorsIfNeed();
+		try {
+			taskExecutorForCachedImages.execute(new StageJob(task) {
+				@Override
+				public void run() {
+					permits.release();
+					task.run();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			permits.release();
+			return false;
+		}
+		return true;
+	}
+
 	/** Submits task to execution pool */
 	void submit(ProcessAndDisplayImageTask task) {
 		initExecutorsIfNeed();
 		taskExecutorForCachedImages.execute(task);
 	}
 
-	private boolean isLocalUri(String uri) {
+	/**
+	 * Attaches task to the task which loads the same image URI (or decodes already loaded image for the same size) at
+	 * this moment.
+	 *
+	 * @return <b>true</b> - if task was attached to loading task; <b>false</b> - if there is no loading task for task's
+	 * coalescing key (so incoming task becomes the loading one)
+	 */
+	private boolean attachToLoadingTask(LoadAndDisplayImageTask task) {
+		synchronized (loadingTasks) {
+			List<LoadAndDisplayImageTask> tasks = loadingTasks.get(task.getCoalescingKey());
+			if (tasks == null) {
+				tasks = new ArrayList<LoadAndDisplayImageTask>();
+				loadingTasks.put(task.getCoalescingKey(), tasks);
+			} else if (tasks.get(0).isCancelled()) {
+				// Cancelled task won't load the image, incoming task replaces it as the loading one
+				List<LoadAndDisplayImageTask> attachedTasks = tasks.subList(1, tasks.size());
+				tasks = new ArrayList<LoadAndDisplayImageTask>(attachedTasks);
+				tasks.add(0, task);
+				loadingTasks.put(task.getCoalescingKey(), tasks);
+				return false;
+			}
+			tasks.add(task);
+			if (tasks.size() > 1) {
+				L.d(LOG_WAITING_FOR_IMAGE_LOADED, task.memoryCacheKey);
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Detaches tasks which were attached to incoming loading task. Incoming task stops to be the loading task for its
+	 * URI.
+	 *
+	 * @return Tasks which were attached to loading task (they wait for its result)
+	 */
+	List<LoadAndDisplayImageTask> detachAttachedTasks(LoadAndDisplayImageTask loadingTask) {
+		synchronized (loadingTasks) {
+			List<LoadAndDisplayImageTask> tasks = loadingTasks.get(loadingTask.getCoalescingKey());
+			if (tasks == null || tasks.get(0) != loadingTask) {
+				return Collections.emptyList();
+			}
+			loadingTasks.remove(loadingTask.getCoalescingKey());
+			return new ArrayList<LoadAndDisplayImageTask>(tasks.subList(1, tasks.size()));
+		}
+	}
+
+	/** @return <b>true</b> - if some of tasks attached to incoming loading task still need the image */
+	boolean hasActualAttachedTasks(LoadAndDisplayImageTask loadingTask) {
+		synchronized (loadingTasks) {
+			List<LoadAndDisplayImageTask> tasks = loadingTasks.get(loadingTask.getCoalescingKey());
+			if (tasks != null && tasks.get(0) == loadingTask) {
+				for (int i = 1; i < tasks.size(); i++) {
+					if (!tasks.get(i).isTaskNotActual()) return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * @return Validators of image cached on disk if image is stale and can be revalidated by conditional request;
+	 * <b>null</b> - otherwise
+	 */
+	ResponseValidators getStaleValidators(String uri) {
+		if (!(configuration.diskCache instanceof ResponseValidatorsStore)
+				|| !(configuration.downloader instanceof ConditionalImageDownloader) || networkDenied.get()) {
+			return null;
+		}
+		ResponseValidators validators = ((ResponseValidatorsStore) configuration.diskCache).getValidators(uri);
+		if (validators != null && validators.canRevalidate() && validators.isStale(System.currentTimeMillis())) {
+			return validators;
+		}
+		return null;
+	}
+
+	/**
+	 * @return URIs of image variants for target size resolved by {@linkplain ImageLoaderConfiguration#uriResolver URI
+	 * resolver}. The first of them is loaded, others can be used if they're cached on disk. List contains incoming
+	 * URI only if there is no resolver.
+	 */
+	List<String> resolveUri(String uri, ImageSize targetSize, ViewScaleType scaleType) {
+		List<String> variants = null;
+		if (configuration.uriResolver != null) {
+			variants = configuration.uriResolver.resolve(uri, targetSize, scaleType, getNetworkClass());
+		}
+		return variants == null || variants.isEmpty() ? Collections.singletonList(uri) : variants;
+	}
+
+	/** @return The first of image variants which is cached on disk and isn't stale; <b>null</b> - if there is no such */
+	String findCachedVariant(List<String> uriVariants) {
+		for (String variantUri : uriVariants) {
+			File image = configuration.diskCache.get(variantUri);
+			if (image != null && image.exists() && image.length() > 0 && getStaleValidators(variantUri) == null) {
+				return variantUri;
+			}
+		}
+		return null;
+	}
+
+	boolean isLocalUri(String uri) {
 		Scheme scheme = Scheme.ofUri(uri);
 		return scheme == Scheme.ASSETS || scheme == Scheme.FILE || scheme == Scheme.DRAWABLE;
 	}
 
-	private void initExecutorsIfNeed() {
+	private synchronized void initExecutorsIfNeed() {
 		if (!configuration.customExecutor && ((ExecutorService) taskExecutor).isShutdown()) {
 			taskExecutor = createTaskExecutor();
 		}
 		if (!configuration.customExecutorForCachedImages && ((ExecutorService) taskExecutorForCachedImages)
 				.isShutdown()) {
-			taskExecutorForCachedImages = createTaskExecutor();
+			taskExecutorForCachedImages = DefaultConfigurationFactory
+					.createExecutor(configuration.decodingThreadPoolSize, configuration.minDecodingThreadPoolSize,
+					configuration.maxDecodingThreadPoolSize, configuration.threadPriority,
+					configuration.tasksProcessingType);
+		}
+		if (((ExecutorService) diskExecutor).isShutdown()) {
+			diskExecutor = createDiskExecutor();
 		}
 	}
 
 	private Executor createTaskExecutor() {
 		return DefaultConfigurationFactory
-				.createExecutor(configuration.threadPoolSize, configuration.threadPriority,
+				.createExecutor(configuration.threadPoolSize, configuration.minThreadPoolSize,
+				configuration.maxThreadPoolSize, configuration.threadPriority, configuration.tasksProcessingType);
+	}
+
+	private Executor createDiskExecutor() {
+		return DefaultConfigurationFactory
+				.createDiskStageExecutor(configuration.diskThreadPoolSize, configuration.threadPriority,
 				configuration.tasksProcessingType);
 	}
 
@@ -123,7 +372,10 @@ class ImageLoaderEngine {
 	 * exact moment.
 	 */
 	void prepareDisplayTaskFor(ImageAware imageAware, String memoryCacheKey) {
-		cacheKeysForImageAwares.put(imageAware.getId(), memoryCacheKey);
+		String previousCacheKey = cacheKeysForImageAwares.put(imageAware.getId(), memoryCacheKey);
+		if (previousCacheKey != null && !previousCacheKey.equals(memoryCacheKey)) {
+			cancelTaskFor(imageAware.getId(), memoryCacheKey);
+		}
 	}
 
 	/**
@@ -133,7 +385,44 @@ class ImageLoaderEngine {
 	 *                   will be cancelled
 	 */
 	void cancelDisplayTaskFor(ImageAware imageAware) {
-		cacheKeysForImageAwares.remove(imageAware.getId());
+		if (cacheKeysForImageAwares.remove(imageAware.getId()) != null) {
+			cancelTaskFor(imageAware.getId(), null);
+		}
+	}
+
+	/**
+	 * Cancels loading task of image which isn't needed for ImageAware with incoming <b>imageAwareId</b> anymore (e.g.
+	 * ImageAware went off screen and was reused for another image). Queued task is marked as cancelled so it's skipped
+	 * right after dequeuing, running task stops image downloading. Task isn't cancelled if other tasks still wait for
+	 * its image.
+	 *
+	 * @param actualCacheKey Memory cache key which is actual for ImageAware now (its task isn't cancelled); can be null
+	 */
+	private void cancelTaskFor(int imageAwareId, String actualCacheKey) {
+		LoadAndDisplayImageTask task = tasksForImageAwares.get(imageAwareId);
+		if (task == null || task.memoryCacheKey.equals(actualCacheKey)) return;
+
+		tasksForImageAwares.remove(imageAwareId, task);
+		synchronized (loadingTasks) {
+			List<LoadAndDisplayImageTask> tasks = loadingTasks.get(task.getCoalescingKey());
+			if (tasks == null) return;
+
+			LoadAndDisplayImageTask loadingTask = tasks.get(0);
+			if (!loadingTask.isCancelled() && loadingTask.isTaskNotNeeded()) {
+				L.d(LOG_CANCEL_TASK, loadingTask.memoryCacheKey);
+				loadingTask.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Forgets incoming task as actual task for its ImageAware, reports result of prefetch task. Resubmits one of held
+	 * tasks.
+	 */
+	void onTaskFinished(LoadAndDisplayImageTask task) {
+		tasksForImageAwares.remove(task.imageAware.getId(), task);
+		task.reportPrefetchResult();
+		releaseHeldTasks(1);
 	}
 
 	/**
@@ -161,17 +450,40 @@ class ImageLoaderEngine {
 
 	/**
 	 * Pauses engine. All new "load&display" tasks won't be executed until ImageLoader is {@link #resume() resumed}.<br
-	 * /> Already running tasks are not paused.
+	 * /> Already running tasks are not paused. Tasks are held according to
+	 * {@linkplain ImageLoaderConfiguration.Builder#pausePolicy(PausePolicy) pause policy}.
 	 */
 	void pause() {
 		paused.set(true);
 	}
 
-	/** Resumes engine work. Paused "load&display" tasks will continue its work. */
+	/**
+	 * Resumes engine work. Held tasks are resubmitted in order of their priority by small batches off the calling
+	 * thread: the first batch fills network stage pool, then one more task is resubmitted per finished task.
+	 */
 	void resume() {
 		paused.set(false);
 		synchronized (pauseLock) {
-			pauseLock.notifyAll();
+			pauseLock.notifyAll(); // Wake up sync loading tasks
+		}
+		taskDistributor.execute(new Runnable() {
+			@Override
+			public void run() {
+				releaseHeldTasks(configuration.threadPoolSize);
+			}
+		});
+	}
+
+	/** Resubmits up to <b>count</b> held tasks of the highest priority unless engine is paused again */
+	private void releaseHeldTasks(int count) {
+		for (int i = 0; i < count && !paused.get(); i++) {
+			Runnable heldTask;
+			synchronized (heldTasks) {
+				heldTask = heldTasks.poll();
+			}
+			if (heldTask == null) return;
+
+			heldTask.run();
 		}
 	}
 
@@ -189,22 +501,61 @@ class ImageLoaderEngine {
 		if (!configuration.customExecutorForCachedImages) {
 			((ExecutorService) taskExecutorForCachedImages).shutdownNow();
 		}
+		((ExecutorService) diskExecutor).shutdownNow();
+		// Permits of dropped hand-offs are lost with the old semaphore
+		decodingHandOffPermits = new Semaphore(configuration.decodingHandOffCapacity);
 
 		cacheKeysForImageAwares.clear();
-		uriLocks.clear();
+		tasksForImageAwares.clear();
+		synchronized (heldTasks) {
+			heldTasks.clear();
+		}
+		if (configuration.downloadDispatcher != null) {
+			for (PrioritizedTask job : configuration.downloadDispatcher.clear()) {
+				finishDroppedTask((LoadAndDisplayImageTask) ((StageJob) job).source);
+			}
+		}
+		synchronized (loadingTasks) {
+			loadingTasks.clear();
+		}
 	}
 
-	void fireCallback(Runnable r) {
-		taskDistributor.execute(r);
+	/** Finishes dropped task and tasks attached to it as cancelled ones, so their prefetch handles are completed */
+	private void finishDroppedTask(LoadAndDisplayImageTask task) {
+		for (LoadAndDisplayImageTask attachedTask : detachAttachedTasks(task)) {
+			attachedTask.cancel();
+			onTaskFinished(attachedTask);
+		}
+		task.cancel();
+		onTaskFinished(task);
+	}
+
+	/** Remembers bitmap which is displayed in ImageAware, so it won't be reused for decoding while it's displayed */
+	void onBitmapDisplayed(ImageAware imageAware, Bitmap bitmap) {
+		if (configuration.bitmapPool != null) {
+			configuration.bitmapPool.onBitmapDisplayed(imageAware, bitmap);
+		}
+	}
+
+	/**
+	 * Marks bitmap as passed to display, so it won't be reused for decoding (even if it's evicted from memory cache)
+	 * until it's {@linkplain #releaseBitmap(Bitmap) released}
+	 */
+	void acquireBitmap(Bitmap bitmap) {
+		if (configuration.bitmapPool != null && bitmap != null) {
+			configuration.bitmapPool.acquire(bitmap);
+		}
 	}
 
-	ReentrantLock getLockForUri(String uri) {
-		ReentrantLock lock = uriLocks.get(uri);
-		if (lock == null) {
-			lock = new ReentrantLock();
-			uriLocks.put(uri, lock);
+	/** Releases bitmap which was {@linkplain #acquireBitmap(Bitmap) acquired} */
+	void releaseBitmap(Bitmap bitmap) {
+		if (configuration.bitmapPool != null && bitmap != null) {
+			configuration.bitmapPool.release(bitmap);
 		}
-		return lock;
+	}
+
+	void fireCallback(Runnable r) {
+		taskDistributor.execute(r);
 	}
 
 	AtomicBoolean getPause() {
@@ -222,4 +573,31 @@ class ImageLoaderEngine {
 	boolean isSlowNetwork() {
 		return slowNetwork.get();
 	}
+
+	NetworkClass getNetworkClass() {
+		if (networkDenied.get()) {
+			return NetworkClass.DENIED;
+		}
+		return slowNetwork.get() ? NetworkClass.SLOW : NetworkClass.NORMAL;
+	}
+
+	/** Job of loading task at some stage. It's executed in order of the task's priority. */
+	private abstract static class StageJob implements PrioritizedTask {
+
+		private final PrioritizedTask source;
+
+		StageJob(PrioritizedTask source) {
+			this.source = source;
+		}
+
+		@Override
+		public LoadingPriority getPriority() {
+			return source.getPriority();
+		}
+
+		@Override
+		public long getSequence() {
+			return source.getSequence();
+		}
+	}
 }
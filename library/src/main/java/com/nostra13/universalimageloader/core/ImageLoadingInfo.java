@@ -20,8 +20,6 @@ import com.nostra13.universalimageloader.core.listener.ImageLoadingProgressListe
 import com.nostra13.universalimageloader.core.assist.ImageSize;
 import com.nostra13.universalimageloader.core.imageaware.ImageAware;
 
-import java.util.concurrent.locks.ReentrantLock;
-
 /**
  * Information for load'n'display image task
  *
@@ -41,18 +39,16 @@ final class ImageLoadingInfo {
 	final DisplayImageOptions options;
 	final ImageLoadingListener listener;
 	final ImageLoadingProgressListener progressListener;
-	final ReentrantLock loadFromUriLock;
 
 	public ImageLoadingInfo(String uri, ImageAware imageAware, ImageSize targetSize, String memoryCacheKey,
 			DisplayImageOptions options, ImageLoadingListener listener,
-			ImageLoadingProgressListener progressListener, ReentrantLock loadFromUriLock) {
+			ImageLoadingProgressListener progressListener) {
 		this.uri = uri;
 		this.imageAware = imageAware;
 		this.targetSize = targetSize;
 		this.options = options;
 		this.listener = listener;
 		this.progressListener = progressListener;
-		this.loadFromUriLock = loadFromUriLock;
 		this.memoryCacheKey = memoryCacheKey;
 	}
 }
@@ -17,14 +17,24 @@ package com.nostra13.universalimageloader.core;
 
 import android.graphics.Bitmap;
 import android.os.Handler;
+import com.nostra13.universalimageloader.cache.disc.ImageMetadataStore;
+import com.nostra13.universalimageloader.cache.disc.PartialImage;
+import com.nostra13.universalimageloader.cache.disc.ResponseValidators;
+import com.nostra13.universalimageloader.cache.disc.ResponseValidatorsStore;
+import com.nostra13.universalimageloader.cache.disc.ResumableDiskCache;
 import com.nostra13.universalimageloader.core.assist.FailReason;
 import com.nostra13.universalimageloader.core.assist.FailReason.FailType;
+import com.nostra13.universalimageloader.core.assist.FlushedInputStream;
 import com.nostra13.universalimageloader.core.assist.ImageScaleType;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
 import com.nostra13.universalimageloader.core.assist.LoadedFrom;
+import com.nostra13.universalimageloader.core.assist.LoadingPriority;
+import com.nostra13.universalimageloader.core.assist.PrefetchTarget;
+import com.nostra13.universalimageloader.core.assist.TeeInputStream;
 import com.nostra13.universalimageloader.core.assist.ViewScaleType;
 import com.nostra13.universalimageloader.core.decode.ImageDecoder;
 import com.nostra13.universalimageloader.core.decode.ImageDecodingInfo;
+import com.nostra13.universalimageloader.core.download.ConditionalImageDownloader;
 import com.nostra13.universalimageloader.core.download.ImageDownloader;
 import com.nostra13.universalimageloader.core.download.ImageDownloader.Scheme;
 import com.nostra13.universalimageloader.core.imageaware.ImageAware;
@@ -33,46 +43,59 @@ import com.nostra13.universalimageloader.core.listener.ImageLoadingProgressListe
 import com.nostra13.universalimageloader.utils.IoUtils;
 import com.nostra13.universalimageloader.utils.L;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Presents load'n'display image task. Used to load image from Internet or file system, decode it to {@link Bitmap}, and
  * display it in {@link com.nostra13.universalimageloader.core.imageaware.ImageAware} using {@link DisplayBitmapTask}.
+ * Prefetch task loads image into {@linkplain PrefetchTarget target cache} the same way but doesn't display it, its
+ * result is reported to {@link PrefetchHandle}.
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @see ImageLoaderConfiguration
  * @see ImageLoadingInfo
  * @since 1.3.1
  */
-final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
+final class LoadAndDisplayImageTask implements PrioritizedTask, IoUtils.CopyListener {
 
 	private static final String LOG_WAITING_FOR_RESUME = "ImageLoader is paused. Waiting...  [%s]";
+	private static final String LOG_HOLD_WHILE_PAUSED = "ImageLoader is paused. Task is held until resume. [%s]";
 	private static final String LOG_RESUME_AFTER_PAUSE = ".. Resume loading [%s]";
 	private static final String LOG_DELAY_BEFORE_LOADING = "Delay %d ms before loading...  [%s]";
 	private static final String LOG_START_DISPLAY_IMAGE_TASK = "Start display image task [%s]";
-	private static final String LOG_WAITING_FOR_IMAGE_LOADED = "Image already is loading. Waiting... [%s]";
 	private static final String LOG_GET_IMAGE_FROM_MEMORY_CACHE_AFTER_WAITING = "...Get cached bitmap from memory after waiting. [%s]";
+	private static final String LOG_GET_IMAGE_FROM_LOADING_TASK = "...Get bitmap loaded by another task. [%s]";
 	private static final String LOG_LOAD_IMAGE_FROM_NETWORK = "Load image from network [%s]";
 	private static final String LOG_LOAD_IMAGE_FROM_DISK_CACHE = "Load image from disk cache [%s]";
+	private static final String LOG_LOAD_CACHED_IMAGE_VARIANT = "Load cached variant of image from disk cache (%s) [%s]";
+	private static final String LOG_REVALIDATE_CACHED_IMAGE = "Revalidate stale image cached on disk [%s]";
+	private static final String LOG_CACHED_IMAGE_NOT_MODIFIED = "Cached image wasn't modified [%s]";
+	private static final String LOG_RESUME_DOWNLOAD = "Resume download of partial image from %d byte [%s]";
 	private static final String LOG_RESIZE_CACHED_IMAGE_FILE = "Resize image in disk cache [%s]";
 	private static final String LOG_PREPROCESS_IMAGE = "PreProcess image before caching in memory [%s]";
 	private static final String LOG_POSTPROCESS_IMAGE = "PostProcess image before displaying [%s]";
 	private static final String LOG_CACHE_IMAGE_IN_MEMORY = "Cache image in memory [%s]";
 	private static final String LOG_CACHE_IMAGE_ON_DISK = "Cache image on disk [%s]";
+	private static final String LOG_DECODE_DOWNLOADED_IMAGE = "Decode downloaded image from memory [%s]";
 	private static final String LOG_PROCESS_IMAGE_BEFORE_CACHE_ON_DISK = "Process image before cache on disk [%s]";
 	private static final String LOG_TASK_CANCELLED_IMAGEAWARE_REUSED = "ImageAware is reused for another image. Task is cancelled. [%s]";
 	private static final String LOG_TASK_CANCELLED_IMAGEAWARE_COLLECTED = "ImageAware was collected by GC. Task is cancelled. [%s]";
 	private static final String LOG_TASK_INTERRUPTED = "Task was interrupted [%s]";
+	private static final String LOG_SKIP_CANCELLED_TASK = "Task was cancelled before start. Skip it. [%s]";
 
 	private static final String ERROR_NO_IMAGE_STREAM = "No stream for image [%s]";
 	private static final String ERROR_PRE_PROCESSOR_NULL = "Pre-processor returned null [%s]";
 	private static final String ERROR_POST_PROCESSOR_NULL = "Post-processor returned null [%s]";
 	private static final String ERROR_PROCESSOR_FOR_DISK_CACHE_NULL = "Bitmap processor for disk cache returned null [%s]";
 
+	/** Images which are larger (in bytes) are decoded from disk cache after downloading instead of from memory */
+	private static final int MAX_DOWNLOADED_IMAGE_SIZE_FOR_DECODING = 4 * 1024 * 1024; // 4 Mb
+
 	private final ImageLoaderEngine engine;
 	private final ImageLoadingInfo imageLoadingInfo;
 	private final Handler handler;
@@ -84,21 +107,63 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 	private final ImageDownloader slowNetworkDownloader;
 	private final ImageDecoder decoder;
 	final String uri;
-	private final String memoryCacheKey;
+	/** URI of image variant which is loaded for target size, it's a key of image in disk cache */
+	final String loadingUri;
+	/** URIs of image variants which can be used if they're cached on disk, {@link #loadingUri} is the first of them */
+	private final List<String> uriVariants;
+	final String memoryCacheKey;
 	final ImageAware imageAware;
 	private final ImageSize targetSize;
 	final DisplayImageOptions options;
 	final ImageLoadingListener listener;
 	final ImageLoadingProgressListener progressListener;
 	private final boolean syncLoading;
+	private final long sequence = PriorityTaskQueue.nextSequence();
+	private final LoadingPriority priority;
+	/** Handle of prefetching which this task belongs to (null if it's display task) */
+	private final PrefetchHandle prefetchHandle;
+	/** Cache which is filled by prefetch task (null if it's display task) */
+	final PrefetchTarget prefetchTarget;
+	private volatile boolean cancelled;
+	/** Image was loaded by another task already, so only decoding of image for this size is coalesced with others */
+	private volatile boolean imageLoadedByAnotherTask;
 
 	// State vars
 	private LoadedFrom loadedFrom = LoadedFrom.NETWORK;
+	private FailType failType = FailType.UNKNOWN;
+	private Throwable failCause;
+	/** Bytes of image which was downloaded and saved on disk by this task (null if they weren't kept) */
+	private ByteArrayInputStream downloadedImage;
+	/** URI of image which was downloaded to disk cache at network stage to be decoded at decoding stage */
+	private String downloadedImageUri;
+	/** Is accessed by network stage thread only */
+	private boolean decodingHandedOff;
+	/** Validators of stale image cached on disk, image is revalidated at network stage (null if image isn't stale) */
+	private ResponseValidators staleValidators;
+	/** Validators of image from response, they are stored when image is cached on disk */
+	private ResponseValidators responseValidators;
+	/** Stale image cached on disk was revalidated and it's still actual */
+	private boolean cachedImageNotModified;
+	/** Image was loaded into target cache by prefetch task */
+	private boolean prefetched;
 
 	public LoadAndDisplayImageTask(ImageLoaderEngine engine, ImageLoadingInfo imageLoadingInfo, Handler handler) {
+		this(engine, imageLoadingInfo, handler, null, null);
+	}
+
+	/** Creates task which prefetches image into target cache instead of displaying it */
+	LoadAndDisplayImageTask(ImageLoaderEngine engine, ImageLoadingInfo imageLoadingInfo, PrefetchHandle prefetchHandle,
+			PrefetchTarget prefetchTarget) {
+		this(engine, imageLoadingInfo, null, prefetchHandle, prefetchTarget);
+	}
+
+	private LoadAndDisplayImageTask(ImageLoaderEngine engine, ImageLoadingInfo imageLoadingInfo, Handler handler,
+			PrefetchHandle prefetchHandle, PrefetchTarget prefetchTarget) {
 		this.engine = engine;
 		this.imageLoadingInfo = imageLoadingInfo;
 		this.handler = handler;
+		this.prefetchHandle = prefetchHandle;
+		this.prefetchTarget = prefetchTarget;
 
 		configuration = engine.configuration;
 		downloader = configuration.downloader;
@@ -112,31 +177,96 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		options = imageLoadingInfo.options;
 		listener = imageLoadingInfo.listener;
 		progressListener = imageLoadingInfo.progressListener;
+		uriVariants = engine.resolveUri(uri, targetSize, imageAware.getScaleType());
+		loadingUri = uriVariants.get(0);
 		syncLoading = options.isSyncLoading();
+		priority = options.getPriority();
 	}
 
 	@Override
 	public void run() {
-		if (waitIfPaused()) return;
-		if (delayIfNeed()) return;
+		runStage(false);
+	}
+
+	/**
+	 * Runs task at network stage. Decoding of image which is downloaded to disk cache is handed off to decoding stage,
+	 * so network thread doesn't decode images.
+	 */
+	void runAtNetworkStage() {
+		runStage(true);
+	}
+
+	private void runStage(boolean networkStage) {
+		boolean continuedLater = false;
+		try {
+			continuedLater = loadAndDisplayImage(networkStage);
+		} finally {
+			if (!continuedLater) {
+				// Task could fail unexpectedly (e.g. in bitmap processor) before it passed the image to attached tasks
+				resubmitAttachedTasks();
+				engine.onTaskFinished(this);
+			}
+		}
+	}
+
+	/**
+	 * @return <b>true</b> - if task will be continued later (its decoding was handed off to decoding stage or it's held
+	 * while engine is paused); <b>false</b> - otherwise
+	 */
+	private boolean loadAndDisplayImage(boolean networkStage) {
+		if (cancelled) {
+			L.d(LOG_SKIP_CANCELLED_TASK, memoryCacheKey);
+			resubmitAttachedTasks();
+			return false;
+		}
+		if (downloadedImageUri == null) {
+			if (!syncLoading && engine.holdIfPaused(this, networkStage)) {
+				L.d(LOG_HOLD_WHILE_PAUSED, memoryCacheKey);
+				return true;
+			}
+			if (waitIfPaused() || delayIfNeed()) {
+				resubmitAttachedTasks();
+				return false;
+			}
 
-		ReentrantLock loadFromUriLock = imageLoadingInfo.loadFromUriLock;
-		L.d(LOG_START_DISPLAY_IMAGE_TASK, memoryCacheKey);
-		if (loadFromUriLock.isLocked()) {
-			L.d(LOG_WAITING_FOR_IMAGE_LOADED, memoryCacheKey);
+			L.d(LOG_START_DISPLAY_IMAGE_TASK, memoryCacheKey);
 		}
 
-		loadFromUriLock.lock();
 		Bitmap bmp;
+		Bitmap acquiredBitmap = null; // Bitmap which is passed to display by this task
 		try {
-			checkTaskNotActual();
+			checkTaskNotNeeded();
+
+			if (prefetchTarget == PrefetchTarget.DISK) {
+				prefetched = tryLoadImageOnDisk(networkStage);
+				if (prefetched) {
+					if (configuration.failedUriCache != null) {
+						configuration.failedUriCache.invalidate(uri);
+					}
+					decodeAttachedTasks();
+				} else {
+					rememberFailure();
+					failAttachedTasks();
+				}
+				return false;
+			}
 
 			bmp = configuration.memoryCache.get(memoryCacheKey);
 			if (bmp == null || bmp.isRecycled()) {
-				bmp = tryLoadBitmap();
-				if (bmp == null) return; // listener callback already was fired
+				bmp = tryLoadBitmap(networkStage);
+				if (networkStage && decodingHandedOff) {
+					return true;
+				}
+				if (bmp == null) { // listener callback already was fired
+					rememberFailure();
+					failAttachedTasks();
+					return false;
+				}
+				if (configuration.failedUriCache != null) {
+					configuration.failedUriCache.invalidate(uri);
+				}
 
-				checkTaskNotActual();
+				checkTaskNotNeeded();
 				checkTaskInterrupted();
 
 				if (options.shouldPreProcess()) {
@@ -147,14 +277,19 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 					}
 				}
 
+				// Bitmap which is evicted from memory cache (even by its own caching) isn't reused until it's displayed
+				engine.acquireBitmap(bmp);
 				if (bmp != null && options.isCacheInMemory()) {
 					L.d(LOG_CACHE_IMAGE_IN_MEMORY, memoryCacheKey);
 					configuration.memoryCache.put(memoryCacheKey, bmp);
 				}
 			} else {
+				engine.acquireBitmap(bmp);
 				loadedFrom = LoadedFrom.MEMORY_CACHE;
 				L.d(LOG_GET_IMAGE_FROM_MEMORY_CACHE_AFTER_WAITING, memoryCacheKey);
 			}
+			acquiredBitmap = bmp;
+			completeAttachedTasks(bmp);
 
 			if (bmp != null && options.shouldPostProcess()) {
 				L.d(LOG_POSTPROCESS_IMAGE, memoryCacheKey);
@@ -162,24 +297,33 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 				if (bmp == null) {
 					L.e(ERROR_POST_PROCESSOR_NULL, memoryCacheKey);
 				}
+				engine.acquireBitmap(bmp);
+				engine.releaseBitmap(acquiredBitmap);
+				acquiredBitmap = bmp;
 			}
 			checkTaskNotActual();
 			checkTaskInterrupted();
 		} catch (TaskCancelledException e) {
+			engine.releaseBitmap(acquiredBitmap);
+			resubmitAttachedTasks();
 			fireCancelEvent();
-			return;
-		} finally {
-			loadFromUriLock.unlock();
+			return false;
 		}
 
+		if (isPrefetch()) {
+			prefetched = bmp != null;
+			engine.releaseBitmap(bmp);
+			return false;
+		}
 		DisplayBitmapTask displayBitmapTask = new DisplayBitmapTask(bmp, imageLoadingInfo, engine, loadedFrom);
 		runTask(displayBitmapTask, syncLoading, handler, engine);
+		return false;
 	}
 
 	/** @return <b>true</b> - if task should be interrupted; <b>false</b> - otherwise */
 	private boolean waitIfPaused() {
 		AtomicBoolean pause = engine.getPause();
-		if (pause.get()) {
+		if (syncLoading && pause.get()) { // Other tasks are held by engine and don't wait
 			synchronized (engine.getPauseLock()) {
 				if (pause.get()) {
 					L.d(LOG_WAITING_FOR_RESUME, memoryCacheKey);
@@ -193,7 +337,7 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 				}
 			}
 		}
-		return isTaskNotActual();
+		return isTaskNotNeeded();
 	}
 
 	/** @return <b>true</b> - if task should be interrupted; <b>false</b> - otherwise */
@@ -206,36 +350,71 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 				L.e(LOG_TASK_INTERRUPTED, memoryCacheKey);
 				return true;
 			}
-			return isTaskNotActual();
+			return isTaskNotNeeded();
 		}
 		return false;
 	}
 
-	private Bitmap tryLoadBitmap() throws TaskCancelledException {
+	/**
+	 * @param networkStage <b>true</b> - if decoding of downloaded image can be handed off to decoding stage. If it's
+	 *                     handed off then <b>null</b> is returned and {@link #decodingHandedOff} is set.
+	 */
+	private Bitmap tryLoadBitmap(boolean networkStage) throws TaskCancelledException {
 		Bitmap bitmap = null;
 		try {
-			File imageFile = configuration.diskCache.get(uri);
-			if (imageFile != null && imageFile.exists() && imageFile.length() > 0) {
+			if (downloadedImageUri != null) { // Image was downloaded at network stage
+				checkTaskNotNeeded();
+				bitmap = decodeDownloadedImage(downloadedImageUri);
+				if (bitmap == null || bitmap.getWidth() <= 0 || bitmap.getHeight() <= 0) {
+					fireFailEvent(FailType.DECODING_ERROR, null);
+				}
+				return bitmap;
+			}
+
+			String cachedImageUri = loadingUri;
+			File imageFile = configuration.diskCache.get(loadingUri);
+			boolean isImageCachedOnDisk = imageFile != null && imageFile.exists() && imageFile.length() > 0;
+			if (isImageCachedOnDisk && networkStage && options.isCacheOnDisk()) {
+				staleValidators = engine.getStaleValidators(loadingUri);
+			} else if (!isImageCachedOnDisk) {
+				String variantUri = findCachedVariant();
+				if (variantUri != null) {
+					L.d(LOG_LOAD_CACHED_IMAGE_VARIANT, variantUri, memoryCacheKey);
+					cachedImageUri = variantUri;
+					imageFile = configuration.diskCache.get(variantUri);
+					isImageCachedOnDisk = imageFile != null;
+				}
+			}
+			if (isImageCachedOnDisk && staleValidators == null) {
 				L.d(LOG_LOAD_IMAGE_FROM_DISK_CACHE, memoryCacheKey);
 				loadedFrom = LoadedFrom.DISC_CACHE;
 
-				checkTaskNotActual();
-				bitmap = decodeImage(Scheme.FILE.wrap(imageFile.getAbsolutePath()));
+				checkTaskNotNeeded();
+				bitmap = decodeImage(Scheme.FILE.wrap(imageFile.getAbsolutePath()), cachedImageUri);
 			}
 			if (bitmap == null || bitmap.getWidth() <= 0 || bitmap.getHeight() <= 0) {
-				L.d(LOG_LOAD_IMAGE_FROM_NETWORK, memoryCacheKey);
+				L.d(staleValidators == null ? LOG_LOAD_IMAGE_FROM_NETWORK : LOG_REVALIDATE_CACHED_IMAGE, memoryCacheKey);
 				loadedFrom = LoadedFrom.NETWORK;
 
-				String imageUriForDecoding = uri;
-				if (options.isCacheOnDisk() && tryCacheImageOnDisk()) {
-					imageFile = configuration.diskCache.get(uri);
+				String imageUriForDecoding = loadingUri;
+				// Stale image is used if it can't be revalidated
+				if (options.isCacheOnDisk() && (tryCacheImageOnDisk() || staleValidators != null)) {
+					imageFile = configuration.diskCache.get(loadingUri);
 					if (imageFile != null) {
 						imageUriForDecoding = Scheme.FILE.wrap(imageFile.getAbsolutePath());
 					}
 				}
 
-				checkTaskNotActual();
-				bitmap = decodeImage(imageUriForDecoding);
+				checkTaskNotNeeded();
+				if (networkStage && !imageUriForDecoding.equals(loadingUri)) {
+					downloadedImageUri = imageUriForDecoding;
+					// Downloaded image bytes are kept for decoding stage, their total is bounded by hand-off capacity
+					decodingHandedOff = engine.handOffDecoding(this);
+					if (decodingHandedOff) {
+						return null; // Task state mustn't be touched anymore, it's continued at decoding stage
+					}
+				}
+				bitmap = decodeDownloadedImage(imageUriForDecoding);
 
 				if (bitmap == null || bitmap.getWidth() <= 0 || bitmap.getHeight() <= 0) {
 					fireFailEvent(FailType.DECODING_ERROR, null);
@@ -258,10 +437,33 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		return bitmap;
 	}
 
-	private Bitmap decodeImage(String imageUri) throws IOException {
+	private Bitmap decodeDownloadedImage(String imageUriForDecoding) throws IOException {
+		ImageDownloader downloaderForDecoding = getDownloader();
+		if (downloadedImage != null) {
+			L.d(LOG_DECODE_DOWNLOADED_IMAGE, memoryCacheKey);
+			downloaderForDecoding = new DownloadedImageDownloader(downloaderForDecoding, imageUriForDecoding,
+					downloadedImage);
+			downloadedImage = null;
+		}
+		return decodeImage(imageUriForDecoding, loadingUri, downloaderForDecoding);
+	}
+
+	private Bitmap decodeImage(String imageUri, String variantUri) throws IOException {
+		return decodeImage(imageUri, variantUri, getDownloader());
+	}
+
+	/**
+	 * @param imageUri   URI of image for decoding
+	 * @param variantUri URI of decoded image variant, it's a key of image in disk cache
+	 */
+	private Bitmap decodeImage(String imageUri, String variantUri, ImageDownloader downloader) throws IOException {
 		ViewScaleType viewScaleType = imageAware.getScaleType();
-		ImageDecodingInfo decodingInfo = new ImageDecodingInfo(memoryCacheKey, imageUri, uri, targetSize, viewScaleType,
-				getDownloader(), options);
+		ImageMetadataStore metadataStore = null;
+		if (!imageUri.equals(variantUri) && configuration.diskCache instanceof ImageMetadataStore) {
+			metadataStore = (ImageMetadataStore) configuration.diskCache; // image is decoded from disk cache
+		}
+		ImageDecodingInfo decodingInfo = new ImageDecodingInfo(memoryCacheKey, imageUri, variantUri, targetSize,
+				viewScaleType, downloader, options, metadataStore);
 		return decoder.decode(decodingInfo);
 	}
 
@@ -272,32 +474,120 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		boolean loaded;
 		try {
 			loaded = downloadImage();
-			if (loaded) {
+			if (loaded && !cachedImageNotModified) {
 				int width = configuration.maxImageWidthForDiskCache;
 				int height = configuration.maxImageHeightForDiskCache;
 				if (width > 0 || height > 0) {
 					L.d(LOG_RESIZE_CACHED_IMAGE_FILE, memoryCacheKey);
+					downloadedImage = null; // cached file will differ from downloaded image
 					resizeAndSaveImage(width, height); // TODO : process boolean result
 				}
 			}
+			if (loaded && responseValidators != null) {
+				((ResponseValidatorsStore) configuration.diskCache).putValidators(loadingUri, responseValidators);
+			}
 		} catch (IOException e) {
 			L.e(e);
+			failCause = e; // image could be loaded without caching on disk, but cause is known if it fails
 			loaded = false;
 		}
 		return loaded;
 	}
 
+	/**
+	 * Loads image into disk cache without decoding (for prefetching into disk cache). Stale image is revalidated at
+	 * network stage.
+	 *
+	 * @return <b>true</b> - if image is cached on disk; <b>false</b> - otherwise
+	 */
+	private boolean tryLoadImageOnDisk(boolean networkStage) throws TaskCancelledException {
+		File imageFile = configuration.diskCache.get(loadingUri);
+		boolean isImageCachedOnDisk = imageFile != null && imageFile.exists() && imageFile.length() > 0;
+		if (isImageCachedOnDisk && networkStage && options.isCacheOnDisk()) {
+			staleValidators = engine.getStaleValidators(loadingUri);
+		}
+		if (isImageCachedOnDisk && staleValidators == null || findCachedVariant() != null
+				|| engine.isLocalUri(loadingUri)) {
+			loadedFrom = LoadedFrom.DISC_CACHE;
+			return true;
+		}
+
+		boolean loaded;
+		try {
+			loaded = tryCacheImageOnDisk();
+		} catch (IllegalStateException e) {
+			failType = FailType.NETWORK_DENIED;
+			return false;
+		}
+		checkTaskNotNeeded();
+		if (!loaded) {
+			failType = FailType.IO_ERROR;
+		}
+		return loaded || staleValidators != null; // stale image is used if it can't be revalidated
+	}
+
 	private boolean downloadImage() throws IOException {
-		InputStream is = getDownloader().getStream(uri, options.getExtraForDownloader());
+		InputStream is;
+		long offset = 0;
+		ConditionalImageDownloader conditionalDownloader = getConditionalDownloader();
+		if (conditionalDownloader != null) {
+			ConditionalImageDownloader.Result result;
+			PartialImage partialImage = null;
+			if (staleValidators == null && configuration.diskCache instanceof ResumableDiskCache) {
+				partialImage = ((ResumableDiskCache) configuration.diskCache).getPartialImage(loadingUri);
+			}
+			if (partialImage != null) {
+				L.d(LOG_RESUME_DOWNLOAD, partialImage.getLength(), memoryCacheKey);
+				result = conditionalDownloader.getStream(loadingUri, partialImage.getLength(), partialImage.getValidators(),
+						options.getExtraForDownloader());
+				offset = result.getOffset();
+			} else {
+				result = conditionalDownloader.getStream(loadingUri, staleValidators, options.getExtraForDownloader());
+			}
+			responseValidators = result.getValidators();
+			if (staleValidators != null && result.isNotModified()) {
+				L.d(LOG_CACHED_IMAGE_NOT_MODIFIED, memoryCacheKey);
+				loadedFrom = LoadedFrom.DISC_CACHE;
+				cachedImageNotModified = true;
+				return true;
+			}
+			is = result.getStream();
+			if (engine.isSlowNetwork() && !engine.isLocalUri(loadingUri)) {
+				is = new FlushedInputStream(is);
+			}
+		} else {
+			is = getDownloader().getStream(loadingUri, options.getExtraForDownloader());
+		}
+		if (configuration.downloadDispatcher != null) {
+			is = configuration.downloadDispatcher.limitBandwidth(loadingUri, is);
+		}
 		if (is == null) {
 			L.e(ERROR_NO_IMAGE_STREAM, memoryCacheKey);
 			return false;
-		} else {
+		} else if (offset > 0) { // downloaded part of image isn't available for decoding without reading from disk
 			try {
-				return configuration.diskCache.save(uri, is, this);
+				return ((ResumableDiskCache) configuration.diskCache).save(loadingUri, is, offset, responseValidators,
+						this);
 			} finally {
 				IoUtils.closeSilently(is);
 			}
+		} else {
+			TeeInputStream teeStream = new TeeInputStream(is, MAX_DOWNLOADED_IMAGE_SIZE_FOR_DECODING);
+			try {
+				boolean saved;
+				if (configuration.diskCache instanceof ResumableDiskCache) {
+					saved = ((ResumableDiskCache) configuration.diskCache).save(loadingUri, teeStream, 0,
+							responseValidators, this);
+				} else {
+					saved = configuration.diskCache.save(loadingUri, teeStream, this);
+				}
+				if (saved) {
+					downloadedImage = teeStream.getReadStream(); // image will be decoded without reading from disk
+				}
+				return saved;
+			} finally {
+				IoUtils.closeSilently(teeStream);
+			}
 		}
 	}
 
@@ -305,14 +595,14 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 	private boolean resizeAndSaveImage(int maxWidth, int maxHeight) throws IOException {
 		// Decode image file, compress and re-save it
 		boolean saved = false;
-		File targetFile = configuration.diskCache.get(uri);
+		File targetFile = configuration.diskCache.get(loadingUri);
 		if (targetFile != null && targetFile.exists()) {
 			ImageSize targetImageSize = new ImageSize(maxWidth, maxHeight);
 			DisplayImageOptions specialOptions = new DisplayImageOptions.Builder().cloneFrom(options)
 					.imageScaleType(ImageScaleType.IN_SAMPLE_INT).build();
 			ImageDecodingInfo decodingInfo = new ImageDecodingInfo(memoryCacheKey,
-					Scheme.FILE.wrap(targetFile.getAbsolutePath()), uri, targetImageSize, ViewScaleType.FIT_INSIDE,
-					getDownloader(), specialOptions);
+					Scheme.FILE.wrap(targetFile.getAbsolutePath()), loadingUri, targetImageSize,
+					ViewScaleType.FIT_INSIDE, getDownloader(), specialOptions);
 			Bitmap bmp = decoder.decode(decodingInfo);
 			if (bmp != null && configuration.processorForDiskCache != null) {
 				L.d(LOG_PROCESS_IMAGE_BEFORE_CACHE_ON_DISK, memoryCacheKey);
@@ -322,7 +612,7 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 				}
 			}
 			if (bmp != null) {
-				saved = configuration.diskCache.save(uri, bmp);
+				saved = configuration.diskCache.save(loadingUri, bmp);
 				bmp.recycle();
 			}
 		}
@@ -336,7 +626,7 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 
 	/** @return <b>true</b> - if loading should be continued; <b>false</b> - if loading should be interrupted */
 	private boolean fireProgressEvent(final int current, final int total) {
-		if (isTaskInterrupted() || isTaskNotActual()) return false;
+		if (cancelled || isTaskInterrupted() || isTaskNotNeeded()) return false;
 		if (progressListener != null) {
 			Runnable r = new Runnable() {
 				@Override
@@ -350,7 +640,9 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 	}
 
 	private void fireFailEvent(final FailType failType, final Throwable failCause) {
-		if (syncLoading || isTaskInterrupted() || isTaskNotActual()) return;
+		this.failType = failType;
+		this.failCause = failCause;
+		if (syncLoading || isPrefetch() || isTaskInterrupted() || isTaskNotActual()) return;
 		Runnable r = new Runnable() {
 			@Override
 			public void run() {
@@ -363,8 +655,80 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		runTask(r, false, handler, engine);
 	}
 
+	/** Passes loaded bitmap to the tasks which were attached to this task and waited for the same image */
+	private void completeAttachedTasks(Bitmap bmp) {
+		for (LoadAndDisplayImageTask task : engine.detachAttachedTasks(this)) {
+			// Prefetching into disk cache is completed by disk cache lookup, image could be loaded bypassing disk cache
+			if (task.memoryCacheKey.equals(memoryCacheKey) && task.prefetchTarget != PrefetchTarget.DISK) {
+				task.displayLoadedBitmap(bmp, loadedFrom);
+				engine.onTaskFinished(task);
+			} else {
+				resubmitForDecoding(task); // image of other size is needed, it will be decoded from disk cache
+			}
+		}
+	}
+
+	/** Submits the tasks which were attached to this task again, so they decode the loaded image from disk cache */
+	private void decodeAttachedTasks() {
+		for (LoadAndDisplayImageTask task : engine.detachAttachedTasks(this)) {
+			resubmitForDecoding(task);
+		}
+	}
+
+	/**
+	 * Submits task which waited for image loaded by this task again. Resubmitted tasks are coalesced by memory cache
+	 * key, so tasks of different sizes decode the image in parallel instead of waiting for each other.
+	 */
+	private static void resubmitForDecoding(LoadAndDisplayImageTask task) {
+		task.imageLoadedByAnotherTask = true;
+		task.engine.submit(task);
+	}
+
+	/** Puts URI into negative cache unless loading failed because task was interrupted or because of connectivity */
+	private void rememberFailure() {
+		if (configuration.failedUriCache != null && !Thread.currentThread().isInterrupted()) {
+			configuration.failedUriCache.put(uri, failType, failCause);
+		}
+	}
+
+	/** Notifies the tasks which were attached to this task about failed loading */
+	private void failAttachedTasks() {
+		for (LoadAndDisplayImageTask task : engine.detachAttachedTasks(this)) {
+			task.fireFailEvent(failType, failCause);
+			engine.onTaskFinished(task);
+		}
+	}
+
+	/** Submits the tasks which were attached to this task again, so one of them will load the image instead */
+	private void resubmitAttachedTasks() {
+		for (LoadAndDisplayImageTask task : engine.detachAttachedTasks(this)) {
+			engine.submit(task);
+		}
+	}
+
+	/**
+	 * Displays bitmap which was loaded by another task for the same URI and size. Prefetch task caches the bitmap in
+	 * memory instead.
+	 */
+	private void displayLoadedBitmap(Bitmap bmp, LoadedFrom loadedFrom) {
+		L.d(LOG_GET_IMAGE_FROM_LOADING_TASK, memoryCacheKey);
+		if (isPrefetch()) {
+			prefetched = bmp != null;
+			if (prefetched && configuration.memoryCache.get(memoryCacheKey) != bmp) {
+				configuration.memoryCache.put(memoryCacheKey, bmp); // loading task could be told not to cache it
+			}
+		} else {
+			engine.acquireBitmap(bmp);
+			if (bmp != null && options.shouldPostProcess()) {
+				engine.submit(new ProcessAndDisplayImageTask(engine, bmp, imageLoadingInfo, handler));
+			} else {
+				runTask(new DisplayBitmapTask(bmp, imageLoadingInfo, engine, loadedFrom), false, handler, engine);
+			}
+		}
+	}
+
 	private void fireCancelEvent() {
-		if (syncLoading || isTaskInterrupted()) return;
+		if (syncLoading || isPrefetch() || isTaskInterrupted()) return;
 		Runnable r = new Runnable() {
 			@Override
 			public void run() {
@@ -374,6 +738,18 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		runTask(r, false, handler, engine);
 	}
 
+	/**
+	 * @return Downloader which stores validators of images and revalidates stale images; <b>null</b> - if downloader
+	 * or disk cache doesn't support it or network downloads are denied
+	 */
+	private ConditionalImageDownloader getConditionalDownloader() {
+		if (downloader instanceof ConditionalImageDownloader
+				&& configuration.diskCache instanceof ResponseValidatorsStore && !engine.isNetworkDenied()) {
+			return (ConditionalImageDownloader) downloader;
+		}
+		return null;
+	}
+
 	private ImageDownloader getDownloader() {
 		ImageDownloader d;
 		if (engine.isNetworkDenied()) {
@@ -392,25 +768,50 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 	 *                                this moment)
 	 */
 	private void checkTaskNotActual() throws TaskCancelledException {
-		checkViewCollected();
-		checkViewReused();
+		if (isTaskNotActual()) {
+			throw new TaskCancelledException();
+		}
 	}
 
 	/**
 	 * @return <b>true</b> - if task is not actual (target ImageAware is collected by GC or the image URI of this task
-	 * doesn't match to image URI which is actual for current ImageAware at this moment)); <b>false</b> - otherwise
+	 * doesn't match to image URI which is actual for current ImageAware at this moment, prefetching is cancelled));
+	 * <b>false</b> - otherwise
 	 */
-	private boolean isTaskNotActual() {
+	boolean isTaskNotActual() {
+		if (isPrefetch()) {
+			return prefetchHandle.isCancelled();
+		}
 		return isViewCollected() || isViewReused();
 	}
 
-	/** @throws TaskCancelledException if target ImageAware is collected */
-	private void checkViewCollected() throws TaskCancelledException {
-		if (isViewCollected()) {
+	/** @throws TaskCancelledException if neither this task nor tasks attached to it need the image anymore */
+	private void checkTaskNotNeeded() throws TaskCancelledException {
+		if (cancelled || isTaskNotNeeded()) {
 			throw new TaskCancelledException();
 		}
 	}
 
+	/**
+	 * @return <b>true</b> - if neither this task nor tasks attached to it need the image anymore; <b>false</b> -
+	 * otherwise
+	 */
+	boolean isTaskNotNeeded() {
+		return isTaskNotActual() && !engine.hasActualAttachedTasks(this);
+	}
+
+	/**
+	 * Cancels task which isn't needed anymore. Queued task will be skipped, running task will stop image loading at
+	 * nearest check.
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+
+	boolean isCancelled() {
+		return cancelled;
+	}
+
 	/** @return <b>true</b> - if target ImageAware is collected by GC; <b>false</b> - otherwise */
 	private boolean isViewCollected() {
 		if (imageAware.isCollected()) {
@@ -420,13 +821,6 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 		return false;
 	}
 
-	/** @throws TaskCancelledException if target ImageAware is collected by GC */
-	private void checkViewReused() throws TaskCancelledException {
-		if (isViewReused()) {
-			throw new TaskCancelledException();
-		}
-	}
-
 	/** @return <b>true</b> - if current ImageAware is reused for displaying another image; <b>false</b> - otherwise */
 	private boolean isViewReused() {
 		String currentCacheKey = engine.getLoadingUriForView(imageAware);
@@ -457,7 +851,51 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 	}
 
 	String getLoadingUri() {
-		return uri;
+		return loadingUri;
+	}
+
+	/**
+	 * @return Key which tasks loading the same image are coalesced by: loading URI, or memory cache key if the image
+	 * was loaded by another task already (then only decoding of the image for the same size is coalesced)
+	 */
+	String getCoalescingKey() {
+		return imageLoadedByAnotherTask ? memoryCacheKey : loadingUri;
+	}
+
+	/** @return <b>true</b> - if task prefetches image instead of displaying it; <b>false</b> - otherwise */
+	boolean isPrefetch() {
+		return prefetchHandle != null;
+	}
+
+	/** Reports result of prefetch task to its handle. Is called once, when task is finished. */
+	void reportPrefetchResult() {
+		if (!isPrefetch()) return;
+
+		if (prefetched) {
+			prefetchHandle.onCompleted();
+		} else if (cancelled || prefetchHandle.isCancelled()) {
+			prefetchHandle.onSkipped();
+		} else {
+			prefetchHandle.onFailed();
+		}
+	}
+
+	/**
+	 * @return URI of larger image variant which is cached on disk and can be used instead of loading of
+	 * {@linkplain #loadingUri image variant}; <b>null</b> - if there is no such variant
+	 */
+	String findCachedVariant() {
+		return uriVariants.size() > 1 ? engine.findCachedVariant(uriVariants.subList(1, uriVariants.size())) : null;
+	}
+
+	@Override
+	public LoadingPriority getPriority() {
+		return priority;
+	}
+
+	@Override
+	public long getSequence() {
+		return sequence;
 	}
 
 	static void runTask(Runnable r, boolean sync, Handler handler, ImageLoaderEngine engine) {
@@ -479,4 +917,31 @@ final class LoadAndDisplayImageTask implements Runnable, IoUtils.CopyListener {
 	 */
 	class TaskCancelledException extends Exception {
 	}
+
+	/**
+	 * Decorator. Returns stream of image bytes which are in memory already (just downloaded) for one image URI instead
+	 * of re-reading the image. Other URIs are handled by wrapped downloader.
+	 */
+	private static class DownloadedImageDownloader implements ImageDownloader {
+
+		private final ImageDownloader wrappedDownloader;
+		private final String imageUri;
+		private final ByteArrayInputStream imageStream;
+
+		public DownloadedImageDownloader(ImageDownloader wrappedDownloader, String imageUri,
+				ByteArrayInputStream imageStream) {
+			this.wrappedDownloader = wrappedDownloader;
+			this.imageUri = imageUri;
+			this.imageStream = imageStream;
+		}
+
+		@Override
+		public InputStream getStream(String imageUri, Object extra) throws IOException {
+			if (this.imageUri.equals(imageUri)) {
+				imageStream.reset(); // stream is marked at the beginning of image only, so image is read again
+				return imageStream;
+			}
+			return wrappedDownloader.getStream(imageUri, extra);
+		}
+	}
 }
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Handle of images prefetching started by
+ * {@link ImageLoader#prefetch(java.util.Collection, com.nostra13.universalimageloader.core.assist.ImageSize,
+ * com.nostra13.universalimageloader.core.assist.PrefetchTarget) ImageLoader.prefetch(...)}. Provides aggregate
+ * progress of prefetching and allows to cancel it.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public final class PrefetchHandle {
+
+	private final int totalCount;
+	private final AtomicInteger completedCount = new AtomicInteger();
+	private final AtomicInteger failedCount = new AtomicInteger();
+	private final AtomicInteger skippedCount = new AtomicInteger();
+	private volatile boolean cancelled;
+
+	PrefetchHandle(int totalCount) {
+		this.totalCount = totalCount;
+	}
+
+	/**
+	 * Cancels prefetching. Images which wait for prefetching are skipped, downloading images are interrupted. Images
+	 * which are already prefetched stay in cache.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/** @return Number of unique image URIs passed for prefetching */
+	public int getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * @return Number of images which are in target cache now (including images which were cached already or were
+	 * loaded by display tasks at the same time)
+	 */
+	public int getCompletedCount() {
+		return completedCount.get();
+	}
+
+	/** @return Number of images which couldn't be prefetched */
+	public int getFailedCount() {
+		return failedCount.get();
+	}
+
+	/** @return <b>true</b> - if all images are processed or prefetching is cancelled */
+	public boolean isDone() {
+		return cancelled || completedCount.get() + failedCount.get() + skippedCount.get() >= totalCount;
+	}
+
+	void onCompleted() {
+		completedCount.incrementAndGet();
+	}
+
+	void onFailed() {
+		failedCount.incrementAndGet();
+	}
+
+	void onSkipped() {
+		skippedCount.incrementAndGet();
+	}
+}
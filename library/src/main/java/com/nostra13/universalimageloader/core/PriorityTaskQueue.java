@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core;
+
+import com.nostra13.universalimageloader.core.assist.LoadingPriority;
+
+import java.util.Comparator;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Task queue for {@linkplain com.nostra13.universalimageloader.core.assist.QueueProcessingType#PRIORITY priority}
+ * processing. {@linkplain PrioritizedTask Tasks} are ordered by priority, tasks of the same priority are ordered from
+ * the newest to the oldest. Other tasks are considered as tasks of {@link LoadingPriority#NORMAL NORMAL} priority which
+ * are older than any prioritized task.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+final class PriorityTaskQueue extends PriorityBlockingQueue<Runnable> {
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final AtomicLong sequenceGenerator = new AtomicLong();
+
+	PriorityTaskQueue() {
+		super(INITIAL_CAPACITY, new TaskComparator());
+	}
+
+	/** Returns sequence number for new {@linkplain PrioritizedTask task} */
+	static long nextSequence() {
+		return sequenceGenerator.incrementAndGet();
+	}
+
+	private static final class TaskComparator implements Comparator<Runnable> {
+		@Override
+		public int compare(Runnable lhs, Runnable rhs) {
+			int result = getPriority(lhs).compareTo(getPriority(rhs));
+			if (result == 0) {
+				long lhsSequence = getSequence(lhs);
+				long rhsSequence = getSequence(rhs);
+				result = lhsSequence > rhsSequence ? -1 : (lhsSequence == rhsSequence ? 0 : 1);
+			}
+			return result;
+		}
+
+		private static LoadingPriority getPriority(Runnable task) {
+			return task instanceof PrioritizedTask ? ((PrioritizedTask) task).getPriority() : LoadingPriority.NORMAL;
+		}
+
+		private static long getSequence(Runnable task) {
+			return task instanceof PrioritizedTask ? ((PrioritizedTask) task).getSequence() : 0;
+		}
+	}
+}
@@ -19,17 +19,19 @@ import android.graphics.Bitmap;
 import android.os.Handler;
 import android.widget.ImageView;
 import com.nostra13.universalimageloader.core.assist.LoadedFrom;
+import com.nostra13.universalimageloader.core.assist.LoadingPriority;
 import com.nostra13.universalimageloader.core.process.BitmapProcessor;
 import com.nostra13.universalimageloader.utils.L;
 
 /**
  * Presents process'n'display image task. Processes image {@linkplain Bitmap} and display it in {@link ImageView} using
- * {@link DisplayBitmapTask}.
+ * {@link DisplayBitmapTask}. Incoming bitmap must be {@linkplain ImageLoaderEngine#acquireBitmap(Bitmap) acquired},
+ * task releases it after processing.
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @since 1.8.0
  */
-final class ProcessAndDisplayImageTask implements Runnable {
+final class ProcessAndDisplayImageTask implements PrioritizedTask {
 
 	private static final String LOG_POSTPROCESS_IMAGE = "PostProcess image before displaying [%s]";
 
@@ -37,6 +39,8 @@ final class ProcessAndDisplayImageTask implements Runnable {
 	private final Bitmap bitmap;
 	private final ImageLoadingInfo imageLoadingInfo;
 	private final Handler handler;
+	private final long sequence = PriorityTaskQueue.nextSequence();
+	private final LoadingPriority priority;
 
 	public ProcessAndDisplayImageTask(ImageLoaderEngine engine, Bitmap bitmap, ImageLoadingInfo imageLoadingInfo,
 			Handler handler) {
@@ -44,6 +48,7 @@ final class ProcessAndDisplayImageTask implements Runnable {
 		this.bitmap = bitmap;
 		this.imageLoadingInfo = imageLoadingInfo;
 		this.handler = handler;
+		priority = imageLoadingInfo.options.getPriority();
 	}
 
 	@Override
@@ -52,8 +57,20 @@ final class ProcessAndDisplayImageTask implements Runnable {
 
 		BitmapProcessor processor = imageLoadingInfo.options.getPostProcessor();
 		Bitmap processedBitmap = processor.process(bitmap);
+		engine.acquireBitmap(processedBitmap);
+		engine.releaseBitmap(bitmap);
 		DisplayBitmapTask displayBitmapTask = new DisplayBitmapTask(processedBitmap, imageLoadingInfo, engine,
 				LoadedFrom.MEMORY_CACHE);
 		LoadAndDisplayImageTask.runTask(displayBitmapTask, imageLoadingInfo.options.isSyncLoading(), handler, engine);
 	}
+
+	@Override
+	public LoadingPriority getPriority() {
+		return priority;
+	}
+
+	@Override
+	public long getSequence() {
+		return sequence;
+	}
 }
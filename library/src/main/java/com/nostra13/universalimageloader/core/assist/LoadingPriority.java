@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.assist;
+
+/**
+ * Priority of image loading task. It's considered if tasks are processed in
+ * {@linkplain QueueProcessingType#PRIORITY priority order}.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public enum LoadingPriority {
+	/** Image is displayed to user right now (e.g. it's on screen) */
+	HIGH,
+	/** Default priority */
+	NORMAL,
+	/** Image isn't needed right now (e.g. it's prefetched or synced in background) */
+	LOW
+}
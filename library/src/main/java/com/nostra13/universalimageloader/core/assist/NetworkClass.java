@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.assist;
+
+/**
+ * Class of network which is used by ImageLoader at the moment. It's defined by
+ * {@link com.nostra13.universalimageloader.core.ImageLoader#denyNetworkDownloads(boolean)} and
+ * {@link com.nostra13.universalimageloader.core.ImageLoader#handleSlowNetwork(boolean)}.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public enum NetworkClass {
+	/** Network is usable without restrictions */
+	NORMAL,
+	/** Network is slow */
+	SLOW,
+	/** Network downloads are denied, only cached images can be displayed */
+	DENIED
+}
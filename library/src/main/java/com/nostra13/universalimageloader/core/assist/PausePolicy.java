@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.assist;
+
+/**
+ * Defines which display tasks wait while {@link com.nostra13.universalimageloader.core.ImageLoader ImageLoader} is
+ * {@linkplain com.nostra13.universalimageloader.core.ImageLoader#pause() paused}. Waiting tasks don't occupy pool
+ * threads, they are held aside and are resubmitted in order of their priority on resume. Running tasks (e.g. in-flight
+ * downloads) are never paused.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public enum PausePolicy {
+	/** All tasks which haven't started yet wait for resume */
+	HOLD_ALL_TASKS,
+	/**
+	 * Only tasks which need to download images wait for resume. Images cached in memory or on disk are still
+	 * displayed.
+	 */
+	HOLD_NETWORK_TASKS
+}
@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.assist;
+
+/**
+ * Cache which is filled by {@linkplain com.nostra13.universalimageloader.core.ImageLoader#prefetch(java.util.Collection,
+ * ImageSize, PrefetchTarget) prefetch}.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public enum PrefetchTarget {
+	/** Images are downloaded into disk cache only, they aren't decoded */
+	DISK,
+	/** Images are downloaded into disk cache and decoded into memory cache */
+	MEMORY
+}
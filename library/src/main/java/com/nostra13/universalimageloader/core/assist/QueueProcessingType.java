@@ -22,5 +22,13 @@ package com.nostra13.universalimageloader.core.assist;
  * @since 1.6.3
  */
 public enum QueueProcessingType {
-	FIFO, LIFO
+	FIFO, LIFO,
+	/**
+	 * Tasks are processed in order of their {@linkplain LoadingPriority priority} (see
+	 * {@link com.nostra13.universalimageloader.core.DisplayImageOptions.Builder#priority(LoadingPriority)}), tasks of
+	 * the same priority are processed in LIFO order.
+	 *
+	 * @since 1.9.5
+	 */
+	PRIORITY
 }
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.assist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decorator for {@link java.io.InputStream InputStream}. Keeps copy of all read bytes in memory, so stream data can be
+ * read again after the stream is consumed (e.g. image can be decoded right after it was saved on disk). Bytes are
+ * kept until their count exceeds defined limit.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public class TeeInputStream extends InputStream {
+
+	private final InputStream stream;
+	private final int maxBufferSize;
+	private KeptBytes buffer;
+
+	/**
+	 * @param stream        Wrapped stream
+	 * @param maxBufferSize Maximum number of bytes which can be kept in memory. If stream is larger then read bytes
+	 *                      aren't kept.
+	 */
+	public TeeInputStream(InputStream stream, int maxBufferSize) {
+		this.stream = stream;
+		this.maxBufferSize = maxBufferSize;
+		int expectedSize = 0;
+		try {
+			expectedSize = stream.available();
+		} catch (IOException ignored) {
+		}
+		if (expectedSize <= maxBufferSize) {
+			buffer = new KeptBytes(Math.max(expectedSize, 32));
+		}
+	}
+
+	/**
+	 * @return Stream of all bytes which were read from stream or <b>null</b> if bytes count exceeded limit and bytes
+	 * weren't kept. Returned stream reads kept bytes directly, they aren't copied.
+	 */
+	public ByteArrayInputStream getReadStream() {
+		return buffer == null ? null : buffer.toInputStream();
+	}
+
+	@Override
+	public int available() throws IOException {
+		return stream.available();
+	}
+
+	@Override
+	public void close() throws IOException {
+		stream.close();
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = stream.read();
+		if (b != -1) {
+			keep(new byte[]{(byte) b}, 0, 1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int count = stream.read(b, off, len);
+		if (count > 0) {
+			keep(b, off, count);
+		}
+		return count;
+	}
+
+	@Override
+	public long skip(long byteCount) throws IOException {
+		buffer = null; // skipped bytes aren't kept, so kept data is incomplete
+		return stream.skip(byteCount);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void keep(byte[] b, int off, int len) {
+		if (buffer != null) {
+			if (buffer.size() + len > maxBufferSize) {
+				buffer = null;
+			} else {
+				buffer.write(b, off, len);
+			}
+		}
+	}
+
+	/** Buffer of kept bytes which can be read without copying */
+	private static class KeptBytes extends ByteArrayOutputStream {
+
+		KeptBytes(int size) {
+			super(size);
+		}
+
+		ByteArrayInputStream toInputStream() {
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+}
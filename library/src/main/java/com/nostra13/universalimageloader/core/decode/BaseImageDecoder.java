@@ -15,18 +15,25 @@
  *******************************************************************************/
 package com.nostra13.universalimageloader.core.decode;
 
+import android.annotation.TargetApi;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.BitmapFactory.Options;
 import android.graphics.Matrix;
 import android.media.ExifInterface;
+import android.os.Build;
+import com.nostra13.universalimageloader.cache.disc.ImageMetadata;
+import com.nostra13.universalimageloader.cache.disc.ImageMetadataStore;
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
 import com.nostra13.universalimageloader.core.assist.ImageScaleType;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.decode.ImageHeaderParser.ImageHeader;
 import com.nostra13.universalimageloader.core.download.ImageDownloader.Scheme;
 import com.nostra13.universalimageloader.utils.ImageSizeUtils;
 import com.nostra13.universalimageloader.utils.IoUtils;
 import com.nostra13.universalimageloader.utils.L;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -45,8 +52,15 @@ public class BaseImageDecoder implements ImageDecoder {
 	protected static final String LOG_FLIP_IMAGE = "Flip image horizontally [%s]";
 	protected static final String ERROR_NO_IMAGE_STREAM = "No stream for image [%s]";
 	protected static final String ERROR_CANT_DECODE_IMAGE = "Image can't be decoded [%s]";
+	/** Max number of bytes which can be read from image stream to define image size by image header */
+	protected static final int MAX_HEADER_SIZE = 64 * 1024; // 64 Kb
+	/** Initial buffer size for reading image header. Buffer grows up to {@link #MAX_HEADER_SIZE} for long headers. */
+	protected static final int HEADER_BUFFER_SIZE = 8 * 1024; // 8 Kb
+
+	protected static final String WARNING_CANT_REUSE_BITMAP = "Can't decode image into reused bitmap. Decode without reusing... [%s]";
 
 	protected final boolean loggingEnabled;
+	protected final BitmapPool bitmapPool;
 
 	/**
 	 * @param loggingEnabled Whether debug logs will be written to LogCat. Usually should match {@link
@@ -54,7 +68,19 @@ public class BaseImageDecoder implements ImageDecoder {
 	 *                       ImageLoaderConfiguration.writeDebugLogs()}
 	 */
 	public BaseImageDecoder(boolean loggingEnabled) {
+		this(loggingEnabled, null);
+	}
+
+	/**
+	 * @param loggingEnabled Whether debug logs will be written to LogCat. Usually should match {@link
+	 *                       com.nostra13.universalimageloader.core.ImageLoaderConfiguration.Builder#writeDebugLogs()
+	 *                       ImageLoaderConfiguration.writeDebugLogs()}
+	 * @param bitmapPool     null-ok; Pool of bitmaps which are reused for decoding. Intermediate bitmaps (before
+	 *                       exact scaling and rotation) are put into this pool.
+	 */
+	public BaseImageDecoder(boolean loggingEnabled, BitmapPool bitmapPool) {
 		this.loggingEnabled = loggingEnabled;
+		this.bitmapPool = bitmapPool;
 	}
 
 	/**
@@ -68,7 +94,8 @@ public class BaseImageDecoder implements ImageDecoder {
 	 */
 	@Override
 	public Bitmap decode(ImageDecodingInfo decodingInfo) throws IOException {
-		Bitmap decodedBitmap;
+		Bitmap decodedBitmap = null;
+		Bitmap pooledBitmap = null;
 		ImageFileInfo imageInfo;
 
 		InputStream imageStream = getImageStream(decodingInfo);
@@ -77,12 +104,39 @@ public class BaseImageDecoder implements ImageDecoder {
 			return null;
 		}
 		try {
-			imageInfo = defineImageSizeAndRotation(imageStream, decodingInfo);
-			imageStream = resetStream(imageStream, decodingInfo);
+			ImageMetadata metadata = getStoredMetadata(decodingInfo);
+			if (metadata != null) {
+				// Stream isn't read, so it's neither buffered nor reset
+				if (imageStream.markSupported()) {
+					imageStream.mark(MAX_HEADER_SIZE); // so stream can be reset without reopening
+				}
+				imageInfo = defineImageSizeAndRotation(metadata, decodingInfo);
+			} else {
+				if (!imageStream.markSupported()) {
+					imageStream = new BufferedInputStream(imageStream, HEADER_BUFFER_SIZE);
+				}
+				imageInfo = defineImageSizeAndRotation(imageStream, decodingInfo);
+				imageStream = resetStream(imageStream, decodingInfo);
+			}
 			Options decodingOptions = prepareDecodingOptions(imageInfo.imageSize, decodingInfo);
-			decodedBitmap = BitmapFactory.decodeStream(imageStream, null, decodingOptions);
+			pooledBitmap = prepareBitmapReuse(decodingOptions, imageInfo);
+			try {
+				decodedBitmap = BitmapFactory.decodeStream(imageStream, null, decodingOptions);
+			} catch (IllegalArgumentException e) {
+				if (decodingOptions.inBitmap == null) throw e;
+				// Reused bitmap doesn't fit to decoded image
+				L.w(WARNING_CANT_REUSE_BITMAP, decodingInfo.getImageKey());
+				decodingOptions.inBitmap = null;
+				returnToPool(pooledBitmap);
+				pooledBitmap = null;
+				imageStream = resetStream(imageStream, decodingInfo);
+				decodedBitmap = BitmapFactory.decodeStream(imageStream, null, decodingOptions);
+			}
 		} finally {
 			IoUtils.closeSilently(imageStream);
+			if (decodedBitmap != pooledBitmap) { // image wasn't decoded into pooled bitmap
+				returnToPool(pooledBitmap);
+			}
 		}
 
 		if (decodedBitmap == null) {
@@ -98,20 +152,80 @@ public class BaseImageDecoder implements ImageDecoder {
 		return decodingInfo.getDownloader().getStream(decodingInfo.getImageUri(), decodingInfo.getExtraForDownloader());
 	}
 
+	/** @return Image {@linkplain ImageMetadata metadata} stored earlier; <b>null</b> - if there is no such metadata */
+	protected ImageMetadata getStoredMetadata(ImageDecodingInfo decodingInfo) {
+		ImageMetadataStore metadataStore = decodingInfo.getMetadataStore();
+		return metadataStore == null ? null : metadataStore.getMetadata(decodingInfo.getOriginalImageUri());
+	}
+
+	/**
+	 * Defines image size by image header if image stream supports {@linkplain InputStream#mark(int) mark}. Stream is
+	 * reset to the beginning of image after that, so image can be decoded from the same stream. If image header can't
+	 * be parsed then image bounds are decoded by {@link BitmapFactory}. Defined size and EXIF params are stored as
+	 * image {@linkplain ImageMetadata metadata}, so header isn't read next time.
+	 */
 	protected ImageFileInfo defineImageSizeAndRotation(InputStream imageStream, ImageDecodingInfo decodingInfo)
 			throws IOException {
-		Options options = new Options();
-		options.inJustDecodeBounds = true;
-		BitmapFactory.decodeStream(imageStream, null, options);
+		ImageMetadataStore metadataStore = decodingInfo.getMetadataStore();
+		ImageHeader header = null;
+		if (imageStream.markSupported()) {
+			imageStream.mark(MAX_HEADER_SIZE);
+			header = new ImageHeaderParser(imageStream, MAX_HEADER_SIZE).parse();
+			imageStream.reset();
+		}
+
+		int width;
+		int height;
+		String mimeType;
+		if (header != null) {
+			width = header.width;
+			height = header.height;
+			mimeType = header.mimeType;
+		} else {
+			Options options = new Options();
+			options.inJustDecodeBounds = true;
+			BitmapFactory.decodeStream(imageStream, null, options);
+			width = options.outWidth;
+			height = options.outHeight;
+			mimeType = options.outMimeType;
+		}
 
 		ExifInfo exif;
 		String imageUri = decodingInfo.getImageUri();
-		if (decodingInfo.shouldConsiderExifParams() && canDefineExifParams(imageUri, options.outMimeType)) {
+		boolean exifSupported = canDefineExifParams(imageUri, mimeType);
+		if (decodingInfo.shouldConsiderExifParams() && exifSupported) {
 			exif = defineExifOrientation(imageUri);
 		} else {
 			exif = new ExifInfo();
 		}
-		return new ImageFileInfo(new ImageSize(options.outWidth, options.outHeight, exif.rotation), exif);
+
+		if (metadataStore != null && width > 0 && height > 0) {
+			boolean exifDefined = !exifSupported || decodingInfo.shouldConsiderExifParams();
+			metadataStore.putMetadata(decodingInfo.getOriginalImageUri(), new ImageMetadata(width, height, mimeType,
+					exif.rotation, exif.flipHorizontal, exifDefined));
+		}
+		return new ImageFileInfo(new ImageSize(width, height, exif.rotation), exif);
+	}
+
+	private ImageFileInfo defineImageSizeAndRotation(ImageMetadata metadata, ImageDecodingInfo decodingInfo) {
+		ExifInfo exif;
+		if (!decodingInfo.shouldConsiderExifParams()) {
+			exif = new ExifInfo();
+		} else if (metadata.isExifDefined()) {
+			exif = new ExifInfo(metadata.getRotation(), metadata.isFlipHorizontal());
+		} else {
+			// EXIF tags weren't read when metadata was stored
+			String imageUri = decodingInfo.getImageUri();
+			if (canDefineExifParams(imageUri, metadata.getMimeType())) {
+				exif = defineExifOrientation(imageUri);
+			} else {
+				exif = new ExifInfo();
+			}
+			decodingInfo.getMetadataStore().putMetadata(decodingInfo.getOriginalImageUri(), new ImageMetadata(
+					metadata.getWidth(), metadata.getHeight(), metadata.getMimeType(), exif.rotation,
+					exif.flipHorizontal, true));
+		}
+		return new ImageFileInfo(new ImageSize(metadata.getWidth(), metadata.getHeight(), exif.rotation), exif);
 	}
 
 	private boolean canDefineExifParams(String imageUri, String mimeType) {
@@ -173,6 +287,44 @@ public class BaseImageDecoder implements ImageDecoder {
 		return decodingOptions;
 	}
 
+	/**
+	 * Takes bitmap from {@linkplain BitmapPool bitmap pool} (if pool is defined) and sets it as
+	 * {@link Options#inBitmap inBitmap} for decoding. Before Android 4.4 bitmap can be reused only if image isn't
+	 * subsampled.
+	 *
+	 * @return Bitmap taken from pool; <b>null</b> - if no bitmap was taken
+	 */
+	protected Bitmap prepareBitmapReuse(Options decodingOptions, ImageFileInfo imageInfo) {
+		if (bitmapPool == null || Build.VERSION.SDK_INT < 11 || decodingOptions.inBitmap != null) return null;
+
+		// Decoder rounds sample size down to the nearest power of 2
+		int scale = Integer.highestOneBit(Math.max(decodingOptions.inSampleSize, 1));
+		Bitmap reusableBitmap = null;
+		if (scale == 1 || Build.VERSION.SDK_INT >= 19) {
+			// Undo size rotation, image is decoded as is
+			ImageSize srcSize = new ImageSize(imageInfo.imageSize.getWidth(), imageInfo.imageSize.getHeight(),
+					imageInfo.exif.rotation);
+			int width = (srcSize.getWidth() + scale - 1) / scale;
+			int height = (srcSize.getHeight() + scale - 1) / scale;
+			reusableBitmap = bitmapPool.get(width, height, decodingOptions.inPreferredConfig);
+		}
+		setReusableBitmap(decodingOptions, reusableBitmap);
+		return reusableBitmap;
+	}
+
+	/** Returns bitmap taken from pool back if image wasn't decoded into it */
+	private void returnToPool(Bitmap pooledBitmap) {
+		if (pooledBitmap != null) {
+			bitmapPool.put(pooledBitmap);
+		}
+	}
+
+	@TargetApi(11)
+	private void setReusableBitmap(Options decodingOptions, Bitmap reusableBitmap) {
+		decodingOptions.inMutable = true; // decoded bitmap can be reused later
+		decodingOptions.inBitmap = reusableBitmap;
+	}
+
 	protected InputStream resetStream(InputStream imageStream, ImageDecodingInfo decodingInfo) throws IOException {
 		if (imageStream.markSupported()) {
 			try {
@@ -218,7 +370,9 @@ public class BaseImageDecoder implements ImageDecoder {
 		Bitmap finalBitmap = Bitmap.createBitmap(subsampledBitmap, 0, 0, subsampledBitmap.getWidth(), subsampledBitmap
 				.getHeight(), m, true);
 		if (finalBitmap != subsampledBitmap) {
-			subsampledBitmap.recycle();
+			if (bitmapPool == null || !bitmapPool.put(subsampledBitmap)) {
+				subsampledBitmap.recycle();
+			}
 		}
 		return finalBitmap;
 	}
@@ -19,6 +19,7 @@ import android.annotation.TargetApi;
 import android.graphics.BitmapFactory.Options;
 import android.os.Build;
 
+import com.nostra13.universalimageloader.cache.disc.ImageMetadataStore;
 import com.nostra13.universalimageloader.core.DisplayImageOptions;
 import com.nostra13.universalimageloader.core.assist.ImageScaleType;
 import com.nostra13.universalimageloader.core.assist.ImageSize;
@@ -47,8 +48,19 @@ public class ImageDecodingInfo {
 	private final boolean considerExifParams;
 	private final Options decodingOptions;
 
+	private final ImageMetadataStore metadataStore;
+
 	public ImageDecodingInfo(String imageKey, String imageUri, String originalImageUri, ImageSize targetSize, ViewScaleType viewScaleType,
 							 ImageDownloader downloader, DisplayImageOptions displayOptions) {
+		this(imageKey, imageUri, originalImageUri, targetSize, viewScaleType, downloader, displayOptions, null);
+	}
+
+	/**
+	 * @param metadataStore null-ok; Store of metadata of decoded image. Is passed if decoded image is cached image
+	 *                      from disk cache.
+	 */
+	public ImageDecodingInfo(String imageKey, String imageUri, String originalImageUri, ImageSize targetSize, ViewScaleType viewScaleType,
+							 ImageDownloader downloader, DisplayImageOptions displayOptions, ImageMetadataStore metadataStore) {
 		this.imageKey = imageKey;
 		this.imageUri = imageUri;
 		this.originalImageUri = originalImageUri;
@@ -63,6 +75,8 @@ public class ImageDecodingInfo {
 		considerExifParams = displayOptions.isConsiderExifParams();
 		decodingOptions = new Options();
 		copyOptions(displayOptions.getDecodingOptions(), decodingOptions);
+
+		this.metadataStore = metadataStore;
 	}
 
 	private void copyOptions(Options srcOptions, Options destOptions) {
@@ -147,4 +161,12 @@ public class ImageDecodingInfo {
 	public Options getDecodingOptions() {
 		return decodingOptions;
 	}
+
+	/**
+	 * @return Store of metadata of decoded image (keyed by {@linkplain #getOriginalImageUri() original image URI}) or
+	 * <b>null</b> if metadata can't be stored for this image
+	 */
+	public ImageMetadataStore getMetadataStore() {
+		return metadataStore;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.decode;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Defines image type and size by image header without decoding. Supports JPEG, PNG, GIF, WebP (VP8, VP8L, VP8X) and
+ * BMP. Reads not more than defined number of bytes from stream.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public class ImageHeaderParser {
+
+	public static final String MIME_TYPE_JPEG = "image/jpeg";
+	public static final String MIME_TYPE_PNG = "image/png";
+	public static final String MIME_TYPE_GIF = "image/gif";
+	public static final String MIME_TYPE_WEBP = "image/webp";
+	public static final String MIME_TYPE_BMP = "image/bmp";
+
+	private static final int JPEG_MARKER_PREFIX = 0xFF;
+	private static final int JPEG_SOI = 0xD8;
+	private static final int JPEG_EOI = 0xD9;
+	private static final int JPEG_SOS = 0xDA;
+	private static final int PNG_CHUNK_IHDR = 0x49484452; // "IHDR"
+	private static final int RIFF = 0x52494646; // "RIFF"
+	private static final int WEBP = 0x57454250; // "WEBP"
+	private static final int WEBP_VP8 = 0x56503820; // "VP8 "
+	private static final int WEBP_VP8L = 0x5650384C; // "VP8L"
+	private static final int WEBP_VP8X = 0x56503858; // "VP8X"
+	private static final int BMP_CORE_HEADER_SIZE = 12;
+
+	private final InputStream stream;
+	private final int maxBytes;
+	private int readBytes;
+
+	/**
+	 * @param stream   Image stream. Stream position should be at the beginning of image.
+	 * @param maxBytes Max number of bytes which can be read from stream
+	 */
+	public ImageHeaderParser(InputStream stream, int maxBytes) {
+		this.stream = stream;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Reads image header
+	 *
+	 * @return Image header or <b>null</b> if image type isn't supported or image size can't be defined within allowed
+	 * number of bytes
+	 * @throws IOException if some I/O error occurs during reading
+	 */
+	public ImageHeader parse() throws IOException {
+		int b0 = readByte();
+		int b1 = readByte();
+		if (b0 < 0 || b1 < 0) return null;
+
+		if (b0 == JPEG_MARKER_PREFIX && b1 == JPEG_SOI) {
+			return parseJpeg();
+		} else if (b0 == 0x89 && b1 == 'P') {
+			return parsePng();
+		} else if (b0 == 'G' && b1 == 'I') {
+			return parseGif();
+		} else if (b0 == 'R' && b1 == 'I') {
+			return parseWebp();
+		} else if (b0 == 'B' && b1 == 'M') {
+			return parseBmp();
+		}
+		return null;
+	}
+
+	private ImageHeader parseJpeg() throws IOException {
+		while (true) {
+			int b = readByte();
+			if (b < 0) return null;
+			if (b != JPEG_MARKER_PREFIX) continue; // garbage between segments
+
+			int marker;
+			do {
+				marker = readByte(); // skip fill bytes
+			} while (marker == JPEG_MARKER_PREFIX);
+			if (marker < 0 || marker == JPEG_EOI || marker == JPEG_SOS) return null;
+			if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) continue; // markers without payload
+
+			int length = readUInt16BE();
+			if (length < 2) return null;
+			if (isStartOfFrame(marker)) {
+				readByte(); // sample precision
+				int height = readUInt16BE();
+				int width = readUInt16BE();
+				return width > 0 && height > 0 ? new ImageHeader(MIME_TYPE_JPEG, width, height) : null;
+			}
+			if (!skip(length - 2)) return null;
+		}
+	}
+
+	private boolean isStartOfFrame(int marker) {
+		return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+	}
+
+	private ImageHeader parsePng() throws IOException {
+		if (readByte() != 'N' || readByte() != 'G' || !skip(4)) return null; // rest of signature
+		readInt32BE(); // chunk length
+		if (readInt32BE() != PNG_CHUNK_IHDR) return null;
+		int width = readInt32BE();
+		int height = readInt32BE();
+		return width > 0 && height > 0 ? new ImageHeader(MIME_TYPE_PNG, width, height) : null;
+	}
+
+	private ImageHeader parseGif() throws IOException {
+		if (readByte() != 'F' || readByte() != '8' || !skip(2)) return null; // "F8" + "7a" or "9a"
+		int width = readUInt16LE();
+		int height = readUInt16LE();
+		return width > 0 && height > 0 ? new ImageHeader(MIME_TYPE_GIF, width, height) : null;
+	}
+
+	private ImageHeader parseWebp() throws IOException {
+		if (readByte() != 'F' || readByte() != 'F' || !skip(4)) return null; // "FF" + RIFF size
+		if (readInt32BE() != WEBP) return null;
+		int chunk = readInt32BE();
+		if (!skip(4)) return null; // chunk size
+		int width;
+		int height;
+		switch (chunk) {
+			case WEBP_VP8:
+				if (!skip(3)) return null; // frame tag
+				if (readByte() != 0x9D || readByte() != 0x01 || readByte() != 0x2A) return null;
+				width = readUInt16LE() & 0x3FFF;
+				height = readUInt16LE() & 0x3FFF;
+				break;
+			case WEBP_VP8L:
+				if (readByte() != 0x2F) return null;
+				int b0 = readByte();
+				int b1 = readByte();
+				int b2 = readByte();
+				int b3 = readByte();
+				if (b3 < 0) return null;
+				width = 1 + (((b1 & 0x3F) << 8) | b0);
+				height = 1 + (((b3 & 0x0F) << 10) | (b2 << 2) | ((b1 & 0xC0) >> 6));
+				break;
+			case WEBP_VP8X:
+				if (!skip(4)) return null; // flags and reserved bytes
+				width = 1 + readUInt24LE();
+				height = 1 + readUInt24LE();
+				break;
+			default:
+				return null;
+		}
+		return width > 0 && height > 0 ? new ImageHeader(MIME_TYPE_WEBP, width, height) : null;
+	}
+
+	private ImageHeader parseBmp() throws IOException {
+		if (!skip(12)) return null; // file header
+		int headerSize = readInt32LE();
+		int width;
+		int height;
+		if (headerSize == BMP_CORE_HEADER_SIZE) {
+			width = readUInt16LE();
+			height = readUInt16LE();
+		} else {
+			width = readInt32LE();
+			height = Math.abs(readInt32LE()); // negative height means top-down bitmap
+		}
+		return width > 0 && height > 0 ? new ImageHeader(MIME_TYPE_BMP, width, height) : null;
+	}
+
+	/** @return Read byte or <b>-1</b> if end of stream or limit of read bytes is reached */
+	private int readByte() throws IOException {
+		if (readBytes >= maxBytes) return -1;
+		int b = stream.read();
+		if (b >= 0) readBytes++;
+		return b;
+	}
+
+	/** @return <b>true</b> - if bytes were skipped; <b>false</b> - if end of stream or limit of read bytes is reached */
+	private boolean skip(int count) throws IOException {
+		if (readBytes + count > maxBytes) return false;
+		while (count > 0) {
+			long skipped = stream.skip(count);
+			if (skipped <= 0) {
+				if (stream.read() < 0) return false;
+				skipped = 1;
+			}
+			count -= skipped;
+			readBytes += skipped;
+		}
+		return true;
+	}
+
+	private int readUInt16BE() throws IOException {
+		int b0 = readByte();
+		int b1 = readByte();
+		return (b0 | b1) < 0 ? -1 : (b0 << 8) | b1;
+	}
+
+	private int readUInt16LE() throws IOException {
+		int b0 = readByte();
+		int b1 = readByte();
+		return (b0 | b1) < 0 ? -1 : (b1 << 8) | b0;
+	}
+
+	private int readUInt24LE() throws IOException {
+		int b0 = readByte();
+		int b1 = readByte();
+		int b2 = readByte();
+		return (b0 | b1 | b2) < 0 ? -1 : (b2 << 16) | (b1 << 8) | b0;
+	}
+
+	private int readInt32BE() throws IOException {
+		int b0 = readByte();
+		int b1 = readByte();
+		int b2 = readByte();
+		int b3 = readByte();
+		return (b0 | b1 | b2 | b3) < 0 ? -1 : (b0 << 24) | (b1 << 16) | (b2 << 8) | b3;
+	}
+
+	private int readInt32LE() throws IOException {
+		int b0 = readByte();
+		int b1 = readByte();
+		int b2 = readByte();
+		int b3 = readByte();
+		return (b0 | b1 | b2 | b3) < 0 ? -1 : (b3 << 24) | (b2 << 16) | (b1 << 8) | b0;
+	}
+
+	/** Image type and size defined by image header */
+	public static class ImageHeader {
+
+		public final String mimeType;
+		public final int width;
+		public final int height;
+
+		public ImageHeader(String mimeType, int width, int height) {
+			this.mimeType = mimeType;
+			this.width = width;
+			this.height = height;
+		}
+	}
+}
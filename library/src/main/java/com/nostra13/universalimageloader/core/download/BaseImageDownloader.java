@@ -26,9 +26,9 @@ import android.os.Build;
 import android.provider.ContactsContract;
 import android.provider.MediaStore;
 import android.webkit.MimeTypeMap;
+import com.nostra13.universalimageloader.cache.disc.ResponseValidators;
 import com.nostra13.universalimageloader.core.DisplayImageOptions;
 import com.nostra13.universalimageloader.core.assist.ContentLengthInputStream;
-import com.nostra13.universalimageloader.utils.IoUtils;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
@@ -41,15 +41,22 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
 
 /**
  * Provides retrieving of {@link InputStream} of image by URI from network or file system or app resources.<br />
- * {@link URLConnection} is used to retrieve image stream from network.
+ * {@link HttpTransport} is used to retrieve image stream from network ({@link URLConnection} by default).
  *
  * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
  * @since 1.8.0
  */
-public class BaseImageDownloader implements ImageDownloader {
+public class BaseImageDownloader implements ConditionalImageDownloader {
 	/** {@value} */
 	public static final int DEFAULT_HTTP_CONNECT_TIMEOUT = 5 * 1000; // milliseconds
 	/** {@value} */
@@ -62,6 +69,17 @@ public class BaseImageDownloader implements ImageDownloader {
 
 	protected static final int MAX_REDIRECT_COUNT = 5;
 
+	private static final String HEADER_ETAG = "ETag";
+	private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+	private static final String HEADER_EXPIRES = "Expires";
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+	private static final String HEADER_RANGE = "Range";
+	private static final String HEADER_IF_RANGE = "If-Range";
+	private static final String HEADER_CONTENT_RANGE = "Content-Range";
+	private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
 	protected static final String CONTENT_CONTACTS_URI_PREFIX = "content://com.android.contacts/";
 
 	private static final String ERROR_UNSUPPORTED_SCHEME = "UIL doesn't support scheme(protocol) by default [%s]. " + "You should implement this support yourself (BaseImageDownloader.getStreamFromOtherSource(...))";
@@ -69,15 +87,48 @@ public class BaseImageDownloader implements ImageDownloader {
 	protected final Context context;
 	protected final int connectTimeout;
 	protected final int readTimeout;
+	protected final HttpTransport transport;
+
+	/**
+	 * Whether subclass overrides {@link #getStreamFromNetwork(String, Object)}. Conditional and "Range" requests
+	 * bypass this method so they are disabled for such subclasses to not ignore their network code.
+	 */
+	private final boolean networkStreamOverridden = isNetworkStreamOverridden(getClass());
 
 	public BaseImageDownloader(Context context) {
 		this(context, DEFAULT_HTTP_CONNECT_TIMEOUT, DEFAULT_HTTP_READ_TIMEOUT);
 	}
 
+	/**
+	 * Creates downloader which uses {@link UrlConnectionTransport} for network requests. Connections are created by
+	 * {@link #createConnection(String, Object)}.
+	 */
 	public BaseImageDownloader(Context context, int connectTimeout, int readTimeout) {
 		this.context = context.getApplicationContext();
 		this.connectTimeout = connectTimeout;
 		this.readTimeout = readTimeout;
+		this.transport = new UrlConnectionTransport(connectTimeout, readTimeout) {
+			@Override
+			protected HttpURLConnection createConnection(String url, Object extra) throws IOException {
+				return BaseImageDownloader.this.createConnection(url, extra);
+			}
+		};
+	}
+
+	/**
+	 * Creates downloader which uses incoming transport for network requests
+	 *
+	 * @param transport {@link HttpTransport} which executes network requests. Connect and read timeouts are defined
+	 *                  by the transport.
+	 */
+	public BaseImageDownloader(Context context, HttpTransport transport) {
+		if (transport == null) {
+			throw new IllegalArgumentException("transport must not be null");
+		}
+		this.context = context.getApplicationContext();
+		this.connectTimeout = DEFAULT_HTTP_CONNECT_TIMEOUT;
+		this.readTimeout = DEFAULT_HTTP_READ_TIMEOUT;
+		this.transport = transport;
 	}
 
 	@Override
@@ -101,7 +152,9 @@ public class BaseImageDownloader implements ImageDownloader {
 	}
 
 	/**
-	 * Retrieves {@link InputStream} of image by URI (image is located in the network).
+	 * Retrieves {@link InputStream} of image by URI (image is located in the network).<br />
+	 * If subclass overrides this method then images are always requested by this method, i.e. cached images aren't
+	 * revalidated by conditional requests and interrupted downloads aren't resumed by "Range" requests.
 	 *
 	 * @param imageUri Image URI
 	 * @param extra    Auxiliary object which was passed to {@link DisplayImageOptions.Builder#extraForDownloader(Object)
@@ -111,28 +164,211 @@ public class BaseImageDownloader implements ImageDownloader {
 	 *                     URL.
 	 */
 	protected InputStream getStreamFromNetwork(String imageUri, Object extra) throws IOException {
-		HttpURLConnection conn = createConnection(imageUri, extra);
+		HttpTransport.Response response = transport.execute(imageUri, getRequestHeaders(imageUri, extra), extra);
+		return getImageStream(response);
+	}
+
+	@Override
+	public Result getStream(String imageUri, ResponseValidators validators, Object extra) throws IOException {
+		if (networkStreamOverridden) {
+			return new Result(getStream(imageUri, extra), null);
+		}
+		switch (Scheme.ofUri(imageUri)) {
+			case HTTP:
+			case HTTPS:
+				return getStreamFromNetwork(imageUri, validators, extra);
+			default:
+				return new Result(getStream(imageUri, extra), null);
+		}
+	}
+
+	/**
+	 * Retrieves {@link InputStream} of image by URI (image is located in the network) if image was modified.
+	 *
+	 * @param imageUri   Image URI
+	 * @param validators null-ok; Validators of cached image. If <b>null</b> then image is requested unconditionally.
+	 * @param extra      Auxiliary object which was passed to {@link DisplayImageOptions.Builder#extraForDownloader(Object)
+	 *                   DisplayImageOptions.extraForDownloader(Object)}; can be null
+	 * @return Result of request: {@link InputStream} of image (<b>null</b> if image wasn't modified) and validators
+	 * from response
+	 * @throws IOException if some I/O error occurs during network request or if no InputStream could be created for
+	 *                     URL.
+	 */
+	protected Result getStreamFromNetwork(String imageUri, ResponseValidators validators, Object extra)
+			throws IOException {
+		Map<String, String> headers = new HashMap<String, String>(getRequestHeaders(imageUri, extra));
+		if (validators != null) {
+			if (validators.getETag() != null) {
+				headers.put(HEADER_IF_NONE_MATCH, validators.getETag());
+			}
+			if (validators.getLastModified() != null) {
+				headers.put(HEADER_IF_MODIFIED_SINCE, validators.getLastModified());
+			}
+		}
+
+		HttpTransport.Response response = transport.execute(imageUri, headers, extra);
+		if (validators != null && response.getCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			response.discard();
+			return new Result(null, parseValidators(response, validators));
+		}
+		// Image was modified (or isn't cached), validators of cached image don't relate to it
+		return new Result(getImageStream(response), parseValidators(response, null));
+	}
+
+	@Override
+	public Result getStream(String imageUri, long offset, ResponseValidators validators, Object extra)
+			throws IOException {
+		if (networkStreamOverridden) {
+			return new Result(getStream(imageUri, extra), null);
+		}
+		switch (Scheme.ofUri(imageUri)) {
+			case HTTP:
+			case HTTPS:
+				return getStreamFromNetwork(imageUri, offset, validators, extra);
+			default:
+				return new Result(getStream(imageUri, extra), null);
+		}
+	}
+
+	/**
+	 * Retrieves {@link InputStream} of the rest of partially downloaded image by URI (image is located in the network)
+	 * using "Range" request. If image was modified since partial image was downloaded then whole image is retrieved.
+	 *
+	 * @param imageUri   Image URI
+	 * @param offset     Number of already downloaded bytes of image
+	 * @param validators Validators of partially downloaded image
+	 * @param extra      Auxiliary object which was passed to {@link DisplayImageOptions.Builder#extraForDownloader(Object)
+	 *                   DisplayImageOptions.extraForDownloader(Object)}; can be null
+	 * @return Result of request: {@link InputStream} of the rest of image or of whole image, validators from response
+	 * and offset of stream
+	 * @throws IOException if some I/O error occurs during network request or if no InputStream could be created for
+	 *                     URL.
+	 */
+	protected Result getStreamFromNetwork(String imageUri, long offset, ResponseValidators validators, Object extra)
+			throws IOException {
+		String ifRange = validators.getETag();
+		if (ifRange == null || ifRange.startsWith("W/")) { // weak ETag can't be used for range requests
+			ifRange = validators.getLastModified();
+		}
+		if (ifRange == null) {
+			return getStreamFromNetwork(imageUri, null, extra);
+		}
+
+		Map<String, String> headers = new HashMap<String, String>(getRequestHeaders(imageUri, extra));
+		headers.put(HEADER_RANGE, "bytes=" + offset + "-");
+		headers.put(HEADER_IF_RANGE, ifRange);
+
+		HttpTransport.Response response = transport.execute(imageUri, headers, extra);
+		if (response.getCode() == HttpURLConnection.HTTP_PARTIAL) {
+			String contentRange = response.getHeader(HEADER_CONTENT_RANGE);
+			if (contentRange != null && contentRange.startsWith("bytes " + offset + "-")) {
+				InputStream imageStream = new BufferedInputStream(response.getBody(), BUFFER_SIZE);
+				return new Result(new ContentLengthInputStream(imageStream, response.getContentLength()),
+						parseValidators(response, validators), offset);
+			}
+		} else if (response.getCode() == HttpURLConnection.HTTP_OK) { // image was modified
+			return new Result(getImageStream(response), parseValidators(response, null));
+		}
+		// Range isn't satisfiable or server responded unexpectedly, so request whole image
+		response.discard();
+		return getStreamFromNetwork(imageUri, null, extra);
+	}
+
+	private static boolean isNetworkStreamOverridden(Class<?> downloaderClass) {
+		for (Class<?> c = downloaderClass; c != BaseImageDownloader.class; c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("getStreamFromNetwork", String.class, Object.class);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// check superclass
+			}
+		}
+		return false;
+	}
+
+	private InputStream getImageStream(HttpTransport.Response response) throws IOException {
+		if (!shouldBeProcessed(response)) {
+			response.discard();
+			throw new IOException("Image request failed with response code " + response.getCode());
+		}
+
+		InputStream imageStream = response.getBody();
+		return new ContentLengthInputStream(new BufferedInputStream(imageStream, BUFFER_SIZE),
+				response.getContentLength());
+	}
 
-		int redirectCount = 0;
-		while (conn.getResponseCode() / 100 == 3 && redirectCount < MAX_REDIRECT_COUNT) {
-			conn = createConnection(conn.getHeaderField("Location"), extra);
-			redirectCount++;
+	/**
+	 * Parses validators and freshness lifetime ("Cache-Control", "Expires" headers) of image from response.
+	 *
+	 * @param response         Response of network request
+	 * @param cachedValidators null-ok; Validators of cached image which wasn't modified (response is "304 Not
+	 *                         Modified" or "206 Partial Content" of the same image). Response validators are merged
+	 *                         with them.
+	 * @return Validators of image
+	 */
+	protected ResponseValidators parseValidators(HttpTransport.Response response, ResponseValidators cachedValidators) {
+		String eTag = response.getHeader(HEADER_ETAG);
+		String lastModified = response.getHeader(HEADER_LAST_MODIFIED);
+		if (cachedValidators != null) {
+			if (eTag == null) eTag = cachedValidators.getETag();
+			if (lastModified == null) lastModified = cachedValidators.getLastModified();
 		}
 
-		InputStream imageStream;
-		try {
-			imageStream = conn.getInputStream();
-		} catch (IOException e) {
-			// Read all data to allow reuse connection (http://bit.ly/1ad35PY)
-			IoUtils.readAndCloseStream(conn.getErrorStream());
-			throw e;
+		long now = System.currentTimeMillis();
+		long expires = 0; // unknown
+		String cacheControl = response.getHeader(HEADER_CACHE_CONTROL);
+		if (cacheControl != null) {
+			for (String directive : cacheControl.split(",")) {
+				directive = directive.trim().toLowerCase(Locale.US);
+				if (directive.equals("no-cache") || directive.equals("no-store")) {
+					expires = now;
+					break;
+				} else if (directive.startsWith("max-age=")) {
+					try {
+						long maxAge = Long.parseLong(directive.substring("max-age=".length()).trim());
+						expires = now + Math.min(maxAge, Integer.MAX_VALUE) * 1000;
+					} catch (NumberFormatException e) {
+						expires = now;
+					}
+				}
+			}
 		}
-		if (!shouldBeProcessed(conn)) {
-			IoUtils.closeSilently(imageStream);
-			throw new IOException("Image request failed with response code " + conn.getResponseCode());
+		if (expires == 0) {
+			String expiresHeader = response.getHeader(HEADER_EXPIRES);
+			if (expiresHeader != null) {
+				SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+				format.setTimeZone(TimeZone.getTimeZone("GMT"));
+				try {
+					expires = Math.max(format.parse(expiresHeader).getTime(), 1);
+				} catch (ParseException e) {
+					expires = now; // Invalid date means "already expired"
+				}
+			}
 		}
+		return new ResponseValidators(eTag, lastModified, expires);
+	}
 
-		return new ContentLengthInputStream(new BufferedInputStream(imageStream, BUFFER_SIZE), conn.getContentLength());
+	/**
+	 * @param imageUri Image URI
+	 * @param extra    Auxiliary object which was passed to {@link DisplayImageOptions.Builder#extraForDownloader(Object)
+	 *                 DisplayImageOptions.extraForDownloader(Object)}; can be null
+	 * @return Additional headers of network request for incoming image. No headers by default.
+	 */
+	protected Map<String, String> getRequestHeaders(String imageUri, Object extra) {
+		return Collections.emptyMap();
+	}
+
+	/**
+	 * @param response Response of network request (response code and headers are available)
+	 * @return <b>true</b> - if data from response is correct and should be read and processed;
+	 *         <b>false</b> - if response contains irrelevant data and shouldn't be processed
+	 * @throws IOException
+	 */
+	protected boolean shouldBeProcessed(HttpTransport.Response response) throws IOException {
+		if (response instanceof UrlConnectionTransport.UrlConnectionResponse) {
+			return shouldBeProcessed(((UrlConnectionTransport.UrlConnectionResponse) response).connection);
+		}
+		return response.getCode() == 200;
 	}
 
 	/**
@@ -146,7 +382,7 @@ public class BaseImageDownloader implements ImageDownloader {
 	}
 
 	/**
-	 * Create {@linkplain HttpURLConnection HTTP connection} for incoming URL
+	 * Create {@linkplain HttpURLConnection HTTP connection} for incoming URL. It's used by default transport only.
 	 *
 	 * @param url   URL to connect to
 	 * @param extra Auxiliary object which was passed to {@link DisplayImageOptions.Builder#extraForDownloader(Object)
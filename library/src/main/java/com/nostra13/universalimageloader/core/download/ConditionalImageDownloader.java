@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.download;
+
+import com.nostra13.universalimageloader.cache.disc.ResponseValidators;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link ImageDownloader} which can make conditional requests and provides {@linkplain ResponseValidators validators}
+ * of downloaded images. It lets ImageLoader revalidate stale images cached on disk instead of downloading them again.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public interface ConditionalImageDownloader extends ImageDownloader {
+
+	/**
+	 * Retrieves {@link InputStream} of image by URI if image was modified.
+	 *
+	 * @param imageUri   Image URI
+	 * @param validators null-ok; Validators of cached image. If <b>null</b> then image is requested unconditionally.
+	 * @param extra      Auxiliary object which was passed to
+	 *                   {@link com.nostra13.universalimageloader.core.DisplayImageOptions.Builder#extraForDownloader(Object)
+	 *                   DisplayImageOptions.extraForDownloader(Object)}; can be null
+	 * @return Result of request
+	 * @throws IOException if some I/O error occurs
+	 */
+	Result getStream(String imageUri, ResponseValidators validators, Object extra) throws IOException;
+
+	/**
+	 * Retrieves {@link InputStream} of the rest of partially downloaded image by URI if image wasn't modified since
+	 * partial image was downloaded. Otherwise retrieves stream of whole image.
+	 *
+	 * @param imageUri   Image URI
+	 * @param offset     Number of already downloaded bytes of image
+	 * @param validators Validators of partially downloaded image
+	 * @param extra      Auxiliary object which was passed to
+	 *                   {@link com.nostra13.universalimageloader.core.DisplayImageOptions.Builder#extraForDownloader(Object)
+	 *                   DisplayImageOptions.extraForDownloader(Object)}; can be null
+	 * @return Result of request, its {@linkplain Result#getOffset() offset} is <b>0</b> if stream contains whole image
+	 * @throws IOException if some I/O error occurs
+	 */
+	Result getStream(String imageUri, long offset, ResponseValidators validators, Object extra) throws IOException;
+
+	/** Result of conditional request */
+	final class Result {
+
+		private final InputStream stream;
+		private final ResponseValidators validators;
+		private final long offset;
+
+		/**
+		 * @param stream     null-ok; Stream of image, <b>null</b> if cached image wasn't modified
+		 * @param validators null-ok; Validators of image from response
+		 */
+		public Result(InputStream stream, ResponseValidators validators) {
+			this(stream, validators, 0);
+		}
+
+		/**
+		 * @param stream     Stream of the rest of partially downloaded image
+		 * @param validators null-ok; Validators of image from response
+		 * @param offset     Position of stream start in image
+		 */
+		public Result(InputStream stream, ResponseValidators validators, long offset) {
+			this.stream = stream;
+			this.validators = validators;
+			this.offset = offset;
+		}
+
+		/** @return Stream of image or <b>null</b> if cached image wasn't modified */
+		public InputStream getStream() {
+			return stream;
+		}
+
+		/** @return Validators of image from response or <b>null</b> if they are unknown */
+		public ResponseValidators getValidators() {
+			return validators;
+		}
+
+		/** @return Position of stream start in image; <b>0</b> - if stream contains whole image */
+		public long getOffset() {
+			return offset;
+		}
+
+		/** @return <b>true</b> - if cached image wasn't modified, so it can be used further */
+		public boolean isNotModified() {
+			return stream == null;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.download;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Transport which executes HTTP requests for {@link BaseImageDownloader}. Implement it to use another HTTP client
+ * (e.g. a client with own connection pool, HTTP/2 multiplexing or DNS caching) instead of default
+ * {@link UrlConnectionTransport}.<br />
+ * Implementations must be thread-safe.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public interface HttpTransport {
+
+	/**
+	 * Executes GET request and follows redirects.
+	 *
+	 * @param url     URL to request
+	 * @param headers Additional request headers; can be empty
+	 * @param extra   Auxiliary object which was passed to
+	 *                {@link com.nostra13.universalimageloader.core.DisplayImageOptions.Builder#extraForDownloader(Object)
+	 *                DisplayImageOptions.extraForDownloader(Object)}; can be null
+	 * @return Response of final request (response code and headers are available)
+	 * @throws IOException if some I/O error occurs during request
+	 */
+	Response execute(String url, Map<String, String> headers, Object extra) throws IOException;
+
+	/** Response of HTTP request */
+	interface Response {
+
+		int getCode() throws IOException;
+
+		/** @return Value of response header; <b>null</b> - if response has no such header */
+		String getHeader(String name);
+
+		/** @return Length of response body; <b>-1</b> - if length is unknown */
+		int getContentLength();
+
+		/**
+		 * @return Stream of response body. It must be closed after reading, so the connection can be reused.
+		 * @throws IOException if some I/O error occurs
+		 */
+		InputStream getBody() throws IOException;
+
+		/** Discards unread response body. Connection is released and can be reused if transport supports it. */
+		void discard();
+	}
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.download;
+
+import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.assist.NetworkClass;
+import com.nostra13.universalimageloader.core.assist.ViewScaleType;
+import com.nostra13.universalimageloader.core.download.ImageDownloader.Scheme;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link UriResolver} which rounds target size of network images up to one of predefined sizes ("buckets") so a
+ * limited set of image variants is downloaded and cached. Larger variants which are cached on disk already and original
+ * image are used instead of downloading of smaller variant.<br />
+ * Subclasses build URI of variant for bucket size (e.g. add "?w=320" query parameter for CDN).
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public abstract class SizeBucketUriResolver implements UriResolver {
+
+	private final int[] bucketSizes;
+
+	/**
+	 * @param bucketSizes Sizes of the longest image side which CDN can resize images to, in any order
+	 */
+	public SizeBucketUriResolver(int... bucketSizes) {
+		if (bucketSizes == null || bucketSizes.length == 0) {
+			throw new IllegalArgumentException("bucketSizes must contain at least one size");
+		}
+		this.bucketSizes = bucketSizes.clone();
+		Arrays.sort(this.bucketSizes);
+		if (this.bucketSizes[0] <= 0) {
+			throw new IllegalArgumentException("bucketSizes must be positive numbers");
+		}
+	}
+
+	@Override
+	public List<String> resolve(String imageUri, ImageSize targetSize, ViewScaleType scaleType,
+			NetworkClass networkClass) {
+		Scheme scheme = Scheme.ofUri(imageUri);
+		if (scheme != Scheme.HTTP && scheme != Scheme.HTTPS) {
+			return null;
+		}
+
+		int bucket = selectBucket(getRequiredSize(targetSize, scaleType), networkClass);
+		List<String> variants = new ArrayList<String>(bucketSizes.length - bucket + 1);
+		for (int i = bucket; i < bucketSizes.length; i++) {
+			variants.add(buildVariantUri(imageUri, bucketSizes[i]));
+		}
+		variants.add(imageUri);
+		return variants;
+	}
+
+	/**
+	 * @return Size of the longest side of image which is enough to display image of target size without upscaling.
+	 * Max side of target size by default.
+	 */
+	protected int getRequiredSize(ImageSize targetSize, ViewScaleType scaleType) {
+		return Math.max(targetSize.getWidth(), targetSize.getHeight());
+	}
+
+	/**
+	 * Selects bucket for required size. The smallest bucket which isn't less than required size is selected by default.
+	 * One bucket smaller is selected for {@linkplain NetworkClass#SLOW slow network}.
+	 *
+	 * @param requiredSize Required size of the longest image side
+	 * @param networkClass Class of network which is used at the moment
+	 * @return Index of bucket in ascending order of sizes or number of buckets if original image should be loaded
+	 */
+	protected int selectBucket(int requiredSize, NetworkClass networkClass) {
+		int bucket = 0;
+		while (bucket < bucketSizes.length && bucketSizes[bucket] < requiredSize) {
+			bucket++;
+		}
+		if (networkClass == NetworkClass.SLOW && bucket > 0) {
+			bucket--;
+		}
+		return bucket;
+	}
+
+	/**
+	 * @param imageUri   Original image URI
+	 * @param bucketSize Size of the longest side of image variant
+	 * @return URI of image variant resized to bucket size
+	 */
+	protected abstract String buildVariantUri(String imageUri, int bucketSize);
+}
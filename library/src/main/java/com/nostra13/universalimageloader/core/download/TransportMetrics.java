@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.download;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects per-host metrics of HTTP requests executed by {@link HttpTransport}: number of requests, connection setup
+ * time (DNS lookup, TCP and TLS handshakes; it's close to zero if keep-alive connection was reused) and time to
+ * response headers.<br />
+ * Is thread-safe.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public class TransportMetrics {
+
+	private final ConcurrentHashMap<String, HostMetrics> hosts = new ConcurrentHashMap<String, HostMetrics>();
+
+	/**
+	 * Records metrics of executed request
+	 *
+	 * @param host         Requested host
+	 * @param connectTime  Time of connection setup, in milliseconds
+	 * @param responseTime Time from start of request to receiving of response headers, in milliseconds
+	 */
+	public void record(String host, long connectTime, long responseTime) {
+		HostMetrics metrics = hosts.get(host);
+		if (metrics == null) {
+			HostMetrics newMetrics = new HostMetrics();
+			metrics = hosts.putIfAbsent(host, newMetrics);
+			if (metrics == null) {
+				metrics = newMetrics;
+			}
+		}
+		metrics.requestCount.incrementAndGet();
+		metrics.connectTime.addAndGet(connectTime);
+		metrics.responseTime.addAndGet(responseTime);
+	}
+
+	/** @return Hosts which requests were recorded for */
+	public Set<String> getHosts() {
+		return Collections.unmodifiableSet(new HashSet<String>(hosts.keySet()));
+	}
+
+	/** @return Number of requests to incoming host */
+	public long getRequestCount(String host) {
+		HostMetrics metrics = hosts.get(host);
+		return metrics == null ? 0 : metrics.requestCount.get();
+	}
+
+	/** @return Average connection setup time for incoming host, in milliseconds */
+	public long getAverageConnectTime(String host) {
+		HostMetrics metrics = hosts.get(host);
+		return metrics == null ? 0 : average(metrics.connectTime, metrics.requestCount);
+	}
+
+	/** @return Average time to response headers for incoming host, in milliseconds */
+	public long getAverageResponseTime(String host) {
+		HostMetrics metrics = hosts.get(host);
+		return metrics == null ? 0 : average(metrics.responseTime, metrics.requestCount);
+	}
+
+	/** Clears all collected metrics */
+	public void reset() {
+		hosts.clear();
+	}
+
+	private static long average(AtomicLong total, AtomicLong count) {
+		long n = count.get();
+		return n == 0 ? 0 : total.get() / n;
+	}
+
+	private static class HostMetrics {
+		final AtomicLong requestCount = new AtomicLong();
+		final AtomicLong connectTime = new AtomicLong();
+		final AtomicLong responseTime = new AtomicLong();
+	}
+}
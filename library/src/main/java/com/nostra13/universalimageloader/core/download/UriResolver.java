@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.download;
+
+import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.assist.NetworkClass;
+import com.nostra13.universalimageloader.core.assist.ViewScaleType;
+
+import java.util.List;
+
+/**
+ * Resolves URI of image variant which should be loaded for target size before image is downloaded, e.g. URI of image
+ * resized by CDN. Resolved URI is used as key of image in disk cache.<br />
+ * Implementations should be thread-safe and fast, they're called on thread which requests image displaying.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @see SizeBucketUriResolver
+ * @since 1.9.5
+ */
+public interface UriResolver {
+	/**
+	 * Resolves URIs of image variants for target size.
+	 *
+	 * @param imageUri     Original image URI
+	 * @param targetSize   Target size of image
+	 * @param scaleType    Scale type of image in view
+	 * @param networkClass Class of network which is used at the moment
+	 * @return URIs of image variants in preferred order. The first URI is loaded if none of these variants is cached
+	 * on disk, other URIs (e.g. URIs of larger variants) are used only if they are cached on disk. <b>null</b> or
+	 * empty list means that original image URI should be loaded.
+	 */
+	List<String> resolve(String imageUri, ImageSize targetSize, ViewScaleType scaleType, NetworkClass networkClass);
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.download;
+
+import android.net.Uri;
+import com.nostra13.universalimageloader.utils.IoUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Default {@link HttpTransport} which uses {@link HttpURLConnection}. Keep-alive connections are pooled and reused by
+ * HttpURLConnection itself (globally, see "http.keepAlive" and "http.maxConnections" system properties), so this
+ * transport only takes care to release connections properly: response bodies of redirects and failed requests are
+ * drained. Redirects are followed manually.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+	/** {@value} */
+	protected static final String ALLOWED_URI_CHARS = "@#&=*+-_.,:!?()/~'%";
+
+	protected static final int MAX_REDIRECT_COUNT = 5;
+
+	protected final int connectTimeout;
+	protected final int readTimeout;
+	private final TransportMetrics metrics = new TransportMetrics();
+
+	/**
+	 * @param connectTimeout Connect timeout, in milliseconds
+	 * @param readTimeout    Read timeout, in milliseconds
+	 */
+	public UrlConnectionTransport(int connectTimeout, int readTimeout) {
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	@Override
+	public Response execute(String url, Map<String, String> headers, Object extra) throws IOException {
+		HttpURLConnection conn = openConnection(url, headers, extra);
+
+		int redirectCount = 0;
+		String location = conn.getHeaderField("Location");
+		while (isRedirect(conn.getResponseCode()) && location != null && redirectCount < MAX_REDIRECT_COUNT) {
+			discard(conn);
+			conn = openConnection(location, headers, extra);
+			location = conn.getHeaderField("Location");
+			redirectCount++;
+		}
+		return new UrlConnectionResponse(conn);
+	}
+
+	/** @return Metrics of requests executed by this transport */
+	public TransportMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Create {@linkplain HttpURLConnection HTTP connection} for incoming URL
+	 *
+	 * @param url   URL to connect to
+	 * @param extra Auxiliary object which was passed to
+	 *              {@link com.nostra13.universalimageloader.core.DisplayImageOptions.Builder#extraForDownloader(Object)
+	 *              DisplayImageOptions.extraForDownloader(Object)}; can be null
+	 * @return {@linkplain HttpURLConnection Connection} for incoming URL. Connection isn't established so it still
+	 * configurable.
+	 * @throws IOException if some I/O error occurs during network request
+	 */
+	protected HttpURLConnection createConnection(String url, Object extra) throws IOException {
+		String encodedUrl = Uri.encode(url, ALLOWED_URI_CHARS);
+		HttpURLConnection conn = (HttpURLConnection) new URL(encodedUrl).openConnection();
+		conn.setConnectTimeout(connectTimeout);
+		conn.setReadTimeout(readTimeout);
+		return conn;
+	}
+
+	/** Creates connection, sends request and waits for response headers. Records connection metrics. */
+	private HttpURLConnection openConnection(String url, Map<String, String> headers, Object extra)
+			throws IOException {
+		HttpURLConnection conn = createConnection(url, extra);
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			conn.setRequestProperty(header.getKey(), header.getValue());
+		}
+
+		long startTime = System.nanoTime();
+		conn.connect();
+		long connectedTime = System.nanoTime();
+		conn.getResponseCode();
+		long respondedTime = System.nanoTime();
+		metrics.record(conn.getURL().getHost(), (connectedTime - startTime) / 1000000,
+				(respondedTime - startTime) / 1000000);
+		return conn;
+	}
+
+	private static boolean isRedirect(int responseCode) {
+		switch (responseCode) {
+			case HttpURLConnection.HTTP_MOVED_PERM:
+			case HttpURLConnection.HTTP_MOVED_TEMP:
+			case HttpURLConnection.HTTP_SEE_OTHER:
+			case 307: // Temporary Redirect
+			case 308: // Permanent Redirect
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/** Reads all data to allow reuse connection (http://bit.ly/1ad35PY) */
+	private static void discard(HttpURLConnection conn) {
+		InputStream is;
+		try {
+			is = conn.getInputStream();
+		} catch (IOException e) {
+			is = conn.getErrorStream();
+		}
+		if (is != null) {
+			IoUtils.readAndCloseStream(is);
+		}
+	}
+
+	/** Response which provides access to its connection (e.g. for {@link BaseImageDownloader#shouldBeProcessed(HttpURLConnection)}) */
+	static final class UrlConnectionResponse implements Response {
+
+		final HttpURLConnection connection;
+
+		UrlConnectionResponse(HttpURLConnection connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public int getCode() throws IOException {
+			return connection.getResponseCode();
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return connection.getHeaderField(name);
+		}
+
+		@Override
+		public int getContentLength() {
+			return connection.getContentLength();
+		}
+
+		@Override
+		public InputStream getBody() throws IOException {
+			try {
+				return connection.getInputStream();
+			} catch (IOException e) {
+				InputStream errorStream = connection.getErrorStream();
+				if (errorStream != null) {
+					IoUtils.readAndCloseStream(errorStream);
+				}
+				throw e;
+			}
+		}
+
+		@Override
+		public void discard() {
+			UrlConnectionTransport.discard(connection);
+		}
+	}
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright 2014 Sergey Tarasevich
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package com.nostra13.universalimageloader.core.listener;
+
+import android.os.SystemClock;
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
+import android.widget.GridView;
+import android.widget.ListView;
+import com.nostra13.universalimageloader.core.ImageLoader;
+import com.nostra13.universalimageloader.core.PrefetchHandle;
+import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.assist.PrefetchTarget;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Listener-helper for {@linkplain AbsListView list views} ({@link ListView}, {@link GridView}) which
+ * {@linkplain ImageLoader#prefetch(java.util.Collection, ImageSize, PrefetchTarget) prefetches} images of items which
+ * are about to appear on screen. It tracks scroll direction and velocity: the faster list is scrolled the more items
+ * ahead are prefetched. Prefetching is cancelled when scroll direction is reversed.<br />
+ * Set it to your list view's {@link AbsListView#setOnScrollListener(OnScrollListener) setOnScrollListener(...)}. For
+ * other scrollable containers (e.g. RecyclerView) call {@link #onScrollPositionChanged(int, int, int)} from their
+ * scroll callbacks.<br />
+ * This listener can wrap your custom {@linkplain OnScrollListener listener} (e.g. {@link PauseOnScrollListener}). Note
+ * that prefetching is held while ImageLoader is paused.
+ *
+ * @author Sergey Tarasevich (nostra13[at]gmail[dot]com)
+ * @since 1.9.5
+ */
+public class PrefetchOnScrollListener implements OnScrollListener {
+
+	/** Provides image URIs of list items */
+	public interface ImageUriProvider {
+		/** @return URI of image for item at incoming position; <b>null</b> - if item has no image */
+		String getImageUri(int position);
+	}
+
+	private static final int DEFAULT_MAX_PREFETCH_COUNT = 12;
+	/** Images are prefetched for items which will appear on screen during this time */
+	private static final long LOOKAHEAD_TIME = 1000; // ms
+	/** Weight of previous velocity value in smoothed velocity */
+	private static final float VELOCITY_SMOOTHING = 0.5f;
+	private static final int NO_BOUNDARY = Integer.MIN_VALUE;
+
+	private final ImageLoader imageLoader;
+	private final ImageUriProvider uriProvider;
+	private final ImageSize targetSize;
+	private final int maxPrefetchCount;
+	private final OnScrollListener externalListener;
+
+	private final List<PrefetchHandle> handles = new ArrayList<PrefetchHandle>();
+	private int lastFirstVisiblePosition = -1;
+	private long lastPositionChangeTime;
+	/** Smoothed scroll velocity, items per second */
+	private float velocity;
+	/** 1 - scrolling forward (to the end of list), -1 - scrolling backward */
+	private int direction = 1;
+	/** Next position to prefetch in current direction, items before it are requested already */
+	private int prefetchBoundary = NO_BOUNDARY;
+
+	/**
+	 * Constructor
+	 *
+	 * @param imageLoader {@linkplain ImageLoader} instance for prefetching
+	 * @param uriProvider Provider of image URIs for list items
+	 * @param targetSize  Size of images displayed in list items. Images are decoded for this size into memory cache.
+	 */
+	public PrefetchOnScrollListener(ImageLoader imageLoader, ImageUriProvider uriProvider, ImageSize targetSize) {
+		this(imageLoader, uriProvider, targetSize, DEFAULT_MAX_PREFETCH_COUNT, null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param imageLoader      {@linkplain ImageLoader} instance for prefetching
+	 * @param uriProvider      Provider of image URIs for list items
+	 * @param targetSize       Size of images displayed in list items. Images are decoded for this size into memory
+	 *                         cache.
+	 * @param maxPrefetchCount Max number of items ahead of visible ones which images are prefetched for
+	 * @param customListener   Your custom {@link OnScrollListener} for {@linkplain AbsListView list view} which also
+	 *                         will be get scroll events
+	 */
+	public PrefetchOnScrollListener(ImageLoader imageLoader, ImageUriProvider uriProvider, ImageSize targetSize,
+			int maxPrefetchCount, OnScrollListener customListener) {
+		if (maxPrefetchCount <= 0) {
+			throw new IllegalArgumentException("maxPrefetchCount must be a positive number");
+		}
+		this.imageLoader = imageLoader;
+		this.uriProvider = uriProvider;
+		this.targetSize = targetSize;
+		this.maxPrefetchCount = maxPrefetchCount;
+		externalListener = customListener;
+	}
+
+	@Override
+	public void onScrollStateChanged(AbsListView view, int scrollState) {
+		if (scrollState == OnScrollListener.SCROLL_STATE_IDLE) {
+			velocity = 0;
+		}
+		if (externalListener != null) {
+			externalListener.onScrollStateChanged(view, scrollState);
+		}
+	}
+
+	@Override
+	public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+		onScrollPositionChanged(firstVisibleItem, visibleItemCount, totalItemCount);
+		if (externalListener != null) {
+			externalListener.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+		}
+	}
+
+	/**
+	 * Updates scroll direction and velocity and prefetches images for items ahead of visible ones. Must be called on
+	 * UI thread.
+	 *
+	 * @param firstVisiblePosition Position of the first visible item
+	 * @param visibleCount         Number of visible items
+	 * @param totalCount           Number of items in list
+	 */
+	public void onScrollPositionChanged(int firstVisiblePosition, int visibleCount, int totalCount) {
+		if (visibleCount <= 0 || totalCount <= 0) return;
+
+		long now = SystemClock.uptimeMillis();
+		if (lastFirstVisiblePosition >= 0 && firstVisiblePosition != lastFirstVisiblePosition) {
+			int delta = firstVisiblePosition - lastFirstVisiblePosition;
+			long elapsedTime = Math.max(1, now - lastPositionChangeTime);
+			float currentVelocity = Math.abs(delta) * 1000f / elapsedTime;
+
+			int currentDirection = delta > 0 ? 1 : -1;
+			if (currentDirection != direction) {
+				cancelPrefetching();
+				direction = currentDirection;
+				velocity = currentVelocity;
+			} else {
+				velocity = velocity * VELOCITY_SMOOTHING + currentVelocity * (1 - VELOCITY_SMOOTHING);
+			}
+		}
+		if (firstVisiblePosition != lastFirstVisiblePosition) {
+			lastFirstVisiblePosition = firstVisiblePosition;
+			lastPositionChangeTime = now;
+		}
+		prefetchAhead(firstVisiblePosition, visibleCount, totalCount);
+	}
+
+	/** Cancels prefetching and forgets scroll state. Call it if list data is changed. */
+	public void reset() {
+		cancelPrefetching();
+		lastFirstVisiblePosition = -1;
+		velocity = 0;
+		direction = 1;
+	}
+
+	private void prefetchAhead(int firstVisiblePosition, int visibleCount, int totalCount) {
+		int prefetchCount = Math.round(velocity * LOOKAHEAD_TIME / 1000f);
+		prefetchCount = Math.min(maxPrefetchCount, Math.max(visibleCount, prefetchCount));
+
+		List<String> uris = new ArrayList<String>();
+		if (direction > 0) {
+			int start = firstVisiblePosition + visibleCount;
+			if (prefetchBoundary > start) start = prefetchBoundary;
+			int end = Math.min(totalCount, firstVisiblePosition + visibleCount + prefetchCount);
+			for (int position = start; position < end; position++) {
+				addImageUri(uris, position);
+			}
+			if (start < end) prefetchBoundary = end;
+		} else {
+			int start = firstVisiblePosition - 1;
+			if (prefetchBoundary != NO_BOUNDARY && prefetchBoundary < start) start = prefetchBoundary;
+			int end = Math.max(0, firstVisiblePosition - prefetchCount);
+			for (int position = start; position >= end; position--) {
+				addImageUri(uris, position);
+			}
+			if (start >= end) prefetchBoundary = end - 1;
+		}
+		if (uris.isEmpty()) return;
+
+		removeDoneHandles();
+		handles.add(imageLoader.prefetch(uris, targetSize, PrefetchTarget.MEMORY));
+	}
+
+	private void addImageUri(List<String> uris, int position) {
+		String uri = uriProvider.getImageUri(position);
+		if (uri != null) {
+			uris.add(uri);
+		}
+	}
+
+	private void cancelPrefetching() {
+		for (PrefetchHandle handle : handles) {
+			handle.cancel();
+		}
+		handles.clear();
+		prefetchBoundary = NO_BOUNDARY;
+	}
+
+	private void removeDoneHandles() {
+		Iterator<PrefetchHandle> it = handles.iterator();
+		while (it.hasNext()) {
+			if (it.next().isDone()) {
+				it.remove();
+			}
+		}
+	}
+}
@@ -65,6 +65,26 @@ public final class IoUtils {
 	 */
 	public static boolean copyStream(InputStream is, OutputStream os, CopyListener listener, int bufferSize)
 			throws IOException {
+		return copyStream(is, os, listener, bufferSize, CONTINUE_LOADING_PERCENTAGE);
+	}
+
+	/**
+	 * Copies stream, fires progress events by listener, can be interrupted by listener.
+	 *
+	 * @param is                        Input stream
+	 * @param os                        Output stream
+	 * @param listener                  null-ok; Listener of copying progress and controller of copying interrupting
+	 * @param bufferSize                Buffer size for copying, also represents a step for firing progress listener
+	 *                                  callback, i.e. progress event will be fired after every copied <b>bufferSize</b>
+	 *                                  bytes
+	 * @param continueLoadingPercentage Copying isn't interrupted by listener if this percentage of stream is copied
+	 *                                  already. Pass {@link Integer#MAX_VALUE} to let listener interrupt copying
+	 *                                  anytime (e.g. if interrupted copying can be continued later).
+	 * @return <b>true</b> - if stream copied successfully; <b>false</b> - if copying was interrupted by listener
+	 * @throws IOException
+	 */
+	public static boolean copyStream(InputStream is, OutputStream os, CopyListener listener, int bufferSize,
+			int continueLoadingPercentage) throws IOException {
 		int current = 0;
 		int total = is.available();
 		if (total <= 0) {
@@ -73,22 +93,23 @@ public final class IoUtils {
 
 		final byte[] bytes = new byte[bufferSize];
 		int count;
-		if (shouldStopLoading(listener, current, total)) return false;
+		if (shouldStopLoading(listener, current, total, continueLoadingPercentage)) return false;
 		while ((count = is.read(bytes, 0, bufferSize)) != -1) {
 			os.write(bytes, 0, count);
 			current += count;
-			if (shouldStopLoading(listener, current, total)) return false;
+			if (shouldStopLoading(listener, current, total, continueLoadingPercentage)) return false;
 		}
 		os.flush();
 		return true;
 	}
 
-	private static boolean shouldStopLoading(CopyListener listener, int current, int total) {
+	private static boolean shouldStopLoading(CopyListener listener, int current, int total,
+			int continueLoadingPercentage) {
 		if (listener != null) {
 			boolean shouldContinue = listener.onBytesCopied(current, total);
 			if (!shouldContinue) {
-				if (100 * current / total < CONTINUE_LOADING_PERCENTAGE) {
-					return true; // if loaded more than 75% then continue loading anyway
+				if (100 * current / total < continueLoadingPercentage) {
+					return true; // if loaded more than 75% (by default) then continue loading anyway
 				}
 			}
 		}
@@ -0,0 +1,224 @@
+package com.nostra13.universalimageloader.cache.disc.impl.ext;
+
+import com.nostra13.universalimageloader.utils.L;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Checks binary journal of {@link DiskLruCache}: conversion between journal formats, recovery from broken journal tail
+ * and key length limit. Also measures opening time of cache with text and binary journals, it's reported in log.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BinaryJournalTest {
+
+	private static final int APP_VERSION = 100;
+	private static final int VALUE_COUNT = 2;
+	private static final long MAX_SIZE = Long.MAX_VALUE;
+	private static final int MAX_FILE_COUNT = Integer.MAX_VALUE;
+	private static final int HEADER_SIZE = 16;
+
+	private static final int[] BENCHMARK_ENTRY_COUNTS = {1000, 10000, 100000};
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private File cacheDir;
+	private int recordSize;
+
+	@Before
+	public void setUp() throws Exception {
+		cacheDir = tempFolder.newFolder("cache");
+		recordSize = BinaryJournalWriter.recordSize(VALUE_COUNT);
+	}
+
+	@Test
+	public void testTextJournalIsConvertedToBinary() throws Exception {
+		DiskLruCache cache = open(false);
+		set(cache, "a", "a0", "a1");
+		set(cache, "b", "b0", "b1");
+		cache.close();
+
+		cache = open(true);
+		assertValue(cache, "a", "a0", "a1");
+		assertValue(cache, "b", "b0", "b1");
+		cache.close();
+		Assertions.assertThat(new File(cacheDir, DiskLruCache.JOURNAL_FILE)).doesNotExist();
+		Assertions.assertThat(new File(cacheDir, DiskLruCache.BINARY_JOURNAL_FILE)).exists();
+	}
+
+	@Test
+	public void testBinaryJournalIsConvertedToText() throws Exception {
+		DiskLruCache cache = open(true);
+		set(cache, "a", "a0", "a1");
+		set(cache, "b", "b0", "b1");
+		cache.close();
+
+		cache = open(false);
+		assertValue(cache, "a", "a0", "a1");
+		assertValue(cache, "b", "b0", "b1");
+		cache.close();
+		Assertions.assertThat(new File(cacheDir, DiskLruCache.BINARY_JOURNAL_FILE)).doesNotExist();
+		Assertions.assertThat(new File(cacheDir, DiskLruCache.JOURNAL_FILE)).exists();
+	}
+
+	@Test
+	public void testLruOrderIsPreservedOnConversion() throws Exception {
+		DiskLruCache cache = open(false);
+		set(cache, "a", "a", "a");
+		set(cache, "b", "b", "b");
+		set(cache, "c", "c", "c");
+		cache.get("a").close();
+		cache.close();
+
+		cache = open(true);
+		cache.setMaxSize(4); // 2 entries
+		cache.flush();
+		Assertions.assertThat(cache.get("b")).isNull();
+		assertValue(cache, "c", "c", "c");
+		assertValue(cache, "a", "a", "a");
+		cache.close();
+	}
+
+	@Test
+	public void testTornTailRecordIsTruncated() throws Exception {
+		writeEntriesAndBreakLastRecord(new JournalBreaker() {
+			@Override
+			public void breakJournal(RandomAccessFile journal) throws IOException {
+				journal.setLength(journal.length() - recordSize / 2); // last record was partially written
+			}
+		});
+	}
+
+	@Test
+	public void testBadCrcTailRecordIsTruncated() throws Exception {
+		writeEntriesAndBreakLastRecord(new JournalBreaker() {
+			@Override
+			public void breakJournal(RandomAccessFile journal) throws IOException {
+				long lengthOffset = journal.length() - recordSize + BinaryJournalWriter.LENGTHS_OFFSET;
+				journal.seek(lengthOffset);
+				int b = journal.read();
+				journal.seek(lengthOffset);
+				journal.write(b ^ 1);
+			}
+		});
+	}
+
+	/** Last written record is "CLEAN c", so "c" must be dropped after journal breaking */
+	private void writeEntriesAndBreakLastRecord(JournalBreaker breaker) throws IOException {
+		DiskLruCache cache = open(true);
+		set(cache, "a", "a0", "a1");
+		set(cache, "b", "b0", "b1");
+		set(cache, "c", "c0", "c1");
+		cache.close();
+
+		File journalFile = new File(cacheDir, DiskLruCache.BINARY_JOURNAL_FILE);
+		Assertions.assertThat(journalFile.length()).isEqualTo(HEADER_SIZE + 6 * recordSize);
+		RandomAccessFile journal = new RandomAccessFile(journalFile, "rw");
+		try {
+			breaker.breakJournal(journal);
+		} finally {
+			journal.close();
+		}
+
+		cache = open(true);
+		assertValue(cache, "a", "a0", "a1");
+		assertValue(cache, "b", "b0", "b1");
+		Assertions.assertThat(cache.get("c")).isNull();
+		Assertions.assertThat(new File(cacheDir, "c.0")).doesNotExist();
+		cache.flush();
+		// Journal was rebuilt: "CLEAN a", "CLEAN b" and 2 "READ" records
+		Assertions.assertThat(journalFile.length()).isEqualTo(HEADER_SIZE + 4 * recordSize);
+		set(cache, "c", "c0", "c1");
+		cache.close();
+
+		cache = open(true);
+		assertValue(cache, "c", "c0", "c1");
+		cache.close();
+	}
+
+	private interface JournalBreaker {
+		void breakJournal(RandomAccessFile journal) throws IOException;
+	}
+
+	@Test
+	public void testKeyLengthLimit() throws Exception {
+		String longestKey = repeat('k', BinaryJournalWriter.MAX_KEY_LENGTH);
+		DiskLruCache cache = open(true);
+		set(cache, longestKey, "a0", "a1");
+		cache.close();
+
+		cache = open(true);
+		assertValue(cache, longestKey, "a0", "a1");
+		try {
+			cache.edit(longestKey + "k");
+			Assertions.fail("Key which is longer than " + BinaryJournalWriter.MAX_KEY_LENGTH + " must be rejected");
+		} catch (IllegalArgumentException expected) {
+		}
+		cache.close();
+	}
+
+	@Test
+	public void testOpenTime() throws Exception {
+		long[] lengths = new long[VALUE_COUNT];
+		for (int entryCount : BENCHMARK_ENTRY_COUNTS) {
+			for (boolean binary : new boolean[]{false, true}) {
+				File dir = tempFolder.newFolder((binary ? "binary" : "text") + entryCount);
+				File journalFile = new File(dir, binary ? DiskLruCache.BINARY_JOURNAL_FILE : DiskLruCache.JOURNAL_FILE);
+				JournalWriter writer = binary ? new BinaryJournalWriter(journalFile, false, APP_VERSION, VALUE_COUNT)
+						: new TextJournalWriter(journalFile, false, APP_VERSION, VALUE_COUNT);
+				for (int i = 0; i < entryCount; i++) {
+					String key = "image_" + i;
+					writer.writeDirty(key);
+					writer.writeClean(key, lengths);
+				}
+				writer.close();
+
+				long start = System.nanoTime();
+				DiskLruCache cache = DiskLruCache.open(dir, APP_VERSION, VALUE_COUNT, MAX_SIZE, MAX_FILE_COUNT, binary);
+				long time = System.nanoTime() - start;
+				cache.close();
+				L.i("[%d entries] %s journal: opened in %d ms", entryCount, binary ? "binary" : "text", time / 1000000);
+			}
+		}
+	}
+
+	private DiskLruCache open(boolean binaryJournal) throws IOException {
+		return DiskLruCache.open(cacheDir, APP_VERSION, VALUE_COUNT, MAX_SIZE, MAX_FILE_COUNT, binaryJournal);
+	}
+
+	private static void set(DiskLruCache cache, String key, String value0, String value1) throws IOException {
+		DiskLruCache.Editor editor = cache.edit(key);
+		editor.set(0, value0);
+		editor.set(1, value1);
+		editor.commit();
+	}
+
+	private static void assertValue(DiskLruCache cache, String key, String value0, String value1) throws IOException {
+		DiskLruCache.Snapshot snapshot = cache.get(key);
+		Assertions.assertThat(snapshot).as(key).isNotNull();
+		try {
+			Assertions.assertThat(snapshot.getString(0)).isEqualTo(value0);
+			Assertions.assertThat(snapshot.getString(1)).isEqualTo(value1);
+		} finally {
+			snapshot.close();
+		}
+	}
+
+	private static String repeat(char c, int count) {
+		StringBuilder sb = new StringBuilder(count);
+		for (int i = 0; i < count; i++) {
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,378 @@
+package com.nostra13.universalimageloader.cache.disc.impl.ext;
+
+import com.nostra13.universalimageloader.utils.L;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks concurrent access to {@link DiskLruCache}, opening of cache (orphan files, LRU order), journal compaction and
+ * metadata side index.
+ * Also measures throughput of concurrent edits and reads, it's reported in log.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DiskLruCacheTest {
+
+	private static final int APP_VERSION = 100;
+	private static final int VALUE_COUNT = 2;
+	private static final long MAX_SIZE = Long.MAX_VALUE;
+	private static final int MAX_FILE_COUNT = Integer.MAX_VALUE;
+
+	private static final int THREAD_COUNT = 4;
+	private static final int KEY_COUNT = 16;
+
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
+	private File cacheDir;
+	private DiskLruCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		cacheDir = tempFolder.newFolder("cache");
+		cache = DiskLruCache.open(cacheDir, APP_VERSION, VALUE_COUNT, MAX_SIZE, MAX_FILE_COUNT);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		cache.close();
+	}
+
+	@Test
+	public void testConcurrentEditGetRemove() throws Exception {
+		final AtomicInteger versions = new AtomicInteger();
+		runConcurrently(2000, new Operation() {
+			@Override
+			public void run(Random random) throws IOException {
+				String key = "key" + random.nextInt(KEY_COUNT);
+				int op = random.nextInt(10);
+				if (op < 3) {
+					DiskLruCache.Editor editor = cache.edit(key);
+					if (editor != null) {
+						String value = key + ":" + versions.incrementAndGet();
+						editor.set(0, value);
+						editor.set(1, value);
+						editor.commit();
+					}
+				} else if (op < 4) {
+					cache.remove(key);
+				} else {
+					DiskLruCache.Snapshot snapshot = cache.get(key);
+					if (snapshot != null) {
+						try {
+							String value = snapshot.getString(0);
+							Assertions.assertThat(value).startsWith(key + ":");
+							Assertions.assertThat(snapshot.getString(1)).isEqualTo(value);
+						} finally {
+							snapshot.close();
+						}
+					}
+				}
+			}
+		});
+
+		long size = cache.size();
+		long fileCount = cache.fileCount();
+		cache.close();
+		cache = DiskLruCache.open(cacheDir, APP_VERSION, VALUE_COUNT, MAX_SIZE, MAX_FILE_COUNT);
+
+		Assertions.assertThat(cache.size()).isEqualTo(size);
+		Assertions.assertThat(cache.fileCount()).isEqualTo(fileCount);
+		long valuesSize = 0;
+		for (int i = 0; i < KEY_COUNT; i++) {
+			String key = "key" + i;
+			DiskLruCache.Snapshot snapshot = cache.get(key);
+			if (snapshot != null) {
+				Assertions.assertThat(snapshot.getString(0)).isEqualTo(snapshot.getString(1));
+				valuesSize += snapshot.getLength(0) + snapshot.getLength(1);
+				snapshot.close();
+			}
+		}
+		Assertions.assertThat(valuesSize).isEqualTo(size);
+	}
+
+	@Test
+	public void testCacheIsClosedWhileEditsAreCommitted() throws Exception {
+		for (int round = 0; round < 20; round++) {
+			final DiskLruCache closingCache = DiskLruCache.open(tempFolder.newFolder("closing" + round), APP_VERSION,
+					VALUE_COUNT, MAX_SIZE, MAX_FILE_COUNT);
+			ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = 0; i < THREAD_COUNT; i++) {
+				final Random random = new Random(i);
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						try {
+							while (true) {
+								DiskLruCache.Editor editor = closingCache.edit("key" + random.nextInt(KEY_COUNT));
+								if (editor != null) {
+									editor.set(0, "value");
+									editor.set(1, "value");
+									editor.commit();
+								}
+							}
+						} catch (IllegalStateException e) {
+							return null; // Cache is closed, edit was rejected
+						}
+					}
+				}));
+			}
+			Thread.sleep(5);
+			closingCache.close();
+			try {
+				for (Future<Void> future : futures) {
+					future.get(); // Fails if commit failed with anything but IllegalStateException
+				}
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void testOrphanFilesAreDeletedOnOpen() throws Exception {
+		set("a", "a0", "a1");
+		DiskLruCache.Editor editor = cache.edit("b");
+		editor.set(0, "b0");
+		editor.set(1, "b1");
+		cache.flush();
+		cache.close(); // Edit of "b" is aborted, but its files are left
+		writeFile(new File(cacheDir, "b.0.tmp"), "b0");
+		writeFile(new File(cacheDir, "c.0"), "c0"); // e.g. edit record was lost during crash
+		writeFile(new File(cacheDir, "c.1.tmp"), "c1");
+		writeFile(new File(cacheDir, "a.5"), "a5"); // index is out of value count
+
+		cache = DiskLruCache.open(cacheDir, APP_VERSION, VALUE_COUNT, MAX_SIZE, MAX_FILE_COUNT);
+
+		Assertions.assertThat(new File(cacheDir, "b.0.tmp")).doesNotExist();
+		Assertions.assertThat(new File(cacheDir, "c.0")).doesNotExist();
+		Assertions.assertThat(new File(cacheDir, "c.1.tmp")).doesNotExist();
+		Assertions.assertThat(new File(cacheDir, "a.5")).doesNotExist();
+		Assertions.assertThat(new File(cacheDir, "a.0")).exists();
+		Assertions.assertThat(new File(cacheDir, "a.1")).exists();
+		assertValue("a", "a0", "a1");
+		Assertions.assertThat(cache.get("b")).isNull();
+		Assertions.assertThat(cache.get("c")).isNull();
+	}
+
+	@Test
+	public void testLruOrderIsPreservedOnReopen() throws Exception {
+		set("a", "a", "a");
+		set("b", "b", "b");
+		set("c", "c", "c");
+		set("d", "d", "d");
+		cache.get("a").close();
+		cache.get("b").close();
+		cache.close();
+
+		cache = DiskLruCache.open(cacheDir, APP_VERSION, VALUE_COUNT, MAX_SIZE, MAX_FILE_COUNT);
+		cache.get("c").close();
+		cache.setMaxSize(4); // 2 entries
+		cache.flush();
+
+		Assertions.assertThat(cache.get("d")).isNull();
+		Assertions.assertThat(cache.get("a")).isNull();
+		assertValue("b", "b", "b");
+		assertValue("c", "c", "c");
+	}
+
+	@Test
+	public void testJournalIsCompacted() throws Exception {
+		set("a", "a0", "a1");
+		set("b", "b0", "b1");
+		set("c", "c0", "c1");
+		cache.remove("c");
+		for (int i = 0; i < 2000; i++) {
+			cache.get(i % 2 == 0 ? "a" : "b").close();
+		}
+		File journalFile = new File(cacheDir, DiskLruCache.JOURNAL_FILE);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (readJournalLines(journalFile).contains("REMOVE c") && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		set("d", "d0", "d1"); // Is appended to compacted journal
+
+		cache.flush();
+		List<String> journalLines = readJournalLines(journalFile);
+		Assertions.assertThat(journalLines.subList(0, 5)).containsExactly(DiskLruCache.MAGIC, DiskLruCache.VERSION_1,
+				String.valueOf(APP_VERSION), String.valueOf(VALUE_COUNT), "");
+		Assertions.assertThat(journalLines.subList(5, 7)).containsOnly("CLEAN a 2 2", "CLEAN b 2 2");
+		Assertions.assertThat(journalLines).doesNotContain("DIRTY a", "DIRTY b", "CLEAN c 2 2", "REMOVE c");
+		Assertions.assertThat(journalLines.subList(journalLines.size() - 2, journalLines.size()))
+				.containsExactly("DIRTY d", "CLEAN d 2 2");
+		Assertions.assertThat(journalLines.size()).isLessThan(100);
+
+		cache.close();
+		cache = DiskLruCache.open(cacheDir, APP_VERSION, VALUE_COUNT, MAX_SIZE, MAX_FILE_COUNT);
+		assertValue("a", "a0", "a1");
+		assertValue("b", "b0", "b1");
+		assertValue("d", "d0", "d1");
+		Assertions.assertThat(cache.get("c")).isNull();
+	}
+
+	@Test
+	public void testMetadataIsAppendedAndRestoredOnReopen() throws Exception {
+		set("a", "a0", "a1");
+		set("b", "b0", "b1");
+		set("c", "c0", "c1");
+		cache.setMetadata("a", new byte[]{1});
+		cache.setMetadata("b", new byte[]{2});
+		cache.setMetadata("c", new byte[]{3});
+		cache.flush();
+		File metadataFile = new File(cacheDir, DiskLruCache.METADATA_FILE);
+		long length = metadataFile.length();
+
+		cache.setMetadata("a", new byte[]{4});
+		set("b", "b2", "b3"); // Same length, metadata is dropped
+		cache.remove("c");
+		cache.flush();
+		// Only changed records are appended: UTF key (2 + 1), last access, length, data length, data
+		Assertions.assertThat(metadataFile.length() - length).isEqualTo(3 * (3 + 8 + 8 + 2) + 1);
+
+		cache.close();
+		cache = DiskLruCache.open(cacheDir, APP_VERSION, VALUE_COUNT, MAX_SIZE, MAX_FILE_COUNT);
+		Assertions.assertThat(cache.getMetadata("a").getData()).containsExactly((byte) 4);
+		Assertions.assertThat(cache.getMetadata("b").getData()).isNull();
+		set("c", "c0", "c1");
+		Assertions.assertThat(cache.getMetadata("c").getData()).isNull();
+	}
+
+	@Test
+	public void testMetadataIsntSetForNewerValues() throws Exception {
+		set("a", "a0", "a1");
+		long sequenceNumber = cache.getMetadata("a").getSequenceNumber();
+		set("a", "a2", "a3");
+
+		Assertions.assertThat(cache.setMetadata("a", sequenceNumber, new byte[]{1})).isFalse();
+		Assertions.assertThat(cache.getMetadata("a").getData()).isNull();
+
+		sequenceNumber = cache.getMetadata("a").getSequenceNumber();
+		Assertions.assertThat(cache.setMetadata("a", sequenceNumber, new byte[]{1})).isTrue();
+		Assertions.assertThat(cache.getMetadata("a").getData()).containsExactly((byte) 1);
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+		final int operationCount = 5000;
+		for (int i = 0; i < KEY_COUNT; i++) {
+			set("key" + i, "value", "value");
+		}
+		long start = System.nanoTime();
+		runConcurrently(operationCount, new Operation() {
+			@Override
+			public void run(Random random) throws IOException {
+				String key = "key" + random.nextInt(KEY_COUNT);
+				if (random.nextInt(10) == 0) {
+					DiskLruCache.Editor editor = cache.edit(key);
+					if (editor != null) {
+						editor.set(0, "value");
+						editor.set(1, "value");
+						editor.commit();
+					}
+				} else {
+					DiskLruCache.Snapshot snapshot = cache.get(key);
+					if (snapshot != null) {
+						snapshot.close();
+					}
+				}
+			}
+		});
+		long time = System.nanoTime() - start;
+		long throughput = (long) THREAD_COUNT * operationCount * 1000000000L / time;
+		L.i("[%d threads] DiskLruCache: %d ops/s (90%% reads)", THREAD_COUNT, throughput);
+	}
+
+	private interface Operation {
+		void run(Random random) throws IOException;
+	}
+
+	private void runConcurrently(final int operationCount, final Operation operation) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int i = 0; i < THREAD_COUNT; i++) {
+			final Random random = new Random(i);
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					startLatch.await();
+					for (int j = 0; j < operationCount; j++) {
+						operation.run(random);
+					}
+					return null;
+				}
+			}));
+		}
+		startLatch.countDown();
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void set(String key, String value0, String value1) throws IOException {
+		DiskLruCache.Editor editor = cache.edit(key);
+		editor.set(0, value0);
+		editor.set(1, value1);
+		editor.commit();
+	}
+
+	private void assertValue(String key, String value0, String value1) throws IOException {
+		DiskLruCache.Snapshot snapshot = cache.get(key);
+		Assertions.assertThat(snapshot).as(key).isNotNull();
+		try {
+			Assertions.assertThat(snapshot.getString(0)).isEqualTo(value0);
+			Assertions.assertThat(snapshot.getString(1)).isEqualTo(value1);
+		} finally {
+			snapshot.close();
+		}
+	}
+
+	private static void writeFile(File file, String content) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static List<String> readJournalLines(File journalFile) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(journalFile));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,257 @@
+package com.nostra13.universalimageloader.cache.memory;
+
+import android.graphics.Bitmap;
+
+import com.nostra13.universalimageloader.cache.memory.impl.LargestLimitedMemoryCache;
+import com.nostra13.universalimageloader.cache.memory.impl.UsingFreqLimitedMemoryCache;
+import com.nostra13.universalimageloader.utils.L;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares eviction order of {@link UsingFreqLimitedMemoryCache} and {@link LargestLimitedMemoryCache} with eviction
+ * order of their former implementations (linear search of the next removed Bitmap) and measures put throughput of
+ * both.<br />
+ * Former implementations kept values in HashMap, so the evicted value among equal ones was undefined. Here they keep
+ * values in LinkedHashMap: the value which got its usage count (or was added) the earliest is evicted among equal ones.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LimitedMemoryCacheTest {
+
+	private static final int KEY_COUNT = 200;
+	private static final int OPERATION_COUNT = 20000;
+
+	private static final int[] BENCHMARK_ENTRY_COUNTS = {1000, 10000};
+	private static final int BENCHMARK_PUT_COUNT = 2000;
+
+	@Test
+	public void testUsingFreqEvictionOrder() throws Exception {
+		RecordingUsingFreqMemoryCache cache = new RecordingUsingFreqMemoryCache(cacheSizeFor(KEY_COUNT / 4));
+		LinearUsingFreqMemoryCache expectedCache = new LinearUsingFreqMemoryCache(cacheSizeFor(KEY_COUNT / 4));
+		replay(cache, expectedCache);
+
+		Assertions.assertThat(cache.removedValues).isNotEmpty();
+		Assertions.assertThat(cache.removedValues).isEqualTo(expectedCache.removedValues);
+	}
+
+	@Test
+	public void testLargestEvictionOrder() throws Exception {
+		RecordingLargestMemoryCache cache = new RecordingLargestMemoryCache(cacheSizeFor(KEY_COUNT / 4));
+		LinearLargestMemoryCache expectedCache = new LinearLargestMemoryCache(cacheSizeFor(KEY_COUNT / 4));
+		replay(cache, expectedCache);
+
+		Assertions.assertThat(cache.removedValues).isNotEmpty();
+		Assertions.assertThat(cache.removedValues).isEqualTo(expectedCache.removedValues);
+	}
+
+	@Test
+	public void testPutThroughput() throws Exception {
+		for (int entryCount : BENCHMARK_ENTRY_COUNTS) {
+			Map<String, MemoryCache> caches = new LinkedHashMap<String, MemoryCache>();
+			caches.put("UsingFreq", new UsingFreqLimitedMemoryCache(entryCount * 4));
+			caches.put("UsingFreq (linear)", new LinearUsingFreqMemoryCache(entryCount * 4));
+			caches.put("Largest", new LargestLimitedMemoryCache(entryCount * 4));
+			caches.put("Largest (linear)", new LinearLargestMemoryCache(entryCount * 4));
+
+			List<Bitmap> bitmaps = new ArrayList<Bitmap>();
+			for (int i = 0; i < entryCount + BENCHMARK_PUT_COUNT; i++) {
+				bitmaps.add(Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888)); // 4 bytes
+			}
+			for (Map.Entry<String, MemoryCache> entry : caches.entrySet()) {
+				MemoryCache cache = entry.getValue();
+				for (int i = 0; i < entryCount; i++) {
+					cache.put("image_" + i, bitmaps.get(i));
+				}
+
+				Random random = new Random(42);
+				long start = System.nanoTime();
+				for (int i = entryCount; i < entryCount + BENCHMARK_PUT_COUNT; i++) {
+					cache.get("image_" + random.nextInt(i));
+					cache.put("image_" + i, bitmaps.get(i)); // evicts one Bitmap
+				}
+				long time = System.nanoTime() - start;
+				long throughput = BENCHMARK_PUT_COUNT * 1000000000L / time;
+				L.i("[%d entries] %s: %d puts/s", entryCount, entry.getKey(), throughput);
+			}
+		}
+	}
+
+	/**
+	 * Gets random keys from both caches and puts missed ones (and sometimes replaces found ones). Bitmaps of random sizes
+	 * are put.
+	 */
+	private void replay(MemoryCache cache, MemoryCache expectedCache) {
+		Random random = new Random(42);
+		List<Bitmap> bitmaps = new ArrayList<Bitmap>(); // keep Bitmaps reachable for weak references of caches
+		for (int i = 0; i < OPERATION_COUNT; i++) {
+			String key = "image_" + (int) Math.abs(random.nextGaussian() * KEY_COUNT / 3) % KEY_COUNT;
+			Bitmap value = cache.get(key);
+			Bitmap expectedValue = expectedCache.get(key);
+			Assertions.assertThat(value).isSameAs(expectedValue);
+			if (value == null || random.nextInt(10) == 0) {
+				Bitmap bitmap = Bitmap.createBitmap(1 + random.nextInt(KEY_COUNT * 2), 1, Bitmap.Config.ARGB_8888);
+				bitmaps.add(bitmap);
+				cache.put(key, bitmap);
+				expectedCache.put(key, bitmap);
+			}
+		}
+	}
+
+	/** @return Cache size for <b>count</b> Bitmaps of average size */
+	private static int cacheSizeFor(int count) {
+		return count * (1 + KEY_COUNT) * 4;
+	}
+
+	private static class RecordingUsingFreqMemoryCache extends UsingFreqLimitedMemoryCache {
+
+		final List<Bitmap> removedValues = new ArrayList<Bitmap>();
+
+		RecordingUsingFreqMemoryCache(int sizeLimit) {
+			super(sizeLimit);
+		}
+
+		@Override
+		protected Bitmap removeNext() {
+			Bitmap value = super.removeNext();
+			removedValues.add(value);
+			return value;
+		}
+	}
+
+	private static class RecordingLargestMemoryCache extends LargestLimitedMemoryCache {
+
+		final List<Bitmap> removedValues = new ArrayList<Bitmap>();
+
+		RecordingLargestMemoryCache(int sizeLimit) {
+			super(sizeLimit);
+		}
+
+		@Override
+		protected Bitmap removeNext() {
+			Bitmap value = super.removeNext();
+			removedValues.add(value);
+			return value;
+		}
+	}
+
+	/** Former {@link UsingFreqLimitedMemoryCache} */
+	private static class LinearUsingFreqMemoryCache extends LimitedMemoryCache {
+
+		final List<Bitmap> removedValues = new ArrayList<Bitmap>();
+		private final Map<Bitmap, Integer> usingCounts = Collections.synchronizedMap(new LinkedHashMap<Bitmap, Integer>());
+
+		LinearUsingFreqMemoryCache(int sizeLimit) {
+			super(sizeLimit);
+		}
+
+		@Override
+		public boolean put(String key, Bitmap value) {
+			if (super.put(key, value)) {
+				usingCounts.put(value, 0);
+				return true;
+			} else {
+				return false;
+			}
+		}
+
+		@Override
+		public Bitmap get(String key) {
+			Bitmap value = super.get(key);
+			if (value != null) {
+				Integer usageCount = usingCounts.get(value);
+				if (usageCount != null) {
+					usingCounts.remove(value); // move to the end of equally used values
+					usingCounts.put(value, usageCount + 1);
+				}
+			}
+			return value;
+		}
+
+		@Override
+		protected int getSize(Bitmap value) {
+			return value.getRowBytes() * value.getHeight();
+		}
+
+		@Override
+		protected Bitmap removeNext() {
+			Integer minUsageCount = null;
+			Bitmap leastUsedValue = null;
+			synchronized (usingCounts) {
+				for (Map.Entry<Bitmap, Integer> entry : usingCounts.entrySet()) {
+					if (leastUsedValue == null || entry.getValue() < minUsageCount) {
+						leastUsedValue = entry.getKey();
+						minUsageCount = entry.getValue();
+					}
+				}
+			}
+			usingCounts.remove(leastUsedValue);
+			removedValues.add(leastUsedValue);
+			return leastUsedValue;
+		}
+
+		@Override
+		protected Reference<Bitmap> createReference(Bitmap value) {
+			return new WeakReference<Bitmap>(value);
+		}
+	}
+
+	/** Former {@link LargestLimitedMemoryCache} */
+	private static class LinearLargestMemoryCache extends LimitedMemoryCache {
+
+		final List<Bitmap> removedValues = new ArrayList<Bitmap>();
+		private final Map<Bitmap, Integer> valueSizes = Collections.synchronizedMap(new LinkedHashMap<Bitmap, Integer>());
+
+		LinearLargestMemoryCache(int sizeLimit) {
+			super(sizeLimit);
+		}
+
+		@Override
+		public boolean put(String key, Bitmap value) {
+			if (super.put(key, value)) {
+				valueSizes.put(value, getSize(value));
+				return true;
+			} else {
+				return false;
+			}
+		}
+
+		@Override
+		protected int getSize(Bitmap value) {
+			return value.getRowBytes() * value.getHeight();
+		}
+
+		@Override
+		protected Bitmap removeNext() {
+			Integer maxSize = null;
+			Bitmap largestValue = null;
+			synchronized (valueSizes) {
+				for (Map.Entry<Bitmap, Integer> entry : valueSizes.entrySet()) {
+					if (largestValue == null || entry.getValue() > maxSize) {
+						largestValue = entry.getKey();
+						maxSize = entry.getValue();
+					}
+				}
+			}
+			valueSizes.remove(largestValue);
+			removedValues.add(largestValue);
+			return largestValue;
+		}
+
+		@Override
+		protected Reference<Bitmap> createReference(Bitmap value) {
+			return new WeakReference<Bitmap>(value);
+		}
+	}
+}
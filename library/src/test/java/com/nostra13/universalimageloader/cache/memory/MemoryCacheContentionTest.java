@@ -0,0 +1,128 @@
+package com.nostra13.universalimageloader.cache.memory;
+
+import android.graphics.Bitmap;
+
+import com.nostra13.universalimageloader.cache.memory.impl.LruMemoryCache;
+import com.nostra13.universalimageloader.cache.memory.impl.SegmentedLruMemoryCache;
+import com.nostra13.universalimageloader.utils.L;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks size limit of {@link SegmentedLruMemoryCache} and measures throughput of memory caches which are used by
+ * several threads concurrently (like UI thread and decoding threads use memory cache).<br />
+ * Throughput of every cache is reported in log.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MemoryCacheContentionTest {
+
+	private static final int CACHE_CAPACITY = 16; // in small bitmaps
+	private static final int THREAD_COUNT = 4;
+	private static final int OPERATION_COUNT = 200000; // per thread
+	private static final int KEY_COUNT = CACHE_CAPACITY * 4;
+
+	private Bitmap smallBitmap;
+	private Bitmap largeBitmap;
+	private int cacheSize;
+
+	@Before
+	public void setUp() throws Exception {
+		smallBitmap = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+		largeBitmap = Bitmap.createBitmap(256, 128, Bitmap.Config.ARGB_8888); // 8 small bitmaps
+		int bitmapSize = smallBitmap.getRowBytes() * smallBitmap.getHeight();
+		Assertions.assertThat(bitmapSize).as("Bitmap size").isPositive();
+		cacheSize = bitmapSize * CACHE_CAPACITY;
+	}
+
+	@Test
+	public void testBitmapLargerThanSegmentIsCached() throws Exception {
+		MemoryCache cache = new SegmentedLruMemoryCache(cacheSize, 4, null);
+		for (int i = 0; i < CACHE_CAPACITY; i++) {
+			cache.put("small_" + i, smallBitmap);
+		}
+		cache.put("large", largeBitmap);
+
+		Assertions.assertThat(cache.get("large")).isSameAs(largeBitmap);
+		Assertions.assertThat(cache.keys()).hasSize(CACHE_CAPACITY / 2 + 1);
+	}
+
+	@Test
+	public void testBitmapLargerThanCacheIsNotCached() throws Exception {
+		MemoryCache cache = new SegmentedLruMemoryCache(cacheSize / 16, 4, null);
+		cache.put("small", smallBitmap);
+		cache.put("large", largeBitmap);
+
+		Assertions.assertThat(cache.get("small")).isSameAs(smallBitmap);
+		Assertions.assertThat(cache.get("large")).isNull();
+	}
+
+	@Test
+	public void testSizeLimitUnderContention() throws Exception {
+		MemoryCache cache = new SegmentedLruMemoryCache(cacheSize);
+		runConcurrently(cache, OPERATION_COUNT / 10);
+
+		Assertions.assertThat(cache.keys().size()).isLessThanOrEqualTo(CACHE_CAPACITY);
+	}
+
+	@Test
+	public void testContention() throws Exception {
+		Map<String, MemoryCache> caches = new LinkedHashMap<String, MemoryCache>();
+		caches.put("Lru", new LruMemoryCache(cacheSize));
+		caches.put("SegmentedLru", new SegmentedLruMemoryCache(cacheSize));
+
+		for (Map.Entry<String, MemoryCache> entry : caches.entrySet()) {
+			runConcurrently(entry.getValue(), OPERATION_COUNT / 10); // warm up
+			long start = System.nanoTime();
+			runConcurrently(entry.getValue(), OPERATION_COUNT);
+			long time = System.nanoTime() - start;
+			long throughput = (long) THREAD_COUNT * OPERATION_COUNT * 1000000000L / time;
+			L.i("[%d threads] %s: %d ops/s", THREAD_COUNT, entry.getKey(), throughput);
+		}
+	}
+
+	/** Every thread gets Bitmaps from cache and puts missed ones into cache */
+	private void runConcurrently(final MemoryCache cache, final int operationCount) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int i = 0; i < THREAD_COUNT; i++) {
+			final Random random = new Random(i);
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					startLatch.await();
+					for (int j = 0; j < operationCount; j++) {
+						String key = "image_" + random.nextInt(KEY_COUNT);
+						if (cache.get(key) == null) {
+							cache.put(key, smallBitmap);
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		startLatch.countDown();
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
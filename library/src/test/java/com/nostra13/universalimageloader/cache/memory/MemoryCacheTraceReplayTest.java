@@ -0,0 +1,173 @@
+package com.nostra13.universalimageloader.cache.memory;
+
+import android.graphics.Bitmap;
+
+import com.nostra13.universalimageloader.cache.memory.impl.LruMemoryCache;
+import com.nostra13.universalimageloader.cache.memory.impl.SegmentedLruMemoryCache;
+import com.nostra13.universalimageloader.cache.memory.impl.TinyLfuMemoryCache;
+import com.nostra13.universalimageloader.utils.L;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Replays key streams against memory cache policies and reports hit rate of every policy.<br />
+ * Recorded key streams (one memory cache key per line) can be replayed too: put them into directory and pass it in
+ * <b>uil.traceDir</b> system property.<br />
+ * <br />
+ * {@link LimitedMemoryCache} subclasses aren't replayed: Bitmaps evicted from their strong part stay reachable through
+ * weak references, so their hit rate depends on GC rather than on policy.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MemoryCacheTraceReplayTest {
+
+	private static final int CACHE_CAPACITY = 50; // in bitmaps
+
+	private Bitmap bitmap;
+	private int cacheSize;
+
+	@Before
+	public void setUp() throws Exception {
+		bitmap = Bitmap.createBitmap(128, 128, Bitmap.Config.ARGB_8888);
+		int bitmapSize = bitmap.getRowBytes() * bitmap.getHeight();
+		Assertions.assertThat(bitmapSize).as("Bitmap size").isPositive();
+		cacheSize = bitmapSize * CACHE_CAPACITY;
+	}
+
+	@Test
+	public void testScanResistance() throws Exception {
+		List<String> trace = scanTrace();
+		Map<String, Float> hitRates = replay("scan", trace);
+
+		Assertions.assertThat(hitRates.get("TinyLfu")).isGreaterThan(hitRates.get("Lru"));
+	}
+
+	@Test
+	public void testZipfDistribution() throws Exception {
+		List<String> trace = zipfTrace();
+		Map<String, Float> hitRates = replay("zipf", trace);
+
+		Assertions.assertThat(hitRates.get("TinyLfu")).isGreaterThanOrEqualTo(hitRates.get("Lru") * 0.95f);
+	}
+
+	@Test
+	public void testJustPutBitmapIsCached() throws Exception {
+		TinyLfuMemoryCache cache = new TinyLfuMemoryCache(cacheSize);
+		for (int i = 0; i < CACHE_CAPACITY; i++) {
+			String key = "hot_" + i;
+			for (int j = 0; j < 3; j++) {
+				if (cache.get(key) == null) {
+					cache.put(key, bitmap);
+				}
+			}
+		}
+		for (int i = 0; i < CACHE_CAPACITY; i++) {
+			String key = "new_" + i;
+			Assertions.assertThat(cache.get(key)).isNull();
+			cache.put(key, bitmap);
+			Assertions.assertThat(cache.get(key)).as(key).isSameAs(bitmap);
+		}
+	}
+
+	@Test
+	public void testRecordedTraces() throws Exception {
+		String traceDir = System.getProperty("uil.traceDir");
+		Assume.assumeNotNull(traceDir);
+
+		File[] traceFiles = new File(traceDir).listFiles();
+		Assume.assumeNotNull((Object) traceFiles);
+		for (File traceFile : traceFiles) {
+			replay(traceFile.getName(), readTrace(traceFile));
+		}
+	}
+
+	private Map<String, Float> replay(String traceName, List<String> trace) {
+		Map<String, MemoryCache> caches = new LinkedHashMap<String, MemoryCache>();
+		caches.put("Lru", new LruMemoryCache(cacheSize));
+		caches.put("SegmentedLru", new SegmentedLruMemoryCache(cacheSize, 1, null));
+		caches.put("TinyLfu", new TinyLfuMemoryCache(cacheSize));
+
+		Map<String, Float> hitRates = new LinkedHashMap<String, Float>();
+		for (Map.Entry<String, MemoryCache> entry : caches.entrySet()) {
+			MemoryCache cache = entry.getValue();
+			int hits = 0;
+			for (String key : trace) {
+				if (cache.get(key) != null) {
+					hits++;
+				} else {
+					cache.put(key, bitmap);
+				}
+			}
+			float hitRate = (float) hits / trace.size();
+			hitRates.put(entry.getKey(), hitRate);
+			L.i("[%s] %s: hit rate = %.2f%%", traceName, entry.getKey(), hitRate * 100);
+		}
+		return hitRates;
+	}
+
+	/** Frequently requested images (headers, avatars) between requests of long list of images which are shown once */
+	private List<String> scanTrace() {
+		Random random = new Random(42);
+		List<String> trace = new ArrayList<String>();
+		for (int i = 0; i < 20000; i++) {
+			trace.add("list_" + i);
+			if (i % 3 == 0) {
+				trace.add("hot_" + random.nextInt(CACHE_CAPACITY * 4 / 5));
+			}
+		}
+		return trace;
+	}
+
+	/** Images are requested according to Zipf distribution */
+	private List<String> zipfTrace() {
+		int keyCount = CACHE_CAPACITY * 20;
+		double[] cumulativeProbabilities = new double[keyCount];
+		double sum = 0;
+		for (int i = 0; i < keyCount; i++) {
+			sum += 1 / Math.pow(i + 1, 0.9);
+			cumulativeProbabilities[i] = sum;
+		}
+
+		Random random = new Random(42);
+		List<String> trace = new ArrayList<String>();
+		for (int i = 0; i < 50000; i++) {
+			double value = random.nextDouble() * sum;
+			int key = 0;
+			while (cumulativeProbabilities[key] < value) {
+				key++;
+			}
+			trace.add("image_" + key);
+		}
+		return trace;
+	}
+
+	private List<String> readTrace(File traceFile) throws IOException {
+		List<String> trace = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(traceFile));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() > 0) {
+					trace.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return trace;
+	}
+}
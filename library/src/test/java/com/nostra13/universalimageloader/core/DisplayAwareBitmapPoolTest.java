@@ -0,0 +1,134 @@
+package com.nostra13.universalimageloader.core;
+
+import android.graphics.Bitmap;
+
+import com.nostra13.universalimageloader.cache.memory.BitmapPool;
+import com.nostra13.universalimageloader.cache.memory.MemoryCache;
+import com.nostra13.universalimageloader.cache.memory.impl.LruMemoryCache;
+import com.nostra13.universalimageloader.core.assist.ImageSize;
+import com.nostra13.universalimageloader.core.assist.ViewScaleType;
+import com.nostra13.universalimageloader.core.imageaware.ImageAware;
+import com.nostra13.universalimageloader.core.imageaware.NonViewAware;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that bitmaps which are displayed or are passed to display get into bitmap pool only after they are released.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DisplayAwareBitmapPoolTest {
+
+	private RecordingBitmapPool wrappedPool;
+	private DisplayAwareBitmapPool pool;
+	private Bitmap bitmap1;
+	private Bitmap bitmap2;
+
+	@Before
+	public void setUp() throws Exception {
+		wrappedPool = new RecordingBitmapPool();
+		pool = new DisplayAwareBitmapPool(wrappedPool);
+		bitmap1 = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+		bitmap2 = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+	}
+
+	@Test
+	public void testUnusedBitmapIsPooled() throws Exception {
+		Assertions.assertThat(pool.put(bitmap1)).isTrue();
+
+		Assertions.assertThat(wrappedPool.bitmaps).containsExactly(bitmap1);
+	}
+
+	@Test
+	public void testAcquiredBitmapIsPooledAfterRelease() throws Exception {
+		pool.acquire(bitmap1);
+		pool.acquire(bitmap1); // e.g. loading task and attached task display the same bitmap
+
+		Assertions.assertThat(pool.put(bitmap1)).isTrue();
+		Assertions.assertThat(wrappedPool.bitmaps).isEmpty();
+
+		pool.release(bitmap1);
+		Assertions.assertThat(wrappedPool.bitmaps).isEmpty();
+
+		pool.release(bitmap1);
+		Assertions.assertThat(wrappedPool.bitmaps).containsExactly(bitmap1);
+	}
+
+	@Test
+	public void testReleasedBitmapIsntPooledIfItWasntPut() throws Exception {
+		pool.acquire(bitmap1);
+		pool.release(bitmap1);
+
+		Assertions.assertThat(wrappedPool.bitmaps).isEmpty();
+	}
+
+	@Test
+	public void testDisplayedBitmapIsPooledWhenImageAwareDisplaysAnotherBitmap() throws Exception {
+		ImageAware imageAware = new NonViewAware("uri", new ImageSize(16, 16), ViewScaleType.CROP);
+		pool.acquire(bitmap1);
+		pool.onBitmapDisplayed(imageAware, bitmap1);
+		pool.release(bitmap1); // display task was run
+		pool.put(bitmap1);
+
+		Assertions.assertThat(wrappedPool.bitmaps).isEmpty();
+
+		pool.onBitmapDisplayed(imageAware, bitmap2);
+		Assertions.assertThat(wrappedPool.bitmaps).containsExactly(bitmap1);
+	}
+
+	@Test
+	public void testBitmapEvictedFromMemoryCacheIsPooledAfterDisplay() throws Exception {
+		int bitmapSize = bitmap1.getRowBytes() * bitmap1.getHeight();
+		Assertions.assertThat(bitmapSize).as("Bitmap size").isPositive();
+		MemoryCache memoryCache = new LruMemoryCache(bitmapSize, pool);
+		ImageAware imageAware = new NonViewAware("uri", new ImageSize(16, 16), ViewScaleType.CROP);
+
+		pool.acquire(bitmap1); // display task is posted but isn't run yet
+		memoryCache.put("1", bitmap1);
+		memoryCache.put("2", bitmap2); // evicts bitmap1
+
+		Assertions.assertThat(wrappedPool.bitmaps).isEmpty();
+
+		pool.onBitmapDisplayed(imageAware, bitmap1);
+		pool.release(bitmap1);
+		Assertions.assertThat(wrappedPool.bitmaps).isEmpty();
+
+		pool.onBitmapDisplayed(imageAware, null);
+		Assertions.assertThat(wrappedPool.bitmaps).containsExactly(bitmap1);
+	}
+
+	@Test
+	public void testPooledBitmapIsntReusedIfItsUsedAgain() throws Exception {
+		pool.put(bitmap1);
+		pool.acquire(bitmap1);
+
+		Assertions.assertThat(pool.get(16, 16, Bitmap.Config.ARGB_8888)).isNull();
+	}
+
+	private static class RecordingBitmapPool implements BitmapPool {
+
+		final List<Bitmap> bitmaps = new ArrayList<Bitmap>();
+
+		@Override
+		public synchronized boolean put(Bitmap bitmap) {
+			bitmaps.add(bitmap);
+			return true;
+		}
+
+		@Override
+		public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+			return bitmaps.isEmpty() ? null : bitmaps.remove(bitmaps.size() - 1);
+		}
+
+		@Override
+		public synchronized void clear() {
+			bitmaps.clear();
+		}
+	}
+}
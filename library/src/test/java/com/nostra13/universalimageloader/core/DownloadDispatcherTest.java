@@ -0,0 +1,159 @@
+package com.nostra13.universalimageloader.core;
+
+import com.nostra13.universalimageloader.core.assist.LoadingPriority;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/** Checks limit of running downloads per host and bandwidth limit (token bucket) of {@link DownloadDispatcher}. */
+public class DownloadDispatcherTest {
+
+	private final QueueingExecutor executor = new QueueingExecutor();
+
+	@Test
+	public void testDownloadsArePerHostLimited() throws Exception {
+		DownloadDispatcher dispatcher = new DownloadDispatcher(2, 0);
+		Job a1 = new Job(LoadingPriority.NORMAL);
+		Job a2 = new Job(LoadingPriority.NORMAL);
+		Job a3 = new Job(LoadingPriority.LOW);
+		Job a4 = new Job(LoadingPriority.HIGH);
+		Job b1 = new Job(LoadingPriority.NORMAL);
+		dispatcher.execute("http://a.com/1.png", a1, executor);
+		dispatcher.execute("http://a.com/2.png", a2, executor);
+		dispatcher.execute("http://a.com/3.png", a3, executor);
+		dispatcher.execute("http://a.com/4.png", a4, executor);
+		dispatcher.execute("https://B.com:8080/1.png", b1, executor);
+
+		Assertions.assertThat(dispatcher.getHosts()).containsOnly("a.com", "b.com:8080");
+		Assertions.assertThat(dispatcher.getRunningCount()).isEqualTo(3);
+		Assertions.assertThat(dispatcher.getWaitingCount("a.com")).isEqualTo(2);
+		Assertions.assertThat(dispatcher.getWaitedRequestCount()).isEqualTo(2);
+		Assertions.assertThat(executor.runNext()).isSameAs(a1);
+		Assertions.assertThat(executor.runNext()).isSameAs(a2);
+		Assertions.assertThat(executor.runNext()).isSameAs(b1);
+		// Finished jobs pass their slots to waiting jobs by priority
+		Assertions.assertThat(executor.runNext()).isSameAs(a4);
+		Assertions.assertThat(executor.runNext()).isSameAs(a3);
+		Assertions.assertThat(executor.runNext()).isNull();
+		Assertions.assertThat(dispatcher.getHosts()).isEmpty();
+	}
+
+	@Test
+	public void testHostLimitOverridesCommonLimit() throws Exception {
+		DownloadDispatcher dispatcher = new DownloadDispatcher(2, 0).setHostLimit("A.com", 1);
+		dispatcher.execute("http://a.com/1.png", new Job(LoadingPriority.NORMAL), executor);
+		dispatcher.execute("http://a.com/2.png", new Job(LoadingPriority.NORMAL), executor);
+
+		Assertions.assertThat(dispatcher.getRunningCount("a.com")).isEqualTo(1);
+		Assertions.assertThat(dispatcher.getWaitingCount("a.com")).isEqualTo(1);
+	}
+
+	@Test
+	public void testNonNetworkDownloadsArentLimited() throws Exception {
+		DownloadDispatcher dispatcher = new DownloadDispatcher(1, 0);
+		dispatcher.execute("file:///sdcard/1.png", new Job(LoadingPriority.NORMAL), executor);
+		dispatcher.execute("file:///sdcard/2.png", new Job(LoadingPriority.NORMAL), executor);
+
+		Assertions.assertThat(executor.jobs).hasSize(2);
+		Assertions.assertThat(dispatcher.getHosts()).isEmpty();
+	}
+
+	@Test
+	public void testClearReturnsDroppedJobs() throws Exception {
+		DownloadDispatcher dispatcher = new DownloadDispatcher(1, 0);
+		Job job1 = new Job(LoadingPriority.NORMAL);
+		Job job2 = new Job(LoadingPriority.NORMAL);
+		dispatcher.execute("http://a.com/1.png", job1, executor);
+		dispatcher.execute("http://a.com/2.png", job2, executor);
+
+		Assertions.assertThat(dispatcher.clear()).containsExactly(job2);
+		Assertions.assertThat(executor.runNext()).isSameAs(job1);
+		Assertions.assertThat(executor.runNext()).isNull(); // slot isn't passed to dropped job
+		Assertions.assertThat(job2.run).isFalse();
+	}
+
+	@Test
+	public void testBandwidthIsLimitedByTokenBucket() throws Exception {
+		DownloadDispatcher dispatcher = new DownloadDispatcher(1, 10000);
+		InputStream stream = dispatcher.limitBandwidth("http://a.com/1.png", new ByteArrayInputStream(new byte[15000]));
+		byte[] buffer = new byte[5000];
+
+		long start = System.currentTimeMillis();
+		stream.read(buffer); // Bucket is full at start
+		stream.read(buffer);
+		Assertions.assertThat(dispatcher.getThrottlingTime()).isZero();
+		stream.read(buffer); // Borrows 5000 tokens, waits until they're refilled
+		long time = System.currentTimeMillis() - start;
+
+		Assertions.assertThat(dispatcher.getThrottlingTime()).isBetween(400L, 500L);
+		Assertions.assertThat(time).isGreaterThanOrEqualTo(400);
+		Assertions.assertThat(dispatcher.getTransferredBytes()).isEqualTo(15000);
+	}
+
+	@Test
+	public void testBandwidthIsntLimitedByDefault() throws Exception {
+		DownloadDispatcher dispatcher = new DownloadDispatcher();
+		InputStream stream = dispatcher.limitBandwidth("http://a.com/1.png", new ByteArrayInputStream(new byte[50000]));
+		while (stream.read(new byte[5000]) > 0) ;
+
+		Assertions.assertThat(dispatcher.getThrottlingTime()).isZero();
+		Assertions.assertThat(dispatcher.getTransferredBytes()).isEqualTo(50000);
+
+		InputStream fileStream = new ByteArrayInputStream(new byte[1]);
+		Assertions.assertThat(dispatcher.limitBandwidth("file:///sdcard/1.png", fileStream)).isSameAs(fileStream);
+	}
+
+	private class Job implements PrioritizedTask {
+
+		private final LoadingPriority priority;
+		private final long sequence = PriorityTaskQueue.nextSequence();
+		boolean run;
+
+		Job(LoadingPriority priority) {
+			this.priority = priority;
+		}
+
+		@Override
+		public void run() {
+			run = true;
+			executor.lastRunJob = this;
+		}
+
+		@Override
+		public LoadingPriority getPriority() {
+			return priority;
+		}
+
+		@Override
+		public long getSequence() {
+			return sequence;
+		}
+	}
+
+	/** Queues jobs, they're run one by one by test */
+	private static class QueueingExecutor implements Executor {
+
+		final List<Runnable> jobs = new ArrayList<Runnable>();
+		Job lastRunJob;
+
+		@Override
+		public void execute(Runnable job) {
+			jobs.add(job);
+		}
+
+		/** Runs the oldest queued job, returns the dispatched job which was run */
+		Job runNext() {
+			if (jobs.isEmpty()) return null;
+
+			lastRunJob = null;
+			jobs.remove(0).run();
+			return lastRunJob;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.nostra13.universalimageloader.core;
+
+import com.nostra13.universalimageloader.core.assist.FailReason.FailType;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+/** Checks TTLs of URIs in {@link FailedUriCache}: exponential growth, max TTL, jitter and expiration. */
+public class FailedUriCacheTest {
+
+	private static final String URI = "http://example.com/image.png";
+	private static final long BASE_TTL = 10 * 1000;
+	private static final float JITTER = 0.2f;
+
+	private FailedUriCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new FailedUriCache().setBaseTtl(FailType.IO_ERROR, BASE_TTL);
+	}
+
+	@Test
+	public void testTtlIsDoubledForEveryFailure() throws Exception {
+		long ttl = BASE_TTL;
+		for (int i = 0; i < 5; i++) {
+			assertTtl(ttl);
+			ttl *= 2;
+		}
+	}
+
+	@Test
+	public void testTtlDoesntExceedMaxTtl() throws Exception {
+		Assertions.assertThat(FailedUriCache.DEFAULT_MAX_TTL).isEqualTo(60 * 60 * 1000);
+		for (int i = 0; i < 20; i++) {
+			cache.put(URI, FailType.IO_ERROR, null);
+		}
+		assertTtl(FailedUriCache.DEFAULT_MAX_TTL);
+
+		cache.setMaxTtl(BASE_TTL * 3);
+		assertTtl(BASE_TTL * 3);
+	}
+
+	@Test
+	public void testJitterIsBounded() throws Exception {
+		long minTtl = Long.MAX_VALUE;
+		long maxTtl = 0;
+		for (int i = 0; i < 1000; i++) {
+			cache.invalidate(URI);
+			long ttl = assertTtl(BASE_TTL);
+			minTtl = Math.min(minTtl, ttl);
+			maxTtl = Math.max(maxTtl, ttl);
+		}
+		Assertions.assertThat(maxTtl - minTtl).as("Jitter").isGreaterThan((long) (BASE_TTL * JITTER));
+	}
+
+	@Test
+	public void testUriExpires() throws Exception {
+		cache.setBaseTtl(FailType.IO_ERROR, 20);
+		cache.put(URI, FailType.IO_ERROR, null);
+		Assertions.assertThat(cache.get(URI)).isEqualTo(FailType.IO_ERROR);
+
+		Thread.sleep(50);
+		Assertions.assertThat(cache.get(URI)).isNull();
+	}
+
+	@Test
+	public void testUriIsInvalidated() throws Exception {
+		cache.put(URI, FailType.DECODING_ERROR, null);
+		Assertions.assertThat(cache.get(URI)).isEqualTo(FailType.DECODING_ERROR);
+
+		cache.invalidate(URI);
+		Assertions.assertThat(cache.get(URI)).isNull();
+	}
+
+	@Test
+	public void testConnectivityFailuresArentCached() throws Exception {
+		cache.put(URI, FailType.IO_ERROR, new UnknownHostException());
+		cache.put(URI, FailType.IO_ERROR, new ConnectException());
+		cache.put(URI, FailType.IO_ERROR, new SocketTimeoutException());
+		cache.put(URI, FailType.NETWORK_DENIED, null);
+		cache.put(URI, FailType.OUT_OF_MEMORY, null);
+		Assertions.assertThat(cache.get(URI)).isNull();
+
+		cache.put(URI, FailType.IO_ERROR, new IOException("Image request failed with response code 404"));
+		Assertions.assertThat(cache.get(URI)).isEqualTo(FailType.IO_ERROR);
+	}
+
+	/** Puts failure of URI into cache and checks its TTL is the expected one with jitter */
+	private long assertTtl(long expectedTtl) {
+		long before = System.currentTimeMillis();
+		cache.put(URI, FailType.IO_ERROR, null);
+		long after = System.currentTimeMillis();
+		long expirationTime = cache.getExpirationTime(URI);
+
+		Assertions.assertThat(expirationTime).isGreaterThanOrEqualTo(before + (long) (expectedTtl * (1 - JITTER)));
+		Assertions.assertThat(expirationTime).isLessThanOrEqualTo(after + (long) (expectedTtl * (1 + JITTER)) + 1);
+		return expirationTime - before;
+	}
+}
@@ -0,0 +1,103 @@
+package com.nostra13.universalimageloader.core.decode;
+
+import com.nostra13.universalimageloader.core.decode.ImageHeaderParser.ImageHeader;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+public class ImageHeaderParserTest {
+
+	@Test
+	public void testJpeg() throws Exception {
+		byte[] image = bytes(0xFF, 0xD8, // SOI
+				0xFF, 0xE0, 0x00, 0x06, 'J', 'F', 'I', 'F', // APP0
+				0xFF, 0xFF, 0xC2, 0x00, 0x11, 0x08, 0x01, 0xE0, 0x02, 0x80); // fill byte + SOF2, 640x480
+		assertHeader(parse(image), ImageHeaderParser.MIME_TYPE_JPEG, 640, 480);
+	}
+
+	@Test
+	public void testJpegWithoutFrameBeforeScan() throws Exception {
+		byte[] image = bytes(0xFF, 0xD8, 0xFF, 0xDA, 0x00, 0x02);
+		Assertions.assertThat(parse(image)).isNull();
+	}
+
+	@Test
+	public void testPng() throws Exception {
+		byte[] image = bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0x00, 0x00, 0x00, 0x0D, 'I', 'H', 'D', 'R',
+				0x00, 0x00, 0x01, 0x2C, 0x00, 0x00, 0x00, 0xC8); // 300x200
+		assertHeader(parse(image), ImageHeaderParser.MIME_TYPE_PNG, 300, 200);
+	}
+
+	@Test
+	public void testGif() throws Exception {
+		byte[] image = bytes('G', 'I', 'F', '8', '9', 'a', 0x2C, 0x01, 0xC8, 0x00); // 300x200
+		assertHeader(parse(image), ImageHeaderParser.MIME_TYPE_GIF, 300, 200);
+	}
+
+	@Test
+	public void testWebpLossy() throws Exception {
+		byte[] image = bytes('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P', 'V', 'P', '8', ' ', 0, 0, 0, 0,
+				0, 0, 0, 0x9D, 0x01, 0x2A, 0x2C, 0x01, 0xC8, 0x00); // 300x200
+		assertHeader(parse(image), ImageHeaderParser.MIME_TYPE_WEBP, 300, 200);
+	}
+
+	@Test
+	public void testWebpLossless() throws Exception {
+		// width - 1 = 299 (14 bits), height - 1 = 199 (14 bits)
+		int bits = 299 | (199 << 14);
+		byte[] image = bytes('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P', 'V', 'P', '8', 'L', 0, 0, 0, 0,
+				0x2F, bits & 0xFF, (bits >> 8) & 0xFF, (bits >> 16) & 0xFF, (bits >> 24) & 0xFF);
+		assertHeader(parse(image), ImageHeaderParser.MIME_TYPE_WEBP, 300, 200);
+	}
+
+	@Test
+	public void testWebpExtended() throws Exception {
+		byte[] image = bytes('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P', 'V', 'P', '8', 'X', 0, 0, 0, 0,
+				0, 0, 0, 0, 0x2B, 0x01, 0x00, 0xC7, 0x00, 0x00); // (300 - 1) x (200 - 1)
+		assertHeader(parse(image), ImageHeaderParser.MIME_TYPE_WEBP, 300, 200);
+	}
+
+	@Test
+	public void testBmp() throws Exception {
+		byte[] image = bytes('B', 'M', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 40, 0, 0, 0,
+				0x2C, 0x01, 0x00, 0x00, 0x38, 0xFF, 0xFF, 0xFF); // 300x(-200), top-down
+		assertHeader(parse(image), ImageHeaderParser.MIME_TYPE_BMP, 300, 200);
+	}
+
+	@Test
+	public void testLimitOfReadBytes() throws Exception {
+		byte[] image = bytes(0xFF, 0xD8, 0xFF, 0xE1, 0x00, 0x20, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+				0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0xFF, 0xC0, 0x00, 0x11, 0x08, 0x01, 0xE0, 0x02, 0x80);
+		Assertions.assertThat(new ImageHeaderParser(new ByteArrayInputStream(image), 16).parse()).isNull();
+		assertHeader(new ImageHeaderParser(new ByteArrayInputStream(image), 64).parse(),
+				ImageHeaderParser.MIME_TYPE_JPEG, 640, 480);
+	}
+
+	@Test
+	public void testUnknownFormat() throws Exception {
+		Assertions.assertThat(parse(bytes('I', 'I', '*', 0))).isNull();
+		Assertions.assertThat(parse(bytes(0xFF))).isNull();
+	}
+
+	private static ImageHeader parse(byte[] image) throws IOException {
+		return new ImageHeaderParser(new ByteArrayInputStream(image), 1024).parse();
+	}
+
+	private static void assertHeader(ImageHeader header, String mimeType, int width, int height) {
+		Assertions.assertThat(header).isNotNull();
+		Assertions.assertThat(header.mimeType).isEqualTo(mimeType);
+		Assertions.assertThat(header.width).isEqualTo(width);
+		Assertions.assertThat(header.height).isEqualTo(height);
+	}
+
+	private static byte[] bytes(int... values) {
+		byte[] bytes = new byte[values.length];
+		for (int i = 0; i < values.length; i++) {
+			bytes[i] = (byte) values[i];
+		}
+		return bytes;
+	}
+}
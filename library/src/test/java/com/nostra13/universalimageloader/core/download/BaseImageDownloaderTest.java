@@ -4,9 +4,21 @@ import org.assertj.core.api.Assertions;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
 
+import com.nostra13.universalimageloader.cache.disc.ResponseValidators;
+import com.nostra13.universalimageloader.core.download.ConditionalImageDownloader.Result;
 import com.nostra13.universalimageloader.core.download.ImageDownloader.Scheme;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @RunWith(RobolectricTestRunner.class)
 public class BaseImageDownloaderTest {
 
@@ -65,4 +77,92 @@ public class BaseImageDownloaderTest {
 		Scheme expected = Scheme.UNKNOWN;
 		Assertions.assertThat(result).isEqualTo(expected);
 	}
+
+	@Test
+	public void testOverriddenNetworkStreamIsUsedForConditionalRequests() throws Exception {
+		String uri = "http://image.com/1.png";
+		ResponseValidators validators = new ResponseValidators("\"etag\"", null, 0);
+		CustomNetworkDownloader downloader = new CustomNetworkDownloader();
+
+		Result result = downloader.getStream(uri, validators, null);
+		Assertions.assertThat(result.isNotModified()).isFalse();
+		Assertions.assertThat(result.getStream().read()).isEqualTo(1);
+
+		result = downloader.getStream(uri, 10, validators, null);
+		Assertions.assertThat(result.getOffset()).isEqualTo(0);
+		Assertions.assertThat(result.getStream().read()).isEqualTo(1);
+
+		Assertions.assertThat(downloader.requestedUris).containsExactly(uri, uri);
+	}
+
+	@Test
+	public void testCachedValidatorsAreMergedOnlyIfImageIsNotModified() throws Exception {
+		String uri = "http://image.com/1.png";
+		ResponseValidators validators = new ResponseValidators("\"etag\"", "Mon, 01 Jan 2018 00:00:00 GMT", 0);
+		StubTransport transport = new StubTransport();
+		BaseImageDownloader downloader = new BaseImageDownloader(RuntimeEnvironment.application, transport);
+
+		transport.code = HttpURLConnection.HTTP_NOT_MODIFIED;
+		Result result = downloader.getStream(uri, validators, null);
+		Assertions.assertThat(result.isNotModified()).isTrue();
+		Assertions.assertThat(result.getValidators().getETag()).isEqualTo("\"etag\"");
+		Assertions.assertThat(result.getValidators().getLastModified()).isEqualTo("Mon, 01 Jan 2018 00:00:00 GMT");
+
+		transport.code = HttpURLConnection.HTTP_OK;
+		transport.headers.put("Last-Modified", "Tue, 02 Jan 2018 00:00:00 GMT");
+		result = downloader.getStream(uri, validators, null);
+		Assertions.assertThat(result.isNotModified()).isFalse();
+		Assertions.assertThat(result.getValidators().getETag()).isNull();
+		Assertions.assertThat(result.getValidators().getLastModified()).isEqualTo("Tue, 02 Jan 2018 00:00:00 GMT");
+	}
+
+	private static class CustomNetworkDownloader extends BaseImageDownloader {
+
+		final List<String> requestedUris = new ArrayList<String>();
+
+		CustomNetworkDownloader() {
+			super(RuntimeEnvironment.application);
+		}
+
+		@Override
+		protected InputStream getStreamFromNetwork(String imageUri, Object extra) throws IOException {
+			requestedUris.add(imageUri);
+			return new ByteArrayInputStream(new byte[]{1, 2, 3});
+		}
+	}
+
+	private static class StubTransport implements HttpTransport {
+
+		final Map<String, String> headers = new HashMap<String, String>();
+		int code;
+
+		@Override
+		public Response execute(String url, Map<String, String> requestHeaders, Object extra) {
+			return new Response() {
+				@Override
+				public int getCode() {
+					return code;
+				}
+
+				@Override
+				public String getHeader(String name) {
+					return headers.get(name);
+				}
+
+				@Override
+				public int getContentLength() {
+					return 3;
+				}
+
+				@Override
+				public InputStream getBody() {
+					return new ByteArrayInputStream(new byte[]{1, 2, 3});
+				}
+
+				@Override
+				public void discard() {
+				}
+			};
+		}
+	}
 }